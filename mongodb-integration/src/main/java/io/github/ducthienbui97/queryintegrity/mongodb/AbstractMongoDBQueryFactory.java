@@ -0,0 +1,330 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import io.github.ducthienbui97.queryintegrity.core.QueryFactory;
+import io.github.ducthienbui97.queryintegrity.core.QueryProxy;
+import lombok.NonNull;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Query generation and result options shared by the MongoDB query factories,
+ * implementations only differ by the driver sending the queries.
+ */
+public abstract class AbstractMongoDBQueryFactory implements QueryFactory<Bson, Document> {
+    public static final List<String> DEFAULT_PROJECTION_FIELDS = Collections.singletonList("_id");
+    private static final MongoDBOperatorRegistry OPERATOR_REGISTRY = new MongoDBOperatorRegistry();
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    /**
+     * Random field to generate random query.
+     */
+    private final Random random;
+    /**
+     * Possible query to choose from, each query is only built when it is chosen.
+     * Generate based on {@link MongoDBQueryFactoryOptions#getFieldOptions()}
+     * or {@link #setFieldFilterOptions(Map)}
+     */
+    private MongoDBQueryPool queryPool;
+    /**
+     * Projection of the results, or null to get full documents.
+     */
+    protected Bson projection = Projections.include(DEFAULT_PROJECTION_FIELDS);
+    /**
+     * Number of documents of each cursor batch, 0 for the server default.
+     */
+    protected int cursorBatchSize;
+    /**
+     * Time limit of each query in milliseconds, 0 for no limit.
+     */
+    protected long maxTimeMS;
+    /**
+     * Maximum number of documents of each result, 0 for no limit.
+     */
+    protected int limit;
+
+    /**
+     * Create the query generation part of a MongoDB query factory.
+     *
+     * @param fieldOptions Option config to generate possible queries {@link #setFieldFilterOptions(Map)}
+     * @param seed         Seed value for {@link java.util.Random}
+     */
+    protected AbstractMongoDBQueryFactory(Map<String, Map<String, Collection<Collection<Object>>>> fieldOptions,
+                                          Long seed) {
+        if (seed != null) {
+            random = new Random(seed);
+        } else {
+            random = new Random();
+        }
+        setFieldFilterOptions(fieldOptions);
+    }
+
+    /**
+     * Apply the result options of {@link MongoDBQueryFactoryOptions}.
+     *
+     * @param options see {@link MongoDBQueryFactoryOptions}
+     */
+    protected void setResultOptions(@NonNull MongoDBQueryFactoryOptions options) {
+        setProjectionFields(options.getProjectionFields());
+        setCursorBatchSize(options.getCursorBatchSize());
+        setMaxTime(options.getMaxTimeMS(), TimeUnit.MILLISECONDS);
+        setLimit(options.getLimit());
+    }
+
+    /**
+     * Flatten the setting in {@link MongoDBQueryFactoryOptions#getFieldOptions()} to a list of {@link MongoDBFieldOption}
+     *
+     * @param fieldOptionMap option setting (see {@link MongoDBQueryFactoryOptions#getFieldOptions()})
+     * @return list of {@link MongoDBFieldOption} used to create the possible queries
+     */
+    protected static List<MongoDBFieldOption> buildFieldOptionList(Map<String, Map<String, Collection<Collection<Object>>>> fieldOptionMap) {
+        return Optional.ofNullable(fieldOptionMap)
+                .map(optionMap -> optionMap.entrySet().stream()
+                        .flatMap(entry -> entry.getValue().entrySet().stream()
+                                .flatMap(operatorEntry -> operatorEntry.getValue().stream()
+                                        .map(param ->
+                                                MongoDBFieldOption.builder()
+                                                        .fieldName(entry.getKey())
+                                                        .operator(operatorEntry.getKey())
+                                                        .parameters(param).build()
+                                        )))
+                        .collect(Collectors.toList()))
+                .orElse(null);
+    }
+
+    /**
+     * Generate list of possible query can be returned by {@link #build()} from json configuration
+     * see {@link #setFieldFilterOptions(Map)} for json format
+     *
+     * @param json configuration string
+     */
+    public void setFieldFilterOptions(String json) throws JsonProcessingException {
+        try {
+            setFieldFilterOptions(JSON_FACTORY.createParser(json));
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Generate list of possible query can be returned by {@link #build()} from json configuration
+     * see {@link #setFieldFilterOptions(Map)} for json format
+     *
+     * @param jsonFile file to load json configuration.
+     */
+    public void setFieldFilterOptions(File jsonFile) throws IOException {
+        setFieldFilterOptions(JSON_FACTORY.createParser(jsonFile));
+    }
+
+    /**
+     * Generate list of possible query can be returned by {@link #build()} from json configuration
+     * see {@link #setFieldFilterOptions(Map)} for json format
+     *
+     * @param url url to load the json configuration.
+     */
+    public void setFieldFilterOptions(URL url) throws IOException {
+        setFieldFilterOptions(JSON_FACTORY.createParser(url));
+    }
+
+    /**
+     * Read the json configuration one option at a time, so the whole configuration is never held in memory.
+     */
+    private void setFieldFilterOptions(JsonParser parser) throws IOException {
+        try (JsonParser jsonParser = parser) {
+            queryPool = MongoDBQueryPool.parse(OPERATOR_REGISTRY, jsonParser);
+        }
+    }
+
+    /**
+     * Generate list of possible query can be returned by {@link #build()} from json configuration
+     *
+     * @param fieldOptions Possible options can be used to create a single query condition in the following format:
+     *                     {
+     *                     --'field name': {
+     *                     ----'operator name': [
+     *                     ------[possible parameter for operator]
+     *                     ------[possible, parameters, for, operator]
+     *                     ----]
+     *                     --}
+     *                     }
+     *                     Then every time {@link #build()} is called,
+     *                     a {@link org.bson.conversions.Bson} condition is created with 1 possible field name,
+     *                     1 possible operator on that field name, 1 possible parameter collection on that operator.
+     */
+    public void setFieldFilterOptions(Map<String, Map<String, Collection<Collection<Object>>>> fieldOptions) {
+        if (fieldOptions == null) {
+            queryPool = null;
+            return;
+        }
+        MongoDBQueryPool pool = new MongoDBQueryPool(OPERATOR_REGISTRY);
+        fieldOptions.forEach((fieldName, operatorOptions) -> operatorOptions.forEach((operator, parameterOptions) -> {
+            for (Collection<Object> parameters : parameterOptions) {
+                pool.add(fieldName, operator, parameters);
+            }
+        }));
+        queryPool = pool;
+    }
+
+    /**
+     * Generate list of possible query can be returned by {@link #build()} from configuration
+     *
+     * @param fieldOptions List of {@link MongoDBFieldOption} created by
+     *                     flatting input field of {@link #setFieldFilterOptions(Map)}
+     *                     with {@link #buildFieldOptionList(Map)}
+     */
+    public void setFieldFilterOptions(List<MongoDBFieldOption> fieldOptions) {
+        if (fieldOptions == null) {
+            queryPool = null;
+            return;
+        }
+        MongoDBQueryPool pool = new MongoDBQueryPool(OPERATOR_REGISTRY);
+        for (MongoDBFieldOption fieldOption : fieldOptions) {
+            pool.add(fieldOption.getFieldName(), fieldOption.getOperator(), fieldOption.getParameters());
+        }
+        queryPool = pool;
+    }
+
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    /**
+     * Set the fields returned in each result document, "_id" is always returned.
+     * Validators only need the identity of the results, so only "_id" is returned by default.
+     *
+     * @param projectionFields fields of the results, or null to get full documents.
+     */
+    public void setProjectionFields(List<String> projectionFields) {
+        projection = projectionFields == null ? null : Projections.include(projectionFields);
+    }
+
+    /**
+     * Set the number of documents of each cursor batch. A small batch size lets a validator that stops early, e.g:
+     * the not test of {@link #getResultIterator(Bson)} finding a shared result, close its cursor before the server
+     * sends the rest of the result.
+     *
+     * @param cursorBatchSize number of documents of each batch, 0 for the server default.
+     */
+    public void setCursorBatchSize(int cursorBatchSize) {
+        if (cursorBatchSize < 0) {
+            throw new IllegalArgumentException("Cursor batch size must not be negative");
+        }
+        this.cursorBatchSize = cursorBatchSize;
+    }
+
+    /**
+     * Set the time limit of each query, the query fails once the server spent that much time on it.
+     *
+     * @param maxTime  time limit of each query, 0 for no limit.
+     * @param timeUnit unit of the time limit.
+     */
+    public void setMaxTime(long maxTime, @NonNull TimeUnit timeUnit) {
+        if (maxTime < 0) {
+            throw new IllegalArgumentException("Max time must not be negative");
+        }
+        this.maxTimeMS = timeUnit.toMillis(maxTime);
+    }
+
+    /**
+     * Set the maximum number of documents of each result, results of the sorted iterator keep their first documents.
+     * Truncated results can only hide violations of the not test, or of the equal test with sorted results,
+     * other relations may fail on valid pairs.
+     *
+     * @param limit maximum number of documents of each result, 0 for no limit.
+     */
+    public void setLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+        this.limit = limit;
+    }
+
+    @Override
+    public Bson build() {
+        return build(random);
+    }
+
+    /**
+     * Choose a query from the possible queries with the given random, the random field of this factory is not used.
+     * Only the chosen query is built, so the same choice gives an equal but not the same query.
+     *
+     * @param random the random to choose the query with.
+     * @return a random possible query.
+     */
+    @Override
+    public Bson build(Random random) {
+        return queryPool.build(random.nextInt(queryPool.size()));
+    }
+
+    @Override
+    public Bson build(QueryProxy<Bson> queryProxy) {
+        switch (queryProxy.getQueryType()) {
+            case OR:
+                return Filters.or(queryProxy
+                        .getChildren()
+                        .stream()
+                        .map(this::build)
+                        .collect(Collectors.toList()));
+            case AND:
+                return Filters.and(queryProxy
+                        .getChildren()
+                        .stream()
+                        .map(this::build)
+                        .collect(Collectors.toList()));
+            case NOT:
+                return Filters.nor(build(queryProxy.getChildren().get(0)));
+            default:
+                return queryProxy.getNativeQuery();
+        }
+    }
+
+    /**
+     * Check if a query matches any document without getting the documents, the server stops counting at the first match.
+     *
+     * @param query the query to be checked.
+     * @return true if at least 1 document matches the query.
+     */
+    public abstract boolean exists(Bson query);
+
+    /**
+     * Get every full document of the collection in natural order, ignoring the projection and the limit,
+     * e.g: to evaluate queries locally with {@link MongoDBLocalOracle}.
+     *
+     * @return every document of the collection.
+     */
+    public abstract List<Document> getSnapshot();
+
+    /**
+     * Get full documents chosen at random by a $sample stage, e.g: to discover field options with
+     * {@link MongoDBFieldDiscovery}.
+     *
+     * @param sampleSize number of documents, the whole collection is returned if it has fewer documents.
+     * @return the sampled documents.
+     */
+    public abstract List<Document> getSample(int sampleSize);
+
+    @Override
+    public String toString(Object resultOrQuery) {
+        if (resultOrQuery instanceof Collection) {
+            return ((Collection<Document>) resultOrQuery)
+                    .stream()
+                    .map(data -> data.get("_id"))
+                    .collect(Collectors.toList())
+                    .toString();
+        }
+        return resultOrQuery.toString();
+    }
+}
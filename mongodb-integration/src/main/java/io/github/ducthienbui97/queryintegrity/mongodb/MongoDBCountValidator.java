@@ -0,0 +1,73 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.mongodb.client.model.Filters;
+import io.github.ducthienbui97.queryintegrity.core.QueryPairValidator;
+import io.github.ducthienbui97.queryintegrity.core.RelationType;
+import lombok.NonNull;
+import org.bson.conversions.Bson;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Validate pairs of queries on the server with count queries limited to 1 document, instead of getting both results.
+ * A relation holds if no document matches the query of its violation, e.g: the first query is a subset of the second
+ * query if no document matches the first query and not the second query.
+ * Only the pairs found invalid have their results sent back to be reported.
+ */
+public class MongoDBCountValidator implements QueryPairValidator<Bson> {
+    /**
+     * Relations validated by default. The equal test is not, as it also compares the order of both results.
+     */
+    public static final Set<RelationType> DEFAULT_RELATIONS = Collections.unmodifiableSet(
+            EnumSet.of(RelationType.NOT, RelationType.SUBSET, RelationType.SUPERSET));
+
+    private final AbstractMongoDBQueryFactory queryFactory;
+    private final Set<RelationType> relations;
+
+    public MongoDBCountValidator(@NonNull AbstractMongoDBQueryFactory queryFactory) {
+        this(queryFactory, DEFAULT_RELATIONS);
+    }
+
+    /**
+     * @param queryFactory the factory sending the count queries.
+     * @param relations    relations to validate with count queries, the equal test only checks both queries match
+     *                     the same documents and ignores the order of the results.
+     */
+    public MongoDBCountValidator(@NonNull AbstractMongoDBQueryFactory queryFactory, @NonNull Set<RelationType> relations) {
+        this.queryFactory = queryFactory;
+        this.relations = relations.isEmpty() ? Collections.emptySet() :
+                Collections.unmodifiableSet(EnumSet.copyOf(relations));
+    }
+
+    @Override
+    public boolean supports(RelationType relation) {
+        return relations.contains(relation);
+    }
+
+    @Override
+    public boolean isValid(RelationType relation, Bson query1, Bson query2) {
+        return !queryFactory.exists(getViolation(relation, query1, query2));
+    }
+
+    /**
+     * @return query matching the documents that violate the relation between both queries.
+     */
+    static Bson getViolation(RelationType relation, Bson query1, Bson query2) {
+        switch (relation) {
+            case EQUAL:
+                return Filters.or(getDifference(query1, query2), getDifference(query2, query1));
+            case NOT:
+                return Filters.and(query1, query2);
+            case SUBSET:
+                return getDifference(query1, query2);
+            default:
+                return getDifference(query2, query1);
+        }
+    }
+
+    private static Bson getDifference(Bson query1, Bson query2) {
+        return Filters.and(query1, Filters.nor(query2));
+    }
+}
@@ -0,0 +1,400 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.json.JsonWriterSettings;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Discover the field options of {@link AbstractMongoDBQueryFactory#setFieldFilterOptions(Map)} from a sample of the
+ * collection, instead of writing them by hand. The sample is summarized by a histogram of each field path: how many
+ * documents have it, the quantiles of its numbers and dates, the most frequent strings and the booleans.
+ * Options are built from the histograms so their selectivity is spread across the range: a $gte and a $lt on each
+ * quantile, a $eq on each frequent string and $in of the most frequent strings up to each quarter of the values.
+ * Histograms can be saved to a json file and loaded by later runs, see {@link #loadOrSample(AbstractMongoDBQueryFactory, int, File)}.
+ */
+@Slf4j
+public class MongoDBFieldDiscovery {
+    public static final int DEFAULT_SAMPLE_SIZE = 1000;
+    public static final int DEFAULT_BUCKET_COUNT = 10;
+    public static final int DEFAULT_MAX_STRING_VALUES = 20;
+    private static final JsonWriterSettings JSON_WRITER_SETTINGS = JsonWriterSettings.builder().indent(true).build();
+    private static final int IN_PARTS = 4;
+
+    /**
+     * Number of sampled documents.
+     */
+    @Getter
+    private final int sampleSize;
+    private final Map<String, FieldHistogram> histograms;
+
+    private MongoDBFieldDiscovery(int sampleSize, Map<String, FieldHistogram> histograms) {
+        this.sampleSize = sampleSize;
+        this.histograms = histograms;
+    }
+
+    public static MongoDBFieldDiscovery of(@NonNull Collection<Document> documents) {
+        return of(documents, DEFAULT_BUCKET_COUNT, DEFAULT_MAX_STRING_VALUES);
+    }
+
+    /**
+     * Summarize sampled documents. Values of arrays are counted as values of their field, and fields of embedded
+     * documents, including documents in arrays, have a dotted path.
+     *
+     * @param documents       the sampled documents.
+     * @param bucketCount     number of quantile buckets of numbers and dates, must be positive.
+     * @param maxStringValues maximum number of frequent strings kept for each field, must not be negative.
+     * @return histograms of the sampled documents.
+     */
+    public static MongoDBFieldDiscovery of(@NonNull Collection<Document> documents, int bucketCount, int maxStringValues) {
+        if (bucketCount < 1) {
+            throw new IllegalArgumentException("Bucket count must be positive but was " + bucketCount);
+        }
+        if (maxStringValues < 0) {
+            throw new IllegalArgumentException("Max string values must not be negative but was " + maxStringValues);
+        }
+        Map<String, FieldValues> fieldValues = new TreeMap<>();
+        for (Document document : documents) {
+            Set<String> paths = new HashSet<>();
+            addDocument("", document, fieldValues, paths);
+            for (String path : paths) {
+                fieldValues.get(path).presentCount++;
+            }
+        }
+        Map<String, FieldHistogram> histograms = new TreeMap<>();
+        fieldValues.forEach((path, values) -> histograms.put(path, values.toHistogram(bucketCount, maxStringValues)));
+        return new MongoDBFieldDiscovery(documents.size(), histograms);
+    }
+
+    /**
+     * Sample the collection of a query factory with $sample.
+     *
+     * @param queryFactory the query factory to sample the collection with.
+     * @param sampleSize   number of sampled documents.
+     * @return histograms of the sampled documents.
+     */
+    public static MongoDBFieldDiscovery sample(@NonNull AbstractMongoDBQueryFactory queryFactory, int sampleSize) {
+        List<Document> documents = queryFactory.getSample(sampleSize);
+        MongoDBFieldDiscovery fieldDiscovery = of(documents);
+        log.info("Sampled {} documents with {} fields", documents.size(), fieldDiscovery.histograms.size());
+        return fieldDiscovery;
+    }
+
+    /**
+     * Load histograms from a file if it exists, otherwise sample the collection and save the histograms to the file,
+     * so only the first run samples the collection. Delete the file to sample the collection again.
+     *
+     * @param queryFactory the query factory to sample the collection with.
+     * @param sampleSize   number of sampled documents.
+     * @param file         the file the histograms are cached in.
+     * @return histograms of the collection.
+     */
+    public static MongoDBFieldDiscovery loadOrSample(@NonNull AbstractMongoDBQueryFactory queryFactory, int sampleSize,
+                                                     @NonNull File file) throws IOException {
+        if (file.exists()) {
+            log.info("Loading histograms from {}", file);
+            return load(file);
+        }
+        MongoDBFieldDiscovery fieldDiscovery = sample(queryFactory, sampleSize);
+        fieldDiscovery.save(file);
+        return fieldDiscovery;
+    }
+
+    /**
+     * @param file json file written by {@link #save(File)}.
+     * @return the saved histograms.
+     */
+    public static MongoDBFieldDiscovery load(@NonNull File file) throws IOException {
+        Document document = Document.parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        Map<String, FieldHistogram> histograms = new TreeMap<>();
+        Document fields = document.get("fields", Document.class);
+        if (fields == null) {
+            throw new IOException("No fields in histogram file " + file);
+        }
+        fields.forEach((path, histogram) -> histograms.put(path, FieldHistogram.fromDocument((Document) histogram)));
+        return new MongoDBFieldDiscovery(getNumber(document, "sampleSize").intValue(), histograms);
+    }
+
+    /**
+     * @param file json file to write the histograms to.
+     */
+    public void save(@NonNull File file) throws IOException {
+        Document fields = new Document();
+        histograms.forEach((path, histogram) -> fields.append(path, histogram.toDocument()));
+        Document document = new Document("sampleSize", sampleSize).append("fields", fields);
+        Files.write(file.toPath(), document.toJson(JSON_WRITER_SETTINGS).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return sampled field paths.
+     */
+    public Set<String> getFieldNames() {
+        return Collections.unmodifiableSet(histograms.keySet());
+    }
+
+    /**
+     * @param fieldName the field path.
+     * @return fraction of the sampled documents having the field.
+     */
+    public double getPresentFraction(@NonNull String fieldName) {
+        FieldHistogram histogram = histograms.get(fieldName);
+        return histogram == null || sampleSize == 0 ? 0 : (double) histogram.presentCount / sampleSize;
+    }
+
+    /**
+     * Build field options from the histograms, in the format of {@link AbstractMongoDBQueryFactory#setFieldFilterOptions(Map)}.
+     *
+     * @return options of each field with a value to filter on.
+     */
+    public Map<String, Map<String, Collection<Collection<Object>>>> getFieldOptions() {
+        Map<String, Map<String, Collection<Collection<Object>>>> fieldOptions = new LinkedHashMap<>();
+        histograms.forEach((path, histogram) -> {
+            Map<String, Collection<Collection<Object>>> operatorOptions = histogram.toOperatorOptions(sampleSize);
+            if (!operatorOptions.isEmpty()) {
+                fieldOptions.put(path, operatorOptions);
+            }
+        });
+        log.info("Built {} options for {} fields", fieldOptions.values().stream()
+                .flatMap(operatorOptions -> operatorOptions.values().stream())
+                .mapToInt(Collection::size)
+                .sum(), fieldOptions.size());
+        return fieldOptions;
+    }
+
+    private static void addDocument(String prefix, Document document, Map<String, FieldValues> fieldValues,
+                                    Set<String> paths) {
+        for (Map.Entry<String, Object> entry : document.entrySet()) {
+            String path = prefix + entry.getKey();
+            paths.add(path);
+            addValue(path, entry.getValue(), fieldValues, paths, true);
+        }
+    }
+
+    private static void addValue(String path, Object value, Map<String, FieldValues> fieldValues, Set<String> paths,
+                                 boolean topLevel) {
+        FieldValues values = fieldValues.computeIfAbsent(path, key -> new FieldValues());
+        if (value == null) {
+            values.nullCount++;
+        } else if (value instanceof Integer || value instanceof Long) {
+            values.numbers.add(((Number) value).doubleValue());
+        } else if (value instanceof Double) {
+            values.numbers.add((Double) value);
+            values.integral &= (Double) value == Math.rint((Double) value);
+        } else if (value instanceof Date) {
+            values.dates.add(((Date) value).getTime());
+        } else if (value instanceof String) {
+            values.strings.merge((String) value, 1L, Long::sum);
+        } else if (value instanceof Boolean) {
+            if ((Boolean) value) {
+                values.trueCount++;
+            } else {
+                values.falseCount++;
+            }
+        } else if (value instanceof Document) {
+            addDocument(path + ".", (Document) value, fieldValues, paths);
+        } else if (value instanceof List && topLevel) {
+            values.arrayCount++;
+            for (Object element : (List<?>) value) {
+                addValue(path, element, fieldValues, paths, false);
+            }
+        }
+    }
+
+    private static Number getNumber(Document document, String key) {
+        Object value = document.get(key);
+        return value instanceof Number ? (Number) value : 0;
+    }
+
+    /**
+     * Values of a field in the sample.
+     */
+    private static class FieldValues {
+        private final List<Double> numbers = new ArrayList<>();
+        private final List<Long> dates = new ArrayList<>();
+        private final Map<String, Long> strings = new HashMap<>();
+        private long presentCount;
+        private long nullCount;
+        private long arrayCount;
+        private long trueCount;
+        private long falseCount;
+        private boolean integral = true;
+
+        FieldHistogram toHistogram(int bucketCount, int maxStringValues) {
+            FieldHistogram histogram = new FieldHistogram();
+            histogram.presentCount = presentCount;
+            histogram.nullCount = nullCount;
+            histogram.arrayCount = arrayCount;
+            histogram.trueCount = trueCount;
+            histogram.falseCount = falseCount;
+            histogram.integral = integral;
+            histogram.numberCount = numbers.size();
+            histogram.numberBounds = quantiles(numbers, bucketCount);
+            histogram.dateCount = dates.size();
+            histogram.dateBounds = quantiles(dates, bucketCount);
+            histogram.stringCount = strings.values().stream().mapToLong(Long::longValue).sum();
+            histogram.distinctStringCount = strings.size();
+            histogram.topStrings = new LinkedHashMap<>();
+            strings.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                    .limit(maxStringValues)
+                    .forEach(entry -> histogram.topStrings.put(entry.getKey(), entry.getValue()));
+            return histogram;
+        }
+
+        /**
+         * @return the minimum, the value at each bucket boundary and the maximum of the values.
+         */
+        private static <V extends Comparable<V>> List<V> quantiles(List<V> values, int bucketCount) {
+            if (values.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<V> sorted = new ArrayList<>(values);
+            Collections.sort(sorted);
+            List<V> bounds = new ArrayList<>(bucketCount + 1);
+            for (int i = 0; i <= bucketCount; i++) {
+                bounds.add(sorted.get((int) ((long) i * (sorted.size() - 1) / bucketCount)));
+            }
+            return bounds;
+        }
+    }
+
+    /**
+     * Histogram of the values of a field in the sample.
+     */
+    private static class FieldHistogram {
+        private long presentCount;
+        private long nullCount;
+        private long arrayCount;
+        private long numberCount;
+        private boolean integral;
+        private List<Double> numberBounds;
+        private long dateCount;
+        private List<Long> dateBounds;
+        private long stringCount;
+        private long distinctStringCount;
+        private Map<String, Long> topStrings;
+        private long trueCount;
+        private long falseCount;
+
+        Map<String, Collection<Collection<Object>>> toOperatorOptions(int sampleSize) {
+            Map<String, Collection<Collection<Object>>> operatorOptions = new LinkedHashMap<>();
+            if (presentCount > 0 && presentCount < sampleSize) {
+                addOption(operatorOptions, "exists", Collections.emptyList());
+                addOption(operatorOptions, "exists", Collections.singletonList(false));
+            }
+            for (Double bound : innerBounds(numberBounds)) {
+                Object parameter = integral ? (Object) bound.longValue() : (Object) bound;
+                addOption(operatorOptions, "gte", Collections.singletonList(parameter));
+                addOption(operatorOptions, "lt", Collections.singletonList(parameter));
+            }
+            for (Long bound : innerBounds(dateBounds)) {
+                addOption(operatorOptions, "gte", Collections.singletonList(new Date(bound)));
+                addOption(operatorOptions, "lt", Collections.singletonList(new Date(bound)));
+            }
+            for (String value : topStrings.keySet()) {
+                addOption(operatorOptions, "eq", Collections.singletonList(value));
+            }
+            addInOptions(operatorOptions);
+            if (trueCount > 0) {
+                addOption(operatorOptions, "eq", Collections.singletonList(true));
+            }
+            if (falseCount > 0) {
+                addOption(operatorOptions, "eq", Collections.singletonList(false));
+            }
+            return operatorOptions;
+        }
+
+        /**
+         * Distinct bounds above the minimum, a bound equal to the minimum matches every value or none.
+         */
+        private static <V> Collection<V> innerBounds(List<V> bounds) {
+            Set<V> innerBounds = new LinkedHashSet<>(bounds);
+            if (!bounds.isEmpty()) {
+                innerBounds.remove(bounds.get(0));
+            }
+            return innerBounds;
+        }
+
+        /**
+         * $in of the most frequent strings, adding strings until each quarter of the values is reached, short of all
+         * the values. Fields holding arrays have none, a document matches if any value of its array does, so the
+         * fraction of the values tells little of the fraction of the documents.
+         */
+        private void addInOptions(Map<String, Collection<Collection<Object>>> operatorOptions) {
+            if (arrayCount > 0) {
+                return;
+            }
+            List<Object> values = new ArrayList<>();
+            long cumulativeCount = 0;
+            int part = 1;
+            for (Map.Entry<String, Long> entry : topStrings.entrySet()) {
+                if (part >= IN_PARTS) {
+                    return;
+                }
+                values.add(entry.getKey());
+                cumulativeCount += entry.getValue();
+                if (cumulativeCount * IN_PARTS >= part * stringCount) {
+                    if (values.size() > 1) {
+                        addOption(operatorOptions, "in", Collections.singletonList(new ArrayList<>(values)));
+                    }
+                    while (cumulativeCount * IN_PARTS >= part * stringCount) {
+                        part++;
+                    }
+                }
+            }
+        }
+
+        private static void addOption(Map<String, Collection<Collection<Object>>> operatorOptions, String operator,
+                                      List<Object> parameters) {
+            operatorOptions.computeIfAbsent(operator, key -> new ArrayList<>()).add(parameters);
+        }
+
+        Document toDocument() {
+            return new Document("presentCount", presentCount)
+                    .append("nullCount", nullCount)
+                    .append("arrayCount", arrayCount)
+                    .append("numberCount", numberCount)
+                    .append("integral", integral)
+                    .append("numberBounds", numberBounds)
+                    .append("dateCount", dateCount)
+                    .append("dateBounds", dateBounds)
+                    .append("stringCount", stringCount)
+                    .append("distinctStringCount", distinctStringCount)
+                    .append("topStrings", new Document(new LinkedHashMap<>(topStrings)))
+                    .append("trueCount", trueCount)
+                    .append("falseCount", falseCount);
+        }
+
+        static FieldHistogram fromDocument(Document document) {
+            FieldHistogram histogram = new FieldHistogram();
+            histogram.presentCount = getNumber(document, "presentCount").longValue();
+            histogram.nullCount = getNumber(document, "nullCount").longValue();
+            histogram.arrayCount = getNumber(document, "arrayCount").longValue();
+            histogram.numberCount = getNumber(document, "numberCount").longValue();
+            histogram.integral = document.getBoolean("integral", true);
+            histogram.numberBounds = document.getList("numberBounds", Number.class, Collections.emptyList()).stream()
+                    .map(Number::doubleValue)
+                    .collect(Collectors.toList());
+            histogram.dateCount = getNumber(document, "dateCount").longValue();
+            histogram.dateBounds = document.getList("dateBounds", Number.class, Collections.emptyList()).stream()
+                    .map(Number::longValue)
+                    .collect(Collectors.toList());
+            histogram.stringCount = getNumber(document, "stringCount").longValue();
+            histogram.distinctStringCount = getNumber(document, "distinctStringCount").longValue();
+            histogram.topStrings = new LinkedHashMap<>();
+            document.get("topStrings", new Document())
+                    .forEach((value, count) -> histogram.topStrings.put(value, ((Number) count).longValue()));
+            histogram.trueCount = getNumber(document, "trueCount").longValue();
+            histogram.falseCount = getNumber(document, "falseCount").longValue();
+            return histogram;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.mongodb.MongoException;
+import io.github.ducthienbui97.queryintegrity.core.Histogram;
+import io.github.ducthienbui97.queryintegrity.core.QueryFailure;
+import io.github.ducthienbui97.queryintegrity.core.QueryGenerator;
+import io.github.ducthienbui97.queryintegrity.core.QueryProxy;
+import io.github.ducthienbui97.queryintegrity.core.QueryReporter;
+import io.github.ducthienbui97.queryintegrity.core.QueryTestingService;
+import io.github.ducthienbui97.queryintegrity.core.RelationType;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Differential test of the query planner: a generated query must return the same documents whether the planner
+ * chooses its plan, usually an index scan, or the query is forced through a collection scan with
+ * {@link #NATURAL_HINT}. The latency of both sides is recorded, so the summary also gives the speed-up of the
+ * chosen plans on the generated queries, overall and for each index scanned by the chosen plans. Each query is
+ * explained once before it is timed to find the indexes of its winning plan.
+ * Results are compared as sets, so the factory must not have a limit, see {@link MongoDBQueryFactory#setLimit(int)}.
+ */
+@Slf4j
+public class MongoDBHintTester {
+    /**
+     * Hint forcing a collection scan in natural order.
+     */
+    public static final Bson NATURAL_HINT = new Document("$natural", 1);
+    /**
+     * Kind of the failures and runs reported by the hint tester, see {@link QueryFailure#getKind()}.
+     */
+    public static final String KIND = "hint";
+    /**
+     * Index of the queries whose winning plan scans no index, e.g: a collection scan.
+     */
+    public static final String NO_INDEX = "none";
+    /**
+     * Index of the queries that fail to be explained.
+     */
+    public static final String UNKNOWN_INDEX = "unknown";
+    private static final String NATURAL_PLAN = ((Document) NATURAL_HINT).toJson();
+
+    private final MongoDBQueryFactory queryFactory;
+    private final QueryGenerator<Bson> queryGenerator;
+    /**
+     * Latency in nanoseconds of the queries with the plan chosen by the planner.
+     */
+    @Getter
+    private final Histogram plannedLatency = new Histogram();
+    /**
+     * Latency in nanoseconds of the queries with a collection scan.
+     */
+    @Getter
+    private final Histogram naturalLatency = new Histogram();
+    /**
+     * Latency of the chosen plans by the indexes they scan.
+     */
+    private final Map<String, Histogram> plannedLatencyByIndex = new TreeMap<>();
+    /**
+     * Latency of the collection scans by the indexes scanned by the chosen plans of the same queries.
+     */
+    private final Map<String, Histogram> naturalLatencyByIndex = new TreeMap<>();
+    private long queryCount;
+    private long mismatchCount;
+    private long plannedFasterCount;
+    private int minLeafCount = QueryTestingService.DEFAULT_MIN_LEAF;
+    private int maxLeafCount = QueryTestingService.DEFAULT_MAX_LEAF;
+    private int maxReportedDiff = QueryTestingService.DEFAULT_MAX_REPORTED_DIFF;
+    private QueryReporter<Bson, Document> queryReporter = new QueryReporter<Bson, Document>() {
+    };
+    private SplittableRandom seeds = new SplittableRandom();
+
+    /**
+     * @param queryFactory the query factory to run queries with, must not have a limit.
+     */
+    public MongoDBHintTester(@NonNull MongoDBQueryFactory queryFactory) {
+        checkNoLimit(queryFactory);
+        this.queryFactory = queryFactory;
+        this.queryGenerator = new QueryGenerator<>(queryFactory);
+    }
+
+    private static void checkNoLimit(MongoDBQueryFactory queryFactory) {
+        if (queryFactory.limit > 0) {
+            throw new IllegalArgumentException("Query factory must not have a limit but has " + queryFactory.limit);
+        }
+    }
+
+    public void setMinLeafCount(int minLeafCount) {
+        this.minLeafCount = minLeafCount;
+        if (this.minLeafCount > this.maxLeafCount) {
+            setMaxLeafCount(minLeafCount);
+        }
+    }
+
+    public void setMaxLeafCount(int maxLeafCount) {
+        this.maxLeafCount = maxLeafCount;
+        if (this.maxLeafCount < minLeafCount) {
+            setMinLeafCount(maxLeafCount);
+        }
+    }
+
+    /**
+     * @param maxReportedDiff maximum number of documents in {@link QueryFailure#getDiff()}, must not be negative.
+     */
+    public void setMaxReportedDiff(int maxReportedDiff) {
+        if (maxReportedDiff < 0) {
+            throw new IllegalArgumentException("Max reported diff must not be negative but was " + maxReportedDiff);
+        }
+        this.maxReportedDiff = maxReportedDiff;
+    }
+
+    /**
+     * Set the reporter notified of each mismatch, as an {@link RelationType#EQUAL} failure of kind {@link #KIND}
+     * whose first query is run with the chosen plan and second query is the same query run with a collection scan,
+     * with the shape of the chosen plan and the hint as their plans, and of each run of kind {@link #KIND}.
+     *
+     * @param queryReporter the reporter.
+     */
+    public void setQueryReporter(@NonNull QueryReporter<Bson, Document> queryReporter) {
+        this.queryReporter = queryReporter;
+    }
+
+    /**
+     * Set the seed of the following runs, each query is built from a seed drawn from it,
+     * see {@link QueryFailure#getSeed()} and {@link #replay(long)}.
+     *
+     * @param seed the seed.
+     */
+    public void setSeed(long seed) {
+        this.seeds = new SplittableRandom(seed);
+    }
+
+    public int run() {
+        return run(QueryTestingService.DEFAULT_TEST_COUNT);
+    }
+
+    /**
+     * Run generated queries with the chosen plan and with a collection scan.
+     *
+     * @param testCount number of generated queries.
+     * @return number of queries whose results differ.
+     */
+    public int run(int testCount) {
+        checkNoLimit(queryFactory);
+        int invalid = 0;
+        for (int i = 0; i < testCount; i++) {
+            if (!runQuery(i, seeds.nextLong())) {
+                invalid++;
+            }
+        }
+        queryReporter.reportRun(KIND, RelationType.EQUAL, testCount, invalid);
+        log.info("Hint test: {} out of {} queries is invalid", invalid, testCount);
+        return invalid;
+    }
+
+    /**
+     * Run a single query again from the seed of a {@link QueryFailure}.
+     *
+     * @param seed the seed of the query, see {@link QueryFailure#getSeed()}.
+     * @return true if both plans return the same documents.
+     */
+    public boolean replay(long seed) {
+        log.info("Replaying hint query with seed {}", seed);
+        return runQuery(QueryTestingService.REPLAY_TEST_INDEX, seed);
+    }
+
+    private boolean runQuery(int testIndex, long seed) {
+        Random random = new Random(seed);
+        QueryProxy<Bson> queryProxy = queryGenerator.generate(
+                random.nextInt(maxLeafCount - minLeafCount + 1) + minLeafCount, random);
+        Bson query = queryFactory.build(queryProxy);
+        MongoDBQueryPlan queryPlan = explain(query);
+        String index = getIndex(queryPlan);
+        // Alternate which side runs first, so neither side always finds the documents cached by the other.
+        boolean plannedFirst = (testIndex & 1) == 0;
+        long naturalNanos = 0;
+        Collection<Document> naturalResult = null;
+        if (!plannedFirst) {
+            naturalNanos = System.nanoTime();
+            naturalResult = queryFactory.getResult(query, NATURAL_HINT);
+            naturalNanos = System.nanoTime() - naturalNanos;
+        }
+        long plannedNanos = System.nanoTime();
+        Collection<Document> plannedResult = queryFactory.getResult(query, null);
+        plannedNanos = System.nanoTime() - plannedNanos;
+        if (plannedFirst) {
+            naturalNanos = System.nanoTime();
+            naturalResult = queryFactory.getResult(query, NATURAL_HINT);
+            naturalNanos = System.nanoTime() - naturalNanos;
+        }
+        plannedLatency.record(plannedNanos);
+        naturalLatency.record(naturalNanos);
+        Set<Document> plannedSet = new HashSet<>(plannedResult);
+        Set<Document> naturalSet = new HashSet<>(naturalResult);
+        boolean valid = plannedResult.size() == naturalResult.size() && plannedSet.equals(naturalSet);
+        synchronized (this) {
+            plannedLatencyByIndex.computeIfAbsent(index, key -> new Histogram()).record(plannedNanos);
+            naturalLatencyByIndex.computeIfAbsent(index, key -> new Histogram()).record(naturalNanos);
+            queryCount++;
+            if (!valid) {
+                mismatchCount++;
+            }
+            if (plannedNanos < naturalNanos) {
+                plannedFasterCount++;
+            }
+        }
+        if (!valid) {
+            log.warn("{} returned {} documents with the chosen plan and {} documents with a collection scan",
+                    query, plannedResult.size(), naturalResult.size());
+            queryReporter.reportFailure(QueryFailure.<Bson, Document>builder()
+                    .kind(KIND)
+                    .relation(RelationType.EQUAL)
+                    .testIndex(testIndex)
+                    .seed(seed)
+                    .queryProxy1(queryProxy)
+                    .queryProxy2(queryProxy)
+                    .query1(query)
+                    .query2(query)
+                    .plan1(queryPlan == null ? UNKNOWN_INDEX : queryPlan.getPlanShape())
+                    .plan2(NATURAL_PLAN)
+                    .result1Size(plannedResult.size())
+                    .result2Size(naturalResult.size())
+                    .diff(diff(plannedResult, naturalSet, naturalResult, plannedSet))
+                    .build());
+        }
+        return valid;
+    }
+
+    /**
+     * @return the winning plan of the query, or null if the query fails to be explained.
+     */
+    private MongoDBQueryPlan explain(Bson query) {
+        try {
+            return queryFactory.explain(query);
+        } catch (MongoException | IllegalArgumentException e) {
+            log.debug("Failed to explain {}: {}", query, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return indexes scanned by the winning plan, joined by "+", {@link #NO_INDEX} if it scans none or
+     * {@link #UNKNOWN_INDEX} if the query fails to be explained.
+     */
+    private static String getIndex(MongoDBQueryPlan queryPlan) {
+        if (queryPlan == null) {
+            return UNKNOWN_INDEX;
+        }
+        List<String> indexNames = queryPlan.getIndexNames();
+        return indexNames.isEmpty() ? NO_INDEX : String.join("+", new LinkedHashSet<>(indexNames));
+    }
+
+    /**
+     * @return at most maxReportedDiff documents of a result missing from the other result.
+     */
+    private List<Document> diff(Collection<Document> plannedResult, Set<Document> naturalSet,
+                                Collection<Document> naturalResult, Set<Document> plannedSet) {
+        List<Document> diff = new ArrayList<>();
+        addDiff(diff, plannedResult, naturalSet);
+        addDiff(diff, naturalResult, plannedSet);
+        return diff;
+    }
+
+    private void addDiff(List<Document> diff, Collection<Document> result, Set<Document> otherResult) {
+        for (Document document : result) {
+            if (diff.size() >= maxReportedDiff) {
+                return;
+            }
+            if (!otherResult.contains(document)) {
+                diff.add(document);
+            }
+        }
+    }
+
+    /**
+     * @return number of queries run.
+     */
+    public synchronized long getQueryCount() {
+        return queryCount;
+    }
+
+    /**
+     * @return number of queries whose results differ.
+     */
+    public synchronized long getMismatchCount() {
+        return mismatchCount;
+    }
+
+    /**
+     * @return number of queries that are faster with the chosen plan than with a collection scan.
+     */
+    public synchronized long getPlannedFasterCount() {
+        return plannedFasterCount;
+    }
+
+    /**
+     * @return average latency of the collection scans over average latency of the chosen plans,
+     * above 1 if the chosen plans are faster, or 0 if nothing is run.
+     */
+    public double getSpeedUp() {
+        return getSpeedUp(plannedLatency, naturalLatency);
+    }
+
+    /**
+     * @return speed-up of the chosen plans, see {@link #getSpeedUp()}, by the indexes they scan,
+     * e.g: "number_1", "number_1+text_1" for plans scanning both indexes, {@link #NO_INDEX} or {@link #UNKNOWN_INDEX}.
+     */
+    public synchronized Map<String, Double> getSpeedUpByIndex() {
+        Map<String, Double> speedUpByIndex = new TreeMap<>();
+        plannedLatencyByIndex.forEach((index, planned) ->
+                speedUpByIndex.put(index, getSpeedUp(planned, naturalLatencyByIndex.get(index))));
+        return speedUpByIndex;
+    }
+
+    /**
+     * @return number of queries run by the indexes scanned by their chosen plans, see {@link #getSpeedUpByIndex()}.
+     */
+    public synchronized Map<String, Long> getQueryCountByIndex() {
+        Map<String, Long> queryCountByIndex = new TreeMap<>();
+        plannedLatencyByIndex.forEach((index, planned) -> queryCountByIndex.put(index, planned.getCount()));
+        return queryCountByIndex;
+    }
+
+    private static double getSpeedUp(Histogram planned, Histogram natural) {
+        double plannedMean = planned.getMean();
+        return plannedMean == 0 ? 0 : natural.getMean() / plannedMean;
+    }
+
+    /**
+     * Summary of the runs, with p50/p99/p999/max of latencies in microseconds.
+     *
+     * @return human readable summary.
+     */
+    public String getSummary() {
+        StringJoiner byIndex = new StringJoiner(", ");
+        Map<String, Long> queryCountByIndex = getQueryCountByIndex();
+        getSpeedUpByIndex().forEach((index, speedUp) -> byIndex.add(
+                String.format("%s %.2fx (%d queries)", index, speedUp, queryCountByIndex.get(index))));
+        return String.format("Hint: %d queries, %d mismatches, latency p50/p99/p999/max (us) chosen plan %s, "
+                        + "collection scan %s, chosen plan faster for %d queries, speed-up of the chosen plan %.2fx, "
+                        + "by index [%s]",
+                getQueryCount(), getMismatchCount(),
+                toString(plannedLatency), toString(naturalLatency), getPlannedFasterCount(), getSpeedUp(), byIndex);
+    }
+
+    private static String toString(Histogram histogram) {
+        return String.format("%d/%d/%d/%d",
+                TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(50)),
+                TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99)),
+                TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99.9)),
+                TimeUnit.NANOSECONDS.toMicros(histogram.getMax()));
+    }
+}
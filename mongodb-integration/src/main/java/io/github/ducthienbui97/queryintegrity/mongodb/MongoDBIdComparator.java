@@ -0,0 +1,233 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.Decimal128;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compare {@link Document} by their "_id" in the same order as MongoDB sorts them,
+ * so sorted results from {@link MongoDBQueryFactory#getResultIterator(org.bson.conversions.Bson)}
+ * can be validated by {@link io.github.ducthienbui97.queryintegrity.core.StreamingResultValidator}.
+ * Values are ordered by BSON type first: MinKey, null, numbers, strings, objects, arrays, binary data, ObjectId,
+ * boolean, date, timestamp, other types and MaxKey, then by value within their type.
+ */
+public class MongoDBIdComparator implements Comparator<Document> {
+    private static final String ID = "_id";
+
+    /**
+     * Rank of the types by MongoDB comparison order.
+     */
+    private static int typeOrder(Object value) {
+        if (value instanceof MinKey) {
+            return 0;
+        }
+        if (value == null) {
+            return 1;
+        }
+        if (value instanceof Number) {
+            return 2;
+        }
+        if (value instanceof String || value instanceof Symbol) {
+            return 3;
+        }
+        if (value instanceof Map) {
+            return 4;
+        }
+        if (value instanceof List) {
+            return 5;
+        }
+        if (value instanceof Binary || value instanceof byte[]) {
+            return 6;
+        }
+        if (value instanceof ObjectId) {
+            return 7;
+        }
+        if (value instanceof Boolean) {
+            return 8;
+        }
+        if (value instanceof Date) {
+            return 9;
+        }
+        if (value instanceof BsonTimestamp) {
+            return 10;
+        }
+        if (value instanceof MaxKey) {
+            return 12;
+        }
+        return 11;
+    }
+
+    @Override
+    public int compare(Document document1, Document document2) {
+        return compareValues(document1.get(ID), document2.get(ID));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object value1, Object value2) {
+        int typeCompare = Integer.compare(typeOrder(value1), typeOrder(value2));
+        if (typeCompare != 0) {
+            return typeCompare;
+        }
+        if (value1 == null || value1 instanceof MinKey || value1 instanceof MaxKey) {
+            return 0;
+        }
+        if (value1 instanceof Number) {
+            return compareNumbers((Number) value1, (Number) value2);
+        }
+        if (value1 instanceof String || value1 instanceof Symbol) {
+            return compareStrings(value1.toString(), value2.toString());
+        }
+        if (value1 instanceof Map) {
+            return compareDocuments((Map<String, Object>) value1, (Map<String, Object>) value2);
+        }
+        if (value1 instanceof List) {
+            return compareArrays((List<Object>) value1, (List<Object>) value2);
+        }
+        if (typeOrder(value1) == 6) {
+            return compareBinaries(value1, value2);
+        }
+        if (value1 instanceof Comparable && value1.getClass().equals(value2.getClass())) {
+            return Integer.signum(((Comparable<Object>) value1).compareTo(value2));
+        }
+        return compareStrings(value1.toString(), value2.toString());
+    }
+
+    /**
+     * Integral numbers are compared exactly, NaN is lower than every other number and -0 equals 0.
+     */
+    private static int compareNumbers(Number number1, Number number2) {
+        if (isIntegral(number1) && isIntegral(number2)) {
+            return Long.compare(number1.longValue(), number2.longValue());
+        }
+        boolean nan1 = isNaN(number1);
+        boolean nan2 = isNaN(number2);
+        if (nan1 || nan2) {
+            return Boolean.compare(!nan1, !nan2);
+        }
+        int infinite1 = infinity(number1);
+        int infinite2 = infinity(number2);
+        if (infinite1 != 0 || infinite2 != 0) {
+            return Integer.compare(infinite1, infinite2);
+        }
+        return Integer.signum(toBigDecimal(number1).compareTo(toBigDecimal(number2)));
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte;
+    }
+
+    private static boolean isNaN(Number number) {
+        return number instanceof Decimal128 ? ((Decimal128) number).isNaN() : Double.isNaN(number.doubleValue());
+    }
+
+    /**
+     * @return 1 for positive infinity, -1 for negative infinity, 0 for a finite number.
+     */
+    private static int infinity(Number number) {
+        if (isIntegral(number)) {
+            return 0;
+        }
+        if (number instanceof Decimal128) {
+            Decimal128 decimal = (Decimal128) number;
+            return decimal.isInfinite() ? (decimal.isNegative() ? -1 : 1) : 0;
+        }
+        double value = number.doubleValue();
+        return Double.isInfinite(value) ? (value > 0 ? 1 : -1) : 0;
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        if (isIntegral(number)) {
+            return BigDecimal.valueOf(number.longValue());
+        }
+        if (number instanceof Decimal128) {
+            Decimal128 decimal = (Decimal128) number;
+            // Negative zero has no BigDecimal.
+            return decimal.isNegative() && decimal.doubleValue() == 0 ? BigDecimal.ZERO : decimal.bigDecimalValue();
+        }
+        return new BigDecimal(number.doubleValue());
+    }
+
+    /**
+     * Strings are compared by code point, which is the order of their UTF-8 bytes as the server compares them.
+     */
+    private static int compareStrings(String string1, String string2) {
+        int index1 = 0;
+        int index2 = 0;
+        while (index1 < string1.length() && index2 < string2.length()) {
+            int codePoint1 = string1.codePointAt(index1);
+            int codePoint2 = string2.codePointAt(index2);
+            if (codePoint1 != codePoint2) {
+                return Integer.compare(codePoint1, codePoint2);
+            }
+            index1 += Character.charCount(codePoint1);
+            index2 += Character.charCount(codePoint2);
+        }
+        return Boolean.compare(index1 < string1.length(), index2 < string2.length());
+    }
+
+    /**
+     * Embedded documents are compared field by field: type of the value, then name, then value,
+     * a document that is a prefix of the other is lower.
+     */
+    private static int compareDocuments(Map<String, Object> document1, Map<String, Object> document2) {
+        Iterator<Map.Entry<String, Object>> fields1 = document1.entrySet().iterator();
+        Iterator<Map.Entry<String, Object>> fields2 = document2.entrySet().iterator();
+        while (fields1.hasNext() && fields2.hasNext()) {
+            Map.Entry<String, Object> field1 = fields1.next();
+            Map.Entry<String, Object> field2 = fields2.next();
+            int compare = Integer.compare(typeOrder(field1.getValue()), typeOrder(field2.getValue()));
+            if (compare == 0) {
+                compare = compareStrings(field1.getKey(), field2.getKey());
+            }
+            if (compare == 0) {
+                compare = compareValues(field1.getValue(), field2.getValue());
+            }
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return Boolean.compare(fields1.hasNext(), fields2.hasNext());
+    }
+
+    private static int compareArrays(List<Object> array1, List<Object> array2) {
+        for (int i = 0; i < Math.min(array1.size(), array2.size()); i++) {
+            int compare = compareValues(array1.get(i), array2.get(i));
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return Integer.compare(array1.size(), array2.size());
+    }
+
+    /**
+     * Binary data is compared by length, then subtype, then unsigned bytes.
+     */
+    private static int compareBinaries(Object binary1, Object binary2) {
+        byte[] data1 = binary1 instanceof Binary ? ((Binary) binary1).getData() : (byte[]) binary1;
+        byte[] data2 = binary2 instanceof Binary ? ((Binary) binary2).getData() : (byte[]) binary2;
+        int compare = Integer.compare(data1.length, data2.length);
+        if (compare == 0) {
+            compare = Integer.compare(subtype(binary1), subtype(binary2));
+        }
+        for (int i = 0; compare == 0 && i < data1.length; i++) {
+            compare = Integer.compare(Byte.toUnsignedInt(data1[i]), Byte.toUnsignedInt(data2[i]));
+        }
+        return compare;
+    }
+
+    private static int subtype(Object binary) {
+        return binary instanceof Binary ? Byte.toUnsignedInt(((Binary) binary).getType()) : 0;
+    }
+}
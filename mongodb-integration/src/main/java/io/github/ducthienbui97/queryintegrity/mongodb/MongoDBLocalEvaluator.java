@@ -0,0 +1,656 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.mongodb.MongoClientSettings;
+import lombok.NonNull;
+import org.bson.*;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluate {@link Bson} filters against a snapshot of a collection held in memory, without sending them to the server.
+ * The snapshot is stored by column, one array per field path with a value for each document: a double array for
+ * fields only holding numbers, a string array for fields only holding strings, and {@link BsonValue}s otherwise.
+ * Each field filter scans its column in chunks of {@link #CHUNK_SIZE} documents in parallel into a bitmap of the
+ * matching documents, then $and, $or and $nor combine the bitmaps.
+ * <p>
+ * The operators of {@link com.mongodb.client.model.Filters} with a field name are supported: $eq, $ne, $gt, $gte,
+ * $lt, $lte, $in, $nin, $exists, $regex, $size, $mod and $not, matching arrays by any of their elements as the server
+ * does. Other operators, and paths with an array index, throw {@link UnsupportedOperationException}.
+ */
+public class MongoDBLocalEvaluator {
+    /**
+     * Number of documents scanned by a task, a multiple of 64 so tasks never share a word of the bitmap.
+     */
+    public static final int CHUNK_SIZE = 4096;
+    /**
+     * Numbers stored in a double column are exact up to 2^53.
+     */
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+    private static final Column MISSING_COLUMN = new ValueColumn(new BsonValue[0], false);
+
+    private final CodecRegistry codecRegistry;
+    private final int size;
+    private final Map<String, Column> columns;
+
+    /**
+     * @param documents the snapshot of the collection, in the order results are returned.
+     */
+    public MongoDBLocalEvaluator(@NonNull Collection<Document> documents) {
+        this(documents, MongoClientSettings.getDefaultCodecRegistry());
+    }
+
+    /**
+     * @param documents     the snapshot of the collection, in the order results are returned.
+     * @param codecRegistry the codec registry to encode documents and filters with.
+     */
+    public MongoDBLocalEvaluator(@NonNull Collection<Document> documents, @NonNull CodecRegistry codecRegistry) {
+        this.codecRegistry = codecRegistry;
+        BsonDocument[] rows = documents.stream()
+                .map(document -> document.toBsonDocument(BsonDocument.class, codecRegistry))
+                .toArray(BsonDocument[]::new);
+        size = rows.length;
+        Set<String> paths = new LinkedHashSet<>();
+        for (BsonDocument row : rows) {
+            addPaths("", row, paths);
+        }
+        columns = paths.parallelStream()
+                .collect(Collectors.toConcurrentMap(path -> path, path -> buildColumn(rows, path.split("\\."))));
+    }
+
+    /**
+     * @return number of documents in the snapshot.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of field paths with a column.
+     */
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    /**
+     * Evaluate a filter against the snapshot.
+     *
+     * @param filter the filter.
+     * @return bitmap of the indexes of matching documents in the snapshot.
+     * @throws UnsupportedOperationException if the filter has an operator that is not supported.
+     */
+    public BitSet evaluate(@NonNull Bson filter) {
+        return evaluate(filter.toBsonDocument(BsonDocument.class, codecRegistry));
+    }
+
+    private BitSet evaluate(BsonDocument filter) {
+        BitSet result = all();
+        for (Map.Entry<String, BsonValue> entry : filter.entrySet()) {
+            result.and(evaluate(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+    private BitSet evaluate(String key, BsonValue value) {
+        switch (key) {
+            case "$and": {
+                BitSet result = all();
+                for (BsonValue child : value.asArray()) {
+                    result.and(evaluate(child.asDocument()));
+                }
+                return result;
+            }
+            case "$or":
+                return or(value.asArray());
+            case "$nor":
+                return complement(or(value.asArray()));
+            default:
+                if (key.startsWith("$")) {
+                    throw new UnsupportedOperationException("Operator " + key + " is not supported");
+                }
+                if (value.isDocument() && isOperatorDocument(value.asDocument())) {
+                    return evaluateOperators(getColumn(key), value.asDocument());
+                }
+                return equal(getColumn(key), value);
+        }
+    }
+
+    private BitSet or(BsonArray children) {
+        BitSet result = new BitSet(size);
+        for (BsonValue child : children) {
+            result.or(evaluate(child.asDocument()));
+        }
+        return result;
+    }
+
+    private static boolean isOperatorDocument(BsonDocument document) {
+        return !document.isEmpty() && document.getFirstKey().startsWith("$");
+    }
+
+    private BitSet evaluateOperators(Column column, BsonDocument operators) {
+        BitSet result = all();
+        for (Map.Entry<String, BsonValue> entry : operators.entrySet()) {
+            BsonValue operand = entry.getValue();
+            switch (entry.getKey()) {
+                case "$eq":
+                    result.and(equal(column, operand));
+                    break;
+                case "$ne":
+                    result.and(complement(equal(column, operand)));
+                    break;
+                case "$gt":
+                case "$gte":
+                case "$lt":
+                case "$lte":
+                    result.and(compare(column, entry.getKey(), operand));
+                    break;
+                case "$in":
+                    result.and(in(column, operand.asArray()));
+                    break;
+                case "$nin":
+                    result.and(complement(in(column, operand.asArray())));
+                    break;
+                case "$exists":
+                    result.and(isTrue(operand) ? scan(column::isPresent) : complement(scan(column::isPresent)));
+                    break;
+                case "$regex":
+                    result.and(regex(column, toPattern(operand, operators.get("$options"))));
+                    break;
+                case "$options":
+                    if (!operators.containsKey("$regex")) {
+                        throw new UnsupportedOperationException("$options without $regex is not supported");
+                    }
+                    break;
+                case "$size":
+                    result.and(size(column, operand));
+                    break;
+                case "$mod":
+                    result.and(mod(column, operand.asArray()));
+                    break;
+                case "$not":
+                    result.and(complement(operand.isRegularExpression()
+                            ? regex(column, toPattern(operand, null))
+                            : evaluateOperators(column, operand.asDocument())));
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Operator " + entry.getKey() + " is not supported");
+            }
+        }
+        return result;
+    }
+
+    private BitSet equal(Column column, BsonValue operand) {
+        if (operand.isRegularExpression()) {
+            return regex(column, toPattern(operand, null));
+        }
+        if (operand.isNull()) {
+            return scan(row -> !column.isPresent(row) || anyElement(column.get(row), BsonValue::isNull));
+        }
+        if (column instanceof NumberColumn && isExactNumber(operand)) {
+            NumberColumn numberColumn = (NumberColumn) column;
+            double number = operand.asNumber().doubleValue();
+            return scan(row -> numberColumn.present.get(row) && numberColumn.values[row] == number);
+        }
+        if (column instanceof StringColumn && operand.isString()) {
+            String[] values = ((StringColumn) column).values;
+            String string = operand.asString().getValue();
+            return scan(row -> string.equals(values[row]));
+        }
+        if (operand.isArray() && column.traversesArray) {
+            throw new UnsupportedOperationException("Array equality on a path through an array is not supported");
+        }
+        return scan(row -> anyElement(column.get(row), value -> isEqual(value, operand)));
+    }
+
+    private BitSet compare(Column column, String operator, BsonValue operand) {
+        if (operand.isNull()) {
+            return operator.endsWith("e") ? equal(column, operand) : new BitSet(size);
+        }
+        if (operand.isArray() || operand.isDocument()
+                || operand.getBsonType() == BsonType.MIN_KEY || operand.getBsonType() == BsonType.MAX_KEY) {
+            throw new UnsupportedOperationException("Comparison to " + operand.getBsonType() + " is not supported");
+        }
+        if (column instanceof NumberColumn && isExactNumber(operand)) {
+            NumberColumn numberColumn = (NumberColumn) column;
+            double number = operand.asNumber().doubleValue();
+            switch (operator) {
+                case "$gt":
+                    return scan(row -> numberColumn.present.get(row) && numberColumn.values[row] > number);
+                case "$gte":
+                    return scan(row -> numberColumn.present.get(row) && numberColumn.values[row] >= number);
+                case "$lt":
+                    return scan(row -> numberColumn.present.get(row) && numberColumn.values[row] < number);
+                default:
+                    return scan(row -> numberColumn.present.get(row) && numberColumn.values[row] <= number);
+            }
+        }
+        return scan(row -> anyElement(column.get(row), value -> {
+            Integer comparison = compare(value, operand);
+            if (comparison == null) {
+                return false;
+            }
+            switch (operator) {
+                case "$gt":
+                    return comparison > 0;
+                case "$gte":
+                    return comparison >= 0;
+                case "$lt":
+                    return comparison < 0;
+                default:
+                    return comparison <= 0;
+            }
+        }));
+    }
+
+    private BitSet in(Column column, BsonArray operands) {
+        BitSet result = new BitSet(size);
+        for (BsonValue operand : operands) {
+            result.or(equal(column, operand));
+        }
+        return result;
+    }
+
+    private BitSet regex(Column column, Pattern pattern) {
+        if (column instanceof StringColumn) {
+            String[] values = ((StringColumn) column).values;
+            return scan(row -> values[row] != null && pattern.matcher(values[row]).find());
+        }
+        return scan(row -> anyElement(column.get(row),
+                value -> value.isString() && pattern.matcher(value.asString().getValue()).find()));
+    }
+
+    private BitSet size(Column column, BsonValue operand) {
+        if (column.traversesArray) {
+            throw new UnsupportedOperationException("$size on a path through an array is not supported");
+        }
+        if (!operand.isNumber()) {
+            throw new UnsupportedOperationException("$size of " + operand.getBsonType() + " is not supported");
+        }
+        int size = operand.asNumber().intValue();
+        return scan(row -> {
+            BsonValue value = column.get(row);
+            return value != null && value.isArray() && value.asArray().size() == size;
+        });
+    }
+
+    private BitSet mod(Column column, BsonArray operands) {
+        if (operands.size() != 2 || !operands.get(0).isNumber() || !operands.get(1).isNumber()) {
+            throw new UnsupportedOperationException("$mod of " + operands + " is not supported");
+        }
+        long divisor = operands.get(0).asNumber().longValue();
+        long remainder = operands.get(1).asNumber().longValue();
+        if (divisor == 0) {
+            throw new UnsupportedOperationException("$mod by 0 is not supported");
+        }
+        if (column instanceof NumberColumn) {
+            NumberColumn numberColumn = (NumberColumn) column;
+            return scan(row -> numberColumn.present.get(row) && (long) numberColumn.values[row] % divisor == remainder);
+        }
+        return scan(row -> anyElement(column.get(row),
+                value -> value.isNumber() && !isNaN(value) && value.asNumber().longValue() % divisor == remainder));
+    }
+
+    private static Pattern toPattern(BsonValue operand, BsonValue options) {
+        String pattern;
+        String flags;
+        if (operand.isRegularExpression()) {
+            pattern = operand.asRegularExpression().getPattern();
+            flags = operand.asRegularExpression().getOptions();
+        } else if (operand.isString()) {
+            pattern = operand.asString().getValue();
+            flags = "";
+        } else {
+            throw new UnsupportedOperationException("$regex of " + operand.getBsonType() + " is not supported");
+        }
+        if (options != null) {
+            flags = options.asString().getValue();
+        }
+        int patternFlags = 0;
+        for (char flag : flags.toCharArray()) {
+            switch (flag) {
+                case 'i':
+                    patternFlags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+                    break;
+                case 'm':
+                    patternFlags |= Pattern.MULTILINE;
+                    break;
+                case 's':
+                    patternFlags |= Pattern.DOTALL;
+                    break;
+                case 'x':
+                    patternFlags |= Pattern.COMMENTS;
+                    break;
+                default:
+                    throw new UnsupportedOperationException("$regex option " + flag + " is not supported");
+            }
+        }
+        return Pattern.compile(pattern, patternFlags);
+    }
+
+    private static boolean isTrue(BsonValue value) {
+        if (value.isBoolean()) {
+            return value.asBoolean().getValue();
+        }
+        return !value.isNull() && (!value.isNumber() || value.asNumber().doubleValue() != 0);
+    }
+
+    /**
+     * @return true if the value, or an element of the array value, matches.
+     */
+    private static boolean anyElement(BsonValue value, java.util.function.Predicate<BsonValue> predicate) {
+        if (value == null) {
+            return false;
+        }
+        if (predicate.test(value)) {
+            return true;
+        }
+        if (value.isArray()) {
+            for (BsonValue element : value.asArray()) {
+                if (predicate.test(element)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEqual(BsonValue value, BsonValue operand) {
+        if (value.isNumber() || value.isDecimal128()) {
+            Integer comparison = compare(value, operand);
+            return comparison != null && comparison == 0;
+        }
+        return value.equals(operand);
+    }
+
+    /**
+     * Compare values of the same type bracket as the server does for comparison operators.
+     *
+     * @return the comparison, or null if values of these types never match a comparison.
+     */
+    private static Integer compare(BsonValue value, BsonValue operand) {
+        if (isNumeric(value) && isNumeric(operand)) {
+            return compareNumbers(value, operand);
+        }
+        if (value.isString() && operand.isString()) {
+            return Integer.signum(value.asString().getValue().compareTo(operand.asString().getValue()));
+        }
+        if (value.isDateTime() && operand.isDateTime()) {
+            return Long.compare(value.asDateTime().getValue(), operand.asDateTime().getValue());
+        }
+        if (value.isObjectId() && operand.isObjectId()) {
+            return Integer.signum(value.asObjectId().getValue().compareTo(operand.asObjectId().getValue()));
+        }
+        if (value.isBoolean() && operand.isBoolean()) {
+            return Boolean.compare(value.asBoolean().getValue(), operand.asBoolean().getValue());
+        }
+        if (value.isTimestamp() && operand.isTimestamp()) {
+            return Integer.signum(value.asTimestamp().compareTo(operand.asTimestamp()));
+        }
+        return null;
+    }
+
+    private static boolean isNumeric(BsonValue value) {
+        return value.isNumber() || value.isDecimal128();
+    }
+
+    private static boolean isNaN(BsonValue value) {
+        return (value.isDouble() && Double.isNaN(value.asDouble().getValue()))
+                || (value.isDecimal128() && value.asDecimal128().getValue().isNaN());
+    }
+
+    /**
+     * NaN is equal to NaN and lower than every other number, as the server orders numbers.
+     */
+    private static int compareNumbers(BsonValue value, BsonValue operand) {
+        if (isNaN(value) || isNaN(operand)) {
+            return Boolean.compare(!isNaN(value), !isNaN(operand));
+        }
+        if ((value.isInt32() || value.isInt64()) && (operand.isInt32() || operand.isInt64())) {
+            return Long.compare(value.asNumber().longValue(), operand.asNumber().longValue());
+        }
+        if (value.isDouble() && operand.isDouble()) {
+            return Double.compare(value.asDouble().getValue(), operand.asDouble().getValue());
+        }
+        return Integer.signum(toBigDecimal(value).compareTo(toBigDecimal(operand)));
+    }
+
+    private static BigDecimal toBigDecimal(BsonValue value) {
+        if (value.isDouble()) {
+            double number = value.asDouble().getValue();
+            if (Double.isInfinite(number)) {
+                return BigDecimal.valueOf(number > 0 ? Double.MAX_VALUE : -Double.MAX_VALUE).multiply(BigDecimal.TEN);
+            }
+            return new BigDecimal(number);
+        }
+        if (value.isDecimal128()) {
+            if (value.asDecimal128().getValue().isInfinite()) {
+                throw new UnsupportedOperationException("Infinite decimal is not supported");
+            }
+            return value.asDecimal128().getValue().bigDecimalValue();
+        }
+        return BigDecimal.valueOf(value.asNumber().longValue());
+    }
+
+    private static boolean isExactNumber(BsonValue value) {
+        if (value.isInt32()) {
+            return true;
+        }
+        if (value.isInt64()) {
+            return Math.abs(value.asInt64().getValue()) <= MAX_EXACT_DOUBLE;
+        }
+        return value.isDouble() && !Double.isNaN(value.asDouble().getValue());
+    }
+
+    private Column getColumn(String path) {
+        for (String segment : path.split("\\.")) {
+            if (!segment.isEmpty() && segment.chars().allMatch(Character::isDigit)) {
+                throw new UnsupportedOperationException("Path with array index " + path + " is not supported");
+            }
+        }
+        return columns.getOrDefault(path, MISSING_COLUMN);
+    }
+
+    private BitSet all() {
+        BitSet result = new BitSet(size);
+        result.set(0, size);
+        return result;
+    }
+
+    private BitSet complement(BitSet bitSet) {
+        bitSet.flip(0, size);
+        return bitSet;
+    }
+
+    /**
+     * Scan every document in chunks of {@link #CHUNK_SIZE} in parallel.
+     *
+     * @return bitmap of the documents matching the predicate.
+     */
+    private BitSet scan(RowPredicate predicate) {
+        long[] words = new long[(size + Long.SIZE - 1) / Long.SIZE];
+        int chunkCount = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream chunks = IntStream.range(0, chunkCount);
+        (chunkCount > 1 ? chunks.parallel() : chunks).forEach(chunk -> {
+            int end = Math.min(size, (chunk + 1) * CHUNK_SIZE);
+            for (int row = chunk * CHUNK_SIZE; row < end; row++) {
+                if (predicate.test(row)) {
+                    words[row / Long.SIZE] |= 1L << row;
+                }
+            }
+        });
+        return BitSet.valueOf(words);
+    }
+
+    private static void addPaths(String prefix, BsonDocument document, Set<String> paths) {
+        for (Map.Entry<String, BsonValue> entry : document.entrySet()) {
+            String path = prefix + entry.getKey();
+            paths.add(path);
+            addPaths(path + ".", entry.getValue(), paths);
+        }
+    }
+
+    private static void addPaths(String prefix, BsonValue value, Set<String> paths) {
+        if (value.isDocument()) {
+            addPaths(prefix, value.asDocument(), paths);
+        } else if (value.isArray()) {
+            for (BsonValue element : value.asArray()) {
+                addPaths(prefix, element, paths);
+            }
+        }
+    }
+
+    private static Column buildColumn(BsonDocument[] rows, String[] segments) {
+        BsonValue[] values = new BsonValue[rows.length];
+        boolean[] traversesArray = new boolean[1];
+        boolean numbers = true;
+        boolean strings = true;
+        for (int row = 0; row < rows.length; row++) {
+            values[row] = resolve(rows[row], segments, 0, traversesArray);
+            if (values[row] != null) {
+                numbers &= isExactNumber(values[row]);
+                strings &= values[row].isString();
+            }
+        }
+        if (numbers) {
+            double[] numberValues = new double[rows.length];
+            BitSet present = new BitSet(rows.length);
+            for (int row = 0; row < rows.length; row++) {
+                if (values[row] != null) {
+                    numberValues[row] = values[row].asNumber().doubleValue();
+                    present.set(row);
+                }
+            }
+            return new NumberColumn(numberValues, present);
+        }
+        if (strings) {
+            String[] stringValues = new String[rows.length];
+            for (int row = 0; row < rows.length; row++) {
+                if (values[row] != null) {
+                    stringValues[row] = values[row].asString().getValue();
+                }
+            }
+            return new StringColumn(stringValues);
+        }
+        return new ValueColumn(values, traversesArray[0]);
+    }
+
+    /**
+     * Resolve a path as the server does, a path through an array of documents resolves to the array of the values
+     * of its documents, flattening array values.
+     *
+     * @return the value at the path, or null if it is missing.
+     */
+    private static BsonValue resolve(BsonValue value, String[] segments, int index, boolean[] traversesArray) {
+        if (index == segments.length) {
+            return value;
+        }
+        if (value.isDocument()) {
+            BsonValue child = value.asDocument().get(segments[index]);
+            return child == null ? null : resolve(child, segments, index + 1, traversesArray);
+        }
+        if (value.isArray()) {
+            traversesArray[0] = true;
+            BsonArray resolved = new BsonArray();
+            for (BsonValue element : value.asArray()) {
+                if (!element.isDocument()) {
+                    continue;
+                }
+                BsonValue child = resolve(element, segments, index, traversesArray);
+                if (child != null && child.isArray()) {
+                    resolved.addAll(child.asArray());
+                } else if (child != null) {
+                    resolved.add(child);
+                }
+            }
+            return resolved.isEmpty() ? null : resolved;
+        }
+        return null;
+    }
+
+    @FunctionalInterface
+    private interface RowPredicate {
+        boolean test(int row);
+    }
+
+    /**
+     * Values of a field path, one for each document.
+     */
+    private abstract static class Column {
+        /**
+         * True if the path goes through an array of documents, so its arrays are made of the values of the documents.
+         */
+        final boolean traversesArray;
+
+        Column(boolean traversesArray) {
+            this.traversesArray = traversesArray;
+        }
+
+        /**
+         * @return the value of the document, or null if it is missing.
+         */
+        abstract BsonValue get(int row);
+
+        boolean isPresent(int row) {
+            return get(row) != null;
+        }
+    }
+
+    private static class ValueColumn extends Column {
+        private final BsonValue[] values;
+
+        ValueColumn(BsonValue[] values, boolean traversesArray) {
+            super(traversesArray);
+            this.values = values;
+        }
+
+        @Override
+        BsonValue get(int row) {
+            return row < values.length ? values[row] : null;
+        }
+    }
+
+    private static class NumberColumn extends Column {
+        private final double[] values;
+        private final BitSet present;
+
+        NumberColumn(double[] values, BitSet present) {
+            super(false);
+            this.values = values;
+            this.present = present;
+        }
+
+        @Override
+        BsonValue get(int row) {
+            return present.get(row) ? new BsonDouble(values[row]) : null;
+        }
+
+        @Override
+        boolean isPresent(int row) {
+            return present.get(row);
+        }
+    }
+
+    private static class StringColumn extends Column {
+        private final String[] values;
+
+        StringColumn(String[] values) {
+            super(false);
+            this.values = values;
+        }
+
+        @Override
+        BsonValue get(int row) {
+            return values[row] == null ? null : new BsonString(values[row]);
+        }
+
+        @Override
+        boolean isPresent(int row) {
+            return values[row] != null;
+        }
+    }
+}
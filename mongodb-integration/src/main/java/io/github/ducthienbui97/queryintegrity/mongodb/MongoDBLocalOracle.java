@@ -0,0 +1,198 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.mongodb.MongoClientSettings;
+import io.github.ducthienbui97.queryintegrity.core.QueryOracle;
+import io.github.ducthienbui97.queryintegrity.core.QueryProxy;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Query Oracle that evaluates queries in memory with a {@link MongoDBLocalEvaluator}, independently of the query
+ * engine of the server. The collection is read once, see {@link AbstractMongoDBQueryFactory#getSnapshot()},
+ * then no query is sent to the server, except queries with an operator the evaluator does not support,
+ * whose results are taken from the server.
+ * Results have the projection the factory has when the snapshot is read, in natural order, so they must be compared
+ * with the results of the server in any order. The factory must not have a limit, since the server may return any of
+ * the matching documents up to the limit, see {@link AbstractMongoDBQueryFactory#setLimit(int)}.
+ */
+@Slf4j
+public class MongoDBLocalOracle implements QueryOracle<Bson, Document> {
+    private final AbstractMongoDBQueryFactory queryFactory;
+    private final AtomicLong queryCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param queryFactory the query factory to build queries and read the collection with.
+     */
+    public MongoDBLocalOracle(@NonNull AbstractMongoDBQueryFactory queryFactory) {
+        checkNoLimit(queryFactory);
+        this.queryFactory = queryFactory;
+    }
+
+    /**
+     * @param queryFactory the query factory to build queries with.
+     * @param documents    the full documents of the collection, in natural order.
+     */
+    public MongoDBLocalOracle(@NonNull AbstractMongoDBQueryFactory queryFactory, @NonNull Collection<Document> documents) {
+        checkNoLimit(queryFactory);
+        this.queryFactory = queryFactory;
+        this.snapshot = new Snapshot(documents, queryFactory.projection);
+    }
+
+    private static void checkNoLimit(AbstractMongoDBQueryFactory queryFactory) {
+        if (queryFactory.limit > 0) {
+            throw new IllegalArgumentException("Query factory must not have a limit but has " + queryFactory.limit);
+        }
+    }
+
+    @Override
+    public Collection<Document> getResult(@NonNull QueryProxy<Bson> queryProxy) {
+        Snapshot currentSnapshot = getSnapshot();
+        Bson query = queryFactory.build(queryProxy);
+        queryCount.incrementAndGet();
+        BitSet matches;
+        try {
+            matches = currentSnapshot.evaluator.evaluate(query);
+        } catch (UnsupportedOperationException e) {
+            log.debug("Getting result of {} from the server: {}", query, e.getMessage());
+            fallbackCount.incrementAndGet();
+            return queryFactory.getResult(query);
+        }
+        List<Document> result = new ArrayList<>(matches.cardinality());
+        for (int row = matches.nextSetBit(0); row >= 0; row = matches.nextSetBit(row + 1)) {
+            result.add(currentSnapshot.results.get(row));
+        }
+        return result;
+    }
+
+    /**
+     * @return number of documents in the snapshot, the collection is read if it has not been.
+     */
+    public int getSnapshotSize() {
+        return getSnapshot().results.size();
+    }
+
+    /**
+     * @return number of queries whose results are asked for.
+     */
+    public long getQueryCount() {
+        return queryCount.get();
+    }
+
+    /**
+     * @return number of queries whose results are taken from the server, so their pairs are only checked against
+     * the server itself.
+     */
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot currentSnapshot = snapshot;
+        if (currentSnapshot == null) {
+            synchronized (this) {
+                currentSnapshot = snapshot;
+                if (currentSnapshot == null) {
+                    checkNoLimit(queryFactory);
+                    currentSnapshot = new Snapshot(queryFactory.getSnapshot(), queryFactory.projection);
+                    log.info("Read {} documents into {} columns", currentSnapshot.results.size(),
+                            currentSnapshot.evaluator.getColumnCount());
+                    snapshot = currentSnapshot;
+                }
+            }
+        }
+        return currentSnapshot;
+    }
+
+    /**
+     * Include only the fields of an inclusion projection, in the order of the document, as the server does.
+     * "_id" is included unless it is excluded.
+     */
+    static Document project(Document document, BsonDocument projection) {
+        Set<String> paths = new HashSet<>();
+        for (Map.Entry<String, BsonValue> entry : projection.entrySet()) {
+            if (isIncluded(entry.getValue())) {
+                paths.add(entry.getKey());
+            } else if (!entry.getKey().equals("_id")) {
+                throw new IllegalArgumentException("Exclusion projection " + projection.toJson() + " is not supported");
+            }
+        }
+        if (!projection.containsKey("_id")) {
+            paths.add("_id");
+        }
+        return include(document, paths, "");
+    }
+
+    private static boolean isIncluded(BsonValue value) {
+        if (value.isBoolean()) {
+            return value.asBoolean().getValue();
+        }
+        return !value.isNumber() || value.asNumber().doubleValue() != 0;
+    }
+
+    private static Document include(Document document, Set<String> paths, String prefix) {
+        Document result = new Document();
+        for (Map.Entry<String, Object> entry : document.entrySet()) {
+            String path = prefix + entry.getKey();
+            if (paths.contains(path)) {
+                result.put(entry.getKey(), entry.getValue());
+            } else if (paths.stream().anyMatch(included -> included.startsWith(path + "."))) {
+                Object value = include(entry.getValue(), paths, path + ".");
+                if (value != null) {
+                    result.put(entry.getKey(), value);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Embedded documents keep their included fields, arrays keep their embedded documents.
+     */
+    private static Object include(Object value, Set<String> paths, String prefix) {
+        if (value instanceof Document) {
+            return include((Document) value, paths, prefix);
+        }
+        if (value instanceof List) {
+            List<Object> result = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                Object included = include(element, paths, prefix);
+                if (included != null) {
+                    result.add(included);
+                }
+            }
+            return result;
+        }
+        return null;
+    }
+
+    /**
+     * Documents of the collection as returned for a query, and their columns.
+     */
+    private static class Snapshot {
+        private final MongoDBLocalEvaluator evaluator;
+        private final List<Document> results;
+
+        Snapshot(Collection<Document> documents, Bson projection) {
+            this.evaluator = new MongoDBLocalEvaluator(documents);
+            if (projection == null) {
+                this.results = new ArrayList<>(documents);
+            } else {
+                BsonDocument projectionDocument = projection.toBsonDocument(BsonDocument.class,
+                        MongoClientSettings.getDefaultCodecRegistry());
+                this.results = new ArrayList<>(documents.size());
+                for (Document document : documents) {
+                    results.add(project(document, projectionDocument));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.mongodb.client.model.Filters;
+import lombok.SneakyThrows;
+import lombok.Value;
+import org.bson.conversions.Bson;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Build the {@link Bson} filter of a {@link MongoDBFieldOption} with the {@link Filters} method named by its operator.
+ * The method is resolved once for each operator and classes of the arguments, the field name followed by the
+ * parameters, then its handle is cached, so loading many options only costs a map lookup and a call per option.
+ */
+class MongoDBOperatorRegistry {
+    /**
+     * Primitive types by the rank of widening conversions, a boxed argument can be passed to a type of higher rank.
+     */
+    private static final List<Class<?>> NUMERIC_TYPES = Arrays.asList(
+            byte.class, short.class, int.class, long.class, float.class, double.class);
+    private static final Map<Class<?>, Class<?>> PRIMITIVE_TYPES;
+
+    static {
+        Map<Class<?>, Class<?>> primitiveTypes = new HashMap<>();
+        primitiveTypes.put(Boolean.class, boolean.class);
+        primitiveTypes.put(Character.class, char.class);
+        primitiveTypes.put(Byte.class, byte.class);
+        primitiveTypes.put(Short.class, short.class);
+        primitiveTypes.put(Integer.class, int.class);
+        primitiveTypes.put(Long.class, long.class);
+        primitiveTypes.put(Float.class, float.class);
+        primitiveTypes.put(Double.class, double.class);
+        PRIMITIVE_TYPES = Collections.unmodifiableMap(primitiveTypes);
+    }
+
+    private final Map<String, List<Method>> methods;
+    private final Map<Signature, Operator> operators = new ConcurrentHashMap<>();
+
+    MongoDBOperatorRegistry() {
+        methods = Arrays.stream(Filters.class.getMethods())
+                .filter(method -> Modifier.isStatic(method.getModifiers()) && Bson.class.isAssignableFrom(method.getReturnType()))
+                .collect(Collectors.groupingBy(Method::getName));
+    }
+
+    /**
+     * @param fieldOption the field, operator and parameters of the filter.
+     * @return the filter.
+     * @throws IllegalArgumentException if no {@link Filters} method takes the field name and parameters,
+     *                                  or the method rejects them.
+     */
+    Bson build(MongoDBFieldOption fieldOption) {
+        return build(fieldOption.getFieldName(), fieldOption.getOperator(), fieldOption.getParameters());
+    }
+
+    /**
+     * @param fieldName  the field of the filter.
+     * @param operator   the name of the {@link Filters} method.
+     * @param parameters the parameters following the field name.
+     * @return the filter.
+     * @throws IllegalArgumentException if no {@link Filters} method takes the field name and parameters,
+     *                                  or the method rejects them.
+     */
+    Bson build(String fieldName, String operator, Collection<?> parameters) {
+        Object[] arguments = new Object[parameters.size() + 1];
+        arguments[0] = fieldName;
+        int i = 1;
+        for (Object parameter : parameters) {
+            arguments[i++] = parameter;
+        }
+        try {
+            return invoke(resolve(operator, arguments).getHandle(), arguments);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(String.format("Filters.%s failed for parameters %s: %s",
+                    operator, parameters, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Check that a {@link Filters} method takes the field name and parameters, without building the filter.
+     *
+     * @throws IllegalArgumentException if no {@link Filters} method takes the field name and parameters.
+     */
+    void validate(String fieldName, String operator, Collection<?> parameters) {
+        Object[] arguments = new Object[parameters.size() + 1];
+        arguments[0] = fieldName;
+        int i = 1;
+        for (Object parameter : parameters) {
+            arguments[i++] = parameter;
+        }
+        resolve(operator, arguments);
+    }
+
+    /**
+     * @return the cached operator taking the arguments.
+     * @throws IllegalArgumentException if no {@link Filters} method takes the arguments.
+     */
+    private Operator resolve(String operatorName, Object[] arguments) {
+        Class<?>[] argumentClasses = new Class<?>[arguments.length];
+        argumentClasses[0] = String.class;
+        for (int i = 1; i < arguments.length; i++) {
+            argumentClasses[i] = arguments[i] == null ? null : arguments[i].getClass();
+        }
+        Operator operator = operators.computeIfAbsent(new Signature(operatorName, Arrays.asList(argumentClasses)), this::resolve);
+        if (operator.getHandle() == null) {
+            throw new IllegalArgumentException(operator.getError() + " for parameters "
+                    + Arrays.asList(arguments).subList(1, arguments.length));
+        }
+        return operator;
+    }
+
+    /**
+     * {@link Filters} methods do not throw checked exceptions.
+     */
+    @SneakyThrows
+    private static Bson invoke(MethodHandle handle, Object[] arguments) {
+        return (Bson) (Object) handle.invokeExact(arguments);
+    }
+
+    /**
+     * Find the most specific method of the operator taking arguments of the signature classes.
+     */
+    private Operator resolve(Signature signature) {
+        List<Method> candidates = methods.get(signature.getOperator());
+        if (candidates == null) {
+            return Operator.error(String.format("Filters has no operator %s", signature.getOperator()));
+        }
+        List<Method> applicable = candidates.stream()
+                .filter(method -> isApplicable(method, signature.getArgumentClasses()))
+                .collect(Collectors.toList());
+        List<Method> mostSpecific = applicable.stream()
+                .filter(method -> applicable.stream().allMatch(other -> isAsSpecific(method, other)))
+                .collect(Collectors.toList());
+        if (mostSpecific.size() != 1) {
+            return Operator.error(String.format("%s Filters.%s method takes arguments %s",
+                    applicable.isEmpty() ? "No" : "More than 1", signature.getOperator(), signature.getArgumentClasses()));
+        }
+        try {
+            int arity = signature.getArgumentClasses().size();
+            return new Operator(MethodHandles.publicLookup().unreflect(mostSpecific.get(0))
+                    .asFixedArity()
+                    .asType(MethodType.genericMethodType(arity))
+                    .asSpreader(Object[].class, arity), null);
+        } catch (IllegalAccessException e) {
+            return Operator.error(String.format("Filters.%s is not accessible", signature.getOperator()));
+        }
+    }
+
+    private static boolean isApplicable(Method method, List<Class<?>> argumentClasses) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length != argumentClasses.size()) {
+            return false;
+        }
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (!isAssignable(parameterTypes[i], argumentClasses.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if a value of the class, or null, can be passed to the type with a method invocation conversion.
+     */
+    private static boolean isAssignable(Class<?> type, Class<?> valueClass) {
+        if (!type.isPrimitive()) {
+            return valueClass == null || type.isAssignableFrom(valueClass);
+        }
+        Class<?> primitiveType = PRIMITIVE_TYPES.get(valueClass);
+        if (primitiveType == type) {
+            return true;
+        }
+        int rank = NUMERIC_TYPES.indexOf(primitiveType);
+        return rank >= 0 && rank <= NUMERIC_TYPES.indexOf(type);
+    }
+
+    /**
+     * @return true if every parameter of the method can be passed to the other method.
+     */
+    private static boolean isAsSpecific(Method method, Method other) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Class<?>[] otherParameterTypes = other.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (!isAssignable(otherParameterTypes[i], MethodType.methodType(parameterTypes[i]).wrap().returnType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Operator name and classes of the arguments, null for null arguments.
+     */
+    @Value
+    private static class Signature {
+        String operator;
+        List<Class<?>> argumentClasses;
+    }
+
+    /**
+     * Handle taking the arguments as an array, or the error if no method can be called.
+     */
+    @Value
+    private static class Operator {
+        MethodHandle handle;
+        String error;
+
+        static Operator error(String error) {
+            return new Operator(null, error);
+        }
+    }
+}
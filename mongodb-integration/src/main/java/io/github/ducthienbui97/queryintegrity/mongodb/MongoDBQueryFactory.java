@@ -1,34 +1,54 @@
 package io.github.ducthienbui97.queryintegrity.mongodb;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.Filters;
-import io.github.ducthienbui97.queryintegrity.core.QueryFactory;
-import io.github.ducthienbui97.queryintegrity.core.QueryProxy;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.Facet;
+import com.mongodb.client.model.Sorts;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 
-import java.io.File;
-import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.net.URL;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Factory to generate MongoDB query for {@link io.github.ducthienbui97.queryintegrity.core.QueryTestingService}
+ * sending queries with the synchronous driver.
  */
 @Slf4j
-public class MongoDBQueryFactory implements QueryFactory<Bson, Document> {
+public class MongoDBQueryFactory extends AbstractMongoDBQueryFactory {
+    /**
+     * Maximum number of explains waiting for the default explain executor, the following ones are dropped.
+     */
+    public static final int MAX_QUEUED_EXPLAINS = 100;
+    /**
+     * Error codes of a $facet result exceeding the document size limit: BSONObjectTooLarge,
+     * "$facet" output too large, and document too large to be added to the result of a stage.
+     */
+    static final Set<Integer> DOCUMENT_TOO_LARGE_CODES = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList(10334, 4568, 17419)));
     /**
      * Client to connect to MongoDB instance.
      */
@@ -45,16 +65,34 @@ public class MongoDBQueryFactory implements QueryFactory<Bson, Document> {
     @NonNull
     private final MongoCollection<Document> collection;
     /**
-     * Random field to generate random query.
+     * Send the queries of {@link #getResults(Collection)} in a single $facet aggregation.
      */
-    private final Random random;
+    private boolean facetEnabled;
     /**
-     * Possible query to choose from.
-     * Generate based on {@link MongoDBQueryFactoryOptions#getFieldOptions()}
-     * or {@link #setFieldFilterOptions(Map)}
+     * Fraction of the sent queries that are explained, 0 to explain none.
      */
-    private List<Bson> possibleQuery;
-
+    private double explainSampleRate;
+    /**
+     * Examined to returned ratio above which a plan is flagged, 0 for no threshold.
+     */
+    private double maxExaminedRatio;
+    /**
+     * Execution time in milliseconds above which a plan is flagged, 0 for no threshold.
+     */
+    private long maxExecutionTimeMS;
+    /**
+     * Plans of the explained queries.
+     */
+    private final Queue<MongoDBQueryPlan> queryPlans = new ConcurrentLinkedQueue<>();
+    /**
+     * Explains that are not done yet, each is removed once it is done.
+     */
+    private final Queue<CompletableFuture<Void>> pendingExplains = new ConcurrentLinkedQueue<>();
+    private final AtomicLong droppedExplainCount = new AtomicLong();
+    /**
+     * Executor running the explains, so they are not timed with the results of the queries.
+     */
+    private Executor explainExecutor;
 
     /**
      * Create MongoDBQueryFactory from option
@@ -67,6 +105,7 @@ public class MongoDBQueryFactory implements QueryFactory<Bson, Document> {
                 options.getCollectionName(),
                 options.getFieldOptions(),
                 options.getSeed());
+        setResultOptions(options);
     }
 
     /**
@@ -83,179 +122,338 @@ public class MongoDBQueryFactory implements QueryFactory<Bson, Document> {
                                @NonNull String collectionName,
                                Map<String, Map<String, Collection<Collection<Object>>>> fieldOptions,
                                Long seed) {
+        super(fieldOptions, seed);
         mongoClient = MongoClients.create(connectionString);
         database = mongoClient.getDatabase(databaseName);
         collection = database.getCollection(collectionName);
+    }
 
-        if (seed != null) {
-            random = new Random(seed);
-        } else {
-            random = new Random();
+    /**
+     * Send the queries of {@link #getResults(Collection)} in a single aggregation with a $facet stage
+     * that has one $match branch per query, instead of a find per query.
+     *
+     * @param facetEnabled true to send queries in a $facet aggregation, false by default.
+     */
+    public void setFacetEnabled(boolean facetEnabled) {
+        this.facetEnabled = facetEnabled;
+    }
+
+    /**
+     * Explain a sample of the sent queries, recording their winning plan, keys and documents examined and execution time,
+     * see {@link #getQueryPlans()}. Each explained query is run once more by the server to get its execution statistics,
+     * on the explain executor once its result is received, so the explain is not timed with the result.
+     *
+     * @param explainSampleRate fraction of the sent queries to explain, between 0 and 1, 0 by default.
+     */
+    public void setExplainSampleRate(double explainSampleRate) {
+        if (explainSampleRate < 0 || explainSampleRate > 1) {
+            throw new IllegalArgumentException("Explain sample rate must be between 0 and 1");
         }
-        setFieldFilterOptions(fieldOptions);
+        this.explainSampleRate = explainSampleRate;
     }
 
     /**
-     * Flatten the setting in {@link MongoDBQueryFactoryOptions#getFieldOptions()} to a list of {@link MongoDBFieldOption}
+     * Set the executor running the explains of the sampled queries. By default, a single daemon thread
+     * that stops when no query is explained for a second, with at most {@link #MAX_QUEUED_EXPLAINS} explains waiting
+     * for it. Explains rejected by the executor are dropped, see {@link #getDroppedExplainCount()}.
      *
-     * @param fieldOptionMap option setting (see {@link MongoDBQueryFactoryOptions#getFieldOptions()})
-     * @return list of {@link MongoDBFieldOption} used to create list of {@link #possibleQuery}
-     */
-    protected static List<MongoDBFieldOption> buildFieldOptionList(Map<String, Map<String, Collection<Collection<Object>>>> fieldOptionMap) {
-        return Optional.ofNullable(fieldOptionMap)
-                .map(optionMap -> optionMap.entrySet().stream()
-                        .flatMap(entry -> entry.getValue().entrySet().stream()
-                                .flatMap(operatorEntry -> operatorEntry.getValue().stream()
-                                        .map(param ->
-                                                MongoDBFieldOption.builder()
-                                                        .fieldName(entry.getKey())
-                                                        .operator(operatorEntry.getKey())
-                                                        .parameters(param).build()
-                                        )))
-                        .collect(Collectors.toList()))
-                .orElse(null);
+     * @param explainExecutor the executor to explain queries on.
+     */
+    public void setExplainExecutor(@NonNull Executor explainExecutor) {
+        this.explainExecutor = explainExecutor;
     }
 
     /**
-     * Generate list of possible query can be returned by {@link #build()} from json configuration
-     * see {@link #setFieldFilterOptions(Map)} for json format
+     * Set the thresholds above which the plan of an explained query is flagged, see {@link #getFlaggedQueryPlans()}.
      *
-     * @param json configuration string
-     */
-    public void setFieldFilterOptions(String json) throws JsonProcessingException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        setFieldFilterOptions(objectMapper
-                .readValue(json,
-                        new TypeReference<Map<String, Map<String, Collection<Collection<Object>>>>>() {
-                        }));
+     * @param maxExaminedRatio keys or documents examined for each returned document, see
+     *                         {@link MongoDBQueryPlan#getExaminedRatio()}, 0 for no threshold.
+     * @param maxExecutionTime execution time of the query, 0 for no threshold.
+     * @param timeUnit         unit of the execution time.
+     */
+    public void setPlanThresholds(double maxExaminedRatio, long maxExecutionTime, @NonNull TimeUnit timeUnit) {
+        if (maxExaminedRatio < 0 || maxExecutionTime < 0) {
+            throw new IllegalArgumentException("Plan thresholds must not be negative");
+        }
+        this.maxExaminedRatio = maxExaminedRatio;
+        this.maxExecutionTimeMS = timeUnit.toMillis(maxExecutionTime);
     }
 
     /**
-     * Generate list of possible query can be returned by {@link #build()} from json configuration
-     * see {@link #setFieldFilterOptions(Map)} for json format
+     * Explain a query with "executionStats" verbosity, with the projection and cursor options of this factory.
      *
-     * @param jsonFile file to load json configuration.
-     */
-    public void setFieldFilterOptions(File jsonFile) throws IOException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        setFieldFilterOptions(objectMapper
-                .readValue(jsonFile,
-                        new TypeReference<Map<String, Map<String, Collection<Collection<Object>>>>>() {
-                        }));
+     * @param query the query to explain.
+     * @return the winning plan and execution statistics of the query.
+     */
+    public MongoDBQueryPlan explain(Bson query) {
+        log.debug("Explaining {}", query);
+        return MongoDBQueryPlan.of(query, explainCommand(query));
+    }
+
+    /**
+     * @return result of the explain command of a find of the query.
+     */
+    Document explainCommand(Bson query) {
+        BsonDocument find = new BsonDocument("find", new BsonString(collection.getNamespace().getCollectionName()))
+                .append("filter", query.toBsonDocument(BsonDocument.class, collection.getCodecRegistry()));
+        if (projection != null) {
+            find.append("projection", projection.toBsonDocument(BsonDocument.class, collection.getCodecRegistry()));
+        }
+        if (limit > 0) {
+            find.append("limit", new BsonInt32(limit));
+        }
+        if (maxTimeMS > 0) {
+            find.append("maxTimeMS", new BsonInt64(maxTimeMS));
+        }
+        return database.runCommand(new Document("explain", find).append("verbosity", "executionStats"));
+    }
+
+    /**
+     * @return plans of the queries explained so far, see {@link #setExplainSampleRate(double)},
+     * once the explains of the queries sent so far are done.
+     */
+    public List<MongoDBQueryPlan> getQueryPlans() {
+        awaitExplains();
+        return new ArrayList<>(queryPlans);
+    }
+
+    /**
+     * @return plans of the queries explained so far that cross a threshold of {@link #setPlanThresholds(double, long, TimeUnit)}.
+     */
+    public List<MongoDBQueryPlan> getFlaggedQueryPlans() {
+        awaitExplains();
+        return queryPlans.stream().filter(this::isFlagged).collect(Collectors.toList());
+    }
+
+    /**
+     * @return number of sampled queries that are not explained since the explain executor rejected them.
+     */
+    public long getDroppedExplainCount() {
+        return droppedExplainCount.get();
+    }
+
+    int getPendingExplainCount() {
+        return pendingExplains.size();
+    }
+
+    private void awaitExplains() {
+        CompletableFuture<Void> pendingExplain;
+        while ((pendingExplain = pendingExplains.poll()) != null) {
+            pendingExplain.join();
+        }
+    }
+
+    /**
+     * @return true if the plan crosses a threshold of {@link #setPlanThresholds(double, long, TimeUnit)}.
+     */
+    public boolean isFlagged(@NonNull MongoDBQueryPlan queryPlan) {
+        return (maxExaminedRatio > 0 && queryPlan.getExaminedRatio() > maxExaminedRatio)
+                || (maxExecutionTimeMS > 0 && queryPlan.getExecutionTimeMillis() > maxExecutionTimeMS);
+    }
+
+    /**
+     * Explain the query on the explain executor if it is sampled, so the explain is not timed with the result.
+     */
+    private void sampleQueryPlan(Bson query) {
+        if (explainSampleRate == 0 || ThreadLocalRandom.current().nextDouble() >= explainSampleRate) {
+            return;
+        }
+        CompletableFuture<Void> pendingExplain;
+        try {
+            pendingExplain = CompletableFuture.runAsync(() -> recordQueryPlan(query), getExplainExecutor());
+        } catch (RejectedExecutionException e) {
+            log.debug("Dropping the explain of {}: {}", query, e.getMessage());
+            droppedExplainCount.incrementAndGet();
+            return;
+        }
+        pendingExplains.add(pendingExplain);
+        pendingExplain.whenComplete((result, error) -> pendingExplains.remove(pendingExplain));
+    }
+
+    private synchronized Executor getExplainExecutor() {
+        if (explainExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(MAX_QUEUED_EXPLAINS), runnable -> {
+                Thread thread = new Thread(runnable, "mongodb-explain");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            explainExecutor = executor;
+        }
+        return explainExecutor;
     }
 
     /**
-     * Generate list of possible query can be returned by {@link #build()} from json configuration
-     * see {@link #setFieldFilterOptions(Map)} for json format
+     * Explain the query, a failed explain is logged and does not fail the query.
+     */
+    private void recordQueryPlan(Bson query) {
+        MongoDBQueryPlan queryPlan;
+        try {
+            queryPlan = explain(query);
+        } catch (MongoException | IllegalArgumentException e) {
+            log.warn("Failed to explain {}: {}", query, e.getMessage());
+            return;
+        }
+        queryPlans.add(queryPlan);
+        if (isFlagged(queryPlan)) {
+            log.warn("Query {} examined {} keys and {} documents for {} results in {} ms with plan {}",
+                    query, queryPlan.getKeysExamined(), queryPlan.getDocsExamined(), queryPlan.getReturned(),
+                    queryPlan.getExecutionTimeMillis(), queryPlan.getPlanShape());
+        }
+    }
+
+    @Override
+    public Collection<Document> getResult(Bson query) {
+        log.debug("Sending {}", query);
+        Collection<Document> result = Lists.newArrayList(find(query));
+        sampleQueryPlan(query);
+        return result;
+    }
+
+    /**
+     * Get the result of a query forced through a plan, e.g: {@link MongoDBHintTester#NATURAL_HINT} for a collection scan.
+     * Unlike {@link #getResult(Bson)}, the query is never explained, see {@link #setExplainSampleRate(double)}.
      *
-     * @param url url to load the json configuration.
-     */
-    public void setFieldFilterOptions(URL url) throws IOException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        setFieldFilterOptions(objectMapper
-                .readValue(url,
-                        new TypeReference<Map<String, Map<String, Collection<Collection<Object>>>>>() {
-                        }));
+     * @param query the query to be used to get the result.
+     * @param hint  the index to use, or null to let the planner choose.
+     * @return result of input query.
+     */
+    public Collection<Document> getResult(Bson query, Bson hint) {
+        log.debug("Sending {} with hint {}", query, hint);
+        FindIterable<Document> find = find(query);
+        return Lists.newArrayList(hint == null ? find : find.hint(hint));
     }
 
     /**
-     * Generate list of possible query can be returned by {@link #build()} from json configuration
+     * @return find of the query with the projection and cursor options of this factory.
+     */
+    private FindIterable<Document> find(Bson query) {
+        return collection.find(query)
+                .projection(projection)
+                .batchSize(cursorBatchSize)
+                .limit(limit)
+                .maxTime(maxTimeMS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Check if a query matches any document without getting the documents, the server stops counting at the first match.
      *
-     * @param fieldOptions Possible options can be used to create a single query condition in the following format:
-     *                     {
-     *                     --'field name': {
-     *                     ----'operator name': [
-     *                     ------[possible parameter for operator]
-     *                     ------[possible, parameters, for, operator]
-     *                     ----]
-     *                     --}
-     *                     }
-     *                     Then every time {@link MongoDBQueryFactory#build()} is called,
-     *                     a {@link org.bson.conversions.Bson} condition is created with 1 possible field name,
-     *                     1 possible operator on that field name, 1 possible parameter collection on that operator.
-     */
-    public void setFieldFilterOptions(Map<String, Map<String, Collection<Collection<Object>>>> fieldOptions) {
-        setFieldFilterOptions(buildFieldOptionList(fieldOptions));
+     * @param query the query to be checked.
+     * @return true if at least 1 document matches the query.
+     */
+    @Override
+    public boolean exists(Bson query) {
+        log.debug("Counting {}", query);
+        return collection.countDocuments(query,
+                new CountOptions().limit(1).maxTime(maxTimeMS, TimeUnit.MILLISECONDS)) > 0;
     }
 
     /**
-     * Generate list of possible query can be returned by {@link #build()} from configuration
+     * Count the documents matching a query on the server, ignoring the limit of the results.
      *
-     * @param fieldOptions List of {@link MongoDBFieldOption} created by
-     *                     flatting input field of {@link #setFieldFilterOptions(Map)}
-     *                     with {@link #buildFieldOptionList(Map)}
-     */
-    public void setFieldFilterOptions(List<MongoDBFieldOption> fieldOptions) {
-        possibleQuery = Optional.ofNullable(fieldOptions)
-                .map(fieldOptionList -> fieldOptionList.stream().map(fieldOption -> {
-                    String fieldName = fieldOption.getFieldName();
-                    String operator = fieldOption.getOperator();
-                    Object[] methodParams = Stream.concat(Stream.of(fieldName), fieldOption.getParameters().stream()).toArray();
-                    Optional<Bson> query = Arrays.stream(Filters.class.getMethods())
-                            .filter(method -> method.getName().equals(operator))
-                            .map(method -> {
-                                try {
-                                    return (Bson) method.invoke(null, methodParams);
-                                } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
-                                    return null;
-                                }
-                            }).filter(Objects::nonNull)
-                            .findFirst();
-                    return query.orElseGet(() -> {
-                        log.warn("Operator {} not found for parameters {}", operator, fieldOption.getParameters());
-                        return null;
-                    });
-                }).filter(Objects::nonNull)
-                        .collect(Collectors.toList()))
-                .orElse(null);
+     * @param query the query to be counted.
+     * @return number of documents matching the query.
+     */
+    @Override
+    public long count(Bson query) {
+        log.debug("Counting {}", query);
+        return collection.countDocuments(query, new CountOptions().maxTime(maxTimeMS, TimeUnit.MILLISECONDS));
     }
 
-    public void setSeed(long seed) {
-        random.setSeed(seed);
+    @Override
+    public List<Document> getSnapshot() {
+        log.debug("Reading every document");
+        return Lists.newArrayList(collection.find()
+                .batchSize(cursorBatchSize)
+                .maxTime(maxTimeMS, TimeUnit.MILLISECONDS));
     }
 
     @Override
-    public Bson build() {
-        return possibleQuery.get(random.nextInt(possibleQuery.size()));
+    public List<Document> getSample(int sampleSize) {
+        log.debug("Sampling {} documents", sampleSize);
+        return collection.aggregate(Collections.singletonList(Aggregates.sample(sampleSize)))
+                .batchSize(cursorBatchSize)
+                .maxTime(maxTimeMS, TimeUnit.MILLISECONDS)
+                .into(new ArrayList<>());
     }
 
+    /**
+     * Send every query in a single $facet aggregation if it is enabled with {@link #setFacetEnabled(boolean)}.
+     * The whole $facet result is a single document, when it exceeds the 16MB document size limit,
+     * see {@link #DOCUMENT_TOO_LARGE_CODES}, or the server returns no document, each query is sent with a separate find.
+     * Other errors of the aggregation are thrown.
+     *
+     * @param queries distinct queries to be used to get the results.
+     * @return result of each input query.
+     * @throws MongoCommandException if the aggregation fails for another reason than the size of its result.
+     */
     @Override
-    public Bson build(QueryProxy<Bson> queryProxy) {
-        switch (queryProxy.getQueryType()) {
-            case OR:
-                return Filters.or(queryProxy
-                        .getChildren()
-                        .stream()
-                        .map(this::build)
-                        .collect(Collectors.toList()));
-            case AND:
-                return Filters.and(queryProxy
-                        .getChildren()
-                        .stream()
-                        .map(this::build)
-                        .collect(Collectors.toList()));
-            case NOT:
-                return Filters.nor(build(queryProxy.getChildren().get(0)));
-            default:
-                return queryProxy.getNativeQuery();
+    public Map<Bson, Collection<Document>> getResults(Collection<Bson> queries) {
+        if (!facetEnabled || queries.size() < 2) {
+            return super.getResults(queries);
+        }
+        List<Bson> queryList = new ArrayList<>(queries);
+        Document facetResult;
+        try {
+            facetResult = getFacetResult(queryList);
+        } catch (MongoCommandException e) {
+            if (!DOCUMENT_TOO_LARGE_CODES.contains(e.getErrorCode())) {
+                throw e;
+            }
+            log.warn("Failed to send {} queries in a $facet with error {}, sending them separately",
+                    queryList.size(), e.getErrorCode());
+            return super.getResults(queries);
         }
+        if (facetResult == null) {
+            log.debug("No $facet result for {} queries, sending them separately", queryList.size());
+            return super.getResults(queries);
+        }
+        queryList.forEach(this::sampleQueryPlan);
+        Map<Bson, Collection<Document>> results = new HashMap<>();
+        for (int i = 0; i < queryList.size(); i++) {
+            results.put(queryList.get(i), facetResult.getList(String.valueOf(i), Document.class));
+        }
+        return results;
     }
 
-    @Override
-    public Collection<Document> getResult(Bson query) {
-        log.debug("Sending {}", query);
-        return Lists.newArrayList(collection.find(query));
+    /**
+     * @param queries queries to send.
+     * @return document with the result of query at index i in the field "i".
+     */
+    Document getFacetResult(List<Bson> queries) {
+        List<Facet> facets = new ArrayList<>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            List<Bson> pipeline = new ArrayList<>(3);
+            pipeline.add(Aggregates.match(queries.get(i)));
+            if (limit > 0) {
+                pipeline.add(Aggregates.limit(limit));
+            }
+            if (projection != null) {
+                pipeline.add(Aggregates.project(projection));
+            }
+            facets.add(new Facet(String.valueOf(i), pipeline));
+        }
+        log.debug("Sending $facet of {}", queries);
+        return collection.aggregate(Collections.singletonList(Aggregates.facet(facets)))
+                .maxTime(maxTimeMS, TimeUnit.MILLISECONDS)
+                .first();
     }
 
+    /**
+     * Lazily fetch the result sorted by "_id", see {@link MongoDBIdComparator}.
+     * The returned cursor is closed by {@link io.github.ducthienbui97.queryintegrity.core.QueryTestingService}
+     * as soon as the validation is decided, so the rest of the result is never sent,
+     * see {@link #setCursorBatchSize(int)}.
+     *
+     * @param query the query to be used to get the result.
+     * @return cursor over the result sorted by "_id".
+     */
     @Override
-    public String toString(Object resultOrQuery) {
-        if (resultOrQuery instanceof Collection) {
-            return ((Collection<Document>) resultOrQuery)
-                    .stream()
-                    .map(data -> data.get("_id"))
-                    .collect(Collectors.toList())
-                    .toString();
-        }
-        return resultOrQuery.toString();
+    public Iterator<Document> getResultIterator(Bson query) {
+        log.debug("Sending sorted {}", query);
+        Iterator<Document> result = find(query).sort(Sorts.ascending("_id")).iterator();
+        sampleQueryPlan(query);
+        return result;
     }
 }
@@ -6,15 +6,18 @@ import lombok.NonNull;
 import lombok.Singular;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 /**
- * Options to setup MongoDBQueryFactory
+ * Options to setup MongoDBQueryFactory or MongoDBReactiveQueryFactory
  * - connection string: url/string to connect to mongodb instance.
  * - database name: database used to run test.
  * - collection name: collection used to run test on.
  * - fieldOptions: options for generating a single query.
  * - seed: seeding value for random.
+ * - projectionFields: fields of the results, "_id" by default.
+ * - cursorBatchSize, maxTimeMS, limit: options of each query cursor, 0 for the server default.
  */
 @Builder
 @Data
@@ -54,4 +57,22 @@ public class MongoDBQueryFactoryOptions {
      * Seed value for {@link java.util.Random}
      */
     private Long seed;
+    /**
+     * Fields returned in each result document, "_id" is always returned.
+     * By default, only "_id" is returned. When null, full documents are returned.
+     */
+    @Builder.Default
+    private List<String> projectionFields = AbstractMongoDBQueryFactory.DEFAULT_PROJECTION_FIELDS;
+    /**
+     * Number of documents of each cursor batch, see {@link AbstractMongoDBQueryFactory#setCursorBatchSize(int)}.
+     */
+    private int cursorBatchSize;
+    /**
+     * Time limit of each query in milliseconds, see {@link AbstractMongoDBQueryFactory#setMaxTime(long, java.util.concurrent.TimeUnit)}.
+     */
+    private long maxTimeMS;
+    /**
+     * Maximum number of documents of each result, see {@link AbstractMongoDBQueryFactory#setLimit(int)}.
+     */
+    private int limit;
 }
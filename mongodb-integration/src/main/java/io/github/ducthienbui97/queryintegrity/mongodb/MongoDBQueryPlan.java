@@ -0,0 +1,125 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Singular;
+import lombok.Value;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Winning plan and execution statistics of a query, from the result of explain with "executionStats" verbosity.
+ */
+@Value
+@Builder
+public class MongoDBQueryPlan {
+    /**
+     * The explained query.
+     */
+    @NonNull
+    Bson query;
+    /**
+     * Stages of the winning plan, each stage followed by its input stages, e.g: "FETCH(IXSCAN[number_1])".
+     */
+    @NonNull
+    String planShape;
+    /**
+     * Names of the indexes scanned by the winning plan.
+     */
+    @Singular
+    List<String> indexNames;
+    /**
+     * True if the winning plan scans the whole collection.
+     */
+    boolean collectionScan;
+    long returned;
+    long keysExamined;
+    long docsExamined;
+    long executionTimeMillis;
+
+    /**
+     * @return number of keys or documents examined, whichever is higher, for each returned document,
+     * or for a single document if none is returned.
+     */
+    public double getExaminedRatio() {
+        return (double) Math.max(keysExamined, docsExamined) / Math.max(returned, 1);
+    }
+
+    /**
+     * Read the plan of a query from its explain result.
+     *
+     * @param query   the explained query.
+     * @param explain result of explain with "executionStats" verbosity.
+     * @return the plan of the query.
+     */
+    public static MongoDBQueryPlan of(@NonNull Bson query, @NonNull Document explain) {
+        Document queryPlanner = explain.get("queryPlanner", Document.class);
+        Document executionStats = explain.get("executionStats", Document.class);
+        if (queryPlanner == null || executionStats == null) {
+            throw new IllegalArgumentException("Explain result has no queryPlanner or executionStats: " + explain.toJson());
+        }
+        List<String> indexNames = new ArrayList<>();
+        StringBuilder planShape = new StringBuilder();
+        appendStage(winningPlan(queryPlanner), planShape, indexNames);
+        return MongoDBQueryPlan.builder()
+                .query(query)
+                .planShape(planShape.toString())
+                .indexNames(indexNames)
+                .collectionScan(planShape.indexOf("COLLSCAN") >= 0)
+                .returned(getLong(executionStats, "nReturned"))
+                .keysExamined(getLong(executionStats, "totalKeysExamined"))
+                .docsExamined(getLong(executionStats, "totalDocsExamined"))
+                .executionTimeMillis(getLong(executionStats, "executionTimeMillis"))
+                .build();
+    }
+
+    /**
+     * Plans of the slot based engine nest the plan in "queryPlan".
+     */
+    private static Document winningPlan(Document queryPlanner) {
+        Document winningPlan = queryPlanner.get("winningPlan", Document.class);
+        if (winningPlan == null) {
+            return new Document("stage", "UNKNOWN");
+        }
+        Document queryPlan = winningPlan.get("queryPlan", Document.class);
+        return queryPlan == null ? winningPlan : queryPlan;
+    }
+
+    private static void appendStage(Document stage, StringBuilder planShape, List<String> indexNames) {
+        planShape.append(stage.get("stage", "UNKNOWN"));
+        String indexName = stage.getString("indexName");
+        if (indexName != null) {
+            indexNames.add(indexName);
+            planShape.append('[').append(indexName).append(']');
+        }
+        List<Document> inputStages = new ArrayList<>();
+        Document inputStage = stage.get("inputStage", Document.class);
+        if (inputStage != null) {
+            inputStages.add(inputStage);
+        }
+        inputStages.addAll(stage.getList("inputStages", Document.class, Collections.emptyList()));
+        // Sharded plans have the winning plan of each shard.
+        for (Document shard : stage.getList("shards", Document.class, Collections.emptyList())) {
+            inputStages.add(winningPlan(shard));
+        }
+        if (!inputStages.isEmpty()) {
+            planShape.append('(');
+            for (int i = 0; i < inputStages.size(); i++) {
+                if (i > 0) {
+                    planShape.append(", ");
+                }
+                appendStage(inputStages.get(i), planShape, indexNames);
+            }
+            planShape.append(')');
+        }
+    }
+
+    private static long getLong(Document document, String key) {
+        Object value = document.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.conversions.Bson;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Indexed pool of the filters of every field option, used by {@link AbstractMongoDBQueryFactory#build()}.
+ * Options are grouped by field name and operator, and the parameters of every option are kept in a single array,
+ * so a pool costs a few references per option. The filter of an option is only built when its index is sampled.
+ * Options that no {@link com.mongodb.client.model.Filters} method takes are skipped when they are added.
+ */
+@Slf4j
+class MongoDBQueryPool {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final MongoDBOperatorRegistry operatorRegistry;
+    private final List<String> fieldNames = new ArrayList<>();
+    private final List<String> operators = new ArrayList<>();
+    /**
+     * Index of the first option of each group, options of group i are in [groupOffsets[i], groupOffsets[i + 1]).
+     */
+    private int[] groupOffsets = new int[]{0};
+    /**
+     * Index in {@link #parameters} of the first parameter of each option, followed by the end of the last option.
+     */
+    private int[] parameterOffsets = new int[]{0};
+    private Object[] parameters = new Object[16];
+    private int size;
+
+    MongoDBQueryPool(MongoDBOperatorRegistry operatorRegistry) {
+        this.operatorRegistry = operatorRegistry;
+    }
+
+    /**
+     * Read a pool from a json configuration one option at a time,
+     * see {@link AbstractMongoDBQueryFactory#setFieldFilterOptions(Map)} for json format.
+     *
+     * @param parser parser of the json configuration, its codec is replaced to read the parameters.
+     * @return the pool of every option of the configuration, or null if the configuration is null.
+     */
+    static MongoDBQueryPool parse(MongoDBOperatorRegistry operatorRegistry, JsonParser parser) throws IOException {
+        MongoDBQueryPool queryPool = new MongoDBQueryPool(operatorRegistry);
+        parser.setCodec(OBJECT_MAPPER);
+        if (parser.nextToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String operator = parser.getCurrentName();
+                expect(parser, parser.nextToken(), JsonToken.START_ARRAY);
+                while (parser.nextToken() == JsonToken.START_ARRAY) {
+                    queryPool.add(fieldName, operator, parser.readValueAs(List.class));
+                }
+                expect(parser, parser.currentToken(), JsonToken.END_ARRAY);
+            }
+            expect(parser, parser.currentToken(), JsonToken.END_OBJECT);
+        }
+        expect(parser, parser.currentToken(), JsonToken.END_OBJECT);
+        return queryPool;
+    }
+
+    private static void expect(JsonParser parser, JsonToken token, JsonToken expectedToken) throws JsonParseException {
+        if (token != expectedToken) {
+            throw new JsonParseException(parser, String.format("Expected %s of field options but was %s", expectedToken, token));
+        }
+    }
+
+    /**
+     * Add an option, it is skipped with a warning if no method of its operator takes its parameters.
+     *
+     * @return true if the option is added.
+     */
+    boolean add(String fieldName, String operator, Collection<?> optionParameters) {
+        try {
+            operatorRegistry.validate(fieldName, operator, optionParameters);
+        } catch (IllegalArgumentException e) {
+            log.warn("Field option of {} is skipped: {}", fieldName, e.getMessage());
+            return false;
+        }
+        int group = fieldNames.size() - 1;
+        if (group < 0 || !fieldNames.get(group).equals(fieldName) || !operators.get(group).equals(operator)) {
+            fieldNames.add(fieldName);
+            operators.add(operator);
+            group++;
+            groupOffsets = ensureCapacity(groupOffsets, group + 2);
+            groupOffsets[group] = size;
+        }
+        int parameterOffset = parameterOffsets[size];
+        if (parameters.length < parameterOffset + optionParameters.size()) {
+            parameters = Arrays.copyOf(parameters, Math.max(parameters.length * 2, parameterOffset + optionParameters.size()));
+        }
+        for (Object parameter : optionParameters) {
+            parameters[parameterOffset++] = parameter;
+        }
+        size++;
+        parameterOffsets = ensureCapacity(parameterOffsets, size + 1);
+        parameterOffsets[size] = parameterOffset;
+        groupOffsets[group + 1] = size;
+        return true;
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        return array.length < capacity ? Arrays.copyOf(array, Math.max(array.length * 2, capacity)) : array;
+    }
+
+    /**
+     * @return number of options in the pool.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Build the filter of an option.
+     *
+     * @param index index of the option, in the order the options are added.
+     * @return the filter of the option.
+     * @throws IllegalArgumentException if the method of the operator rejects the parameters.
+     */
+    Bson build(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " is out of pool of size " + size);
+        }
+        // Groups are never empty, so group offsets are strictly increasing.
+        int group = Arrays.binarySearch(groupOffsets, 0, fieldNames.size(), index);
+        if (group < 0) {
+            group = -group - 2;
+        }
+        return operatorRegistry.build(fieldNames.get(group), operators.get(group),
+                Arrays.asList(Arrays.copyOfRange(parameters, parameterOffsets[index], parameterOffsets[index + 1])));
+    }
+}
@@ -1,13 +1,30 @@
 package io.github.ducthienbui97.queryintegrity.mongodb;
 
+import io.github.ducthienbui97.queryintegrity.core.CachingQueryFactory;
+import io.github.ducthienbui97.queryintegrity.core.HistogramQueryMetrics;
+import io.github.ducthienbui97.queryintegrity.core.JsonLinesQueryReporter;
+import io.github.ducthienbui97.queryintegrity.core.QueryFactory;
 import io.github.ducthienbui97.queryintegrity.core.QueryTestingService;
+import io.github.ducthienbui97.queryintegrity.core.SelectivityPolicy;
+import io.github.ducthienbui97.queryintegrity.core.SetAlgebraOracle;
+import io.github.ducthienbui97.queryintegrity.core.StreamingResultValidator;
 import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import picocli.CommandLine;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+@Slf4j
 @CommandLine.Command(name = "MongoDB Query Testing service",
         description = "Run query-integrity test in your MongoDB deployment.")
 public class MongoDBQueryTestingCLI implements Runnable {
@@ -17,16 +34,66 @@ public class MongoDBQueryTestingCLI implements Runnable {
     private String collectionName;
     @CommandLine.Option(names = {"-u", "--url", "--connection"}, description = "Connection string name.", required = true)
     private String connectionString;
-    @CommandLine.Option(names = {"-f", "--file"}, description = "Json configure file.", required = true)
+    @CommandLine.Option(names = {"-f", "--file"}, description = "Json configure file.")
     private File configFile;
+    @CommandLine.Option(names = {"--discover"}, description = "Number of documents sampled to build the field options instead of reading --file.")
+    private Integer discoverSampleSize;
+    @CommandLine.Option(names = {"--histograms"}, description = "Json file caching the histograms of --discover, sampled if it does not exist.")
+    private File histogramFile;
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
     @CommandLine.Option(names = {"--seed"}, description = "Random seed.")
     private Long seed;
+    @CommandLine.Option(names = {"-p", "--parallelism"}, description = "Number of query pairs run at the same time.")
+    private int parallelism = QueryTestingService.DEFAULT_PARALLELISM;
+    @CommandLine.Option(names = {"--batch"}, description = "Number of query pairs whose distinct queries are sent together.")
+    private int batchSize = QueryTestingService.DEFAULT_BATCH_SIZE;
+    @CommandLine.Option(names = {"--projection"}, split = ",", description = "Fields of the results, _id is always returned.")
+    private List<String> projectionFields;
+    @CommandLine.Option(names = {"--fullDocuments"}, description = "Get full documents instead of projected results.")
+    private Boolean fullDocuments = false;
+    @CommandLine.Option(names = {"--cursorBatch"}, description = "Number of documents of each cursor batch.")
+    private int cursorBatchSize;
+    @CommandLine.Option(names = {"--maxTime"}, description = "Time limit of each query in milliseconds.")
+    private long maxTimeMS;
+    @CommandLine.Option(names = {"--limit"}, description = "Maximum number of documents of each result.")
+    private int limit;
+    @CommandLine.Option(names = {"--reactive"}, description = "Send queries with the reactive streams driver without blocking a thread per query.")
+    private Boolean reactive = false;
+    @CommandLine.Option(names = {"--facet"}, description = "Send the queries of a batch in a single $facet aggregation.")
+    private Boolean facet = false;
+    @CommandLine.Option(names = {"--explain"}, description = "Fraction of the queries explained to record their plans, not with --reactive.")
+    private double explainSampleRate;
+    @CommandLine.Option(names = {"--maxExaminedRatio"}, description = "Keys or documents examined for each result above which a plan is flagged.")
+    private double maxExaminedRatio;
+    @CommandLine.Option(names = {"--maxExecutionTime"}, description = "Execution time in milliseconds above which a plan is flagged.")
+    private long maxExecutionTimeMS;
+    @CommandLine.Option(names = {"--cache"}, description = "Maximum number of results kept to answer repeated queries.")
+    private Long cacheSize;
+    @CommandLine.Option(names = {"--streaming"}, description = "Validate sorted results without loading them in memory.")
+    private Boolean streaming = false;
+    @CommandLine.Option(names = {"--oracle"}, description = "Compute expected results in memory from results of each field filter, not with --limit.")
+    private Boolean oracle = false;
+    @CommandLine.Option(names = {"--localOracle"}, description = "Compute expected results in memory by evaluating queries on a snapshot of the collection, not with --limit.")
+    private Boolean localOracle = false;
+    @CommandLine.Option(names = {"--count"}, description = "Validate pairs with count queries, results are only sent for invalid pairs.")
+    private Boolean count = false;
+    @CommandLine.Option(names = {"--selectivity"}, split = ",", description = "Band of selectivity min,max the generated queries are steered towards, e.g. 0.01,0.5.")
+    private List<Double> selectivityBand;
+    @CommandLine.Option(names = {"--normalize"}, description = "Send flat queries with negations only on field filters.")
+    private Boolean normalize = false;
+    @CommandLine.Option(names = {"--metrics"}, description = "Log latency, result size and throughput of each test.")
+    private Boolean metrics = false;
+    @CommandLine.Option(names = {"--report"}, description = "JSON lines file to write failures and runs to.")
+    private File reportFile;
     @CommandLine.Option(names = {"-n", "--not", "--notTest"}, description = "Run not test.")
     private Boolean runNotTest = false;
     @CommandLine.Option(names = {"-e", "--equal", "--equalTest"}, description = "Run equal test.")
     private Boolean runEqualTest = false;
     @CommandLine.Option(names = {"-s", "--subset", "--subsetTest"}, description = "Run subset test.")
     private Boolean runSubsetTest = false;
+    @CommandLine.Option(names = {"--hint", "--hintTest"}, description = "Run hint test, comparing the chosen plan to a collection scan, not with --reactive or --limit.")
+    private Boolean runHintTest = false;
 
     public static void main(String[] args) {
         new CommandLine(new MongoDBQueryTestingCLI()).execute(args);
@@ -35,18 +102,180 @@ public class MongoDBQueryTestingCLI implements Runnable {
     @SneakyThrows
     @Override
     public void run() {
-        MongoDBQueryFactory mongoDbQueryFactory = new MongoDBQueryFactory(connectionString,
-                databaseName, collectionName, null, seed);
-        mongoDbQueryFactory.setFieldFilterOptions(configFile);
-        QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(mongoDbQueryFactory);
-        if (runNotTest) {
-            queryTestingService.runNotTest();
-        }
-        if (runEqualTest) {
-            queryTestingService.runEqualTest();
-        }
-        if (runSubsetTest) {
-            queryTestingService.runSubsetTest();
+        if (configFile == null && discoverSampleSize == null && histogramFile == null) {
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    "Missing required option: '--file=<configFile>' or '--discover=<discoverSampleSize>'");
+        }
+        if (selectivityBand != null && selectivityBand.size() != 2) {
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    "Invalid value for option '--selectivity': expected min,max but was " + selectivityBand);
+        }
+        if (oracle && limit > 0) {
+            // Results of the field filters must be whole to build the results of the other queries from them.
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    "Option '--oracle' cannot be used with '--limit'");
+        }
+        if (localOracle && limit > 0) {
+            // The server may return any documents up to the limit, not the first ones in natural order.
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    "Option '--localOracle' cannot be used with '--limit'");
+        }
+        if (oracle && localOracle) {
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    "Option '--oracle' cannot be used with '--localOracle'");
+        }
+        if (runHintTest && limit > 0) {
+            // Both plans may return any documents up to the limit, not the same ones.
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    "Option '--hint' cannot be used with '--limit'");
+        }
+        if (reactive && runHintTest) {
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    "Option '--hint' cannot be used with '--reactive'");
+        }
+        if (reactive && explainSampleRate > 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(),
+                    "Option '--explain' cannot be used with '--reactive'");
+        }
+        AbstractMongoDBQueryFactory mongoDbQueryFactory;
+        MongoDBQueryFactory syncQueryFactory = null;
+        if (reactive) {
+            mongoDbQueryFactory = new MongoDBReactiveQueryFactory(connectionString,
+                    databaseName, collectionName, null, seed);
+        } else {
+            syncQueryFactory = new MongoDBQueryFactory(connectionString,
+                    databaseName, collectionName, null, seed);
+            syncQueryFactory.setFacetEnabled(facet);
+            syncQueryFactory.setExplainSampleRate(explainSampleRate);
+            syncQueryFactory.setPlanThresholds(maxExaminedRatio, maxExecutionTimeMS, TimeUnit.MILLISECONDS);
+            mongoDbQueryFactory = syncQueryFactory;
+        }
+        if (configFile != null) {
+            mongoDbQueryFactory.setFieldFilterOptions(configFile);
+        } else {
+            int sampleSize = discoverSampleSize == null ? MongoDBFieldDiscovery.DEFAULT_SAMPLE_SIZE : discoverSampleSize;
+            MongoDBFieldDiscovery fieldDiscovery = histogramFile == null
+                    ? MongoDBFieldDiscovery.sample(mongoDbQueryFactory, sampleSize)
+                    : MongoDBFieldDiscovery.loadOrSample(mongoDbQueryFactory, sampleSize, histogramFile);
+            Map<String, Map<String, Collection<Collection<Object>>>> fieldOptions = fieldDiscovery.getFieldOptions();
+            if (fieldOptions.isEmpty()) {
+                throw new IllegalStateException("No field option discovered in "
+                        + fieldDiscovery.getSampleSize() + " sampled documents");
+            }
+            mongoDbQueryFactory.setFieldFilterOptions(fieldOptions);
+        }
+        mongoDbQueryFactory.setCursorBatchSize(cursorBatchSize);
+        mongoDbQueryFactory.setMaxTime(maxTimeMS, TimeUnit.MILLISECONDS);
+        mongoDbQueryFactory.setLimit(limit);
+        if (fullDocuments) {
+            mongoDbQueryFactory.setProjectionFields(null);
+        } else if (projectionFields != null) {
+            mongoDbQueryFactory.setProjectionFields(projectionFields);
+        }
+        CachingQueryFactory<Bson, Document> cachingQueryFactory = null;
+        QueryFactory<Bson, Document> queryFactory = mongoDbQueryFactory;
+        if (cacheSize != null) {
+            cachingQueryFactory = new CachingQueryFactory<>(mongoDbQueryFactory, cacheSize);
+            queryFactory = cachingQueryFactory;
+        }
+        QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(queryFactory);
+        queryTestingService.setParallelism(parallelism);
+        ExecutorService executorService = null;
+        if (reactive && parallelism > 1) {
+            // Results are received without blocking, the executor only builds and validates pairs.
+            executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            queryTestingService.setExecutorService(executorService);
+        }
+        queryTestingService.setNormalizeQuery(normalize);
+        queryTestingService.setBatchSize(batchSize);
+        if (seed != null) {
+            queryTestingService.setSeed(seed);
+        }
+        if (streaming) {
+            queryTestingService.setStreamingResultValidator(StreamingResultValidator.of(new MongoDBIdComparator()));
+        }
+        if (count) {
+            queryTestingService.setQueryPairValidator(new MongoDBCountValidator(mongoDbQueryFactory));
+        }
+        if (oracle) {
+            queryTestingService.setQueryOracle(new SetAlgebraOracle<>(queryFactory, new Document()));
+        }
+        MongoDBLocalOracle mongoDBLocalOracle = null;
+        if (localOracle) {
+            mongoDBLocalOracle = new MongoDBLocalOracle(mongoDbQueryFactory);
+            queryTestingService.setQueryOracle(mongoDBLocalOracle);
+        }
+        SelectivityPolicy<Bson> selectivityPolicy = null;
+        if (selectivityBand != null) {
+            selectivityPolicy = new SelectivityPolicy<>(queryFactory, selectivityBand.get(0), selectivityBand.get(1));
+            queryTestingService.setSelectivityPolicy(selectivityPolicy);
+        }
+        HistogramQueryMetrics histogramQueryMetrics = new HistogramQueryMetrics();
+        if (metrics) {
+            queryTestingService.setQueryMetrics(histogramQueryMetrics);
+        }
+        JsonLinesQueryReporter<Bson, Document> jsonLinesQueryReporter = null;
+        if (reportFile != null) {
+            jsonLinesQueryReporter = new JsonLinesQueryReporter<>(reportFile.toPath(), queryFactory,
+                    document -> document.get("_id"));
+            queryTestingService.setQueryReporter(jsonLinesQueryReporter);
+        }
+        try {
+            if (runNotTest) {
+                queryTestingService.runNotTest();
+            }
+            if (runEqualTest) {
+                queryTestingService.runEqualTest();
+            }
+            if (runSubsetTest) {
+                queryTestingService.runSubsetTest();
+            }
+            if (runHintTest && syncQueryFactory != null) {
+                MongoDBHintTester hintTester = new MongoDBHintTester(syncQueryFactory);
+                if (seed != null) {
+                    hintTester.setSeed(seed);
+                }
+                if (jsonLinesQueryReporter != null) {
+                    hintTester.setQueryReporter(jsonLinesQueryReporter);
+                }
+                hintTester.run();
+                log.info(hintTester.getSummary());
+            }
+        } finally {
+            if (executorService != null) {
+                executorService.shutdown();
+            }
+            if (jsonLinesQueryReporter != null) {
+                jsonLinesQueryReporter.close();
+            }
+        }
+        if (cachingQueryFactory != null) {
+            log.info("Result cache: {} hits, {} misses, {} evictions",
+                    cachingQueryFactory.getHitCount(),
+                    cachingQueryFactory.getMissCount(),
+                    cachingQueryFactory.getEvictionCount());
+        }
+        if (mongoDBLocalOracle != null) {
+            long localQueryCount = mongoDBLocalOracle.getQueryCount();
+            long fallbackCount = mongoDBLocalOracle.getFallbackCount();
+            // Pairs whose expected result comes from the server are not validated independently of the server.
+            log.info("Local oracle: {} of {} queries taken from the server ({}), their pairs are checked against the server itself",
+                    fallbackCount, localQueryCount,
+                    String.format("%.2f%%", localQueryCount == 0 ? 0 : 100.0 * fallbackCount / localQueryCount));
+        }
+        if (metrics) {
+            log.info("Metrics:\n{}", histogramQueryMetrics.getSummary());
+        }
+        if (selectivityPolicy != null) {
+            log.info(selectivityPolicy.getSummary());
+        }
+        if (syncQueryFactory != null && explainSampleRate > 0) {
+            List<MongoDBQueryPlan> queryPlans = syncQueryFactory.getQueryPlans();
+            log.info("Query plans: {} explained, {} flagged, {} dropped, count by plan: {}",
+                    queryPlans.size(),
+                    syncQueryFactory.getFlaggedQueryPlans().size(),
+                    syncQueryFactory.getDroppedExplainCount(),
+                    queryPlans.stream().collect(Collectors.groupingBy(MongoDBQueryPlan::getPlanShape, TreeMap::new, Collectors.counting())));
         }
     }
 }
@@ -0,0 +1,261 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.reactivestreams.client.FindPublisher;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factory to generate MongoDB query for {@link io.github.ducthienbui97.queryintegrity.core.QueryTestingService}
+ * sending queries with the reactive streams driver.
+ * Results are requested by {@link #getResultAsync(Bson, Executor)} without blocking any thread, so many pairs can be
+ * in flight (see {@link io.github.ducthienbui97.queryintegrity.core.QueryTestingService#setParallelism(int)})
+ * over the connection pool of the driver, with an executor of a few threads to build and validate the pairs.
+ */
+@Slf4j
+public class MongoDBReactiveQueryFactory extends AbstractMongoDBQueryFactory {
+    /**
+     * Number of documents requested at a time when no cursor batch size is set.
+     */
+    public static final int DEFAULT_REQUEST_SIZE = 1000;
+    /**
+     * Client to connect to MongoDB instance.
+     */
+    @NonNull
+    private final MongoClient mongoClient;
+    /**
+     * Mongo Database.
+     */
+    @NonNull
+    private final MongoDatabase database;
+    /**
+     * Mongodb collection to run query on.
+     */
+    @NonNull
+    private final MongoCollection<Document> collection;
+
+    /**
+     * Create MongoDBReactiveQueryFactory from option
+     *
+     * @param options see {@link MongoDBQueryFactoryOptions}
+     */
+    public MongoDBReactiveQueryFactory(@NonNull MongoDBQueryFactoryOptions options) {
+        this(options.getConnectionString(),
+                options.getDatabaseName(),
+                options.getCollectionName(),
+                options.getFieldOptions(),
+                options.getSeed());
+        setResultOptions(options);
+    }
+
+    /**
+     * Create MongoDBReactiveQueryFactory.
+     *
+     * @param connectionString Connection string to connect to mongodb instance.
+     * @param databaseName     Name of the database to run query on.
+     * @param collectionName   Name of the collection to run query on.
+     * @param fieldOptions     Option config to generate possible queries {@link #setFieldFilterOptions(Map)}
+     * @param seed             Seed value for {@link java.util.Random}
+     */
+    public MongoDBReactiveQueryFactory(@NonNull String connectionString,
+                                       @NonNull String databaseName,
+                                       @NonNull String collectionName,
+                                       Map<String, Map<String, Collection<Collection<Object>>>> fieldOptions,
+                                       Long seed) {
+        super(fieldOptions, seed);
+        mongoClient = MongoClients.create(connectionString);
+        database = mongoClient.getDatabase(databaseName);
+        collection = database.getCollection(collectionName);
+    }
+
+    /**
+     * Get the result of a query as a publisher, documents are sent as they are requested by the subscriber.
+     *
+     * @param query the query to be used to get the result.
+     * @return publisher of the result of input query.
+     */
+    public Publisher<Document> getResultPublisher(Bson query) {
+        log.debug("Sending {}", query);
+        return find(query);
+    }
+
+    @Override
+    public Collection<Document> getResult(Bson query) {
+        return join(collect(getResultPublisher(query)));
+    }
+
+    /**
+     * Send every query at once and wait for all their results.
+     *
+     * @param queries distinct queries to be used to get the results.
+     * @return result of each input query.
+     */
+    @Override
+    public Map<Bson, Collection<Document>> getResults(Collection<Bson> queries) {
+        Map<Bson, CompletableFuture<List<Document>>> futures = new LinkedHashMap<>();
+        for (Bson query : queries) {
+            futures.put(query, collect(getResultPublisher(query)));
+        }
+        Map<Bson, Collection<Document>> results = new HashMap<>();
+        for (Map.Entry<Bson, CompletableFuture<List<Document>>> entry : futures.entrySet()) {
+            results.put(entry.getKey(), join(entry.getValue()));
+        }
+        return results;
+    }
+
+    /**
+     * Get the result without blocking, the result is handed to the executor once all its documents are received,
+     * so the driver threads never run the validation.
+     *
+     * @param query    the query to be used to get the result.
+     * @param executor the executor the future completes on.
+     * @return a future of the result of input query.
+     */
+    @Override
+    public CompletableFuture<Collection<Document>> getResultAsync(Bson query, Executor executor) {
+        return collect(getResultPublisher(query)).thenApplyAsync(result -> result, executor);
+    }
+
+    /**
+     * Fetch the result sorted by "_id", see {@link MongoDBIdComparator}.
+     * Unlike {@link MongoDBQueryFactory#getResultIterator(Bson)}, the whole result is received before it is iterated.
+     *
+     * @param query the query to be used to get the result.
+     * @return iterator over the result sorted by "_id".
+     */
+    @Override
+    public Iterator<Document> getResultIterator(Bson query) {
+        log.debug("Sending sorted {}", query);
+        return join(collect(find(query).sort(Sorts.ascending("_id")))).iterator();
+    }
+
+    @Override
+    public boolean exists(Bson query) {
+        log.debug("Counting {}", query);
+        return join(collect(collection.countDocuments(query,
+                new CountOptions().limit(1).maxTime(maxTimeMS, TimeUnit.MILLISECONDS)))).get(0) > 0;
+    }
+
+    @Override
+    public long count(Bson query) {
+        log.debug("Counting {}", query);
+        return join(collect(collection.countDocuments(query,
+                new CountOptions().maxTime(maxTimeMS, TimeUnit.MILLISECONDS)))).get(0);
+    }
+
+    @Override
+    public List<Document> getSnapshot() {
+        log.debug("Reading every document");
+        return join(collect(collection.find()
+                .batchSize(cursorBatchSize)
+                .maxTime(maxTimeMS, TimeUnit.MILLISECONDS)));
+    }
+
+    @Override
+    public List<Document> getSample(int sampleSize) {
+        log.debug("Sampling {} documents", sampleSize);
+        return join(collect(collection.aggregate(Collections.singletonList(Aggregates.sample(sampleSize)))
+                .batchSize(cursorBatchSize)
+                .maxTime(maxTimeMS, TimeUnit.MILLISECONDS)));
+    }
+
+    /**
+     * @return find of the query with the projection and cursor options of this factory.
+     */
+    private FindPublisher<Document> find(Bson query) {
+        return collection.find(query)
+                .projection(projection)
+                .batchSize(cursorBatchSize)
+                .limit(limit)
+                .maxTime(maxTimeMS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Request the published elements by the cursor batch size, or {@link #DEFAULT_REQUEST_SIZE}, at a time.
+     *
+     * @return future of every published element.
+     */
+    private <V> CompletableFuture<List<V>> collect(Publisher<V> publisher) {
+        return collect(publisher, cursorBatchSize > 0 ? cursorBatchSize : DEFAULT_REQUEST_SIZE);
+    }
+
+    /**
+     * @param requestSize number of elements requested at a time.
+     * @return future of every published element.
+     */
+    static <V> CompletableFuture<List<V>> collect(Publisher<V> publisher, int requestSize) {
+        CollectingSubscriber<V> subscriber = new CollectingSubscriber<>(requestSize);
+        publisher.subscribe(subscriber);
+        return subscriber.future;
+    }
+
+    /**
+     * Wait for a future, throwing the error of the driver as it is.
+     */
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Subscriber collecting every element, requesting more elements once the previous request is received.
+     * Reactive streams signals are never concurrent, so the state is not synchronized.
+     */
+    private static class CollectingSubscriber<V> implements Subscriber<V> {
+        private final CompletableFuture<List<V>> future = new CompletableFuture<>();
+        private final List<V> elements = new ArrayList<>();
+        private final int requestSize;
+        private Subscription subscription;
+        private int pending;
+
+        CollectingSubscriber(int requestSize) {
+            this.requestSize = requestSize;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            pending = requestSize;
+            subscription.request(requestSize);
+        }
+
+        @Override
+        public void onNext(V element) {
+            elements.add(element);
+            if (--pending == 0) {
+                pending = requestSize;
+                subscription.request(requestSize);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            future.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            future.complete(elements);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.mongodb.client.model.Filters;
+import io.github.ducthienbui97.queryintegrity.core.RelationType;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Collections;
+import java.util.EnumSet;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class MongoDBCountValidatorTest {
+    private static final Bson QUERY1 = Filters.eq("a", 1);
+    private static final Bson QUERY2 = Filters.eq("b", 2);
+
+    private final MongoDBQueryFactory queryFactory = mock(MongoDBQueryFactory.class);
+
+    @ParameterizedTest
+    @EnumSource(RelationType.class)
+    public void testDefaultRelations(RelationType relation) {
+        assertThat(new MongoDBCountValidator(queryFactory).supports(relation), is(relation != RelationType.EQUAL));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RelationType.class)
+    public void testGivenRelations(RelationType relation) {
+        assertThat(new MongoDBCountValidator(queryFactory, EnumSet.of(relation)).supports(relation), is(true));
+        assertThat(new MongoDBCountValidator(queryFactory, Collections.emptySet()).supports(relation), is(false));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RelationType.class)
+    public void testPairIsValidIfNoDocumentViolatesRelation(RelationType relation) {
+        MongoDBCountValidator countValidator = new MongoDBCountValidator(queryFactory);
+        Bson violation = MongoDBCountValidator.getViolation(relation, QUERY1, QUERY2);
+        when(queryFactory.exists(any())).thenReturn(false);
+        assertThat(countValidator.isValid(relation, QUERY1, QUERY2), is(true));
+        when(queryFactory.exists(any())).thenReturn(true);
+        assertThat(countValidator.isValid(relation, QUERY1, QUERY2), is(false));
+        verify(queryFactory, times(2)).exists(violation);
+    }
+
+    @Test
+    public void testViolationQueries() {
+        assertThat(MongoDBCountValidator.getViolation(RelationType.NOT, QUERY1, QUERY2),
+                is(Filters.and(QUERY1, QUERY2)));
+        assertThat(MongoDBCountValidator.getViolation(RelationType.SUBSET, QUERY1, QUERY2),
+                is(Filters.and(QUERY1, Filters.nor(QUERY2))));
+        assertThat(MongoDBCountValidator.getViolation(RelationType.SUPERSET, QUERY1, QUERY2),
+                is(Filters.and(QUERY2, Filters.nor(QUERY1))));
+        assertThat(MongoDBCountValidator.getViolation(RelationType.EQUAL, QUERY1, QUERY2),
+                is(Filters.or(Filters.and(QUERY1, Filters.nor(QUERY2)), Filters.and(QUERY2, Filters.nor(QUERY1)))));
+    }
+
+    @Test
+    public void testArgumentsCantBeNull() {
+        assertThrows(NullPointerException.class, () -> new MongoDBCountValidator(null));
+        assertThrows(NullPointerException.class, () -> new MongoDBCountValidator(queryFactory, null));
+    }
+}
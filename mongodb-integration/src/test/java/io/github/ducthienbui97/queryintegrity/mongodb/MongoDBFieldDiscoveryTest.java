@@ -0,0 +1,200 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.netty.channel.Channel;
+import lombok.val;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+public class MongoDBFieldDiscoveryTest {
+    private static final String DATABASE_NAME = "testDb";
+    private static final String COLLECTION_NAME = "testCollectionName";
+    private static final int DOCUMENT_COUNT = 100;
+    private static final List<String> COLORS = asList("red", "green", "blue", "white", "black");
+    private static final List<Document> DOCUMENTS = new ArrayList<>();
+    private static MongoServer mongoServer;
+    private static String mongoURI;
+    private MongoDBQueryFactory queryFactory;
+
+    @BeforeAll
+    public static void initializeMongoServer() {
+        for (int i = 0; i < DOCUMENT_COUNT; i++) {
+            Document document = new Document("_id", i)
+                    .append("number", i)
+                    .append("ratio", i / 4.0)
+                    // Skewed: red is half of the values, green a quarter.
+                    .append("color", COLORS.get(Integer.numberOfTrailingZeros(i + 1) % COLORS.size()))
+                    .append("date", new Date(1_000_000L * i))
+                    .append("flag", i % 3 == 0)
+                    .append("constant", 7)
+                    .append("tags", asList("tag" + i % 2, "tag" + i % 5))
+                    .append("nested", new Document("value", i % 10));
+            if (i % 5 == 0) {
+                document.append("optional", null);
+            }
+            DOCUMENTS.add(document);
+        }
+        mongoServer = new MongoServer(new SampleBackend());
+        val address = mongoServer.bind();
+        mongoURI = "mongodb://" + address.getHostName() + ":" + address.getPort() + "/";
+        try (MongoClient mongoClient = MongoClients.create(mongoURI)) {
+            mongoClient.getDatabase(DATABASE_NAME).getCollection(COLLECTION_NAME).insertMany(DOCUMENTS);
+        }
+    }
+
+    @AfterAll
+    public static void pullDown() {
+        mongoServer.shutdown();
+        mongoServer = null;
+    }
+
+    @BeforeEach
+    public void setup() {
+        queryFactory = new MongoDBQueryFactory(MongoDBQueryFactoryOptions.builder()
+                .connectionString(mongoURI)
+                .databaseName(DATABASE_NAME)
+                .collectionName(COLLECTION_NAME)
+                .build());
+    }
+
+    @Test
+    public void testHistograms() {
+        MongoDBFieldDiscovery fieldDiscovery = MongoDBFieldDiscovery.of(DOCUMENTS);
+        assertThat(fieldDiscovery.getSampleSize(), is(DOCUMENT_COUNT));
+        assertThat(fieldDiscovery.getFieldNames(), equalTo(new TreeSet<>(asList("_id", "color", "constant", "date",
+                "flag", "nested", "nested.value", "number", "optional", "ratio", "tags"))));
+        assertThat(fieldDiscovery.getPresentFraction("number"), is(1.0));
+        assertThat(fieldDiscovery.getPresentFraction("optional"), is(0.2));
+        assertThat(fieldDiscovery.getPresentFraction("missing"), is(0.0));
+        assertThat(MongoDBFieldDiscovery.of(emptyList()).getPresentFraction("number"), is(0.0));
+    }
+
+    @Test
+    public void testFieldOptions() {
+        Map<String, Map<String, Collection<Collection<Object>>>> fieldOptions =
+                MongoDBFieldDiscovery.of(DOCUMENTS, 4, 2).getFieldOptions();
+        // Quantiles 0, 24, 49, 74 and 99, the minimum matches every value or none.
+        List<Collection<Object>> numberBounds = asList(singletonList(24L), singletonList(49L),
+                singletonList(74L), singletonList(99L));
+        assertThat(fieldOptions.get("number").get("gte"), equalTo(numberBounds));
+        assertThat(fieldOptions.get("number").get("lt"), equalTo(numberBounds));
+        assertThat(fieldOptions.get("number").keySet(), equalTo(new HashSet<>(asList("gte", "lt"))));
+        assertThat(fieldOptions.get("ratio").get("gte"), equalTo(asList(singletonList(6.0), singletonList(12.25),
+                singletonList(18.5), singletonList(24.75))));
+        assertThat(fieldOptions.get("date").get("lt").iterator().next(), equalTo(singletonList(new Date(24_000_000L))));
+        assertThat(fieldOptions.get("color").get("eq"), equalTo(asList(singletonList("red"), singletonList("green"))));
+        assertThat(fieldOptions.get("color").get("in"), equalTo(singletonList(singletonList(asList("red", "green")))));
+        assertThat(fieldOptions.get("flag").get("eq"), equalTo(asList(singletonList(true), singletonList(false))));
+        assertThat(fieldOptions.get("optional").get("exists"), equalTo(asList(emptyList(), singletonList(false))));
+        assertThat(fieldOptions.get("tags").get("eq"), equalTo(asList(singletonList("tag0"), singletonList("tag1"))));
+        assertThat(fieldOptions.get("nested.value").get("gte").size(), is(4));
+        assertThat(fieldOptions.containsKey("constant"), is(false));
+        assertThat(fieldOptions.containsKey("nested"), is(false));
+    }
+
+    @Test
+    public void testSelectivityIsSpread() {
+        queryFactory.setFieldFilterOptions(MongoDBFieldDiscovery.sample(queryFactory, DOCUMENT_COUNT).getFieldOptions());
+        List<Double> selectivities = new ArrayList<>();
+        Set<Object> queries = new HashSet<>();
+        for (int i = 0; i < 2000; i++) {
+            val query = queryFactory.build();
+            if (queries.add(query.toString())) {
+                selectivities.add((double) queryFactory.getResult(query).size() / DOCUMENT_COUNT);
+            }
+        }
+        long low = selectivities.stream().filter(selectivity -> selectivity <= 0.25).count();
+        long middle = selectivities.stream().filter(selectivity -> selectivity > 0.25 && selectivity < 0.75).count();
+        long high = selectivities.stream().filter(selectivity -> selectivity >= 0.75).count();
+        assertThat(low > 0 && middle > 0 && high > 0, is(true));
+        assertThat(selectivities.stream().filter(selectivity -> selectivity == 0).count(), is(0L));
+        assertThat(selectivities.stream().filter(selectivity -> selectivity == 1).count(), is(0L));
+    }
+
+    @Test
+    public void testSaveAndLoad(@TempDir Path tempDir) throws IOException {
+        File file = tempDir.resolve("histograms.json").toFile();
+        MongoDBFieldDiscovery fieldDiscovery = MongoDBFieldDiscovery.of(DOCUMENTS);
+        fieldDiscovery.save(file);
+        MongoDBFieldDiscovery loaded = MongoDBFieldDiscovery.load(file);
+        assertThat(loaded.getSampleSize(), is(DOCUMENT_COUNT));
+        assertThat(loaded.getFieldNames(), equalTo(fieldDiscovery.getFieldNames()));
+        assertThat(loaded.getPresentFraction("optional"), is(0.2));
+        assertThat(loaded.getFieldOptions(), equalTo(fieldDiscovery.getFieldOptions()));
+    }
+
+    @Test
+    public void testLoadOrSample(@TempDir Path tempDir) throws IOException {
+        File file = tempDir.resolve("histograms.json").toFile();
+        MongoDBQueryFactory spyQueryFactory = spy(queryFactory);
+        MongoDBFieldDiscovery sampled = MongoDBFieldDiscovery.loadOrSample(spyQueryFactory, 50, file);
+        assertThat(sampled.getSampleSize(), is(50));
+        assertThat(file.exists(), is(true));
+        MongoDBFieldDiscovery loaded = MongoDBFieldDiscovery.loadOrSample(spyQueryFactory, 50, file);
+        verify(spyQueryFactory, times(1)).getSample(anyInt());
+        assertThat(loaded.getFieldOptions(), equalTo(sampled.getFieldOptions()));
+    }
+
+    @Test
+    public void testLoadInvalidFile(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("histograms.json");
+        Files.write(file, "{\"sampleSize\": 10}".getBytes());
+        assertThrows(IOException.class, () -> MongoDBFieldDiscovery.load(file.toFile()));
+        Files.write(file, "{\"fields\": {\"a\": {}}}".getBytes());
+        MongoDBFieldDiscovery fieldDiscovery = MongoDBFieldDiscovery.load(file.toFile());
+        assertThat(fieldDiscovery.getSampleSize(), is(0));
+        assertThat(fieldDiscovery.getFieldOptions().isEmpty(), is(true));
+    }
+
+    @Test
+    public void argumentsMustBeValid() {
+        assertThrows(IllegalArgumentException.class, () -> MongoDBFieldDiscovery.of(DOCUMENTS, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> MongoDBFieldDiscovery.of(DOCUMENTS, 1, -1));
+        assertThrows(NullPointerException.class, () -> MongoDBFieldDiscovery.of(null));
+        assertThrows(NullPointerException.class, () -> MongoDBFieldDiscovery.sample(null, 1));
+        assertThrows(NullPointerException.class, () -> MongoDBFieldDiscovery.load(null));
+        assertThrows(NullPointerException.class, () -> MongoDBFieldDiscovery.loadOrSample(queryFactory, 1, null));
+    }
+
+    protected static class SampleBackend extends MemoryBackend {
+        /**
+         * The embedded server does not support $sample, it is replaced by a $limit of the same size.
+         */
+        @Override
+        public de.bwaldvogel.mongo.bson.Document handleCommand(Channel channel, String databaseName, String command,
+                                                             de.bwaldvogel.mongo.bson.Document query) {
+            if (command.equals("aggregate")) {
+                List<Object> pipeline = new ArrayList<>();
+                for (Object stage : (List<?>) query.get("pipeline")) {
+                    Object sample = ((de.bwaldvogel.mongo.bson.Document) stage).get("$sample");
+                    pipeline.add(sample == null ? stage : new de.bwaldvogel.mongo.bson.Document("$limit",
+                            ((de.bwaldvogel.mongo.bson.Document) sample).get("size")));
+                }
+                query.put("pipeline", pipeline);
+            }
+            return super.handleCommand(channel, databaseName, command, query);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.github.ducthienbui97.queryintegrity.core.QueryFailure;
+import io.github.ducthienbui97.queryintegrity.core.QueryReporter;
+import io.github.ducthienbui97.queryintegrity.core.RelationType;
+import lombok.val;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.*;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class MongoDBHintTesterTest {
+    private static final String DATABASE_NAME = "testDb";
+    private static final String COLLECTION_NAME = "testCollectionName";
+    private static final int DOCUMENT_COUNT = 50;
+    private static final Document EXTRA_DOCUMENT = new Document("_id", "extra");
+    private static MongoServer mongoServer;
+    private static String mongoURI;
+    private MongoDBQueryFactory queryFactory;
+
+    private static Map<String, Map<String, Collection<Collection<Object>>>> fieldOptions() {
+        return ImmutableMap.of(
+                "number", ImmutableMap.of(
+                        "gte", ImmutableList.of(singletonList(10), singletonList(25)),
+                        "mod", ImmutableList.of(ImmutableList.of(3L, 0L), ImmutableList.of(5L, 1L))),
+                "text", ImmutableMap.of(
+                        "exists", singletonList(emptyList()),
+                        "regex", singletonList(singletonList("^1.*"))));
+    }
+
+    @BeforeAll
+    public static void initializeMongoServer() {
+        mongoServer = new MongoServer(new MemoryBackend());
+        val address = mongoServer.bind();
+        mongoURI = "mongodb://" + address.getHostName() + ":" + address.getPort() + "/";
+        try (MongoClient mongoClient = MongoClients.create(mongoURI)) {
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < DOCUMENT_COUNT; i++) {
+                Document document = new Document("number", i);
+                if (i % 4 != 0) {
+                    document.append("text", String.valueOf(i));
+                }
+                documents.add(document);
+            }
+            mongoClient.getDatabase(DATABASE_NAME).getCollection(COLLECTION_NAME).insertMany(documents);
+        }
+    }
+
+    @AfterAll
+    public static void pullDown() {
+        mongoServer.shutdown();
+        mongoServer = null;
+    }
+
+    @BeforeEach
+    public void setup() {
+        queryFactory = new MongoDBQueryFactory(MongoDBQueryFactoryOptions.builder()
+                .connectionString(mongoURI)
+                .databaseName(DATABASE_NAME)
+                .collectionName(COLLECTION_NAME)
+                .fieldOptions(fieldOptions())
+                .build());
+    }
+
+    @Test
+    public void testHintedResultEqualsResult() {
+        for (int i = 0; i < 10; i++) {
+            Bson query = queryFactory.build();
+            assertThat(queryFactory.getResult(query, MongoDBHintTester.NATURAL_HINT),
+                    equalTo(queryFactory.getResult(query)));
+            assertThat(queryFactory.getResult(query, null), equalTo(queryFactory.getResult(query)));
+        }
+    }
+
+    @Test
+    public void testPlansReturnSameResults() {
+        MongoDBHintTester hintTester = new MongoDBHintTester(queryFactory);
+        assertThat(hintTester.getSpeedUp(), is(0.0));
+        assertThat(hintTester.run(), is(0));
+        assertThat(hintTester.run(20), is(0));
+        assertThat(hintTester.getQueryCount(), is(120L));
+        assertThat(hintTester.getMismatchCount(), is(0L));
+        assertThat(hintTester.getPlannedLatency().getCount(), is(120L));
+        assertThat(hintTester.getNaturalLatency().getCount(), is(120L));
+        assertThat(hintTester.getSpeedUp() > 0, is(true));
+        assertThat(hintTester.getSummary(), containsString("Hint: 120 queries, 0 mismatches"));
+    }
+
+    @Test
+    public void testMismatchIsReported() {
+        MongoDBQueryFactory spyQueryFactory = spy(queryFactory);
+        doReturn(singletonList(EXTRA_DOCUMENT)).when(spyQueryFactory).getResult(any(), eq(MongoDBHintTester.NATURAL_HINT));
+        doReturn(MongoDBQueryPlan.builder().query(new Document()).planShape("FETCH(IXSCAN[number_1])").build())
+                .when(spyQueryFactory).explain(any());
+        @SuppressWarnings("unchecked")
+        QueryReporter<Bson, Document> queryReporter = mock(QueryReporter.class);
+        MongoDBHintTester hintTester = new MongoDBHintTester(spyQueryFactory);
+        hintTester.setQueryReporter(queryReporter);
+        hintTester.setMaxReportedDiff(2);
+        hintTester.setSeed(42);
+        assertThat(hintTester.run(10), is(10));
+        assertThat(hintTester.getMismatchCount(), is(10L));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<QueryFailure<Bson, Document>> failureCaptor = ArgumentCaptor.forClass(QueryFailure.class);
+        verify(queryReporter, times(10)).reportFailure(failureCaptor.capture());
+        verify(queryReporter).reportRun(MongoDBHintTester.KIND, RelationType.EQUAL, 10, 10);
+        verify(queryReporter, never()).reportRun(any(RelationType.class), anyInt(), anyInt());
+        for (QueryFailure<Bson, Document> failure : failureCaptor.getAllValues()) {
+            assertThat(failure.getKind(), is(MongoDBHintTester.KIND));
+            assertThat(failure.getRelation(), is(RelationType.EQUAL));
+            assertThat(failure.getQuery1(), equalTo(failure.getQuery2()));
+            assertThat(failure.getPlan1(), is("FETCH(IXSCAN[number_1])"));
+            assertThat(failure.getPlan2(), is("{\"$natural\": 1}"));
+            assertThat(failure.getResult1Size(), is(queryFactory.getResult(failure.getQuery1()).size()));
+            assertThat(failure.getResult2Size(), is(1));
+            assertThat(failure.getDiff().size() <= 2, is(true));
+            assertThat(failure.getDiff().isEmpty(), is(false));
+        }
+
+        QueryFailure<Bson, Document> failure = failureCaptor.getValue();
+        assertThat(hintTester.replay(failure.getSeed()), is(false));
+        verify(queryReporter, times(11)).reportFailure(failureCaptor.capture());
+        QueryFailure<Bson, Document> replayed = failureCaptor.getValue();
+        assertThat(replayed.getTestIndex(), is(-1));
+        assertThat(replayed.getQuery1(), equalTo(failure.getQuery1()));
+    }
+
+    @Test
+    public void testMismatchWithoutReportedDiff() {
+        MongoDBQueryFactory spyQueryFactory = spy(queryFactory);
+        // Same size but different documents.
+        doAnswer(invocation -> {
+            Collection<Document> result = queryFactory.getResult(invocation.getArgument(0));
+            List<Document> renamed = new ArrayList<>();
+            for (Document document : result) {
+                renamed.add(new Document("_id", document.get("_id").toString()));
+            }
+            return renamed;
+        }).when(spyQueryFactory).getResult(any(), eq(MongoDBHintTester.NATURAL_HINT));
+        MongoDBHintTester hintTester = new MongoDBHintTester(spyQueryFactory);
+        hintTester.setMaxReportedDiff(0);
+        hintTester.setMinLeafCount(1);
+        hintTester.setMaxLeafCount(1);
+        int invalid = hintTester.run(20);
+        assertThat((long) invalid, is(hintTester.getMismatchCount()));
+        assertThat(invalid > 0, is(true));
+    }
+
+    @Test
+    public void testPlannedFasterCount() {
+        MongoDBQueryFactory spyQueryFactory = spy(queryFactory);
+        doAnswer(invocation -> {
+            Thread.sleep(20);
+            return invocation.callRealMethod();
+        }).when(spyQueryFactory).getResult(any(), eq(MongoDBHintTester.NATURAL_HINT));
+        // Open the connection before the chosen plans are timed.
+        spyQueryFactory.getResult(spyQueryFactory.build());
+        MongoDBHintTester hintTester = new MongoDBHintTester(spyQueryFactory);
+        assertThat(hintTester.run(6), is(0));
+        // A single chosen plan may still be slower under load, only the aggregate is stable.
+        assertThat(hintTester.getPlannedFasterCount() <= 6, is(true));
+        assertThat(hintTester.getSpeedUp() > 1, is(true));
+    }
+
+    @Test
+    public void testSpeedUpByIndex() {
+        MongoDBQueryFactory spyQueryFactory = spy(queryFactory);
+        doAnswer(invocation -> {
+            Bson query = invocation.getArgument(0);
+            boolean numberIndex = query.toString().contains("number");
+            boolean textIndex = query.toString().contains("text");
+            MongoDBQueryPlan.MongoDBQueryPlanBuilder queryPlan = MongoDBQueryPlan.builder()
+                    .query(query)
+                    .planShape("FETCH")
+                    .collectionScan(!numberIndex && !textIndex);
+            if (numberIndex) {
+                queryPlan.indexName("number_1").indexName("number_1");
+            }
+            if (textIndex) {
+                queryPlan.indexName("text_1");
+            }
+            return queryPlan.build();
+        }).when(spyQueryFactory).explain(any());
+        MongoDBHintTester hintTester = new MongoDBHintTester(spyQueryFactory);
+        assertThat(hintTester.getSpeedUpByIndex().isEmpty(), is(true));
+        assertThat(hintTester.run(30), is(0));
+
+        Map<String, Long> queryCountByIndex = hintTester.getQueryCountByIndex();
+        assertThat(hintTester.getSpeedUpByIndex().keySet(), equalTo(queryCountByIndex.keySet()));
+        assertThat(queryCountByIndex.keySet().stream()
+                .allMatch(index -> index.equals("number_1") || index.equals("text_1")
+                        || index.equals("number_1+text_1") || index.equals("text_1+number_1")), is(true));
+        assertThat(queryCountByIndex.values().stream().mapToLong(Long::longValue).sum(), is(30L));
+        for (Map.Entry<String, Double> speedUp : hintTester.getSpeedUpByIndex().entrySet()) {
+            assertThat(speedUp.getValue() > 0, is(true));
+            assertThat(hintTester.getSummary(), containsString(String.format("%s %.2fx (%d queries)",
+                    speedUp.getKey(), speedUp.getValue(), queryCountByIndex.get(speedUp.getKey()))));
+        }
+    }
+
+    @Test
+    public void testIndexOfPlans() {
+        MongoDBQueryFactory spyQueryFactory = spy(queryFactory);
+        doReturn(MongoDBQueryPlan.builder().query(new Document()).planShape("COLLSCAN").collectionScan(true).build())
+                .when(spyQueryFactory).explain(any());
+        MongoDBHintTester hintTester = new MongoDBHintTester(spyQueryFactory);
+        assertThat(hintTester.run(5), is(0));
+        assertThat(hintTester.getQueryCountByIndex(), equalTo(Collections.singletonMap(MongoDBHintTester.NO_INDEX, 5L)));
+
+        // The embedded server cannot explain.
+        hintTester = new MongoDBHintTester(queryFactory);
+        assertThat(hintTester.run(5), is(0));
+        assertThat(hintTester.getQueryCountByIndex(),
+                equalTo(Collections.singletonMap(MongoDBHintTester.UNKNOWN_INDEX, 5L)));
+        assertThat(hintTester.getSummary(), containsString("by index [" + MongoDBHintTester.UNKNOWN_INDEX));
+    }
+
+    @Test
+    public void testPlansAreNotSampled() {
+        MongoDBQueryFactory spyQueryFactory = spy(queryFactory);
+        spyQueryFactory.setExplainSampleRate(1);
+        MongoDBHintTester hintTester = new MongoDBHintTester(spyQueryFactory);
+        assertThat(hintTester.run(5), is(0));
+        // Only the explain giving the index of each query, never one from the timed runs.
+        verify(spyQueryFactory, times(5)).explain(any());
+        verify(spyQueryFactory, never()).getResult(any());
+        assertThat(spyQueryFactory.getQueryPlans().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testLeafCounts() {
+        MongoDBHintTester hintTester = new MongoDBHintTester(queryFactory);
+        hintTester.setMinLeafCount(10);
+        hintTester.setMaxLeafCount(2);
+        assertThat(hintTester.run(5), is(0));
+    }
+
+    @Test
+    public void argumentsMustBeValid() {
+        MongoDBHintTester hintTester = new MongoDBHintTester(queryFactory);
+        assertThrows(IllegalArgumentException.class, () -> hintTester.setMaxReportedDiff(-1));
+        assertThrows(NullPointerException.class, () -> hintTester.setQueryReporter(null));
+        assertThrows(NullPointerException.class, () -> new MongoDBHintTester(null));
+
+        // Results are compared as sets, a limit may return different documents with each plan.
+        queryFactory.setLimit(10);
+        assertThrows(IllegalArgumentException.class, hintTester::run);
+        assertThrows(IllegalArgumentException.class, () -> new MongoDBHintTester(queryFactory));
+    }
+}
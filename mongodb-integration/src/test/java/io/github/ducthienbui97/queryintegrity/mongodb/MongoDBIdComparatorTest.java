@@ -0,0 +1,118 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.Decimal128;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+public class MongoDBIdComparatorTest {
+    private final MongoDBIdComparator comparator = new MongoDBIdComparator();
+
+    private static Stream<Arguments> orderedIds() {
+        ObjectId objectId = new ObjectId();
+        return Stream.of(
+                Arguments.of(new MinKey(), null),
+                Arguments.of(null, 1),
+                Arguments.of(1, 2L),
+                Arguments.of(1.5, 2),
+                Arguments.of(Double.NaN, Double.NEGATIVE_INFINITY),
+                Arguments.of(Decimal128.NaN, Long.MIN_VALUE),
+                Arguments.of(Double.NEGATIVE_INFINITY, Long.MIN_VALUE),
+                Arguments.of(Long.MAX_VALUE, Double.POSITIVE_INFINITY),
+                Arguments.of(Decimal128.NEGATIVE_INFINITY, Decimal128.POSITIVE_INFINITY),
+                Arguments.of(Decimal128.parse("1.5"), 2),
+                Arguments.of(Decimal128.NEGATIVE_ZERO, 0.5),
+                // Equal as doubles.
+                Arguments.of(9007199254740992L, 9007199254740993L),
+                Arguments.of(9007199254740992.0, 9007199254740993L),
+                Arguments.of(Long.MAX_VALUE - 1, Long.MAX_VALUE),
+                Arguments.of(100, "1"),
+                Arguments.of("a", "b"),
+                Arguments.of("a", "ab"),
+                Arguments.of(new Symbol("a"), "b"),
+                // U+FFFD is lower than U+1F600 by code point but not by UTF-16 unit.
+                Arguments.of("\uFFFD", "\uD83D\uDE00"),
+                Arguments.of("b", new Document("a", 1)),
+                Arguments.of(new Document("a", 1), new Document("a", 2)),
+                Arguments.of(new Document("a", 1), new Document("b", 1)),
+                Arguments.of(new Document("b", 1), new Document("a", "1")),
+                Arguments.of(new Document("a", 1), new Document("a", 1).append("b", 1)),
+                Arguments.of(new Document("a", new Document("b", 1L << 60)),
+                        new Document("a", new Document("b", (1L << 60) + 1))),
+                Arguments.of(new Document("a", 1), Arrays.asList(1, 2)),
+                Arguments.of(Arrays.asList(1, 2), Arrays.asList(1, 3)),
+                Arguments.of(Arrays.asList(1, 2), Arrays.asList(1, 2, 0)),
+                Arguments.of(Arrays.asList(1, 2), new byte[]{1}),
+                Arguments.of(new byte[]{2}, new byte[]{1, 0}),
+                Arguments.of(new byte[]{1}, new byte[]{(byte) 0x80}),
+                Arguments.of(new byte[]{1}, new Binary((byte) 4, new byte[]{0})),
+                Arguments.of(new Binary((byte) 4, new byte[]{1}), objectId),
+                Arguments.of(new byte[]{1}, objectId),
+                Arguments.of(objectId, new ObjectId(new Date(objectId.getDate().getTime() + 1000))),
+                Arguments.of(objectId, false),
+                Arguments.of(false, true),
+                Arguments.of(true, new Date(0)),
+                Arguments.of(new Date(0), new Date(1)),
+                Arguments.of(new Date(1), new BsonTimestamp(1, 0)),
+                Arguments.of(new BsonTimestamp(1, 0), new BsonTimestamp(1, 1)),
+                Arguments.of(new BsonTimestamp(1, 1), Pattern.compile("a")),
+                Arguments.of(Pattern.compile("a"), Pattern.compile("b")),
+                Arguments.of(Pattern.compile("b"), new MaxKey()));
+    }
+
+    private static Document document(Object id) {
+        return new Document("_id", id);
+    }
+
+    @ParameterizedTest
+    @MethodSource("orderedIds")
+    public void testCompareInMongoDBOrder(Object smallerId, Object largerId) {
+        assertThat(comparator.compare(document(smallerId), document(largerId)), lessThan(0));
+        assertThat(comparator.compare(document(largerId), document(smallerId)), greaterThan(0));
+    }
+
+    @ParameterizedTest
+    @MethodSource("orderedIds")
+    public void testCompareSameIdAsEqual(Object smallerId, Object largerId) {
+        assertThat(comparator.compare(document(smallerId), document(smallerId)), is(0));
+        assertThat(comparator.compare(document(largerId), new Document("_id", largerId).append("other", 1)), is(0));
+    }
+
+    @Test
+    public void testCompareNumbersOfDifferentTypes() {
+        assertThat(comparator.compare(document(1), document(1L)), is(0));
+        assertThat(comparator.compare(document(1.0), document(1)), is(0));
+        assertThat(comparator.compare(document((short) 1), document((byte) 1)), is(0));
+        assertThat(comparator.compare(document(Decimal128.parse("1.0")), document(1.0)), is(0));
+        assertThat(comparator.compare(document(-0.0), document(0)), is(0));
+        assertThat(comparator.compare(document(Decimal128.NEGATIVE_ZERO), document(0.0)), is(0));
+        assertThat(comparator.compare(document(Double.NaN), document(Decimal128.NaN)), is(0));
+        assertThat(comparator.compare(document(Double.POSITIVE_INFINITY), document(Decimal128.POSITIVE_INFINITY)), is(0));
+    }
+
+    @Test
+    public void testCompareEmbeddedDocumentsOfSameFields() {
+        assertThat(comparator.compare(document(new Document("a", 1).append("b", Arrays.asList("x"))),
+                document(new Document("a", 1L).append("b", Arrays.asList("x")))), is(0));
+        assertThat(comparator.compare(document(new byte[]{1, 2}), document(new Binary(new byte[]{1, 2}))), is(0));
+        assertThat(comparator.compare(document(new MaxKey()), document(new MaxKey())), is(0));
+    }
+}
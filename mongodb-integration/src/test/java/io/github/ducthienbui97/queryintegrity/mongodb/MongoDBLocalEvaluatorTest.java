@@ -0,0 +1,224 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.google.common.collect.ImmutableList;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import lombok.val;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MongoDBLocalEvaluatorTest {
+    private static final String DATABASE_NAME = "testDb";
+    private static final String COLLECTION_NAME = "testCollectionName";
+    private static final List<Document> DOCUMENTS = ImmutableList.of(
+            new Document("_id", 0).append("number", 1).append("text", "apple").append("tags", asList("a", "b"))
+                    .append("nested", new Document("name", "x").append("value", 5)),
+            new Document("_id", 1).append("number", 2.5).append("text", "Banana").append("tags", Collections.emptyList())
+                    .append("nested", new Document("name", "y")),
+            new Document("_id", 2).append("number", 10L).append("text", null)
+                    .append("items", asList(new Document("price", 3), new Document("price", asList(7, 8)))),
+            new Document("_id", 3).append("text", "cherry").append("tags", "a").append("mixed", "5"),
+            new Document("_id", 4).append("number", -7).append("mixed", 5)
+                    .append("items", asList(new Document("price", 12), "loose")).append("date", new Date(1000)));
+    private static MongoServer mongoServer;
+    private static MongoClient mongoClient;
+    private static MongoCollection<Document> collection;
+    private final MongoDBLocalEvaluator evaluator = new MongoDBLocalEvaluator(DOCUMENTS);
+
+    private static Stream<Arguments> filterWithMatches() {
+        return Stream.of(
+                Arguments.of(new Document(), asList(0, 1, 2, 3, 4)),
+                Arguments.of(Filters.eq("number", 1), asList(0)),
+                Arguments.of(Filters.eq("number", 2.5), asList(1)),
+                Arguments.of(Filters.eq("number", 10), asList(2)),
+                Arguments.of(Filters.eq("number", new Decimal128(10)), asList(2)),
+                Arguments.of(Filters.gt("number", 1), asList(1, 2)),
+                Arguments.of(Filters.gte("number", 1L), asList(0, 1, 2)),
+                Arguments.of(Filters.lt("number", 0), asList(4)),
+                Arguments.of(Filters.lte("number", 2.5), asList(0, 1, 4)),
+                Arguments.of(Filters.ne("number", 1), asList(1, 2, 3, 4)),
+                Arguments.of(Filters.gt("number", "1"), asList()),
+                Arguments.of(Filters.eq("text", null), asList(2, 4)),
+                Arguments.of(Filters.gt("text", null), asList()),
+                Arguments.of(Filters.ne("text", null), asList(0, 1, 3)),
+                Arguments.of(Filters.exists("text"), asList(0, 1, 2, 3)),
+                Arguments.of(Filters.exists("text", false), asList(4)),
+                Arguments.of(Filters.regex("text", "^[a-c]"), asList(0, 3)),
+                Arguments.of(Filters.regex("text", "^[a-c]", "i"), asList(0, 1, 3)),
+                Arguments.of(Filters.eq("text", Pattern.compile("an")), asList(1)),
+                Arguments.of(Filters.not(Filters.regex("text", "an")), asList(0, 2, 3, 4)),
+                Arguments.of(Filters.gt("text", "b"), asList(3)),
+                Arguments.of(Filters.in("text", "apple", "cherry"), asList(0, 3)),
+                Arguments.of(Filters.nin("text", "apple", "cherry"), asList(1, 2, 4)),
+                Arguments.of(Filters.eq("tags", "a"), asList(0, 3)),
+                Arguments.of(Filters.eq("tags", asList("a", "b")), asList(0)),
+                Arguments.of(Filters.size("tags", 2), asList(0)),
+                Arguments.of(Filters.size("tags", 0), asList(1)),
+                Arguments.of(Filters.eq("nested", new Document("name", "y")), asList(1)),
+                Arguments.of(Filters.eq("nested.name", "y"), asList(1)),
+                Arguments.of(Filters.gte("nested.name", "x"), asList(0, 1)),
+                Arguments.of(Filters.regex("nested.name", "x|z"), asList(0)),
+                Arguments.of(Filters.exists("nested.value"), asList(0)),
+                Arguments.of(Filters.eq("nested.missing", null), asList(0, 1, 2, 3, 4)),
+                Arguments.of(Filters.gt("items.price", 10), asList(4)),
+                Arguments.of(Filters.eq("items.price", 8), asList(2)),
+                Arguments.of(Filters.lt("items.price", 5), asList(2)),
+                Arguments.of(Filters.gt("mixed", 1), asList(4)),
+                Arguments.of(Filters.eq("mixed", "5"), asList(3)),
+                Arguments.of(Filters.mod("number", 3, 1), asList(0, 2)),
+                Arguments.of(Filters.mod("mixed", 5, 0), asList(4)),
+                Arguments.of(Filters.gt("date", new Date(0)), asList(4)),
+                Arguments.of(Filters.not(Filters.gt("number", 1)), asList(0, 3, 4)),
+                Arguments.of(Filters.and(Filters.gte("number", 1), Filters.eq("tags", "a")), asList(0)),
+                Arguments.of(Filters.or(Filters.eq("text", "apple"), Filters.eq("number", 10)), asList(0, 2)),
+                Arguments.of(Filters.nor(Filters.exists("text")), asList(4)),
+                Arguments.of(new Document("number", new Document("$gt", 0).append("$lt", 5)), asList(0, 1)),
+                Arguments.of(new Document("number", new Document("$exists", 1)), asList(0, 1, 2, 4)),
+                Arguments.of(new Document("text", new Document("$regex", "A").append("$options", "i")), asList(0, 1)));
+    }
+
+    private static Stream<Bson> unsupportedFilter() {
+        return Stream.of(
+                Filters.all("tags", "a"),
+                Filters.elemMatch("items", Filters.eq("price", 3)),
+                Filters.type("number", "double"),
+                Filters.where("true"),
+                Filters.eq("tags.0", "a"),
+                Filters.size("items.price", 2),
+                Filters.eq("items.price", asList(7, 8)),
+                Filters.gt("nested", new Document("name", "x")),
+                Filters.lt("tags", asList("a")),
+                Filters.regex("text", "a", "u"),
+                new BsonDocument("text", new BsonDocument("$regex", new BsonInt32(1))),
+                new Document("text", new Document("$options", "i")),
+                Filters.mod("number", 0, 0),
+                new Document("number", new Document("$mod", asList(1))),
+                new Document("tags", new Document("$size", "2")),
+                new Document("$expr", new Document("$eq", asList("$number", 1))));
+    }
+
+    @BeforeAll
+    public static void initializeMongoServer() {
+        mongoServer = new MongoServer(new MemoryBackend());
+        val address = mongoServer.bind();
+        mongoClient = MongoClients.create("mongodb://" + address.getHostName() + ":" + address.getPort() + "/");
+        collection = mongoClient.getDatabase(DATABASE_NAME).getCollection(COLLECTION_NAME);
+        collection.insertMany(DOCUMENTS.stream().map(Document::new).collect(Collectors.toList()));
+    }
+
+    @AfterAll
+    public static void pullDown() {
+        mongoClient.close();
+        mongoServer.shutdown();
+        mongoServer = null;
+    }
+
+    private static List<Integer> indexes(BitSet bitSet) {
+        return bitSet.stream().boxed().collect(Collectors.toList());
+    }
+
+    @ParameterizedTest
+    @MethodSource("filterWithMatches")
+    public void testEvaluate(Bson filter, List<Integer> matches) {
+        assertThat(indexes(evaluator.evaluate(filter)), equalTo(matches));
+    }
+
+    @ParameterizedTest
+    @MethodSource("filterWithMatches")
+    public void testEvaluateLikeServer(Bson filter) {
+        List<Integer> serverMatches = new ArrayList<>();
+        for (Document document : collection.find(filter)) {
+            serverMatches.add(document.getInteger("_id"));
+        }
+        serverMatches.sort(Comparator.naturalOrder());
+        assertThat(indexes(evaluator.evaluate(filter)), equalTo(serverMatches));
+    }
+
+    @ParameterizedTest
+    @MethodSource("unsupportedFilter")
+    public void testUnsupportedFilter(Bson filter) {
+        assertThrows(UnsupportedOperationException.class, () -> evaluator.evaluate(filter));
+    }
+
+    @Test
+    public void testColumns() {
+        assertThat(evaluator.size(), is(5));
+        // _id, number, text, tags, nested, nested.name, nested.value, items, items.price, mixed, date.
+        assertThat(evaluator.getColumnCount(), is(11));
+        MongoDBLocalEvaluator emptyEvaluator = new MongoDBLocalEvaluator(Collections.emptyList());
+        assertThat(emptyEvaluator.size(), is(0));
+        assertThat(emptyEvaluator.evaluate(Filters.exists("number", false)).isEmpty(), is(true));
+    }
+
+    @Test
+    public void testNullBounds() {
+        // The embedded server does not match null and missing fields with $gte and $lte null as MongoDB does.
+        assertThat(indexes(evaluator.evaluate(Filters.gte("text", null))), equalTo(asList(2, 4)));
+        assertThat(indexes(evaluator.evaluate(Filters.lte("number", null))), equalTo(asList(3)));
+    }
+
+    @Test
+    public void testNaN() {
+        MongoDBLocalEvaluator nanEvaluator = new MongoDBLocalEvaluator(asList(
+                new Document("number", Double.NaN), new Document("number", 1L << 60),
+                new Document("number", Double.POSITIVE_INFINITY), new Document("number", Decimal128.NaN)));
+        assertThat(indexes(nanEvaluator.evaluate(Filters.eq("number", Double.NaN))), equalTo(asList(0, 3)));
+        assertThat(indexes(nanEvaluator.evaluate(Filters.lt("number", 0))), equalTo(asList(0, 3)));
+        assertThat(indexes(nanEvaluator.evaluate(Filters.gt("number", 1L << 59))), equalTo(asList(1, 2)));
+        assertThat(indexes(nanEvaluator.evaluate(Filters.eq("number", (1L << 60) + 1))), equalTo(asList()));
+        assertThat(indexes(nanEvaluator.evaluate(Filters.gt("number", Double.MAX_VALUE))), equalTo(asList(2)));
+        assertThat(indexes(nanEvaluator.evaluate(Filters.lt("number", new Decimal128(1)))), equalTo(asList(0, 3)));
+        assertThat(indexes(nanEvaluator.evaluate(Filters.mod("number", 2, 0))), equalTo(asList(1)));
+        assertThrows(UnsupportedOperationException.class,
+                () -> nanEvaluator.evaluate(Filters.lt("number", Decimal128.POSITIVE_INFINITY)));
+    }
+
+    @Test
+    public void testParallelScan() {
+        int documentCount = MongoDBLocalEvaluator.CHUNK_SIZE * 3 + 101;
+        List<Document> documents = IntStream.range(0, documentCount)
+                .mapToObj(i -> new Document("number", i).append("text", String.valueOf(i % 10)))
+                .collect(Collectors.toList());
+        MongoDBLocalEvaluator largeEvaluator = new MongoDBLocalEvaluator(documents);
+        assertThat(largeEvaluator.evaluate(Filters.gte("number", 5000)).cardinality(), is(documentCount - 5000));
+        assertThat(largeEvaluator.evaluate(Filters.gte("number", 5000)).nextSetBit(0), is(5000));
+        int sevenCount = (int) IntStream.range(0, documentCount).filter(i -> i % 10 == 7).count();
+        BitSet sevens = largeEvaluator.evaluate(Filters.eq("text", "7"));
+        assertThat(sevens.cardinality(), is(sevenCount));
+        assertThat(sevens.stream().allMatch(i -> i % 10 == 7), is(true));
+        BitSet notSevens = largeEvaluator.evaluate(Filters.nor(Filters.eq("text", "7")));
+        assertThat(notSevens.cardinality(), is(documentCount - sevenCount));
+        assertThat(notSevens.get(documentCount - 1), is(true));
+    }
+
+    @Test
+    public void argumentsMustNotBeNull() {
+        assertThrows(NullPointerException.class, () -> new MongoDBLocalEvaluator(null));
+        assertThrows(NullPointerException.class, () -> evaluator.evaluate(null));
+    }
+}
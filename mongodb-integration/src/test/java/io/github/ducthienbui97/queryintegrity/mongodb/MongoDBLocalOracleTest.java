@@ -0,0 +1,228 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import de.bwaldvogel.mongo.MongoServer;
+import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.github.ducthienbui97.queryintegrity.core.QueryGenerator;
+import io.github.ducthienbui97.queryintegrity.core.QueryProxy;
+import io.github.ducthienbui97.queryintegrity.core.QueryTestingService;
+import lombok.val;
+import org.bson.BsonBoolean;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class MongoDBLocalOracleTest {
+    private static final String DATABASE_NAME = "testDb";
+    private static final String COLLECTION_NAME = "testCollectionName";
+    private static final int DOCUMENT_COUNT = 60;
+    private static final Random RANDOM = new Random(42);
+    private static MongoServer mongoServer;
+    private static String mongoURI;
+    private MongoDBQueryFactory queryFactory;
+
+    private static Map<String, Map<String, Collection<Collection<Object>>>> fieldOptions() {
+        return ImmutableMap.of(
+                "number", ImmutableMap.of(
+                        "gte", ImmutableList.of(singletonList(10), singletonList(25.5)),
+                        "lt", singletonList(singletonList(40L)),
+                        "mod", ImmutableList.of(ImmutableList.of(3L, 0L), ImmutableList.of(5L, 1L))),
+                "text", ImmutableMap.of(
+                        "exists", ImmutableList.of(emptyList(), singletonList(false)),
+                        "regex", singletonList(singletonList("^1.*")),
+                        "in", singletonList(singletonList(ImmutableList.of("2", "3", "5")))),
+                "tags", ImmutableMap.of(
+                        "eq", singletonList(singletonList("even")),
+                        "size", singletonList(singletonList(2))),
+                "nested.value", ImmutableMap.of(
+                        "lte", singletonList(singletonList(20)),
+                        "ne", singletonList(singletonList(null))));
+    }
+
+    @BeforeAll
+    public static void initializeMongoServer() {
+        mongoServer = new MongoServer(new MemoryBackend());
+        val address = mongoServer.bind();
+        mongoURI = "mongodb://" + address.getHostName() + ":" + address.getPort() + "/";
+        try (MongoClient mongoClient = MongoClients.create(mongoURI)) {
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < DOCUMENT_COUNT; i++) {
+                Document document = new Document("number", i % 7 == 0 ? (Object) (i + 0.5) : (Object) i);
+                if (i % 4 != 0) {
+                    document.append("text", String.valueOf(i));
+                }
+                document.append("tags", i % 2 == 0 ? asList("even", String.valueOf(i)) : singletonList("odd"));
+                if (i % 3 != 0) {
+                    document.append("nested", new Document("value", i % 30).append("other", i));
+                }
+                documents.add(document);
+            }
+            mongoClient.getDatabase(DATABASE_NAME).getCollection(COLLECTION_NAME).insertMany(documents);
+        }
+    }
+
+    @AfterAll
+    public static void pullDown() {
+        mongoServer.shutdown();
+        mongoServer = null;
+    }
+
+    @BeforeEach
+    public void setup() {
+        queryFactory = new MongoDBQueryFactory(MongoDBQueryFactoryOptions.builder()
+                .connectionString(mongoURI)
+                .databaseName(DATABASE_NAME)
+                .collectionName(COLLECTION_NAME)
+                .fieldOptions(fieldOptions())
+                .build());
+    }
+
+    private static BsonDocument toBsonDocument(Bson bson) {
+        return bson.toBsonDocument(BsonDocument.class, MongoClientSettings.getDefaultCodecRegistry());
+    }
+
+    private void assertResultsEqualServerResults(MongoDBLocalOracle localOracle) {
+        QueryGenerator<Bson> queryGenerator = new QueryGenerator<>(queryFactory);
+        for (int i = 0; i < 100; i++) {
+            QueryProxy<Bson> queryProxy = queryGenerator.generate(RANDOM.nextInt(6) + 1, RANDOM);
+            assertThat(queryProxy.toString(), localOracle.getResult(queryProxy),
+                    equalTo(queryFactory.getResult(queryFactory.build(queryProxy))));
+        }
+        assertThat(localOracle.getFallbackCount(), is(0L));
+    }
+
+    @Test
+    public void testResultsEqualServerResults() {
+        assertResultsEqualServerResults(new MongoDBLocalOracle(queryFactory));
+    }
+
+    @Test
+    public void testFullDocumentResultsEqualServerResults() {
+        queryFactory.setProjectionFields(null);
+        assertResultsEqualServerResults(new MongoDBLocalOracle(queryFactory));
+    }
+
+    @Test
+    public void testProjectedResultsEqualServerResults() {
+        queryFactory.setProjectionFields(asList("text", "nested.value"));
+        assertResultsEqualServerResults(new MongoDBLocalOracle(queryFactory));
+    }
+
+    @Test
+    public void testLimitIsRejected() {
+        MongoDBLocalOracle localOracle = new MongoDBLocalOracle(queryFactory);
+        Collection<Document> documents = queryFactory.getSnapshot();
+        queryFactory.setLimit(5);
+        assertThrows(IllegalArgumentException.class, () -> new MongoDBLocalOracle(queryFactory));
+        assertThrows(IllegalArgumentException.class, () -> new MongoDBLocalOracle(queryFactory, documents));
+        // The limit is set before the snapshot is read.
+        assertThrows(IllegalArgumentException.class, localOracle::getSnapshotSize);
+    }
+
+    @Test
+    public void testResultsInOtherOrderAreValid() {
+        List<Document> documents = new ArrayList<>(queryFactory.getSnapshot());
+        Collections.reverse(documents);
+        MongoDBLocalOracle localOracle = new MongoDBLocalOracle(queryFactory, documents);
+        QueryProxy<Bson> queryProxy = new QueryGenerator<>(queryFactory).generate(1, RANDOM);
+        Collection<Document> expectedResult = localOracle.getResult(queryProxy.or(queryProxy.reverse()));
+        Collection<Document> result = queryFactory.getResult(queryFactory.build(queryProxy.or(queryProxy.reverse())));
+        assertThat(expectedResult, not(equalTo(result)));
+        assertThat(new HashSet<>(expectedResult), equalTo(new HashSet<>(result)));
+
+        QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(queryFactory);
+        queryTestingService.setQueryOracle(localOracle);
+        assertThat(queryTestingService.runNotTest(20), is(0));
+        assertThat(queryTestingService.runEqualTest(20), is(0));
+        assertThat(queryTestingService.runSubsetTest(20), is(0));
+    }
+
+    @Test
+    public void testNoInvalidResult() {
+        QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(queryFactory);
+        queryTestingService.setQueryOracle(new MongoDBLocalOracle(queryFactory));
+        assertThat(queryTestingService.runNotTest(20), is(0));
+        assertThat(queryTestingService.runEqualTest(20), is(0));
+        assertThat(queryTestingService.runSubsetTest(20), is(0));
+    }
+
+    @Test
+    public void testSnapshotIsReadOnce() {
+        MongoDBQueryFactory spyQueryFactory = spy(queryFactory);
+        MongoDBLocalOracle localOracle = new MongoDBLocalOracle(spyQueryFactory);
+        verify(spyQueryFactory, never()).getSnapshot();
+        assertThat(localOracle.getSnapshotSize(), is(DOCUMENT_COUNT));
+        QueryGenerator<Bson> queryGenerator = new QueryGenerator<>(spyQueryFactory);
+        for (int i = 0; i < 10; i++) {
+            localOracle.getResult(queryGenerator.generate(3, RANDOM));
+        }
+        verify(spyQueryFactory, times(1)).getSnapshot();
+        verify(spyQueryFactory, never()).getResult(any());
+    }
+
+    @Test
+    public void testUnsupportedQueryIsSentToServer() {
+        MongoDBLocalOracle localOracle = new MongoDBLocalOracle(queryFactory);
+        Bson query = Filters.all("tags", "even", "10");
+        QueryProxy<Bson> queryProxy = QueryProxy.<Bson>builder()
+                .nativeQuery(query)
+                .queryType(QueryProxy.QueryType.NATIVE)
+                .build();
+        assertThat(localOracle.getResult(queryProxy), equalTo(queryFactory.getResult(query)));
+        assertThat(localOracle.getResult(queryProxy).size(), is(1));
+        assertThat(localOracle.getFallbackCount(), is(2L));
+        assertThat(localOracle.getQueryCount(), is(2L));
+    }
+
+    @Test
+    public void testProject() {
+        Document document = new Document("_id", 1)
+                .append("a", 2)
+                .append("b", new Document("c", 3).append("d", 4))
+                .append("e", asList(new Document("c", 5).append("f", 6), 7, new Document("f", 8)))
+                .append("g", 9);
+        BsonDocument projection = toBsonDocument(Projections.include("g", "b.c", "e.c", "missing"));
+        assertThat(MongoDBLocalOracle.project(document, projection), equalTo(new Document("_id", 1)
+                .append("b", new Document("c", 3))
+                .append("e", asList(new Document("c", 5), new Document()))
+                .append("g", 9)));
+        projection = toBsonDocument(Projections.fields(Projections.include("a", "b"), Projections.excludeId()));
+        assertThat(MongoDBLocalOracle.project(document, projection),
+                equalTo(new Document("a", 2).append("b", new Document("c", 3).append("d", 4))));
+        assertThat(MongoDBLocalOracle.project(document, new BsonDocument("a", BsonBoolean.TRUE)),
+                equalTo(new Document("_id", 1).append("a", 2)));
+        assertThrows(IllegalArgumentException.class,
+                () -> MongoDBLocalOracle.project(document, toBsonDocument(Projections.exclude("a"))));
+    }
+
+    @Test
+    public void argumentsCantBeNull() {
+        assertThrows(NullPointerException.class, () -> new MongoDBLocalOracle(null));
+        assertThrows(NullPointerException.class, () -> new MongoDBLocalOracle(null, emptyList()));
+        assertThrows(NullPointerException.class, () -> new MongoDBLocalOracle(queryFactory, null));
+        assertThrows(NullPointerException.class, () -> new MongoDBLocalOracle(queryFactory).getResult(null));
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.google.common.collect.ImmutableList;
+import com.mongodb.client.model.Filters;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MongoDBOperatorRegistryTest {
+    private final MongoDBOperatorRegistry operatorRegistry = new MongoDBOperatorRegistry();
+
+    private static Stream<Arguments> fieldOptionWithFilter() {
+        Date date = new Date();
+        List<Object> values = ImmutableList.of("test", "testing", "yo");
+        return Stream.of(
+                Arguments.of("exists", emptyList(), Filters.exists("field")),
+                Arguments.of("exists", singletonList(false), Filters.exists("field", false)),
+                Arguments.of("gt", singletonList(date), Filters.gt("field", date)),
+                Arguments.of("eq", singletonList(null), Filters.eq("field", null)),
+                Arguments.of("regex", singletonList("tes.*"), Filters.regex("field", "tes.*")),
+                Arguments.of("regex", Arrays.asList("tes.*", "i"), Filters.regex("field", "tes.*", "i")),
+                Arguments.of("in", singletonList(values), Filters.in("field", values)),
+                Arguments.of("nin", singletonList(values), Filters.nin("field", values)),
+                Arguments.of("size", singletonList(3), Filters.size("field", 3)),
+                // Integers parsed from json are widened to the long parameters.
+                Arguments.of("mod", Arrays.asList(10, 0), Filters.mod("field", 10, 0)),
+                Arguments.of("mod", Arrays.asList(99L, 1L), Filters.mod("field", 99, 1)));
+    }
+
+    private static MongoDBFieldOption fieldOption(String operator, List<Object> parameters) {
+        return MongoDBFieldOption.builder()
+                .fieldName("field")
+                .operator(operator)
+                .parameters(parameters)
+                .build();
+    }
+
+    @ParameterizedTest
+    @MethodSource("fieldOptionWithFilter")
+    public void testBuildFilter(String operator, List<Object> parameters, Bson filter) {
+        assertThat(operatorRegistry.build(fieldOption(operator, parameters)), equalTo(filter));
+        // Built again from the cached handle.
+        assertThat(operatorRegistry.build(fieldOption(operator, parameters)), equalTo(filter));
+    }
+
+    @Test
+    public void testUnknownOperator() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> operatorRegistry.build(fieldOption("test", emptyList())));
+        assertThat(exception.getMessage(), containsString("Filters has no operator test"));
+    }
+
+    @Test
+    public void testNoMethodTakesParameters() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> operatorRegistry.build(fieldOption("gt", Collections.emptyList())));
+        assertThat(exception.getMessage(), containsString("No Filters.gt method takes arguments"));
+        exception = assertThrows(IllegalArgumentException.class,
+                () -> operatorRegistry.build(fieldOption("exists", singletonList("true"))));
+        assertThat(exception.getMessage(), containsString("No Filters.exists method takes arguments"));
+        exception = assertThrows(IllegalArgumentException.class,
+                () -> operatorRegistry.build(fieldOption("mod", Arrays.asList(1.5, 0))));
+        assertThat(exception.getMessage(), containsString("No Filters.mod method takes arguments"));
+    }
+
+    @Test
+    public void testAmbiguousMethods() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> operatorRegistry.build(fieldOption("in", singletonList(null))));
+        assertThat(exception.getMessage(), containsString("More than 1 Filters.in method takes arguments"));
+    }
+
+    @Test
+    public void testMethodRejectsParameters() {
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> operatorRegistry.build(fieldOption("regex", Arrays.asList(null, "i"))));
+        assertThat(exception.getMessage(), containsString("Filters.regex failed for parameters [null, i]"));
+    }
+}
@@ -1,17 +1,29 @@
 package io.github.ducthienbui97.queryintegrity.mongodb;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.mongodb.client.model.Filters;
 import de.bwaldvogel.mongo.MongoDatabase;
 import de.bwaldvogel.mongo.MongoServer;
 import de.bwaldvogel.mongo.backend.CollectionOptions;
 import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
+import io.netty.channel.Channel;
+import io.github.ducthienbui97.queryintegrity.core.Histogram;
+import io.github.ducthienbui97.queryintegrity.core.HistogramQueryMetrics;
 import io.github.ducthienbui97.queryintegrity.core.QueryProxy;
+import io.github.ducthienbui97.queryintegrity.core.QueryTestingService;
+import io.github.ducthienbui97.queryintegrity.core.RelationType;
+import io.github.ducthienbui97.queryintegrity.core.SetAlgebraOracle;
+import io.github.ducthienbui97.queryintegrity.core.StreamingResultValidator;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.hamcrest.Description;
@@ -27,12 +39,17 @@ import java.text.DateFormat;
 import java.time.Instant;
 import java.time.Period;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
 
 @Slf4j
 public class MongoDBQueryFactoryTest {
@@ -256,6 +273,369 @@ public class MongoDBQueryFactoryTest {
                 containsString(data.getObjectId("_id").toString())));
     }
 
+    @RepeatedTest(100)
+    public void testResultIteratorSortedById() {
+        QueryProxy<Bson> queryProxy = buildNativeQuery().or(buildNativeQuery().reverse());
+        Bson query = mongoDBQueryFactory.build(queryProxy);
+        List<Document> sortedResult = new ArrayList<>();
+        mongoDBQueryFactory.getResultIterator(query).forEachRemaining(sortedResult::add);
+        List<Document> result = new ArrayList<>(mongoDBQueryFactory.getResult(query));
+        result.sort(new MongoDBIdComparator());
+        assertThat(sortedResult, equalTo(result));
+    }
+
+    @RepeatedTest(10)
+    public void testStreamingValidationHasNoInvalidResult() {
+        QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(mongoDBQueryFactory);
+        queryTestingService.setStreamingResultValidator(StreamingResultValidator.of(new MongoDBIdComparator()));
+        assertThat(queryTestingService.runNotTest(10), is(0));
+        assertThat(queryTestingService.runEqualTest(10), is(0));
+        assertThat(queryTestingService.runSubsetTest(10), is(0));
+    }
+
+    @RepeatedTest(10)
+    public void testBuildWithSameSeedIsReproducible() {
+        long seed = new Random().nextLong();
+        Random random1 = new Random(seed);
+        Random random2 = new Random(seed);
+        for (int i = 0; i < 10; i++) {
+            assertThat(mongoDBQueryFactory.build(random1), equalTo(mongoDBQueryFactory.build(random2)));
+        }
+    }
+
+    @Test
+    public void testFacetResultsEqualFindResults() {
+        List<Bson> queries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            queries.add(mongoDBQueryFactory.build(QueryProxy.<Bson>builder()
+                    .queryType(QueryProxy.QueryType.OR)
+                    .children(Arrays.asList(buildNativeQuery(), buildNativeQuery().reverse()))
+                    .build()));
+            queries.add(mongoDBQueryFactory.build());
+        }
+        mongoDBQueryFactory.setFacetEnabled(true);
+        Map<Bson, Collection<Document>> results = mongoDBQueryFactory.getResults(new LinkedHashSet<>(queries));
+        for (Bson query : queries) {
+            assertThat(results.get(query), equalTo(mongoDBQueryFactory.getResult(query)));
+        }
+    }
+
+    @Test
+    public void testFacetFallsBackToFindOnDocumentTooLarge() {
+        MongoDBQueryFactory spyQueryFactory = spy(mongoDBQueryFactory);
+        doThrow(new MongoCommandException(new BsonDocument("code", new BsonInt32(10334)), new ServerAddress()))
+                .when(spyQueryFactory).getFacetResult(any());
+        spyQueryFactory.setFacetEnabled(true);
+        List<Bson> queries = Arrays.asList(Filters.exists("text"), Filters.exists("number"));
+        Map<Bson, Collection<Document>> results = spyQueryFactory.getResults(queries);
+        for (Bson query : queries) {
+            assertThat(results.get(query), equalTo(mongoDBQueryFactory.getResult(query)));
+        }
+        verify(spyQueryFactory).getFacetResult(queries);
+        verify(spyQueryFactory, times(2)).getResult(any());
+    }
+
+    @Test
+    public void testFacetThrowsOtherCommandError() {
+        MongoDBQueryFactory spyQueryFactory = spy(mongoDBQueryFactory);
+        doThrow(new MongoCommandException(new BsonDocument("code", new BsonInt32(50)), new ServerAddress()))
+                .when(spyQueryFactory).getFacetResult(any());
+        spyQueryFactory.setFacetEnabled(true);
+        List<Bson> queries = Arrays.asList(Filters.exists("text"), Filters.exists("number"));
+        MongoCommandException exception = assertThrows(MongoCommandException.class,
+                () -> spyQueryFactory.getResults(queries));
+        assertThat(exception.getErrorCode(), is(50));
+        verify(spyQueryFactory, never()).getResult(any());
+    }
+
+    @Test
+    public void testSampledQueriesAreExplained() {
+        mongoDBQueryFactory.setExplainSampleRate(1);
+        mongoDBQueryFactory.setProjectionFields(AbstractMongoDBQueryFactory.DEFAULT_PROJECTION_FIELDS);
+        mongoDBQueryFactory.setLimit(10);
+        mongoDBQueryFactory.setMaxTime(1, TimeUnit.MINUTES);
+        Bson query = Filters.exists("text");
+        mongoDBQueryFactory.getResult(query);
+        assertThat(mongoDBQueryFactory.getQueryPlans().size(), is(1));
+        de.bwaldvogel.mongo.bson.Document explain = Backend.lastExplain;
+        assertThat(explain.get("verbosity"), equalTo("executionStats"));
+        de.bwaldvogel.mongo.bson.Document find = (de.bwaldvogel.mongo.bson.Document) explain.get("explain");
+        assertThat(find.get("find"), equalTo(COLLECTION_NAME));
+        assertThat(find.get("filter").toString(), containsString("$exists"));
+        assertThat(find.get("projection").toString(), containsString("_id"));
+        assertThat(find.get("limit"), equalTo(10));
+        assertThat(find.get("maxTimeMS"), equalTo(60000L));
+        Lists.newArrayList(mongoDBQueryFactory.getResultIterator(query));
+
+        List<MongoDBQueryPlan> queryPlans = mongoDBQueryFactory.getQueryPlans();
+        assertThat(queryPlans.size(), is(2));
+        for (MongoDBQueryPlan queryPlan : queryPlans) {
+            assertThat(queryPlan.getQuery(), equalTo(query));
+            assertThat(queryPlan.getPlanShape(), equalTo("PROJECTION_SIMPLE(COLLSCAN)"));
+            assertThat(queryPlan.isCollectionScan(), is(true));
+            assertThat(queryPlan.getExaminedRatio(), is((double) TEST_DATA.size()));
+            assertThat(queryPlan.getExecutionTimeMillis(), is(5L));
+        }
+        assertThat(mongoDBQueryFactory.getFlaggedQueryPlans().isEmpty(), is(true));
+        mongoDBQueryFactory.setPlanThresholds(TEST_DATA.size() - 1, 0, TimeUnit.MILLISECONDS);
+        assertThat(mongoDBQueryFactory.getFlaggedQueryPlans(), equalTo(queryPlans));
+        mongoDBQueryFactory.setPlanThresholds(0, 1, TimeUnit.SECONDS);
+        assertThat(mongoDBQueryFactory.getFlaggedQueryPlans().isEmpty(), is(true));
+        mongoDBQueryFactory.setPlanThresholds(TEST_DATA.size(), 4, TimeUnit.MILLISECONDS);
+        assertThat(mongoDBQueryFactory.getFlaggedQueryPlans(), equalTo(queryPlans));
+        // A flagged plan is logged when it is recorded.
+        mongoDBQueryFactory.getResult(query);
+        assertThat(mongoDBQueryFactory.getFlaggedQueryPlans().size(), is(3));
+    }
+
+    @Test
+    public void testFacetQueriesAreExplained() {
+        mongoDBQueryFactory.setFacetEnabled(true);
+        mongoDBQueryFactory.setExplainSampleRate(1);
+        mongoDBQueryFactory.getResults(Arrays.asList(Filters.exists("text"), Filters.exists("number")));
+        assertThat(mongoDBQueryFactory.getQueryPlans().size(), is(2));
+        de.bwaldvogel.mongo.bson.Document find = (de.bwaldvogel.mongo.bson.Document) Backend.lastExplain.get("explain");
+        assertThat(find.containsKey("projection"), is(false));
+        assertThat(find.containsKey("limit"), is(false));
+        assertThat(find.containsKey("maxTimeMS"), is(false));
+    }
+
+    @Test
+    public void testExplainFailureDoesNotFailQuery() {
+        MongoDBQueryFactory spyQueryFactory = spy(mongoDBQueryFactory);
+        doThrow(new MongoCommandException(new BsonDocument("code", new BsonInt32(59)), new ServerAddress()))
+                .when(spyQueryFactory).explainCommand(any());
+        spyQueryFactory.setExplainSampleRate(1);
+        Bson query = Filters.exists("text");
+        assertThat(spyQueryFactory.getResult(query), equalTo(mongoDBQueryFactory.getResult(query)));
+        assertThat(spyQueryFactory.getQueryPlans().isEmpty(), is(true));
+        doReturn(new Document("ok", 1)).when(spyQueryFactory).explainCommand(any());
+        assertThat(spyQueryFactory.getResult(query), equalTo(mongoDBQueryFactory.getResult(query)));
+        assertThat(spyQueryFactory.getQueryPlans().isEmpty(), is(true));
+        verify(spyQueryFactory, times(2)).explainCommand(query);
+    }
+
+    @Test
+    public void testExplainIsNotTimedWithResult() {
+        long explainMillis = 300;
+        MongoDBQueryFactory spyQueryFactory = spy(mongoDBQueryFactory);
+        doAnswer(invocation -> {
+            Thread.sleep(explainMillis);
+            return invocation.callRealMethod();
+        }).when(spyQueryFactory).explainCommand(any());
+        spyQueryFactory.setExplainSampleRate(1);
+        QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(spyQueryFactory);
+        HistogramQueryMetrics queryMetrics = new HistogramQueryMetrics();
+        queryTestingService.setQueryMetrics(queryMetrics);
+        assertThat(queryTestingService.runNotTest(2), is(0));
+        Histogram resultLatency = queryMetrics.getRelationMetrics(RelationType.NOT).getResultLatency();
+        assertThat(resultLatency.getCount(), is(4L));
+        assertThat(resultLatency.getMax() < TimeUnit.MILLISECONDS.toNanos(explainMillis), is(true));
+        assertThat(spyQueryFactory.getQueryPlans().size(), is(4));
+        verify(spyQueryFactory, times(4)).explainCommand(any());
+    }
+
+    @Test
+    public void testDoneExplainsAreNotPending() {
+        mongoDBQueryFactory.setExplainSampleRate(1);
+        mongoDBQueryFactory.setExplainExecutor(Runnable::run);
+        for (int i = 0; i < 5; i++) {
+            mongoDBQueryFactory.getResult(Filters.exists("text"));
+        }
+        assertThat(mongoDBQueryFactory.getPendingExplainCount(), is(0));
+        assertThat(mongoDBQueryFactory.getQueryPlans().size(), is(5));
+    }
+
+    @Test
+    public void testExplainsAreDroppedOnceQueueIsFull() throws InterruptedException {
+        CountDownLatch explainLatch = new CountDownLatch(1);
+        MongoDBQueryFactory spyQueryFactory = spy(mongoDBQueryFactory);
+        doAnswer(invocation -> {
+            explainLatch.await();
+            return invocation.callRealMethod();
+        }).when(spyQueryFactory).explainCommand(any());
+        spyQueryFactory.setExplainSampleRate(1);
+        // One explain runs and blocks the executor, the following ones wait for it until the queue is full.
+        for (int i = 0; i < MongoDBQueryFactory.MAX_QUEUED_EXPLAINS + 10; i++) {
+            spyQueryFactory.getResult(Filters.exists("text"));
+        }
+        assertThat(spyQueryFactory.getDroppedExplainCount(), is(9L));
+        assertThat(spyQueryFactory.getPendingExplainCount(), is(MongoDBQueryFactory.MAX_QUEUED_EXPLAINS + 1));
+        explainLatch.countDown();
+        assertThat(spyQueryFactory.getQueryPlans().size(), is(MongoDBQueryFactory.MAX_QUEUED_EXPLAINS + 1));
+        assertThat(spyQueryFactory.getPendingExplainCount(), is(0));
+
+        // A rejecting executor drops every explain.
+        spyQueryFactory.setExplainExecutor(runnable -> {
+            throw new RejectedExecutionException("rejected");
+        });
+        spyQueryFactory.getResult(Filters.exists("text"));
+        assertThat(spyQueryFactory.getDroppedExplainCount(), is(10L));
+    }
+
+    @Test
+    public void testQueriesAreNotExplainedByDefault() {
+        MongoDBQueryFactory spyQueryFactory = spy(mongoDBQueryFactory);
+        QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(spyQueryFactory);
+        assertThat(queryTestingService.runNotTest(10), is(0));
+        verify(spyQueryFactory, never()).explainCommand(any());
+        assertThat(spyQueryFactory.getQueryPlans().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testExplainOptionsMustBeValid() {
+        assertThrows(IllegalArgumentException.class, () -> mongoDBQueryFactory.setExplainSampleRate(-0.1));
+        assertThrows(IllegalArgumentException.class, () -> mongoDBQueryFactory.setExplainSampleRate(1.1));
+        assertThrows(IllegalArgumentException.class, () -> mongoDBQueryFactory.setPlanThresholds(-1, 0, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () -> mongoDBQueryFactory.setPlanThresholds(0, -1, TimeUnit.MILLISECONDS));
+        assertThrows(NullPointerException.class, () -> mongoDBQueryFactory.setPlanThresholds(0, 0, null));
+    }
+
+    @RepeatedTest(10)
+    public void testFacetBatchHasNoInvalidResult() {
+        QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(mongoDBQueryFactory);
+        mongoDBQueryFactory.setFacetEnabled(true);
+        queryTestingService.setBatchSize(1 + new Random().nextInt(10));
+        assertThat(queryTestingService.runNotTest(10), is(0));
+        assertThat(queryTestingService.runEqualTest(10), is(0));
+        assertThat(queryTestingService.runSubsetTest(10), is(0));
+    }
+
+    @Test
+    public void testResultsOnlyHaveIdByDefault() {
+        MongoDBQueryFactoryOptions options = buildFactoryOption();
+        options.setProjectionFields(MongoDBQueryFactory.DEFAULT_PROJECTION_FIELDS);
+        MongoDBQueryFactory idQueryFactory = new MongoDBQueryFactory(options);
+        idQueryFactory.setFacetEnabled(true);
+        Bson query = Filters.exists("text");
+        Collection<Document> result = idQueryFactory.getResult(query);
+        assertThat(result.size(), is(TEST_DATA.size()));
+        Set<Object> ids = new HashSet<>();
+        for (Document document : mongoDBQueryFactory.getResult(query)) {
+            ids.add(document.get("_id"));
+        }
+        List<Collection<Document>> projectedResults = Arrays.asList(result,
+                Lists.newArrayList(idQueryFactory.getResultIterator(query)),
+                idQueryFactory.getResults(Arrays.asList(query, Filters.exists("date"))).get(query));
+        for (Collection<Document> projectedResult : projectedResults) {
+            Set<Object> projectedIds = new HashSet<>();
+            for (Document document : projectedResult) {
+                assertThat(document.keySet(), is(Collections.singleton("_id")));
+                projectedIds.add(document.get("_id"));
+            }
+            assertThat(projectedIds, is(ids));
+        }
+    }
+
+    @Test
+    public void testResultsHaveProjectionFields() {
+        mongoDBQueryFactory.setProjectionFields(Arrays.asList("text", "number"));
+        for (Document document : mongoDBQueryFactory.getResult(Filters.exists("number"))) {
+            assertThat(document.keySet(), is(new HashSet<>(Arrays.asList("_id", "text", "number"))));
+        }
+        assertThat(MongoDBQueryFactoryOptions.builder()
+                .connectionString("mongodb://localhost")
+                .databaseName(DATABASE_NAME)
+                .collectionName(COLLECTION_NAME)
+                .build()
+                .getProjectionFields(), is(MongoDBQueryFactory.DEFAULT_PROJECTION_FIELDS));
+    }
+
+    @Test
+    public void testLimitKeepsFirstSortedResults() {
+        MongoDBQueryFactoryOptions options = buildFactoryOption();
+        options.setLimit(2);
+        options.setCursorBatchSize(TEST_DATA.size());
+        options.setMaxTimeMS(60000);
+        MongoDBQueryFactory limitQueryFactory = new MongoDBQueryFactory(options);
+        limitQueryFactory.setFacetEnabled(true);
+        Bson query = Filters.exists("text");
+        List<Document> sortedResult = Lists.newArrayList(mongoDBQueryFactory.getResultIterator(query));
+        assertThat(Lists.newArrayList(limitQueryFactory.getResultIterator(query)), equalTo(sortedResult.subList(0, 2)));
+        assertThat(limitQueryFactory.getResult(query).size(), is(2));
+        Map<Bson, Collection<Document>> results = limitQueryFactory.getResults(Arrays.asList(query, Filters.exists("date")));
+        assertThat(results.get(query).size(), is(2));
+        assertThat(limitQueryFactory.exists(query), is(true));
+    }
+
+    @RepeatedTest(10)
+    public void testCursorBatchSizeHasNoInvalidResult() {
+        // The embedded server only sends the first batch, so the batch size holds the whole result.
+        mongoDBQueryFactory.setCursorBatchSize(TEST_DATA.size());
+        mongoDBQueryFactory.setMaxTime(1, TimeUnit.MINUTES);
+        QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(mongoDBQueryFactory);
+        assertThat(queryTestingService.runEqualTest(10), is(0));
+        assertThat(queryTestingService.runSubsetTest(10), is(0));
+        queryTestingService.setStreamingResultValidator(StreamingResultValidator.of(new MongoDBIdComparator()));
+        mongoDBQueryFactory.setLimit(1);
+        assertThat(queryTestingService.runNotTest(10), is(0));
+        assertThat(queryTestingService.runEqualTest(10), is(0));
+    }
+
+    @Test
+    public void testCursorOptionsMustNotBeNegative() {
+        assertThrows(IllegalArgumentException.class, () -> mongoDBQueryFactory.setCursorBatchSize(-1));
+        assertThrows(IllegalArgumentException.class, () -> mongoDBQueryFactory.setMaxTime(-1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> mongoDBQueryFactory.setLimit(-1));
+        assertThrows(NullPointerException.class, () -> mongoDBQueryFactory.setMaxTime(1, null));
+    }
+
+    @RepeatedTest(10)
+    public void testIdProjectionHasNoInvalidResult() {
+        mongoDBQueryFactory.setProjectionFields(MongoDBQueryFactory.DEFAULT_PROJECTION_FIELDS);
+        QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(mongoDBQueryFactory);
+        assertThat(queryTestingService.runNotTest(10), is(0));
+        assertThat(queryTestingService.runEqualTest(10), is(0));
+        assertThat(queryTestingService.runSubsetTest(10), is(0));
+    }
+
+    @ParameterizedTest
+    @MethodSource("fieldNameWithFilterOption")
+    public void testExistsMatchesResult(MongoDBFieldOption fieldOption) {
+        mongoDBQueryFactory.setFieldFilterOptions(singletonList(fieldOption));
+        Bson query = mongoDBQueryFactory.build();
+        assertThat(mongoDBQueryFactory.exists(query), is(!mongoDBQueryFactory.getResult(query).isEmpty()));
+        assertThat(mongoDBQueryFactory.exists(Filters.nor(query)), is(!mongoDBQueryFactory.getResult(Filters.nor(query)).isEmpty()));
+    }
+
+    @RepeatedTest(10)
+    public void testCountValidatorHasNoInvalidResult() {
+        MongoDBQueryFactory queryFactory = spy(mongoDBQueryFactory);
+        QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(queryFactory);
+        queryTestingService.setQueryPairValidator(new MongoDBCountValidator(queryFactory, EnumSet.allOf(RelationType.class)));
+        assertThat(queryTestingService.runNotTest(10), is(0));
+        assertThat(queryTestingService.runSubsetTest(10), is(0));
+        verify(queryFactory, never()).getResult(any());
+        // Results of the equal test are compared in order, so the pairs are still validated with their results.
+        queryTestingService.setQueryPairValidator(new MongoDBCountValidator(queryFactory));
+        assertThat(queryTestingService.runEqualTest(10), is(0));
+        verify(queryFactory, times(20)).getResult(any());
+    }
+
+    @Test
+    public void testCountValidatorFindsInvalidPair() {
+        MongoDBCountValidator countValidator = new MongoDBCountValidator(mongoDBQueryFactory, EnumSet.allOf(RelationType.class));
+        Bson allDocuments = Filters.exists("text");
+        Bson someDocuments = Filters.eq("text", "test");
+        assertThat(countValidator.isValid(RelationType.NOT, someDocuments, allDocuments), is(false));
+        assertThat(countValidator.isValid(RelationType.NOT, someDocuments, Filters.nor(someDocuments)), is(true));
+        assertThat(countValidator.isValid(RelationType.SUBSET, allDocuments, someDocuments), is(false));
+        assertThat(countValidator.isValid(RelationType.SUBSET, someDocuments, allDocuments), is(true));
+        assertThat(countValidator.isValid(RelationType.SUPERSET, someDocuments, allDocuments), is(false));
+        assertThat(countValidator.isValid(RelationType.SUPERSET, allDocuments, someDocuments), is(true));
+        assertThat(countValidator.isValid(RelationType.EQUAL, someDocuments, allDocuments), is(false));
+        assertThat(countValidator.isValid(RelationType.EQUAL, allDocuments, new Document()), is(true));
+    }
+
+    @Test
+    public void testSetAlgebraOracleHasNoInvalidResult() {
+        QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(mongoDBQueryFactory);
+        queryTestingService.setQueryOracle(new SetAlgebraOracle<>(mongoDBQueryFactory, new Document()));
+        assertThat(queryTestingService.runNotTest(10), is(0));
+        assertThat(queryTestingService.runEqualTest(10), is(0));
+        assertThat(queryTestingService.runSubsetTest(10), is(0));
+    }
+
     @RepeatedTest(100)
     public void testNativeQuery() {
         QueryProxy<Bson> queryProxy = buildNativeQuery();
@@ -429,14 +809,37 @@ public class MongoDBQueryFactoryTest {
                 .databaseName(DATABASE_NAME)
                 .collectionName(COLLECTION_NAME)
                 .fieldOptions(fieldOptions())
+                .projectionFields(null)
                 .build();
     }
 
     protected static class Backend extends MemoryBackend {
+        /**
+         * Last explain command, the embedded server does not support explain.
+         */
+        private static volatile de.bwaldvogel.mongo.bson.Document lastExplain;
+
         @Override
         // Override to make this public
         public synchronized MongoDatabase resolveDatabase(String database) {
             return super.resolveDatabase(database);
         }
+
+        @Override
+        public de.bwaldvogel.mongo.bson.Document handleCommand(Channel channel, String databaseName, String command,
+                                                             de.bwaldvogel.mongo.bson.Document query) {
+            if (!command.equals("explain")) {
+                return super.handleCommand(channel, databaseName, command, query);
+            }
+            lastExplain = query;
+            de.bwaldvogel.mongo.bson.Document winningPlan = new de.bwaldvogel.mongo.bson.Document("stage", "PROJECTION_SIMPLE")
+                    .append("inputStage", new de.bwaldvogel.mongo.bson.Document("stage", "COLLSCAN"));
+            return new de.bwaldvogel.mongo.bson.Document("queryPlanner", new de.bwaldvogel.mongo.bson.Document("winningPlan", winningPlan))
+                    .append("executionStats", new de.bwaldvogel.mongo.bson.Document("nReturned", 1)
+                            .append("executionTimeMillis", 5)
+                            .append("totalKeysExamined", 0)
+                            .append("totalDocsExamined", TEST_DATA.size()))
+                    .append("ok", 1.0);
+        }
     }
 }
\ No newline at end of file
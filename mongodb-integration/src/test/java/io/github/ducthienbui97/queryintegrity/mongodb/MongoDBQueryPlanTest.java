@@ -0,0 +1,101 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MongoDBQueryPlanTest {
+    private static final Bson QUERY = Filters.gt("number", 10);
+
+    private static Document stage(String stage, Document... inputStages) {
+        Document document = new Document("stage", stage);
+        if (inputStages.length == 1) {
+            document.append("inputStage", inputStages[0]);
+        } else if (inputStages.length > 1) {
+            document.append("inputStages", Arrays.asList(inputStages));
+        }
+        return document;
+    }
+
+    private static Document indexScan(String indexName) {
+        return stage("IXSCAN").append("indexName", indexName);
+    }
+
+    private static Document explain(Document winningPlan) {
+        return new Document("queryPlanner", new Document("winningPlan", winningPlan))
+                .append("executionStats", new Document("nReturned", 4)
+                        .append("executionTimeMillis", 12L)
+                        .append("totalKeysExamined", 10)
+                        .append("totalDocsExamined", 20));
+    }
+
+    private static Stream<Arguments> winningPlanWithShape() {
+        return Stream.of(
+                Arguments.of(stage("COLLSCAN"), "COLLSCAN", Collections.emptyList(), true),
+                Arguments.of(stage("FETCH", indexScan("number_1")), "FETCH(IXSCAN[number_1])",
+                        Collections.singletonList("number_1"), false),
+                Arguments.of(stage("SUBPLAN", stage("OR", stage("FETCH", indexScan("a_1")), stage("COLLSCAN"))),
+                        "SUBPLAN(OR(FETCH(IXSCAN[a_1]), COLLSCAN))", Collections.singletonList("a_1"), true),
+                // Slot based engine.
+                Arguments.of(new Document("queryPlan", stage("FETCH", indexScan("b_1"))).append("slotBasedPlan", new Document()),
+                        "FETCH(IXSCAN[b_1])", Collections.singletonList("b_1"), false),
+                Arguments.of(stage("SHARD_MERGE").append("shards", Arrays.asList(
+                        new Document("shardName", "s0").append("winningPlan", indexScan("a_1")),
+                        new Document("shardName", "s1").append("winningPlan", stage("COLLSCAN")))),
+                        "SHARD_MERGE(IXSCAN[a_1], COLLSCAN)", Collections.singletonList("a_1"), true),
+                Arguments.of(new Document(), "UNKNOWN", Collections.emptyList(), false));
+    }
+
+    @ParameterizedTest
+    @MethodSource("winningPlanWithShape")
+    public void testPlanShape(Document winningPlan, String planShape, List<String> indexNames, boolean collectionScan) {
+        MongoDBQueryPlan queryPlan = MongoDBQueryPlan.of(QUERY, explain(winningPlan));
+        assertThat(queryPlan.getQuery(), equalTo(QUERY));
+        assertThat(queryPlan.getPlanShape(), equalTo(planShape));
+        assertThat(queryPlan.getIndexNames(), equalTo(indexNames));
+        assertThat(queryPlan.isCollectionScan(), is(collectionScan));
+    }
+
+    @Test
+    public void testExecutionStats() {
+        MongoDBQueryPlan queryPlan = MongoDBQueryPlan.of(QUERY, explain(stage("COLLSCAN")));
+        assertThat(queryPlan.getReturned(), is(4L));
+        assertThat(queryPlan.getKeysExamined(), is(10L));
+        assertThat(queryPlan.getDocsExamined(), is(20L));
+        assertThat(queryPlan.getExecutionTimeMillis(), is(12L));
+        assertThat(queryPlan.getExaminedRatio(), is(5.0));
+    }
+
+    @Test
+    public void testExaminedRatioWithoutResult() {
+        Document explain = new Document("queryPlanner", new Document())
+                .append("executionStats", new Document("nReturned", 0).append("totalKeysExamined", 7));
+        MongoDBQueryPlan queryPlan = MongoDBQueryPlan.of(QUERY, explain);
+        assertThat(queryPlan.getPlanShape(), equalTo("UNKNOWN"));
+        assertThat(queryPlan.getDocsExamined(), is(0L));
+        assertThat(queryPlan.getExaminedRatio(), is(7.0));
+    }
+
+    @Test
+    public void testExplainWithoutStatistics() {
+        assertThrows(IllegalArgumentException.class, () -> MongoDBQueryPlan.of(QUERY, new Document("ok", 1)));
+        assertThrows(IllegalArgumentException.class,
+                () -> MongoDBQueryPlan.of(QUERY, new Document("queryPlanner", new Document())));
+        assertThrows(NullPointerException.class, () -> MongoDBQueryPlan.of(null, explain(stage("COLLSCAN"))));
+        assertThrows(NullPointerException.class, () -> MongoDBQueryPlan.of(QUERY, null));
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.google.common.collect.ImmutableList;
+import com.mongodb.client.model.Filters;
+import lombok.SneakyThrows;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MongoDBQueryPoolTest {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private final MongoDBOperatorRegistry operatorRegistry = new MongoDBOperatorRegistry();
+
+    @SneakyThrows
+    private MongoDBQueryPool parse(String json) {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return MongoDBQueryPool.parse(operatorRegistry, parser);
+        }
+    }
+
+    private static List<Bson> filters(MongoDBQueryPool queryPool) {
+        List<Bson> filters = new ArrayList<>();
+        for (int i = 0; i < queryPool.size(); i++) {
+            filters.add(queryPool.build(i));
+        }
+        return filters;
+    }
+
+    @Test
+    public void testOptionsAreBuiltInOrder() {
+        MongoDBQueryPool queryPool = new MongoDBQueryPool(operatorRegistry);
+        assertThat(queryPool.add("a", "gt", singletonList(1)), is(true));
+        assertThat(queryPool.add("a", "gt", singletonList(2)), is(true));
+        assertThat(queryPool.add("a", "exists", emptyList()), is(true));
+        assertThat(queryPool.add("b", "regex", Arrays.asList("^x", "i")), is(true));
+        assertThat(queryPool.add("a", "gt", singletonList(3)), is(true));
+        assertThat(queryPool.size(), is(5));
+        assertThat(filters(queryPool), equalTo(Arrays.asList(
+                Filters.gt("a", 1),
+                Filters.gt("a", 2),
+                Filters.exists("a"),
+                Filters.regex("b", "^x", "i"),
+                Filters.gt("a", 3))));
+    }
+
+    @Test
+    public void testInvalidOptionsAreSkipped() {
+        MongoDBQueryPool queryPool = new MongoDBQueryPool(operatorRegistry);
+        assertThat(queryPool.add("a", "test", emptyList()), is(false));
+        assertThat(queryPool.add("a", "gt", emptyList()), is(false));
+        assertThat(queryPool.add("a", "gt", singletonList(1)), is(true));
+        assertThat(queryPool.add("a", "exists", singletonList("true")), is(false));
+        assertThat(filters(queryPool), equalTo(singletonList(Filters.gt("a", 1))));
+    }
+
+    @Test
+    public void testManyParameters() {
+        MongoDBQueryPool queryPool = new MongoDBQueryPool(operatorRegistry);
+        List<Bson> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            List<Object> values = new ArrayList<>();
+            for (int j = 0; j <= i; j++) {
+                values.add(j);
+            }
+            queryPool.add("field", "in", singletonList(values));
+            expected.add(Filters.in("field", values));
+        }
+        assertThat(filters(queryPool), equalTo(expected));
+    }
+
+    @Test
+    public void testIndexOutOfPool() {
+        MongoDBQueryPool queryPool = new MongoDBQueryPool(operatorRegistry);
+        assertThrows(IndexOutOfBoundsException.class, () -> queryPool.build(0));
+        queryPool.add("a", "exists", emptyList());
+        assertThrows(IndexOutOfBoundsException.class, () -> queryPool.build(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> queryPool.build(1));
+    }
+
+    @Test
+    public void testMethodRejectingParametersFailsOnBuild() {
+        MongoDBQueryPool queryPool = new MongoDBQueryPool(operatorRegistry);
+        assertThat(queryPool.add("a", "regex", Arrays.asList(null, "i")), is(true));
+        assertThrows(IllegalArgumentException.class, () -> queryPool.build(0));
+    }
+
+    @Test
+    public void testParseJson() {
+        MongoDBQueryPool queryPool = parse("{\"number\": {\"gte\": [[10], [25.5]], \"mod\": [[3, 0]]},"
+                + " \"text\": {\"exists\": [[]], \"in\": [[[\"a\", \"b\"]]], \"unknown\": [[1]]}}");
+        assertThat(filters(queryPool), equalTo(Arrays.asList(
+                Filters.gte("number", 10),
+                Filters.gte("number", 25.5),
+                Filters.mod("number", 3, 0),
+                Filters.exists("text"),
+                Filters.in("text", ImmutableList.of("a", "b")))));
+        assertThat(parse("{}").size(), is(0));
+        assertThat(parse("null"), nullValue());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "[]", "{\"a\": []}", "{\"a\": {\"gt\": {}}}", "{\"a\": {\"gt\": [1]}}", "{\"a\": {\"gt\": [[1]]"})
+    public void testParseFailsIfFormatNotCorrect(String json) {
+        assertThrows(JsonParseException.class, () -> parse(json));
+    }
+}
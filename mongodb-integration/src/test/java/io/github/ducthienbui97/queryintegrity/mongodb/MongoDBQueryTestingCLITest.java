@@ -7,15 +7,19 @@ import ch.qos.logback.core.read.ListAppender;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
 import de.bwaldvogel.mongo.MongoServer;
-import de.bwaldvogel.mongo.backend.memory.MemoryBackend;
 import de.bwaldvogel.mongo.wire.MongoWireProtocolHandler;
 import io.github.ducthienbui97.queryintegrity.core.QueryTestingService;
+import org.bson.Document;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.TypeSafeMatcher;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -27,12 +31,16 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -179,6 +187,284 @@ public class MongoDBQueryTestingCLITest {
         logger.setLevel(Level.OFF);
     }
 
+    @Test
+    public void testRunAllTestsStreaming() {
+        Logger logger = (Logger) LoggerFactory.getLogger(QueryTestingService.class);
+        logger.setLevel(Level.INFO);
+        ListAppender<ILoggingEvent> listAppender = new ListAppender<>();
+        listAppender.start();
+        logger.addAppender(listAppender);
+        MongoDBQueryTestingCLI.main(new String[]{
+                "-db", DATABASE_NAME,
+                "-c", COLLECTION_NAME,
+                "-u", mongoURI,
+                "-f", jsonFilePath,
+                "-e", "-s", "-n", "-p", "4", "--streaming", "--count",
+                "--cursorBatch", "1000", "--maxTime", "60000", "--limit", "0"
+        });
+        List<ILoggingEvent> logsList = listAppender.list;
+        assertThat(logsList, allOf(
+                hasItem(loggingEventMatcher(containsString("Not test: 0 out of"))),
+                hasItem(loggingEventMatcher(containsString("Equal test: 0 out of"))),
+                hasItem(loggingEventMatcher(containsString("Subset test: 0 out of")))));
+        logger.setLevel(Level.OFF);
+    }
+
+    @Test
+    public void testRunAllTestsWithCache() {
+        Logger logger = (Logger) LoggerFactory.getLogger(MongoDBQueryTestingCLI.class);
+        logger.setLevel(Level.INFO);
+        ListAppender<ILoggingEvent> listAppender = new ListAppender<>();
+        listAppender.start();
+        logger.addAppender(listAppender);
+        MongoDBQueryTestingCLI.main(new String[]{
+                "-db", DATABASE_NAME,
+                "-c", COLLECTION_NAME,
+                "-u", mongoURI,
+                "-f", jsonFilePath,
+                "-e", "-s", "-n", "--cache", "1000", "--metrics", "--reactive", "-p", "8"
+        });
+        List<ILoggingEvent> logsList = listAppender.list;
+        assertThat(logsList, allOf(
+                hasItem(loggingEventMatcher(containsString("Result cache:"))),
+                hasItem(loggingEventMatcher(containsString("EQUAL: 100 pairs")))));
+        logger.setLevel(Level.OFF);
+    }
+
+    @Test
+    public void testRunAllTestsWithSelectivity() {
+        Logger logger = (Logger) LoggerFactory.getLogger(MongoDBQueryTestingCLI.class);
+        logger.setLevel(Level.INFO);
+        ListAppender<ILoggingEvent> listAppender = new ListAppender<>();
+        listAppender.start();
+        logger.addAppender(listAppender);
+        MongoDBQueryTestingCLI.main(new String[]{
+                "-db", DATABASE_NAME,
+                "-c", COLLECTION_NAME,
+                "-u", mongoURI,
+                "-f", jsonFilePath,
+                "-e", "-s", "-n", "--selectivity", "0.05,0.6", "--cache", "1000"
+        });
+        List<ILoggingEvent> logsList = listAppender.list;
+        assertThat(logsList, hasItem(loggingEventMatcher(allOf(
+                containsString("Selectivity band [5.00%, 60.00%]: "),
+                containsString("of 400 generated queries estimated in band")))));
+        logger.setLevel(Level.OFF);
+    }
+
+    @Test
+    public void testInvalidSelectivity() {
+        StringWriter sw = new StringWriter();
+        new CommandLine(new MongoDBQueryTestingCLI())
+                .setErr(new PrintWriter(sw))
+                .execute("-db", DATABASE_NAME,
+                        "-c", COLLECTION_NAME,
+                        "-u", mongoURI,
+                        "-f", jsonFilePath,
+                        "--selectivity", "0.05", "-e");
+        assertThat(sw.toString(), containsString("expected min,max but was [0.05]"));
+    }
+
+    @Test
+    public void testRunAllTestsWithOracle() {
+        Logger logger = (Logger) LoggerFactory.getLogger(QueryTestingService.class);
+        logger.setLevel(Level.INFO);
+        ListAppender<ILoggingEvent> listAppender = new ListAppender<>();
+        listAppender.start();
+        logger.addAppender(listAppender);
+        MongoDBQueryTestingCLI.main(new String[]{
+                "-db", DATABASE_NAME,
+                "-c", COLLECTION_NAME,
+                "-u", mongoURI,
+                "-f", jsonFilePath,
+                "-e", "-s", "-n", "--oracle", "--normalize", "--fullDocuments"
+        });
+        List<ILoggingEvent> logsList = listAppender.list;
+        assertThat(logsList, allOf(
+                hasItem(loggingEventMatcher(containsString("Not test: 0 out of"))),
+                hasItem(loggingEventMatcher(containsString("Equal test: 0 out of"))),
+                hasItem(loggingEventMatcher(containsString("Subset test: 0 out of")))));
+        logger.setLevel(Level.OFF);
+    }
+
+    @Test
+    public void testOracleWithLimit() {
+        StringWriter sw = new StringWriter();
+        new CommandLine(new MongoDBQueryTestingCLI())
+                .setErr(new PrintWriter(sw))
+                .execute("-db", DATABASE_NAME,
+                        "-c", COLLECTION_NAME,
+                        "-u", mongoURI,
+                        "-f", jsonFilePath,
+                        "--oracle", "--limit", "10", "-e");
+        assertThat(sw.toString(), containsString("Option '--oracle' cannot be used with '--limit'"));
+    }
+
+    @Test
+    public void testIncompatibleOptions() {
+        String[][] incompatibleOptions = {
+                {"--localOracle", "--limit", "10"},
+                {"--oracle", "--localOracle"},
+                {"--hint", "--limit", "10"},
+                {"--hint", "--reactive"},
+                {"--explain", "0.1", "--reactive"}};
+        for (String[] options : incompatibleOptions) {
+            StringWriter sw = new StringWriter();
+            List<String> args = new ArrayList<>(asList("-db", DATABASE_NAME,
+                    "-c", COLLECTION_NAME,
+                    "-u", mongoURI,
+                    "-f", jsonFilePath,
+                    "-e"));
+            args.addAll(asList(options));
+            new CommandLine(new MongoDBQueryTestingCLI())
+                    .setErr(new PrintWriter(sw))
+                    .execute(args.toArray(new String[0]));
+            assertThat(sw.toString(), containsString("Option '" + options[0] + "' cannot be used with '"));
+        }
+    }
+
+    @Test
+    public void testRunAllTestsWithLocalOracle() {
+        Logger logger = (Logger) LoggerFactory.getLogger(QueryTestingService.class);
+        logger.setLevel(Level.INFO);
+        ListAppender<ILoggingEvent> listAppender = new ListAppender<>();
+        listAppender.start();
+        logger.addAppender(listAppender);
+        MongoDBQueryTestingCLI.main(new String[]{
+                "-db", DATABASE_NAME,
+                "-c", COLLECTION_NAME,
+                "-u", mongoURI,
+                "-f", jsonFilePath,
+                "-e", "-s", "-n", "--localOracle", "--reactive", "--projection", "_id,text"
+        });
+        List<ILoggingEvent> logsList = listAppender.list;
+        assertThat(logsList, allOf(
+                hasItem(loggingEventMatcher(containsString("Not test: 0 out of"))),
+                hasItem(loggingEventMatcher(containsString("Equal test: 0 out of"))),
+                hasItem(loggingEventMatcher(containsString("Subset test: 0 out of")))));
+        logger.setLevel(Level.OFF);
+    }
+
+    @Test
+    public void testLocalOracleFallbacksAreLogged(@TempDir Path tempDir) throws IOException {
+        File configFile = tempDir.resolve("all.json").toFile();
+        new ObjectMapper().writeValue(configFile, ImmutableMap.of("text", ImmutableMap.of(
+                "in", singletonList(singletonList(ImmutableList.of("test", "yo"))),
+                "all", singletonList(singletonList(ImmutableList.of("test"))))));
+        Logger logger = (Logger) LoggerFactory.getLogger(MongoDBQueryTestingCLI.class);
+        logger.setLevel(Level.INFO);
+        ListAppender<ILoggingEvent> listAppender = new ListAppender<>();
+        listAppender.start();
+        logger.addAppender(listAppender);
+        MongoDBQueryTestingCLI.main(new String[]{
+                "-db", DATABASE_NAME,
+                "-c", COLLECTION_NAME,
+                "-u", mongoURI,
+                "-f", configFile.getPath(),
+                "-n", "--localOracle"
+        });
+        List<ILoggingEvent> logsList = listAppender.list;
+        // $all is not evaluated locally.
+        assertThat(logsList, hasItem(loggingEventMatcher(allOf(
+                containsString("Local oracle: "),
+                containsString(" queries taken from the server ("),
+                not(containsString("Local oracle: 0 of"))))));
+        logger.setLevel(Level.OFF);
+    }
+
+    @Test
+    public void testRunAllTestsWithBatch() {
+        Logger logger = (Logger) LoggerFactory.getLogger(QueryTestingService.class);
+        logger.setLevel(Level.INFO);
+        ListAppender<ILoggingEvent> listAppender = new ListAppender<>();
+        listAppender.start();
+        logger.addAppender(listAppender);
+        MongoDBQueryTestingCLI.main(new String[]{
+                "-db", DATABASE_NAME,
+                "-c", COLLECTION_NAME,
+                "-u", mongoURI,
+                "-f", jsonFilePath,
+                "-e", "-s", "-n", "--batch", "20", "--facet", "--projection", "_id,text",
+                "--explain", "0.1", "--maxExaminedRatio", "10", "--maxExecutionTime", "1000", "--hint"
+        });
+        List<ILoggingEvent> logsList = listAppender.list;
+        assertThat(logsList, allOf(
+                hasItem(loggingEventMatcher(containsString("Not test: 0 out of"))),
+                hasItem(loggingEventMatcher(containsString("Equal test: 0 out of"))),
+                hasItem(loggingEventMatcher(containsString("Subset test: 0 out of")))));
+        logger.setLevel(Level.OFF);
+    }
+
+    @Test
+    public void testRunAllTestsWithDiscoveredOptions(@TempDir Path tempDir) {
+        Path histogramFile = tempDir.resolve("histograms.json");
+        String collectionName = "discoveredCollection";
+        try (MongoClient mongoClient = MongoClients.create(mongoURI)) {
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                documents.add(new Document("number", i).append("text", String.valueOf(i % 3)));
+            }
+            mongoClient.getDatabase(DATABASE_NAME).getCollection(collectionName).insertMany(documents);
+        }
+        Logger logger = (Logger) LoggerFactory.getLogger(QueryTestingService.class);
+        logger.setLevel(Level.INFO);
+        ListAppender<ILoggingEvent> listAppender = new ListAppender<>();
+        listAppender.start();
+        logger.addAppender(listAppender);
+        for (int i = 0; i < 2; i++) {
+            MongoDBQueryTestingCLI.main(new String[]{
+                    "-db", DATABASE_NAME,
+                    "-c", collectionName,
+                    "-u", mongoURI,
+                    "--discover", "20", "--histograms", histogramFile.toString(),
+                    "-e", "-s", "-n"
+            });
+            assertThat(Files.exists(histogramFile), is(true));
+        }
+        MongoDBQueryTestingCLI.main(new String[]{
+                "-db", DATABASE_NAME,
+                "-c", collectionName,
+                "-u", mongoURI,
+                "--discover", "20",
+                "-e"
+        });
+        List<ILoggingEvent> logsList = listAppender.list;
+        assertThat(logsList.stream().filter(loggingEventMatcher(containsString("Equal test: 0 out of"))::matches).count(),
+                is(3L));
+        assertThat(logsList, allOf(
+                hasItem(loggingEventMatcher(containsString("Not test: 0 out of"))),
+                hasItem(loggingEventMatcher(containsString("Subset test: 0 out of")))));
+        logger.setLevel(Level.OFF);
+    }
+
+    @Test
+    public void testNoDiscoveredOption() {
+        StringWriter sw = new StringWriter();
+        new CommandLine(new MongoDBQueryTestingCLI())
+                .setErr(new PrintWriter(sw))
+                .execute("-db", DATABASE_NAME,
+                        "-c", COLLECTION_NAME,
+                        "-u", mongoURI,
+                        "--discover", "20", "-e");
+        assertThat(sw.toString(), containsString("No field option discovered in 0 sampled documents"));
+    }
+
+    @Test
+    public void testRunAllTestsWithReport(@TempDir Path tempDir) throws IOException {
+        Path reportFile = tempDir.resolve("report.jsonl");
+        MongoDBQueryTestingCLI.main(new String[]{
+                "-db", DATABASE_NAME,
+                "-c", COLLECTION_NAME,
+                "-u", mongoURI,
+                "-f", jsonFilePath,
+                "-e", "-s", "-n", "--report", reportFile.toString()
+        });
+        List<String> lines = Files.readAllLines(reportFile);
+        assertThat(lines.size(), is(4));
+        assertThat(lines.get(0), is("{\"type\":\"run\",\"kind\":\"relation\",\"relation\":\"NOT\","
+                + "\"pairCount\":100,\"invalidCount\":0}"));
+    }
+
     @ParameterizedTest()
     @MethodSource("parameterFormats")
     public void testMongoServerConnected(String database, String collection, String connectionString,
@@ -286,7 +572,7 @@ public class MongoDBQueryTestingCLITest {
 
     @BeforeAll
     public static void initializeMongoServer() {
-        mongoServer = new MongoServer(new MemoryBackend());
+        mongoServer = new MongoServer(new MongoDBFieldDiscoveryTest.SampleBackend());
         InetSocketAddress address = mongoServer.bind();
         mongoURI = "mongodb://" + address.getHostName() + ":" + address.getPort() + "/";
     }
@@ -0,0 +1,208 @@
+package io.github.ducthienbui97.queryintegrity.mongodb;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.model.Filters;
+import de.bwaldvogel.mongo.MongoServer;
+import io.github.ducthienbui97.queryintegrity.core.QueryGenerator;
+import io.github.ducthienbui97.queryintegrity.core.QueryTestingService;
+import io.github.ducthienbui97.queryintegrity.core.StreamingResultValidator;
+import lombok.val;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscription;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MongoDBReactiveQueryFactoryTest {
+    private static final String DATABASE_NAME = "testDb";
+    private static final String COLLECTION_NAME = "testCollectionName";
+    private static final int DOCUMENT_COUNT = 50;
+    private static MongoServer mongoServer;
+    private static String mongoURI;
+    private MongoDBReactiveQueryFactory reactiveQueryFactory;
+    private MongoDBQueryFactory syncQueryFactory;
+
+    private static Map<String, Map<String, Collection<Collection<Object>>>> fieldOptions() {
+        return ImmutableMap.of(
+                "number", ImmutableMap.of(
+                        "gte", ImmutableList.of(singletonList(10), singletonList(25)),
+                        "mod", ImmutableList.of(ImmutableList.of(3L, 0L), ImmutableList.of(5L, 1L))),
+                "text", ImmutableMap.of(
+                        "exists", singletonList(emptyList()),
+                        "regex", singletonList(singletonList("^1.*"))));
+    }
+
+    @BeforeAll
+    public static void initializeMongoServer() {
+        mongoServer = new MongoServer(new MongoDBFieldDiscoveryTest.SampleBackend());
+        val address = mongoServer.bind();
+        mongoURI = "mongodb://" + address.getHostName() + ":" + address.getPort() + "/";
+        try (MongoClient mongoClient = MongoClients.create(mongoURI)) {
+            List<Document> documents = new ArrayList<>();
+            for (int i = 0; i < DOCUMENT_COUNT; i++) {
+                Document document = new Document("number", i);
+                if (i % 4 != 0) {
+                    document.append("text", String.valueOf(i));
+                }
+                documents.add(document);
+            }
+            mongoClient.getDatabase(DATABASE_NAME).getCollection(COLLECTION_NAME).insertMany(documents);
+        }
+    }
+
+    @AfterAll
+    public static void pullDown() {
+        mongoServer.shutdown();
+        mongoServer = null;
+    }
+
+    @BeforeEach
+    public void setup() {
+        MongoDBQueryFactoryOptions options = MongoDBQueryFactoryOptions.builder()
+                .connectionString(mongoURI)
+                .databaseName(DATABASE_NAME)
+                .collectionName(COLLECTION_NAME)
+                .fieldOptions(fieldOptions())
+                .build();
+        reactiveQueryFactory = new MongoDBReactiveQueryFactory(options);
+        syncQueryFactory = new MongoDBQueryFactory(options);
+    }
+
+    @RepeatedTest(10)
+    public void testResultsEqualSyncResults() {
+        QueryGenerator<Bson> queryGenerator = new QueryGenerator<>(reactiveQueryFactory);
+        Random random = new Random();
+        for (int i = 0; i < 10; i++) {
+            Bson query = reactiveQueryFactory.build(queryGenerator.generate(1 + random.nextInt(10), random));
+            assertThat(ids(reactiveQueryFactory.getResult(query)), equalTo(ids(syncQueryFactory.getResult(query))));
+            assertThat(ids(reactiveQueryFactory.getResultAsync(query, Runnable::run).join()),
+                    equalTo(ids(syncQueryFactory.getResult(query))));
+            assertThat(Lists.newArrayList(reactiveQueryFactory.getResultIterator(query)),
+                    equalTo(Lists.newArrayList(syncQueryFactory.getResultIterator(query))));
+            assertThat(reactiveQueryFactory.exists(query), is(syncQueryFactory.exists(query)));
+            assertThat(reactiveQueryFactory.count(query), is((long) syncQueryFactory.getResult(query).size()));
+            assertThat(syncQueryFactory.count(query), is((long) syncQueryFactory.getResult(query).size()));
+        }
+    }
+
+    @Test
+    public void testElementsAreRequestedInBatches() {
+        List<Long> requests = new ArrayList<>();
+        Publisher<Integer> publisher = subscriber -> subscriber.onSubscribe(new Subscription() {
+            private int next;
+
+            @Override
+            public void request(long n) {
+                requests.add(n);
+                for (long i = 0; i < n && next < 10; i++) {
+                    subscriber.onNext(next++);
+                }
+                if (next == 10) {
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        assertThat(MongoDBReactiveQueryFactory.collect(publisher, 3).join(), equalTo(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)));
+        assertThat(requests, equalTo(Arrays.asList(3L, 3L, 3L, 3L)));
+    }
+
+    @Test
+    public void testResultsWithCursorOptions() {
+        // The embedded server only sends the first batch, so the batch size holds the whole result.
+        reactiveQueryFactory.setCursorBatchSize(DOCUMENT_COUNT);
+        Bson query = Filters.exists("number");
+        assertThat(reactiveQueryFactory.getResult(query).size(), is(DOCUMENT_COUNT));
+        List<Bson> queries = Arrays.asList(query, Filters.exists("text"), Filters.gte("number", 45));
+        Map<Bson, Collection<Document>> results = reactiveQueryFactory.getResults(queries);
+        for (Bson batchQuery : queries) {
+            assertThat(ids(results.get(batchQuery)), equalTo(ids(syncQueryFactory.getResult(batchQuery))));
+        }
+        reactiveQueryFactory.setLimit(5);
+        syncQueryFactory.setLimit(5);
+        assertThat(reactiveQueryFactory.getResult(query).size(), is(5));
+        // Counts ignore the limit of the results.
+        assertThat(reactiveQueryFactory.count(query), is((long) DOCUMENT_COUNT));
+        assertThat(syncQueryFactory.count(query), is((long) DOCUMENT_COUNT));
+    }
+
+    @Test
+    public void testSnapshot() {
+        reactiveQueryFactory.setLimit(5);
+        List<Document> snapshot = reactiveQueryFactory.getSnapshot();
+        assertThat(snapshot.size(), is(DOCUMENT_COUNT));
+        assertThat(snapshot, equalTo(syncQueryFactory.getSnapshot()));
+    }
+
+    @Test
+    public void testSample() {
+        List<Document> sample = reactiveQueryFactory.getSample(10);
+        assertThat(sample.size(), is(10));
+        assertThat(reactiveQueryFactory.getSample(DOCUMENT_COUNT * 2).size(), is(DOCUMENT_COUNT));
+        assertThat(syncQueryFactory.getSnapshot().containsAll(sample), is(true));
+    }
+
+    @Test
+    public void testServerErrorIsThrown() {
+        Bson query = new Document("$unknownOperator", 1);
+        assertThrows(MongoException.class, () -> reactiveQueryFactory.getResult(query));
+        assertThrows(MongoException.class, () -> reactiveQueryFactory.exists(query));
+        assertThrows(MongoException.class, () -> reactiveQueryFactory.count(query));
+    }
+
+    @Test
+    public void testManyPairsInFlightHaveNoInvalidResult() {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            QueryTestingService<Bson, Document> queryTestingService = new QueryTestingService<>(reactiveQueryFactory);
+            queryTestingService.setExecutorService(executorService);
+            queryTestingService.setParallelism(200);
+            assertThat(queryTestingService.runNotTest(500), is(0));
+            assertThat(queryTestingService.runEqualTest(500), is(0));
+            assertThat(queryTestingService.runSubsetTest(500), is(0));
+            queryTestingService.setQueryPairValidator(new MongoDBCountValidator(reactiveQueryFactory));
+            queryTestingService.setStreamingResultValidator(StreamingResultValidator.of(new MongoDBIdComparator()));
+            queryTestingService.setParallelism(1);
+            assertThat(queryTestingService.runNotTest(20), is(0));
+            assertThat(queryTestingService.runEqualTest(20), is(0));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void argumentsCantBeNull() {
+        assertThrows(NullPointerException.class, () -> new MongoDBReactiveQueryFactory(null));
+        assertThrows(NullPointerException.class, () -> new MongoDBReactiveQueryFactory(null, DATABASE_NAME, COLLECTION_NAME, null, null));
+        assertThrows(NullPointerException.class, () -> new MongoDBReactiveQueryFactory(mongoURI, null, COLLECTION_NAME, null, null));
+        assertThrows(NullPointerException.class, () -> new MongoDBReactiveQueryFactory(mongoURI, DATABASE_NAME, null, null, null));
+    }
+
+    private static Set<Object> ids(Collection<Document> result) {
+        return result.stream().map(document -> document.get("_id")).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.ducthienbui97.queryintegrity.benchmark;
+
+import io.github.ducthienbui97.queryintegrity.core.QueryFactory;
+import io.github.ducthienbui97.queryintegrity.core.QueryProxy;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Query factory building leaves from a fixed pool, or a new leaf every time when the pool is empty.
+ */
+class LeafPoolQueryFactory implements QueryFactory<Object, Object> {
+    private final Random random = new Random();
+    private final int leafPoolSize;
+
+    LeafPoolQueryFactory(int leafPoolSize) {
+        this.leafPoolSize = leafPoolSize;
+    }
+
+    @Override
+    public Object build() {
+        return leafPoolSize == 0 ? new Object() : random.nextInt(leafPoolSize);
+    }
+
+    @Override
+    public Object build(QueryProxy<Object> queryProxy) {
+        return queryProxy;
+    }
+
+    @Override
+    public Collection<Object> getResult(Object query) {
+        return Collections.emptyList();
+    }
+}
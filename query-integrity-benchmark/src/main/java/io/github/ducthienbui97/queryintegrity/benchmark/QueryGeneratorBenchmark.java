@@ -0,0 +1,78 @@
+package io.github.ducthienbui97.queryintegrity.benchmark;
+
+import io.github.ducthienbui97.queryintegrity.core.QueryGenerator;
+import io.github.ducthienbui97.queryintegrity.core.QueryProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the iterative {@link QueryGenerator} and {@link QueryProxy#reverse()}
+ * against the recursive baseline on large query trees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryGeneratorBenchmark {
+    @Param({"125", "1000", "10000"})
+    private int leafCount;
+
+    private final Random random = new Random();
+    private QueryGenerator<Object> queryGenerator;
+    private RecursiveQueryGenerator<Object> recursiveQueryGenerator;
+
+    @Setup
+    public void setup() {
+        LeafPoolQueryFactory queryFactory = new LeafPoolQueryFactory(QueryProxyBenchmark.LEAF_POOL_SIZE);
+        queryGenerator = new QueryGenerator<>(queryFactory);
+        recursiveQueryGenerator = new RecursiveQueryGenerator<>(queryFactory);
+    }
+
+    @Benchmark
+    public QueryProxy<Object> generateIterative() {
+        return queryGenerator.generate(leafCount, random);
+    }
+
+    @Benchmark
+    public QueryProxy<Object> generateRecursive() {
+        return recursiveQueryGenerator.generate(leafCount, random);
+    }
+
+    @Benchmark
+    public QueryProxy<Object> reverseIterative(UniqueQueryState uniqueQueryState) {
+        return uniqueQueryState.queryProxy.reverse();
+    }
+
+    @Benchmark
+    public QueryProxy<Object> reverseRecursive(UniqueQueryState uniqueQueryState) {
+        return recursiveQueryGenerator.reverse(uniqueQueryState.queryProxy);
+    }
+
+    /**
+     * A query tree with distinct leaves built before each invocation, so no reverse is cached.
+     */
+    @State(Scope.Thread)
+    public static class UniqueQueryState {
+        private QueryProxy<Object> queryProxy;
+
+        @Setup(Level.Invocation)
+        public void setup(QueryGeneratorBenchmark benchmark) {
+            queryProxy = new QueryGenerator<>(new LeafPoolQueryFactory(0)).generate(benchmark.leafCount, new Random());
+        }
+    }
+}
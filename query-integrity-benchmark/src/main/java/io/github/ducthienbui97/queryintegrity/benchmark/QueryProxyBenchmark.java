@@ -0,0 +1,89 @@
+package io.github.ducthienbui97.queryintegrity.benchmark;
+
+import io.github.ducthienbui97.queryintegrity.core.QueryGenerator;
+import io.github.ducthienbui97.queryintegrity.core.QueryProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark generation of random proxy queries and De Morgan reversal at various leaf counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryProxyBenchmark {
+    static final int LEAF_POOL_SIZE = 100;
+
+    @Param({"1", "5", "25", "125"})
+    private int leafCount;
+
+    private final Random random = new Random();
+    private QueryGenerator<Object> queryGenerator;
+    private QueryProxy<Object> queryProxy;
+    private QueryProxy<Object> otherQueryProxy;
+
+    @Setup
+    public void setup() {
+        queryGenerator = new QueryGenerator<>(new LeafPoolQueryFactory(LEAF_POOL_SIZE));
+        queryProxy = queryGenerator.generate(leafCount, random);
+        otherQueryProxy = queryGenerator.generate(leafCount, random);
+        queryProxy.reverse();
+    }
+
+    @Benchmark
+    public QueryProxy<Object> buildQuery() {
+        return queryGenerator.generate(leafCount, random);
+    }
+
+    /**
+     * Reverse a query tree that has never been reversed, every leaf is distinct so nothing is shared.
+     */
+    @Benchmark
+    public QueryProxy<Object> reverse(UniqueQueryState uniqueQueryState) {
+        return uniqueQueryState.queryProxy.reverse();
+    }
+
+    @Benchmark
+    public QueryProxy<Object> reverseCached() {
+        return queryProxy.reverse();
+    }
+
+    @Benchmark
+    public QueryProxy<Object> and() {
+        return queryProxy.and(otherQueryProxy);
+    }
+
+    @Benchmark
+    public QueryProxy<Object> or() {
+        return queryProxy.or(otherQueryProxy);
+    }
+
+    /**
+     * A query tree built before each invocation.
+     */
+    @State(Scope.Thread)
+    public static class UniqueQueryState {
+        private QueryProxy<Object> queryProxy;
+
+        @Setup(Level.Invocation)
+        public void setup(QueryProxyBenchmark benchmark) {
+            queryProxy = new QueryGenerator<>(new LeafPoolQueryFactory(0)).generate(benchmark.leafCount, new Random());
+        }
+    }
+}
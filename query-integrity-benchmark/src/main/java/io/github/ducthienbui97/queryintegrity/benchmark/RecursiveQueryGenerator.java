@@ -0,0 +1,78 @@
+package io.github.ducthienbui97.queryintegrity.benchmark;
+
+import io.github.ducthienbui97.queryintegrity.core.QueryFactory;
+import io.github.ducthienbui97.queryintegrity.core.QueryGenerator;
+import io.github.ducthienbui97.queryintegrity.core.QueryProxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Recursive generation and reversal of proxy queries as done before {@link QueryGenerator},
+ * kept as the baseline of {@link QueryGeneratorBenchmark}.
+ */
+class RecursiveQueryGenerator<T> {
+    private final QueryFactory<T, ?> queryFactory;
+
+    RecursiveQueryGenerator(QueryFactory<T, ?> queryFactory) {
+        this.queryFactory = queryFactory;
+    }
+
+    QueryProxy<T> generate(int leafCount, Random random) {
+        if (leafCount == 1) {
+            QueryProxy<T> nativeQuery = QueryProxy.<T>builder()
+                    .queryType(QueryProxy.QueryType.NATIVE)
+                    .nativeQuery(queryFactory.build(random))
+                    .build();
+            return random.nextBoolean() ? nativeQuery : reverse(nativeQuery);
+        }
+        int leftLeafCount = random.nextInt(leafCount - 1) + 1;
+        return random.nextBoolean() ?
+                and(generate(leftLeafCount, random), generate(leafCount - leftLeafCount, random)) :
+                or(generate(leftLeafCount, random), generate(leafCount - leftLeafCount, random));
+    }
+
+    /**
+     * Reverse without the cache of {@link QueryProxy#reverse()}, building a list and a stream for every node.
+     */
+    QueryProxy<T> reverse(QueryProxy<T> queryProxy) {
+        switch (queryProxy.getQueryType()) {
+            case NOT:
+                return queryProxy.getChildren().get(0);
+            case NATIVE:
+                return QueryProxy.<T>builder()
+                        .queryType(QueryProxy.QueryType.NOT)
+                        .children(Collections.singletonList(queryProxy))
+                        .build();
+            default:
+                return QueryProxy.<T>builder()
+                        .queryType(queryProxy.getQueryType() == QueryProxy.QueryType.AND ?
+                                QueryProxy.QueryType.OR : QueryProxy.QueryType.AND)
+                        .children(queryProxy.getChildren().stream()
+                                .map(this::reverse)
+                                .collect(Collectors.toList()))
+                        .build();
+        }
+    }
+
+    private QueryProxy<T> and(QueryProxy<T> left, QueryProxy<T> right) {
+        return combine(QueryProxy.QueryType.AND, left, right);
+    }
+
+    private QueryProxy<T> or(QueryProxy<T> left, QueryProxy<T> right) {
+        return combine(QueryProxy.QueryType.OR, left, right);
+    }
+
+    private QueryProxy<T> combine(QueryProxy.QueryType queryType, QueryProxy<T> left, QueryProxy<T> right) {
+        List<QueryProxy<T>> queryProxies = new ArrayList<>();
+        queryProxies.add(left);
+        queryProxies.add(right);
+        return QueryProxy.<T>builder()
+                .queryType(queryType)
+                .children(queryProxies)
+                .build();
+    }
+}
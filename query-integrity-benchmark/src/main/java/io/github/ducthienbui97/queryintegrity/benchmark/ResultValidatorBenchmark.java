@@ -0,0 +1,93 @@
+package io.github.ducthienbui97.queryintegrity.benchmark;
+
+import io.github.ducthienbui97.queryintegrity.core.ResultValidator;
+import io.github.ducthienbui97.queryintegrity.core.StreamingResultValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark the default {@link ResultValidator} and {@link StreamingResultValidator} on results of various sizes.
+ * Results are lists as returned by most query factories, for the subset check the superset is a hash set
+ * because containsAll on a list is quadratic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ResultValidatorBenchmark {
+    @Param({"1000", "100000", "10000000"})
+    private int resultSize;
+
+    private final ResultValidator<Integer> resultValidator = new ResultValidator<Integer>() {
+    };
+    private final StreamingResultValidator<Integer> streamingResultValidator =
+            StreamingResultValidator.of(Comparator.naturalOrder());
+    private List<Integer> result;
+    private List<Integer> equalResult;
+    private List<Integer> disjointResult;
+    private Set<Integer> supersetResult;
+
+    @Setup
+    public void setup() {
+        result = new ArrayList<>(resultSize);
+        disjointResult = new ArrayList<>(resultSize);
+        for (int i = 0; i < resultSize; i++) {
+            result.add(i);
+            disjointResult.add(resultSize + i);
+        }
+        equalResult = new ArrayList<>(result);
+        supersetResult = new HashSet<>(result);
+        supersetResult.addAll(disjointResult);
+    }
+
+    @Benchmark
+    public boolean isEquals() {
+        return resultValidator.isEquals(result, equalResult);
+    }
+
+    /**
+     * Disjoint results are the worst case, every element is looked up.
+     */
+    @Benchmark
+    public boolean isIntersected() {
+        return resultValidator.isIntersected(result, disjointResult);
+    }
+
+    @Benchmark
+    public boolean isSubset() {
+        return resultValidator.isSubset(result, supersetResult);
+    }
+
+    @Benchmark
+    public boolean streamingIsEquals() {
+        return streamingResultValidator.isEquals(result.iterator(), equalResult.iterator());
+    }
+
+    @Benchmark
+    public boolean streamingIsIntersected() {
+        return streamingResultValidator.isIntersected(result.iterator(), disjointResult.iterator());
+    }
+
+    @Benchmark
+    public boolean streamingIsSubset() {
+        return streamingResultValidator.isSubset(result.iterator(), equalResult.iterator());
+    }
+}
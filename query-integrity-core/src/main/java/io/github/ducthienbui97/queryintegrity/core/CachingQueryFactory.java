@@ -0,0 +1,219 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.ToLongFunction;
+
+/**
+ * Query Factory that remembers the results of another {@link QueryFactory},
+ * so a query generated again in a later pair is not sent to the system under test.
+ * The cache is bounded by the total weight of its results, the least recently used results are evicted first.
+ * NOTE: cached results are shared between pairs and must not be modified by the {@link ResultValidator}.
+ *
+ * @param <T> class of query used to the system under test.
+ * @param <R> class of result used for the system under test.
+ */
+@Slf4j
+public class CachingQueryFactory<T, R> implements QueryFactory<T, R> {
+    private final QueryFactory<T, R> queryFactory;
+    private final long maxWeight;
+    private final ToLongFunction<Collection<R>> weigher;
+    private final LinkedHashMap<T, Collection<R>> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Create a cache holding at most maxResultCount results in total.
+     *
+     * @param queryFactory   the query factory to get results from.
+     * @param maxResultCount maximum number of results held by the cache.
+     */
+    public CachingQueryFactory(QueryFactory<T, R> queryFactory, long maxResultCount) {
+        this(queryFactory, maxResultCount, Collection::size);
+    }
+
+    /**
+     * Create a cache bounded by a custom weight, e.g: estimated bytes of each result.
+     *
+     * @param queryFactory the query factory to get results from.
+     * @param maxWeight    maximum total weight of results held by the cache.
+     * @param weigher      weight of a result.
+     */
+    public CachingQueryFactory(@NonNull QueryFactory<T, R> queryFactory,
+                               long maxWeight,
+                               @NonNull ToLongFunction<Collection<R>> weigher) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("Max weight must not be negative but was " + maxWeight);
+        }
+        this.queryFactory = queryFactory;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    @Override
+    public T build() {
+        return queryFactory.build();
+    }
+
+    @Override
+    public T build(Random random) {
+        return queryFactory.build(random);
+    }
+
+    @Override
+    public T build(QueryProxy<T> queryProxy) {
+        return queryFactory.build(queryProxy);
+    }
+
+    @Override
+    public Collection<R> getResult(T query) {
+        Collection<R> result = getCachedResult(query);
+        if (result == null) {
+            result = queryFactory.getResult(query);
+            putResult(query, result);
+        }
+        return result;
+    }
+
+    /**
+     * Queries that are not cached are sent together with {@link QueryFactory#getResults(Collection)}.
+     */
+    @Override
+    public Map<T, Collection<R>> getResults(Collection<T> queries) {
+        Map<T, Collection<R>> results = new HashMap<>();
+        List<T> missedQueries = new ArrayList<>();
+        for (T query : queries) {
+            Collection<R> result = getCachedResult(query);
+            if (result != null) {
+                results.put(query, result);
+            } else {
+                missedQueries.add(query);
+            }
+        }
+        if (!missedQueries.isEmpty()) {
+            queryFactory.getResults(missedQueries).forEach((query, result) -> {
+                putResult(query, result);
+                results.put(query, result);
+            });
+        }
+        return results;
+    }
+
+    @Override
+    public CompletableFuture<Collection<R>> getResultAsync(T query, Executor executor) {
+        Collection<R> result = getCachedResult(query);
+        if (result != null) {
+            return CompletableFuture.completedFuture(result);
+        }
+        return queryFactory.getResultAsync(query, executor).thenApply(queryResult -> {
+            putResult(query, queryResult);
+            return queryResult;
+        });
+    }
+
+    /**
+     * Counts are not cached.
+     */
+    @Override
+    public long count(T query) {
+        return queryFactory.count(query);
+    }
+
+    /**
+     * Streamed results are not cached.
+     */
+    @Override
+    public Iterator<R> getResultIterator(T query) {
+        return queryFactory.getResultIterator(query);
+    }
+
+    @Override
+    public String toString(Object resultOrQuery) {
+        return queryFactory.toString(resultOrQuery);
+    }
+
+    /**
+     * @return number of queries answered by the cache.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of queries sent to the system under test.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return number of results removed to keep the cache under its max weight.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return total weight of the results in the cache.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return number of queries in the cache.
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Remove every result from the cache.
+     */
+    public synchronized void clear() {
+        cache.clear();
+        weight = 0;
+    }
+
+    private synchronized Collection<R> getCachedResult(T query) {
+        Collection<R> result = cache.get(query);
+        if (result != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return result;
+    }
+
+    private synchronized void putResult(T query, Collection<R> result) {
+        long resultWeight = weigher.applyAsLong(result);
+        if (resultWeight > maxWeight) {
+            log.debug("Result of {} is too large to be cached", query);
+            return;
+        }
+        Collection<R> previous = cache.put(query, result);
+        if (previous != null) {
+            weight -= weigher.applyAsLong(previous);
+        }
+        weight += resultWeight;
+        Iterator<Map.Entry<T, Collection<R>>> leastRecentlyUsed = cache.entrySet().iterator();
+        while (weight > maxWeight) {
+            weight -= weigher.applyAsLong(leastRecentlyUsed.next().getValue());
+            leastRecentlyUsed.remove();
+            evictionCount++;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import lombok.Getter;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Query Metrics recording latency and result size histograms and throughput of each relation.
+ */
+public class HistogramQueryMetrics implements QueryMetrics {
+    private final Map<RelationType, RelationMetrics> relationMetrics = new EnumMap<>(RelationType.class);
+
+    public HistogramQueryMetrics() {
+        for (RelationType relation : RelationType.values()) {
+            relationMetrics.put(relation, new RelationMetrics());
+        }
+    }
+
+    private static String toString(Histogram histogram, TimeUnit timeUnit) {
+        return String.format("%d/%d/%d/%d",
+                timeUnit.convert(histogram.getValueAtPercentile(50), TimeUnit.NANOSECONDS),
+                timeUnit.convert(histogram.getValueAtPercentile(99), TimeUnit.NANOSECONDS),
+                timeUnit.convert(histogram.getValueAtPercentile(99.9), TimeUnit.NANOSECONDS),
+                timeUnit.convert(histogram.getMax(), TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * @param relation the relation type.
+     * @return metrics recorded for the relation.
+     */
+    public RelationMetrics getRelationMetrics(RelationType relation) {
+        return relationMetrics.get(relation);
+    }
+
+    @Override
+    public void recordBuild(RelationType relation, long nanos) {
+        relationMetrics.get(relation).buildLatency.record(nanos);
+    }
+
+    @Override
+    public void recordResult(RelationType relation, long nanos, int resultSize) {
+        RelationMetrics metrics = relationMetrics.get(relation);
+        metrics.resultLatency.record(nanos);
+        metrics.resultSize.record(resultSize);
+    }
+
+    @Override
+    public void recordValidation(RelationType relation, long nanos, boolean valid) {
+        RelationMetrics metrics = relationMetrics.get(relation);
+        metrics.validationLatency.record(nanos);
+        if (!valid) {
+            metrics.invalidCount.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void recordRun(RelationType relation, int pairCount, long nanos) {
+        RelationMetrics metrics = relationMetrics.get(relation);
+        metrics.pairCount.addAndGet(pairCount);
+        metrics.runNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Summary of every relation that has been run, with p50/p99/p999/max of latencies in microseconds
+     * and of result sizes.
+     *
+     * @return human readable summary, one line per relation.
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        relationMetrics.forEach((relation, metrics) -> {
+            if (metrics.getPairCount() == 0) {
+                return;
+            }
+            if (summary.length() > 0) {
+                summary.append('\n');
+            }
+            summary.append(String.format("%s: %d pairs, %d invalid, %.1f pairs/s, "
+                            + "latency p50/p99/p999/max (us) build %s, result %s, validation %s, "
+                            + "result size p50/p99/p999/max %d/%d/%d/%d",
+                    relation, metrics.getPairCount(), metrics.getInvalidCount(), metrics.getPairsPerSecond(),
+                    toString(metrics.buildLatency, TimeUnit.MICROSECONDS),
+                    toString(metrics.resultLatency, TimeUnit.MICROSECONDS),
+                    toString(metrics.validationLatency, TimeUnit.MICROSECONDS),
+                    metrics.resultSize.getValueAtPercentile(50),
+                    metrics.resultSize.getValueAtPercentile(99),
+                    metrics.resultSize.getValueAtPercentile(99.9),
+                    metrics.resultSize.getMax()));
+        });
+        return summary.toString();
+    }
+
+    /**
+     * Metrics of a relation, latencies are in nanoseconds.
+     */
+    public static class RelationMetrics {
+        @Getter
+        private final Histogram buildLatency = new Histogram();
+        @Getter
+        private final Histogram resultLatency = new Histogram();
+        @Getter
+        private final Histogram validationLatency = new Histogram();
+        @Getter
+        private final Histogram resultSize = new Histogram();
+        private final AtomicLong pairCount = new AtomicLong();
+        private final AtomicLong invalidCount = new AtomicLong();
+        private final AtomicLong runNanos = new AtomicLong();
+
+        /**
+         * @return number of pairs run.
+         */
+        public long getPairCount() {
+            return pairCount.get();
+        }
+
+        /**
+         * @return number of pairs violating the relation.
+         */
+        public long getInvalidCount() {
+            return invalidCount.get();
+        }
+
+        /**
+         * @return pairs run per second over every run of the relation, or 0 if nothing is run.
+         */
+        public double getPairsPerSecond() {
+            long nanos = runNanos.get();
+            return nanos == 0 ? 0 : pairCount.get() * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import lombok.NonNull;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * Query Reporter writing one JSON object per line for each failure and each run, flushed as soon as it is written.
+ * Queries are written with {@link QueryFactory#toString(Object)} and results of the diff are written as their keys,
+ * so a failure never writes the whole results. Each line has the kind of the test, see {@link QueryFailure#getKind()}.
+ *
+ * @param <T> class of query used to the system under test.
+ * @param <R> class of result used for the system under test.
+ */
+public class JsonLinesQueryReporter<T, R> implements QueryReporter<T, R>, Closeable {
+    private final Writer writer;
+    private final QueryFactory<T, R> queryFactory;
+    private final Function<R, ?> keyFunction;
+
+    /**
+     * @param file         the file to write to, it is replaced if exists.
+     * @param queryFactory the query factory used to convert queries to string.
+     * @param keyFunction  key of a result written for the diff, e.g: id of a document.
+     * @throws IOException if the file can not be opened.
+     */
+    public JsonLinesQueryReporter(@NonNull Path file,
+                                  @NonNull QueryFactory<T, R> queryFactory,
+                                  @NonNull Function<R, ?> keyFunction) throws IOException {
+        this(Files.newBufferedWriter(file, StandardCharsets.UTF_8), queryFactory, keyFunction);
+    }
+
+    /**
+     * @param writer       the writer to write to, closed by {@link #close()}.
+     * @param queryFactory the query factory used to convert queries to string.
+     * @param keyFunction  key of a result written for the diff, e.g: id of a document.
+     */
+    public JsonLinesQueryReporter(@NonNull Writer writer,
+                                  @NonNull QueryFactory<T, R> queryFactory,
+                                  @NonNull Function<R, ?> keyFunction) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+        this.queryFactory = queryFactory;
+        this.keyFunction = keyFunction;
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            switch (character) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (character < 0x20) {
+                        line.append(String.format("\\u%04x", (int) character));
+                    } else {
+                        line.append(character);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    @Override
+    public void reportFailure(QueryFailure<T, R> failure) {
+        StringBuilder line = new StringBuilder("{\"type\":\"failure\",\"kind\":");
+        appendString(line, failure.getKind());
+        line.append(",\"relation\":\"")
+                .append(failure.getRelation())
+                .append("\",\"testIndex\":").append(failure.getTestIndex())
+                .append(",\"seed\":").append(failure.getSeed())
+                .append(",\"query1\":");
+        appendString(line, queryFactory.toString(failure.getQuery1()));
+        line.append(",\"query2\":");
+        appendString(line, queryFactory.toString(failure.getQuery2()));
+        if (failure.getPlan1() != null) {
+            line.append(",\"plan1\":");
+            appendString(line, failure.getPlan1());
+        }
+        if (failure.getPlan2() != null) {
+            line.append(",\"plan2\":");
+            appendString(line, failure.getPlan2());
+        }
+        line.append(",\"result1Size\":").append(failure.getResult1Size())
+                .append(",\"result2Size\":").append(failure.getResult2Size())
+                .append(",\"oracleMismatch\":").append(failure.isOracleMismatch())
+                .append(",\"diff\":[");
+        boolean first = true;
+        for (R result : failure.getDiff()) {
+            if (!first) {
+                line.append(',');
+            }
+            appendString(line, String.valueOf(keyFunction.apply(result)));
+            first = false;
+        }
+        line.append("]}");
+        writeLine(line);
+    }
+
+    @Override
+    public void reportRun(RelationType relation, int pairCount, int invalidCount) {
+        reportRun(QueryFailure.RELATION_KIND, relation, pairCount, invalidCount);
+    }
+
+    @Override
+    public void reportRun(String kind, RelationType relation, int pairCount, int invalidCount) {
+        StringBuilder line = new StringBuilder("{\"type\":\"run\",\"kind\":");
+        appendString(line, kind);
+        writeLine(line.append(",\"relation\":\"")
+                .append(relation)
+                .append("\",\"pairCount\":").append(pairCount)
+                .append(",\"invalidCount\":").append(invalidCount)
+                .append('}'));
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private synchronized void writeLine(StringBuilder line) {
+        try {
+            writer.append(line).append('\n');
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write report", e);
+        }
+    }
+}
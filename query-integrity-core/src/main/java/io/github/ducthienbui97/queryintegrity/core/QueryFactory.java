@@ -1,6 +1,12 @@
 package io.github.ducthienbui97.queryintegrity.core;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Query Factory create query for a query test.
@@ -16,6 +22,19 @@ public interface QueryFactory<T, R> {
      */
     public T build();
 
+    /**
+     * Build criteria for querying/searching system under test with the given random,
+     * so the same random always builds the same query.
+     * By default, the random is ignored and {@link #build()} is called,
+     * implementations should override this for reproducible runs, see {@link QueryTestingService#setSeed(long)}.
+     *
+     * @param random the random to choose the query with, only used by the calling thread.
+     * @return a random generated query for the system under test.
+     */
+    public default T build(Random random) {
+        return build();
+    }
+
     /**
      * Build criteria for querying/searching system under test from a {@link QueryProxy}
      *
@@ -33,6 +52,60 @@ public interface QueryFactory<T, R> {
      */
     public Collection<R> getResult(T query);
 
+    /**
+     * Count the results of a query, e.g: to estimate its selectivity with {@link SelectivityPolicy}.
+     * By default, it is the size of {@link #getResult(Object)},
+     * implementations that can count results without getting them should override this.
+     *
+     * @param query the query to be counted.
+     * @return number of results of input query.
+     */
+    public default long count(T query) {
+        return getResult(query).size();
+    }
+
+    /**
+     * Convert many queries to their results at once, used by {@link QueryTestingService#setBatchSize(int)}.
+     * By default, {@link #getResult(Object)} is called for each query,
+     * implementations that can send many queries in one request should override this.
+     *
+     * @param queries distinct queries to be used to get the results.
+     * @return result of each input query.
+     */
+    public default Map<T, Collection<R>> getResults(Collection<T> queries) {
+        Map<T, Collection<R>> results = new HashMap<>();
+        for (T query : queries) {
+            results.put(query, getResult(query));
+        }
+        return results;
+    }
+
+    /**
+     * Convert query to result without blocking the caller.
+     * By default, {@link #getResult(Object)} is run on the given executor,
+     * implementations with a non-blocking client should override this.
+     *
+     * @param query    the query to be used to get the result.
+     * @param executor the executor to run blocking work on.
+     * @return a future of the result of input query.
+     */
+    public default CompletableFuture<Collection<R>> getResultAsync(T query, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> getResult(query), executor);
+    }
+
+    /**
+     * Convert query to a lazily consumed result for {@link StreamingResultValidator}.
+     * The result must be sorted by the comparator of the streaming validator,
+     * by default, it iterates over {@link #getResult(Object)} so the result has to be already sorted.
+     * If the returned iterator is {@link AutoCloseable}, it is closed once the validation is done.
+     *
+     * @param query the query to be used to get the result.
+     * @return sorted iterator over the result of input query.
+     */
+    public default Iterator<R> getResultIterator(T query) {
+        return getResult(query).iterator();
+    }
+
     /**
      * Convert result or query to readable string
      *
@@ -0,0 +1,69 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * A pair of queries whose results violate their relation, reported to {@link QueryReporter}.
+ *
+ * @param <T> class of query used to the system under test.
+ * @param <R> class of result used for the system under test.
+ */
+@Value
+@Builder
+public class QueryFailure<T, R> {
+    public static final int UNKNOWN_SIZE = -1;
+    /**
+     * Kind of the failures of {@link QueryTestingService}.
+     */
+    public static final String RELATION_KIND = "relation";
+
+    /**
+     * Test that found the failure, {@link #RELATION_KIND} for a pair replayed with
+     * {@link QueryTestingService#replay(RelationType, long)}, or the kind of another test, e.g: "hint".
+     */
+    @Builder.Default
+    String kind = RELATION_KIND;
+    RelationType relation;
+    /**
+     * Index of the pair in its run, or {@link QueryTestingService#REPLAY_TEST_INDEX} if the pair is replayed.
+     */
+    int testIndex;
+    /**
+     * Seed the pair is built from, see {@link QueryTestingService#replay(RelationType, long)}.
+     */
+    long seed;
+    QueryProxy<T> queryProxy1;
+    QueryProxy<T> queryProxy2;
+    T query1;
+    T query2;
+    /**
+     * Plan the first query is run with, or null if the test does not compare plans.
+     */
+    String plan1;
+    /**
+     * Plan the second query is run with, or null if the test does not compare plans.
+     */
+    String plan2;
+    /**
+     * Size of the first result, or {@link #UNKNOWN_SIZE} if the result is streamed.
+     */
+    int result1Size;
+    /**
+     * Size of the second result, or {@link #UNKNOWN_SIZE} if the result is streamed.
+     */
+    int result2Size;
+    /**
+     * Results violating the relation, bounded by {@link QueryTestingService#setMaxReportedDiff(int)}.
+     * e.g: results of query 1 missing from query 2 for a subset relation.
+     * Empty if the results are streamed.
+     */
+    List<R> diff;
+    /**
+     * True if the first result is not equal to the expected result of the {@link QueryOracle},
+     * the second result is then the expected result.
+     */
+    boolean oracleMismatch;
+}
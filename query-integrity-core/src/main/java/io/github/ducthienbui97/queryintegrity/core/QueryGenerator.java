@@ -0,0 +1,99 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import lombok.NonNull;
+
+import java.util.Random;
+
+/**
+ * Generate random proxy queries made of AND and OR of NATIVE queries or their reverse.
+ * The tree is built with an explicit work stack in preallocated arrays instead of recursion,
+ * so queries with many thousands of leaves neither overflow the call stack nor allocate per split.
+ *
+ * @param <T> Query type
+ */
+public class QueryGenerator<T> {
+    /**
+     * Work stack entry to combine the 2 last generated queries with AND, positive entries are leaf counts to generate.
+     */
+    private static final int AND = 0;
+    /**
+     * Work stack entry to combine the 2 last generated queries with OR.
+     */
+    private static final int OR = -1;
+
+    private final QueryFactory<T, ?> queryFactory;
+
+    public QueryGenerator(@NonNull QueryFactory<T, ?> queryFactory) {
+        this.queryFactory = queryFactory;
+    }
+
+    /**
+     * Generate a random proxy query. The random is drawn in the same order as a depth first recursive generation,
+     * splitting the leaf count at a random point and choosing AND or OR before generating the left then right query.
+     *
+     * @param leafCount number of NATIVE queries of the proxy query, at least 1.
+     * @param random    the random to generate the proxy query with.
+     * @return the random proxy query.
+     */
+    public QueryProxy<T> generate(int leafCount, @NonNull Random random) {
+        return generate(leafCount, random, null);
+    }
+
+    /**
+     * Generate a random proxy query, drawing the random as {@link #generate(int, Random)} does.
+     * With a {@link SelectivityPolicy}, AND or OR and the reverse of each NATIVE query are chosen by the policy
+     * from the estimates of the generated queries.
+     *
+     * @param leafCount         number of NATIVE queries of the proxy query, at least 1.
+     * @param random            the random to generate the proxy query with.
+     * @param selectivityPolicy the policy to steer the proxy query with, or null to keep every random choice.
+     * @return the random proxy query.
+     */
+    public QueryProxy<T> generate(int leafCount, @NonNull Random random, SelectivityPolicy<T> selectivityPolicy) {
+        if (leafCount < 1) {
+            throw new IllegalArgumentException("Leaf count must be at least 1");
+        }
+        // Each split replaces 1 entry with 3, so the work stack never holds more than 2 entries per leaf.
+        int[] work = new int[2 * leafCount - 1];
+        @SuppressWarnings("unchecked")
+        QueryProxy<T>[] generated = new QueryProxy[leafCount];
+        double[] estimates = selectivityPolicy == null ? null : new double[leafCount];
+        int workSize = 0;
+        int generatedSize = 0;
+        work[workSize++] = leafCount;
+        while (workSize > 0) {
+            int entry = work[--workSize];
+            if (entry == 1) {
+                QueryProxy<T> nativeQuery = QueryProxy.<T>builder()
+                        .queryType(QueryProxy.QueryType.NATIVE)
+                        .nativeQuery(queryFactory.build(random))
+                        .build();
+                boolean reverse = !random.nextBoolean();
+                if (estimates != null) {
+                    double selectivity = selectivityPolicy.getSelectivity(nativeQuery.getNativeQuery());
+                    reverse = selectivityPolicy.chooseReverse(reverse, selectivity);
+                    estimates[generatedSize] = reverse ? 1 - selectivity : selectivity;
+                }
+                generated[generatedSize++] = reverse ? nativeQuery.reverse() : nativeQuery;
+            } else if (entry > 1) {
+                int leftLeafCount = random.nextInt(entry - 1) + 1;
+                work[workSize++] = random.nextBoolean() ? AND : OR;
+                work[workSize++] = entry - leftLeafCount;
+                work[workSize++] = leftLeafCount;
+            } else {
+                QueryProxy<T> right = generated[--generatedSize];
+                QueryProxy<T> left = generated[--generatedSize];
+                boolean and = entry == AND;
+                if (estimates != null) {
+                    double rightEstimate = estimates[generatedSize + 1];
+                    double leftEstimate = estimates[generatedSize];
+                    and = selectivityPolicy.chooseAnd(and, leftEstimate, rightEstimate);
+                    estimates[generatedSize] = and ? leftEstimate * rightEstimate
+                            : leftEstimate + rightEstimate - leftEstimate * rightEstimate;
+                }
+                generated[generatedSize++] = and ? left.and(right) : left.or(right);
+            }
+        }
+        return generated[0];
+    }
+}
@@ -0,0 +1,48 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+/**
+ * Query Metrics is notified by {@link QueryTestingService} at each stage of a test.
+ * Every method does nothing by default, so an implementation only needs to override the stages it records.
+ * Methods may be called from multiple threads at the same time when pairs are run in parallel.
+ */
+public interface QueryMetrics {
+    /**
+     * Called once a pair of queries is built, including both calls to {@link QueryFactory#build(QueryProxy)}.
+     *
+     * @param relation the relation tested by the pair.
+     * @param nanos    time taken to build the pair.
+     */
+    public default void recordBuild(RelationType relation, long nanos) {
+    }
+
+    /**
+     * Called once the result of a query is received from the system under test.
+     *
+     * @param relation   the relation tested by the pair.
+     * @param nanos      time taken to get the result.
+     * @param resultSize number of elements in the result.
+     */
+    public default void recordResult(RelationType relation, long nanos, int resultSize) {
+    }
+
+    /**
+     * Called once the results of a pair are validated.
+     * For streaming validation, the time includes reading both results.
+     *
+     * @param relation the relation tested by the pair.
+     * @param nanos    time taken to validate the pair.
+     * @param valid    true if the pair does not violate the relation.
+     */
+    public default void recordValidation(RelationType relation, long nanos, boolean valid) {
+    }
+
+    /**
+     * Called once every pair of a test run is done.
+     *
+     * @param relation  the relation tested by the run.
+     * @param pairCount number of pairs in the run.
+     * @param nanos     time taken by the whole run.
+     */
+    public default void recordRun(RelationType relation, int pairCount, long nanos) {
+    }
+}
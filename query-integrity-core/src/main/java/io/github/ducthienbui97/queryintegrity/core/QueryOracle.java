@@ -0,0 +1,19 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import java.util.Collection;
+
+/**
+ * Query Oracle computes the expected result of a proxy query without sending it to the system under test.
+ *
+ * @param <T> class of query used to the system under test.
+ * @param <R> class of result used for the system under test.
+ */
+public interface QueryOracle<T, R> {
+    /**
+     * Compute the expected result of a proxy query.
+     *
+     * @param queryProxy the proxy query.
+     * @return the result the system under test should return for the proxy query.
+     */
+    public Collection<R> getResult(QueryProxy<T> queryProxy);
+}
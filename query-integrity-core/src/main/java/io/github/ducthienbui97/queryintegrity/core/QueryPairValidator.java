@@ -0,0 +1,25 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+/**
+ * Query Pair Validator decides if a pair of queries satisfies a relation without getting their results,
+ * e.g: by sending count queries that are answered by the system under test.
+ *
+ * @param <T> class of query used to the system under test.
+ */
+public interface QueryPairValidator<T> {
+    /**
+     * @param relation a relation tested by {@link QueryTestingService}.
+     * @return true if pairs of this relation can be validated by {@link #isValid(RelationType, Object, Object)}.
+     */
+    public boolean supports(RelationType relation);
+
+    /**
+     * Check if 2 queries satisfy a relation.
+     *
+     * @param relation the relation between the results of both queries.
+     * @param query1   first query of the pair.
+     * @param query2   second query of the pair.
+     * @return true if the results of both queries satisfy the relation.
+     */
+    public boolean isValid(RelationType relation, T query1, T query2);
+}
@@ -1,57 +1,220 @@
 package io.github.ducthienbui97.queryintegrity.core;
 
-import lombok.Builder;
-import lombok.Data;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.ToString;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * Proxy query data that is understood by {@link QueryTestingService}.
+ * Proxy queries are immutable and interned: structurally equal queries built while another one is still in use
+ * are the same instance, so equality of identical queries is a reference check and its hash is computed once.
  *
  * @param <T> Query type
  */
-@Data
-@Builder
+@ToString(of = {"queryType", "children", "nativeQuery"})
 public class QueryProxy<T> {
-    @NonNull
-    private QueryType queryType;
-    private List<QueryProxy<T>> children;
-    private T nativeQuery;
+    private static final Interner<QueryProxy<?>> INTERNER = Interners.newWeakInterner();
 
+    @Getter
+    private final QueryType queryType;
+    @Getter
+    private final List<QueryProxy<T>> children;
+    @Getter
+    private final T nativeQuery;
     /**
-     * Return a new query that is the reverse of current query
-     * NOTE: the current query might be changed.
+     * Number of levels of the query tree, a NATIVE query has depth 1.
+     */
+    @Getter
+    private final int depth;
+    /**
+     * Number of NATIVE queries in the query tree.
+     */
+    @Getter
+    private final int leafCount;
+    private final int hash;
+    /**
+     * Reverse of this query, created by the first call to {@link #reverse()}.
+     */
+    private volatile QueryProxy<T> reversed;
+
+    /**
+     * @param children unmodifiable children that are not shared outside of this class, or null.
+     */
+    private QueryProxy(@NonNull QueryType queryType, List<QueryProxy<T>> children, T nativeQuery) {
+        this.queryType = queryType;
+        this.children = children;
+        this.nativeQuery = nativeQuery;
+        int childDepth = 0;
+        int childLeafCount = 0;
+        if (this.children != null) {
+            for (QueryProxy<T> child : this.children) {
+                childDepth = Math.max(childDepth, child.depth);
+                childLeafCount += child.leafCount;
+            }
+        }
+        this.depth = childDepth + 1;
+        this.leafCount = queryType == QueryType.NATIVE ? 1 : childLeafCount;
+        this.hash = Objects.hash(queryType, this.children, nativeQuery);
+    }
+
+    public static <T> QueryProxyBuilder<T> builder() {
+        return new QueryProxyBuilder<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> QueryProxy<T> intern(QueryType queryType, List<QueryProxy<T>> children, T nativeQuery) {
+        return (QueryProxy<T>) INTERNER.intern(new QueryProxy<>(queryType, children, nativeQuery));
+    }
+
+    @SafeVarargs
+    private static <T> QueryProxy<T> intern(QueryType queryType, QueryProxy<T>... children) {
+        return intern(queryType, Collections.unmodifiableList(Arrays.asList(children)), null);
+    }
+
+    /**
+     * Return the query that is the reverse of current query.
+     * The tree is walked with an explicit stack, so deep queries do not overflow the call stack.
      *
      * @return reversed query.
      */
     public QueryProxy<T> reverse() {
-        switch (queryType) {
-            case NOT:
-                return this.children.get(0);
-            case OR:
-                return QueryProxy.<T>builder()
-                        .queryType(QueryType.AND)
-                        .children(getChildren().stream()
-                                .map(QueryProxy::reverse)
-                                .collect(Collectors.toList()))
-                        .build();
-            case AND:
-                return QueryProxy.<T>builder()
-                        .queryType(QueryType.OR)
-                        .children(getChildren().stream()
-                                .map(QueryProxy::reverse)
-                                .collect(Collectors.toList()))
-                        .build();
-            default:
-                return QueryProxy.<T>builder()
-                        .queryType(QueryType.NOT)
-                        .children(Collections.singletonList(this))
-                        .build();
+        if (queryType == QueryType.NOT) {
+            return this.children.get(0);
+        }
+        QueryProxy<T> reversedQuery = reversed;
+        if (reversedQuery != null) {
+            return reversedQuery;
         }
+        Deque<QueryProxy<T>> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            QueryProxy<T> node = stack.peek();
+            if (node.isReversed()) {
+                stack.pop();
+                continue;
+            }
+            if (node.queryType == QueryType.NATIVE) {
+                node.setReversed(intern(QueryType.NOT, node));
+                stack.pop();
+                continue;
+            }
+            boolean childrenReversed = true;
+            for (QueryProxy<T> child : node.children) {
+                if (!child.isReversed()) {
+                    stack.push(child);
+                    childrenReversed = false;
+                }
+            }
+            if (childrenReversed) {
+                @SuppressWarnings("unchecked")
+                QueryProxy<T>[] reversedChildren = new QueryProxy[node.children.size()];
+                for (int i = 0; i < reversedChildren.length; i++) {
+                    reversedChildren[i] = node.children.get(i).reverse();
+                }
+                node.setReversed(intern(node.queryType == QueryType.AND ? QueryType.OR : QueryType.AND,
+                        reversedChildren));
+                stack.pop();
+            }
+        }
+        return reversed;
+    }
+
+    /**
+     * @return true if {@link #reverse()} returns without walking the tree.
+     */
+    private boolean isReversed() {
+        return queryType == QueryType.NOT || reversed != null;
+    }
+
+    private void setReversed(QueryProxy<T> reversedQuery) {
+        reversedQuery.reversed = this;
+        reversed = reversedQuery;
+    }
+
+    /**
+     * Return the query with the same result in negation normal form: NOT queries only have a NATIVE child,
+     * AND queries have no AND child and OR queries have no OR child, and AND or OR queries have at least 2 children.
+     * The tree is walked with an explicit stack, so deep queries do not overflow the call stack.
+     *
+     * @return normalized query.
+     */
+    public QueryProxy<T> normalize() {
+        Map<QueryProxy<T>, QueryProxy<T>> normalized = new IdentityHashMap<>();
+        Deque<QueryProxy<T>> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            QueryProxy<T> node = stack.peek();
+            if (normalized.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            if (node.queryType == QueryType.NATIVE) {
+                normalized.put(node, node);
+                stack.pop();
+                continue;
+            }
+            List<QueryProxy<T>> operands = node.queryType == QueryType.NOT ? node.children : node.getOperands();
+            boolean operandsNormalized = true;
+            for (QueryProxy<T> operand : operands) {
+                if (!normalized.containsKey(operand)) {
+                    stack.push(operand);
+                    operandsNormalized = false;
+                }
+            }
+            if (!operandsNormalized) {
+                continue;
+            }
+            if (node.queryType == QueryType.NOT) {
+                // Reverse of a normalized query is normalized.
+                normalized.put(node, normalized.get(operands.get(0)).reverse());
+            } else {
+                List<QueryProxy<T>> flattenedChildren = new ArrayList<>(operands.size());
+                for (QueryProxy<T> operand : operands) {
+                    QueryProxy<T> normalizedOperand = normalized.get(operand);
+                    if (normalizedOperand.queryType == node.queryType) {
+                        flattenedChildren.addAll(normalizedOperand.children);
+                    } else {
+                        flattenedChildren.add(normalizedOperand);
+                    }
+                }
+                normalized.put(node, flattenedChildren.size() == 1 ? flattenedChildren.get(0) :
+                        intern(node.queryType, Collections.unmodifiableList(flattenedChildren), null));
+            }
+            stack.pop();
+        }
+        return normalized.get(this);
+    }
+
+    /**
+     * @return descendants of this AND or OR query that are reached only through queries of the same type, in order.
+     */
+    private List<QueryProxy<T>> getOperands() {
+        List<QueryProxy<T>> operands = new ArrayList<>();
+        Deque<QueryProxy<T>> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            QueryProxy<T> node = stack.pop();
+            if (node.queryType == queryType) {
+                for (int i = node.children.size() - 1; i >= 0; i--) {
+                    stack.push(node.children.get(i));
+                }
+            } else {
+                operands.add(node);
+            }
+        }
+        return operands;
     }
 
     /**
@@ -61,13 +224,7 @@ public class QueryProxy<T> {
      * @return the AND query.
      */
     public QueryProxy<T> and(QueryProxy<T> otherQuery) {
-        List<QueryProxy<T>> queryProxies = new ArrayList<>();
-        queryProxies.add(this);
-        queryProxies.add(otherQuery);
-        return QueryProxy.<T>builder()
-                .queryType(QueryType.AND)
-                .children(queryProxies)
-                .build();
+        return intern(QueryType.AND, this, otherQuery);
     }
 
     /**
@@ -77,13 +234,27 @@ public class QueryProxy<T> {
      * @return the OR query.
      */
     public QueryProxy<T> or(QueryProxy<T> otherQuery) {
-        List<QueryProxy<T>> queryProxies = new ArrayList<>();
-        queryProxies.add(this);
-        queryProxies.add(otherQuery);
-        return QueryProxy.<T>builder()
-                .queryType(QueryType.OR)
-                .children(queryProxies)
-                .build();
+        return intern(QueryType.OR, this, otherQuery);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QueryProxy)) {
+            return false;
+        }
+        QueryProxy<?> other = (QueryProxy<?>) o;
+        return hash == other.hash
+                && queryType == other.queryType
+                && Objects.equals(nativeQuery, other.nativeQuery)
+                && Objects.equals(children, other.children);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
     }
 
     public enum QueryType {
@@ -109,4 +280,41 @@ public class QueryProxy<T> {
         NATIVE
     }
 
+    /**
+     * Builder of {@link QueryProxy}, children are copied so the built query can not be changed.
+     *
+     * @param <T> Query type
+     */
+    public static class QueryProxyBuilder<T> {
+        private QueryType queryType;
+        private List<QueryProxy<T>> children;
+        private T nativeQuery;
+
+        QueryProxyBuilder() {
+        }
+
+        public QueryProxyBuilder<T> queryType(@NonNull QueryType queryType) {
+            this.queryType = queryType;
+            return this;
+        }
+
+        public QueryProxyBuilder<T> children(List<QueryProxy<T>> children) {
+            this.children = children;
+            return this;
+        }
+
+        public QueryProxyBuilder<T> nativeQuery(T nativeQuery) {
+            this.nativeQuery = nativeQuery;
+            return this;
+        }
+
+        /**
+         * @return the interned query.
+         */
+        public QueryProxy<T> build() {
+            return intern(queryType,
+                    children == null ? null : Collections.unmodifiableList(new ArrayList<>(children)),
+                    nativeQuery);
+        }
+    }
 }
@@ -0,0 +1,42 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+/**
+ * Query Reporter is notified by {@link QueryTestingService} of each failure and each run as soon as they happen.
+ * Every method does nothing by default.
+ * Methods may be called from multiple threads at the same time when pairs are run in parallel.
+ *
+ * @param <T> class of query used to the system under test.
+ * @param <R> class of result used for the system under test.
+ */
+public interface QueryReporter<T, R> {
+    /**
+     * Called once a pair of queries violates its relation.
+     *
+     * @param failure the failed pair.
+     */
+    public default void reportFailure(QueryFailure<T, R> failure) {
+    }
+
+    /**
+     * Called once every pair of a test run is done.
+     *
+     * @param relation     the relation tested by the run.
+     * @param pairCount    number of pairs in the run.
+     * @param invalidCount number of pairs violating the relation.
+     */
+    public default void reportRun(RelationType relation, int pairCount, int invalidCount) {
+    }
+
+    /**
+     * Called once every pair of a run of another test than {@link QueryTestingService} is done,
+     * calls {@link #reportRun(RelationType, int, int)} by default.
+     *
+     * @param kind         the test, see {@link QueryFailure#getKind()}.
+     * @param relation     the relation tested by the run.
+     * @param pairCount    number of pairs in the run.
+     * @param invalidCount number of pairs violating the relation.
+     */
+    public default void reportRun(String kind, RelationType relation, int pairCount, int invalidCount) {
+        reportRun(relation, pairCount, invalidCount);
+    }
+}
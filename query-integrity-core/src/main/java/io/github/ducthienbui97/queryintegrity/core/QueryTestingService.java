@@ -1,12 +1,28 @@
 package io.github.ducthienbui97.queryintegrity.core;
 
+import com.google.common.collect.HashMultiset;
+import lombok.NonNull;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
-import java.util.function.BiFunction;
-import java.util.function.Function;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * QueryTestingService randomly generate multiple tests on a system to find out any violation of metamorphic relations.
@@ -19,12 +35,37 @@ public class QueryTestingService<T, R> {
     public static final int DEFAULT_TEST_COUNT = 100;
     public static final int DEFAULT_MAX_LEAF = 5;
     public static final int DEFAULT_MIN_LEAF = 1;
+    public static final int DEFAULT_PARALLELISM = 1;
+    public static final int DEFAULT_MAX_REPORTED_DIFF = 10;
+    public static final int DEFAULT_BATCH_SIZE = 0;
+    /**
+     * Test index of a pair run by {@link #replay(RelationType, long)}.
+     */
+    public static final int REPLAY_TEST_INDEX = -1;
     private final QueryFactory<T, R> queryFactory;
     private final ResultValidator<R> resultValidator;
-    private final Random random = new Random();
+    private final QueryGenerator<T> queryGenerator;
+    /**
+     * Gamma of {@link SplittableRandom}, added to the run seed for each test index.
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
 
     private int maxLeafCount = DEFAULT_MAX_LEAF;
     private int minLeafCount = DEFAULT_MIN_LEAF;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private ExecutorService executorService;
+    private StreamingResultValidator<R> streamingResultValidator;
+    private QueryOracle<T, R> queryOracle;
+    private QueryPairValidator<T> queryPairValidator;
+    private SelectivityPolicy<T> selectivityPolicy;
+    private QueryMetrics queryMetrics = new QueryMetrics() {
+    };
+    private QueryReporter<T, R> queryReporter = new QueryReporter<T, R>() {
+    };
+    private int maxReportedDiff = DEFAULT_MAX_REPORTED_DIFF;
+    private SplittableRandom runSeeds = new SplittableRandom();
+    private boolean normalizeQuery;
+    private int batchSize = DEFAULT_BATCH_SIZE;
 
     public QueryTestingService(QueryFactory<T, R> queryFactory) {
         this(queryFactory, new ResultValidator<R>() {
@@ -34,6 +75,7 @@ public class QueryTestingService<T, R> {
     public QueryTestingService(QueryFactory<T, R> queryFactory, ResultValidator<R> resultValidator) {
         this.queryFactory = queryFactory;
         this.resultValidator = resultValidator;
+        this.queryGenerator = new QueryGenerator<>(queryFactory);
     }
 
     public int runEqualTest() {
@@ -42,12 +84,7 @@ public class QueryTestingService<T, R> {
 
     public int runEqualTest(int testCount) {
         log.info("Starting equal test:");
-        int invalid = runTest(testCount, queryProxy -> QueryProxy.<T>builder()
-                        .queryType(QueryProxy.QueryType.NOT)
-                        .children(Collections.singletonList(queryProxy.reverse()))
-                        .build(),
-                resultValidator::isEquals,
-                "Result of query {} not equal to query {}\n Expected {} equal to {}");
+        int invalid = runTest(RelationType.EQUAL, testCount);
         log.info("Equal test: {} out of {} queries is invalid", invalid, testCount);
         return invalid;
     }
@@ -58,10 +95,7 @@ public class QueryTestingService<T, R> {
 
     public int runNotTest(int testCount) {
         log.info("Starting not test:");
-        int invalid = runTest(testCount,
-                QueryProxy::reverse,
-                (result1, result2) -> !resultValidator.isIntersected(result1, result2),
-                "Result of query {} shares a nonempty subset with query {}\n Expected {} not intersect with {}");
+        int invalid = runTest(RelationType.NOT, testCount);
         log.info("Not test: {} out of {} queries is invalid", invalid, testCount);
         return invalid;
     }
@@ -73,14 +107,8 @@ public class QueryTestingService<T, R> {
     public int runSubsetTest(int testCount) {
         log.info("Starting subset test:");
         int halfTestCount = testCount / 2;
-        int invalid = runTest(halfTestCount,
-                queryProxy -> queryProxy.or(buildQuery()),
-                resultValidator::isSubset,
-                "Result of query {} is not a subset of query {}\n Expected {} is a subset of {}!");
-        invalid += runTest(testCount - halfTestCount,
-                queryProxy -> queryProxy.and(buildQuery()),
-                (result1, result2) -> resultValidator.isSubset(result2, result1),
-                "Result of query {} is not a superset of query {}\n Expected {} is a super set of {}!");
+        int invalid = runTest(RelationType.SUBSET, halfTestCount);
+        invalid += runTest(RelationType.SUPERSET, testCount - halfTestCount);
         log.info("Subset test: {} out of {} queries is invalid", invalid, testCount);
         return invalid;
     }
@@ -99,51 +127,594 @@ public class QueryTestingService<T, R> {
         }
     }
 
-    private int runTest(int testCount,
-                        Function<QueryProxy<T>, QueryProxy<T>> transform,
-                        BiFunction<Collection<R>, Collection<R>, Boolean> validator,
-                        String invalidLogString) {
+    /**
+     * Set the maximum number of query pairs that are run at the same time.
+     * With the default value of 1 and no {@link #setExecutorService(ExecutorService)},
+     * every pair is run one after another on the caller thread.
+     *
+     * @param parallelism number of pairs in flight, must be positive.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive but was " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Set the number of pairs that are built before their queries are sent.
+     * The distinct native queries of a batch are sent once with {@link QueryFactory#getResults(Collection)},
+     * and their results are shared by every pair of the batch.
+     * Batches are run one after another, batching is not used with a {@link StreamingResultValidator}.
+     *
+     * @param batchSize number of pairs in a batch, must not be negative. With a batch size of 1, both queries of
+     *                  each pair are sent together. With the default value of 0, queries are not batched.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("Batch size must not be negative but was " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the executor used to run query pairs, at most {@link #setParallelism(int)} pairs at a time.
+     * The executor is owned by the caller and is not shut down by this service.
+     * When no executor is set and parallelism is greater than 1,
+     * a fixed thread pool is created for each run.
+     * Both queries of a pair are sent at the same time through {@link QueryFactory#getResultAsync(Object, Executor)}.
+     *
+     * @param executorService executor to run query pairs on, or null to use the default.
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Validate results with a single merge pass over sorted results from {@link QueryFactory#getResultIterator(Object)}
+     * instead of the {@link ResultValidator} so the results are never fully held in memory.
+     *
+     * @param streamingResultValidator the streaming validator, or null to use the {@link ResultValidator}.
+     */
+    public void setStreamingResultValidator(StreamingResultValidator<R> streamingResultValidator) {
+        this.streamingResultValidator = streamingResultValidator;
+    }
+
+    /**
+     * Check the result of the first query of each pair against the expected result of a {@link QueryOracle}, in any
+     * order, instead of validating the relation of the pair, so each pair sends one query and the second query is
+     * neither sent nor computed: the relation would only hold between results of the oracle.
+     * The oracle takes precedence over the {@link StreamingResultValidator}.
+     *
+     * @param queryOracle the oracle, or null to send both queries to the system under test.
+     */
+    public void setQueryOracle(QueryOracle<T, R> queryOracle) {
+        this.queryOracle = queryOracle;
+    }
+
+    /**
+     * Validate pairs of the supported relations with a {@link QueryPairValidator} before getting their results.
+     * Results are only sent back for pairs that it finds invalid, to be validated and reported as usual.
+     * It is not used with a {@link QueryOracle}.
+     *
+     * @param queryPairValidator the validator, or null to always validate the results.
+     */
+    public void setQueryPairValidator(QueryPairValidator<T> queryPairValidator) {
+        this.queryPairValidator = queryPairValidator;
+    }
+
+    /**
+     * Generate queries steered towards a target band of selectivity with a {@link SelectivityPolicy}
+     * instead of choosing AND or OR and the reverse of NATIVE queries at random.
+     * The size of each result received from the system under test is recorded to the policy.
+     *
+     * @param selectivityPolicy the policy, or null to generate queries at random.
+     */
+    public void setSelectivityPolicy(SelectivityPolicy<T> selectivityPolicy) {
+        this.selectivityPolicy = selectivityPolicy;
+    }
+
+    /**
+     * Set the metrics notified at each stage of the tests, e.g: {@link HistogramQueryMetrics}.
+     *
+     * @param queryMetrics the metrics to record to.
+     */
+    public void setQueryMetrics(@NonNull QueryMetrics queryMetrics) {
+        this.queryMetrics = queryMetrics;
+    }
+
+    /**
+     * Set the reporter notified of each failure and each run, e.g: {@link JsonLinesQueryReporter}.
+     *
+     * @param queryReporter the reporter to report to.
+     */
+    public void setQueryReporter(@NonNull QueryReporter<T, R> queryReporter) {
+        this.queryReporter = queryReporter;
+    }
+
+    /**
+     * Set whether proxy queries are normalized with {@link QueryProxy#normalize()} before the native queries are built,
+     * so the system under test receives flat queries with negations only on NATIVE queries.
+     * The outermost negation of the second query of an equal test is kept, otherwise both queries would be the same.
+     * Failures are still reported with the generated proxy queries.
+     *
+     * @param normalizeQuery true to normalize proxy queries, false by default.
+     */
+    public void setNormalizeQuery(boolean normalizeQuery) {
+        this.normalizeQuery = normalizeQuery;
+    }
+
+    /**
+     * Set the maximum number of results violating a relation that are logged and reported for each failure.
+     *
+     * @param maxReportedDiff maximum number of results in {@link QueryFailure#getDiff()}, must not be negative.
+     */
+    public void setMaxReportedDiff(int maxReportedDiff) {
+        if (maxReportedDiff < 0) {
+            throw new IllegalArgumentException("Max reported diff must not be negative but was " + maxReportedDiff);
+        }
+        this.maxReportedDiff = maxReportedDiff;
+    }
+
+    /**
+     * Set the seed of the following runs. Each run draws a run seed from it,
+     * and pair number N of a run is always built from the same seed derived from the run seed and N,
+     * whatever the parallelism is. Pairs are only reproducible if {@link QueryFactory#build(Random)}
+     * uses the given random.
+     *
+     * @param seed the seed.
+     */
+    public void setSeed(long seed) {
+        this.runSeeds = new SplittableRandom(seed);
+    }
+
+    /**
+     * Run a single pair again from the seed of a {@link QueryFailure}.
+     *
+     * @param relation the relation tested by the pair.
+     * @param seed     the seed of the pair, see {@link QueryFailure#getSeed()}.
+     * @return true if the pair does not violate the relation.
+     */
+    public boolean replay(@NonNull RelationType relation, long seed) {
+        log.info("Replaying {} pair with seed {}", relation, seed);
+        return runPair(relation, REPLAY_TEST_INDEX, seed);
+    }
+
+    /**
+     * Mix the bits of a seed, as {@link SplittableRandom} does for each value.
+     */
+    private static long mix64(long seed) {
+        long mixed = (seed ^ (seed >>> 30)) * 0xbf58476d1ce4e5b9L;
+        mixed = (mixed ^ (mixed >>> 27)) * 0x94d049bb133111ebL;
+        return mixed ^ (mixed >>> 31);
+    }
+
+    private static long pairSeed(long runSeed, int testIndex) {
+        return mix64(runSeed + GOLDEN_GAMMA * (testIndex + 1));
+    }
+
+    private int runTest(RelationType relation, int testCount) {
+        long start = System.nanoTime();
+        long runSeed = runSeeds.nextLong();
+        log.debug("Run seed of {} test: {}", relation, runSeed);
+        int invalid = runPairs(relation, testCount, runSeed);
+        queryMetrics.recordRun(relation, testCount, System.nanoTime() - start);
+        queryReporter.reportRun(relation, testCount, invalid);
+        return invalid;
+    }
+
+    private int runPairs(RelationType relation, int testCount, long runSeed) {
+        if (batchSize > 0 && streamingResultValidator == null) {
+            int invalid = 0;
+            for (int i = 0; i < testCount; i += batchSize) {
+                invalid += runBatch(relation, i, Math.min(testCount, i + batchSize), runSeed);
+            }
+            return invalid;
+        }
+        if (executorService == null && parallelism == 1) {
+            int invalid = 0;
+            for (int i = 0; i < testCount; i++) {
+                if (!runPair(relation, i, pairSeed(runSeed, i))) {
+                    invalid++;
+                }
+            }
+            return invalid;
+        }
+        // Both queries of a pair can be blocked on the executor at the same time.
+        ExecutorService executor = executorService != null ? executorService : Executors.newFixedThreadPool(2 * parallelism);
+        Semaphore inFlight = new Semaphore(parallelism);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<CompletableFuture<Boolean>> pairs = new ArrayList<>(testCount);
+        try {
+            for (int i = 0; i < testCount && !failed.get(); i++) {
+                inFlight.acquire();
+                pairs.add(runPairAsync(relation, i, pairSeed(runSeed, i), executor)
+                        .whenComplete((valid, throwable) -> {
+                            if (throwable != null) {
+                                failed.set(true);
+                            }
+                            inFlight.release();
+                        }));
+            }
+            CompletableFuture.allOf(pairs.toArray(new CompletableFuture[0])).join();
+            return (int) pairs.stream().filter(valid -> !valid.join()).count();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for query pairs", e);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to run query pair", e.getCause());
+        } finally {
+            if (executor != executorService) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Build pairs from fromIndex inclusive to toIndex exclusive, then send their distinct queries at once.
+     *
+     * @return number of invalid pairs.
+     */
+    private int runBatch(RelationType relation, int fromIndex, int toIndex, long runSeed) {
+        List<QueryPair<T>> pairs = new ArrayList<>(toIndex - fromIndex);
+        Set<T> queries = new LinkedHashSet<>();
+        for (int i = fromIndex; i < toIndex; i++) {
+            QueryPair<T> pair = buildPair(relation, i, pairSeed(runSeed, i));
+            if (isValidWithoutResult(pair)) {
+                continue;
+            }
+            pairs.add(pair);
+            queries.add(pair.getQuery1());
+            if (queryOracle == null) {
+                queries.add(pair.getQuery2());
+            }
+        }
+        if (pairs.isEmpty()) {
+            return 0;
+        }
+        log.debug("Sending {} distinct queries for {} pairs", queries.size(), pairs.size());
+        Map<T, Collection<R>> results = getResults(relation, queries);
         int invalid = 0;
-        for (int i = 0; i < testCount; i++) {
-            log.debug("Building pair of queries number {}", i);
-            QueryProxy<T> queryProxy1 = buildQuery();
-            QueryProxy<T> queryProxy2 = transform.apply(queryProxy1);
-            log.debug("Proxy query 1: {} \nProxy query 2: {}", queryProxy1, queryProxy2);
-            T query1 = queryFactory.build(queryProxy1);
-            T query2 = queryFactory.build(queryProxy2);
-            log.debug("Native query 1: {}\nNative query 2: {}",
-                    queryFactory.toString(query1), queryFactory.toString(query2));
-            Collection<R> result1 = queryFactory.getResult(query1);
-            Collection<R> result2 = queryFactory.getResult(query2);
-            log.debug("Result 1 size: {} \n Result 2 size: {}", result1.size(), result2.size());
-            boolean valid = validator.apply(result1, result2);
+        for (QueryPair<T> pair : pairs) {
+            Collection<R> result1 = getBatchResult(results, pair.getQuery1());
+            boolean valid = queryOracle != null ? validateWithOracle(pair, result1) :
+                    validate(pair, result1, getBatchResult(results, pair.getQuery2()));
             if (!valid) {
                 invalid++;
-                log.error(invalidLogString,
-                        queryFactory.toString(query1),
-                        queryFactory.toString(query2),
-                        queryFactory.toString(result1),
-                        queryFactory.toString(result2));
             }
         }
         return invalid;
     }
 
-    private QueryProxy<T> buildQuery() {
-        return buildQuery(random.nextInt(maxLeafCount - minLeafCount + 1) + minLeafCount);
+    private Collection<R> getBatchResult(Map<T, Collection<R>> results, T query) {
+        Collection<R> result = results.get(query);
+        if (result == null) {
+            throw new IllegalStateException("No result for query " + queryFactory.toString(query));
+        }
+        return result;
+    }
+
+    private boolean runPair(RelationType relation, int testIndex, long seed) {
+        QueryPair<T> pair = buildPair(relation, testIndex, seed);
+        if (queryOracle != null) {
+            return validateWithOracle(pair, getResult(relation, pair.getQuery1()));
+        }
+        if (isValidWithoutResult(pair)) {
+            return true;
+        }
+        if (streamingResultValidator != null) {
+            return validateStreaming(pair);
+        }
+        Collection<R> result1 = getResult(relation, pair.getQuery1());
+        Collection<R> result2 = getResult(relation, pair.getQuery2());
+        return validate(pair, result1, result2);
+    }
+
+    /**
+     * Run a pair without blocking, both queries of the pair are sent at the same time
+     * and validated once both results are available.
+     * Streaming validation consumes both results together, so it is run as a single task.
+     */
+    private CompletableFuture<Boolean> runPairAsync(RelationType relation, int testIndex, long seed, Executor executor) {
+        if (queryOracle != null) {
+            return CompletableFuture.supplyAsync(() -> buildPair(relation, testIndex, seed), executor)
+                    .thenCompose(pair -> getResultAsync(relation, pair.getQuery1(), executor)
+                            .thenApply(result1 -> validateWithOracle(pair, result1)));
+        }
+        if (streamingResultValidator != null) {
+            return CompletableFuture.supplyAsync(() -> runPair(relation, testIndex, seed), executor);
+        }
+        return CompletableFuture.supplyAsync(() -> buildPair(relation, testIndex, seed), executor)
+                .thenCompose(pair -> isValidWithoutResult(pair) ? CompletableFuture.completedFuture(true) :
+                        getResultAsync(relation, pair.getQuery1(), executor)
+                                .thenCombine(getResultAsync(relation, pair.getQuery2(), executor),
+                                        (result1, result2) -> validate(pair, result1, result2)));
+    }
+
+    /**
+     * Validate a pair with the {@link QueryPairValidator} if it supports the relation of the pair.
+     *
+     * @return true if the pair is valid, false if it is invalid or its results are needed to validate it.
+     */
+    private boolean isValidWithoutResult(QueryPair<T> pair) {
+        if (queryOracle != null || queryPairValidator == null || !queryPairValidator.supports(pair.getRelation())) {
+            return false;
+        }
+        long start = System.nanoTime();
+        if (queryPairValidator.isValid(pair.getRelation(), pair.getQuery1(), pair.getQuery2())) {
+            queryMetrics.recordValidation(pair.getRelation(), System.nanoTime() - start, true);
+            return true;
+        }
+        log.debug("Pair number {} is invalid without its results, getting the results to report it", pair.getTestIndex());
+        return false;
+    }
+
+    private Collection<R> getResult(RelationType relation, T query) {
+        long start = System.nanoTime();
+        Collection<R> result = queryFactory.getResult(query);
+        recordResult(relation, System.nanoTime() - start, result.size());
+        return result;
+    }
+
+    /**
+     * Metrics of each query are recorded with the average time of the batch.
+     */
+    private Map<T, Collection<R>> getResults(RelationType relation, Set<T> queries) {
+        long start = System.nanoTime();
+        Map<T, Collection<R>> results = queryFactory.getResults(queries);
+        long nanosPerQuery = (System.nanoTime() - start) / queries.size();
+        for (Collection<R> result : results.values()) {
+            recordResult(relation, nanosPerQuery, result.size());
+        }
+        return results;
+    }
+
+    private CompletableFuture<Collection<R>> getResultAsync(RelationType relation, T query, Executor executor) {
+        long start = System.nanoTime();
+        return queryFactory.getResultAsync(query, executor).thenApply(result -> {
+            recordResult(relation, System.nanoTime() - start, result.size());
+            return result;
+        });
+    }
+
+    private void recordResult(RelationType relation, long nanos, int resultSize) {
+        queryMetrics.recordResult(relation, nanos, resultSize);
+        if (selectivityPolicy != null) {
+            selectivityPolicy.recordResult(resultSize);
+        }
+    }
+
+    private QueryPair<T> buildPair(RelationType relation, int testIndex, long seed) {
+        long start = System.nanoTime();
+        log.debug("Building pair of queries number {} with seed {}", testIndex, seed);
+        Random random = new Random(seed);
+        QueryProxy<T> queryProxy1 = buildQuery(random);
+        QueryProxy<T> queryProxy2 = transform(relation, queryProxy1, random);
+        T query1;
+        T query2;
+        if (normalizeQuery) {
+            QueryProxy<T> normalizedQueryProxy1 = queryProxy1.normalize();
+            QueryProxy<T> normalizedQueryProxy2 = normalize(relation, queryProxy2);
+            query1 = queryFactory.build(normalizedQueryProxy1);
+            query2 = queryFactory.build(normalizedQueryProxy2);
+            if (log.isDebugEnabled()) {
+                log.debug("Normalized proxy query 1: {} \nNormalized proxy query 2: {}",
+                        normalizedQueryProxy1, normalizedQueryProxy2);
+            }
+        } else {
+            query1 = queryFactory.build(queryProxy1);
+            query2 = queryFactory.build(queryProxy2);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Proxy query 1: {} \nProxy query 2: {}", queryProxy1, queryProxy2);
+            log.debug("Native query 1: {}\nNative query 2: {}",
+                    queryFactory.toString(query1), queryFactory.toString(query2));
+        }
+        queryMetrics.recordBuild(relation, System.nanoTime() - start);
+        return new QueryPair<>(relation, testIndex, seed, queryProxy1, queryProxy2, query1, query2);
+    }
+
+    private QueryProxy<T> normalize(RelationType relation, QueryProxy<T> queryProxy) {
+        if (relation != RelationType.EQUAL) {
+            return queryProxy.normalize();
+        }
+        return QueryProxy.<T>builder()
+                .queryType(QueryProxy.QueryType.NOT)
+                .children(Collections.singletonList(queryProxy.getChildren().get(0).normalize()))
+                .build();
+    }
+
+    private QueryProxy<T> transform(RelationType relation, QueryProxy<T> queryProxy, Random random) {
+        switch (relation) {
+            case EQUAL:
+                return QueryProxy.<T>builder()
+                        .queryType(QueryProxy.QueryType.NOT)
+                        .children(Collections.singletonList(queryProxy.reverse()))
+                        .build();
+            case NOT:
+                return queryProxy.reverse();
+            case SUBSET:
+                return queryProxy.or(buildQuery(random));
+            default:
+                return queryProxy.and(buildQuery(random));
+        }
+    }
+
+    private boolean validate(QueryPair<T> pair, Collection<R> result1, Collection<R> result2) {
+        log.debug("Result 1 size: {} \n Result 2 size: {}", result1.size(), result2.size());
+        long start = System.nanoTime();
+        boolean valid = isValid(pair.getRelation(), result1, result2);
+        queryMetrics.recordValidation(pair.getRelation(), System.nanoTime() - start, valid);
+        if (!valid) {
+            List<R> diff = diff(pair.getRelation(), result1, result2);
+            log.error("Result of query {} {} query {}\n Result sizes {} and {}, results violating the relation {}",
+                    queryFactory.toString(pair.getQuery1()),
+                    pair.getRelation().getViolation(),
+                    queryFactory.toString(pair.getQuery2()),
+                    result1.size(),
+                    result2.size(),
+                    queryFactory.toString(diff));
+            queryReporter.reportFailure(failure(pair, result1.size(), result2.size(), diff, false));
+        }
+        return valid;
+    }
+
+    private boolean validateWithOracle(QueryPair<T> pair, Collection<R> result1) {
+        Collection<R> expectedResult1 = queryOracle.getResult(pair.getQueryProxy1());
+        long start = System.nanoTime();
+        // The oracle does not know the order of the system under test, so results are compared as multisets.
+        if (!HashMultiset.create(result1).equals(HashMultiset.create(expectedResult1))) {
+            queryMetrics.recordValidation(pair.getRelation(), System.nanoTime() - start, false);
+            List<R> diff = diff(RelationType.EQUAL, result1, expectedResult1);
+            log.error("Result of query {} not equal to its expected result\n Result sizes {} and {}, unexpected results {}",
+                    queryFactory.toString(pair.getQuery1()),
+                    result1.size(),
+                    expectedResult1.size(),
+                    queryFactory.toString(diff));
+            queryReporter.reportFailure(failure(pair, result1.size(), expectedResult1.size(), diff, true));
+            return false;
+        }
+        queryMetrics.recordValidation(pair.getRelation(), System.nanoTime() - start, true);
+        return true;
+    }
+
+    private boolean isValid(RelationType relation, Collection<R> result1, Collection<R> result2) {
+        switch (relation) {
+            case EQUAL:
+                return resultValidator.isEquals(result1, result2);
+            case NOT:
+                return !resultValidator.isIntersected(result1, result2);
+            case SUBSET:
+                return resultValidator.isSubset(result1, result2);
+            default:
+                return resultValidator.isSubset(result2, result1);
+        }
+    }
+
+    private boolean validateStreaming(QueryPair<T> pair) {
+        long start = System.nanoTime();
+        Iterator<R> result1 = queryFactory.getResultIterator(pair.getQuery1());
+        try {
+            Iterator<R> result2 = queryFactory.getResultIterator(pair.getQuery2());
+            try {
+                boolean valid = isValid(pair.getRelation(), result1, result2);
+                queryMetrics.recordValidation(pair.getRelation(), System.nanoTime() - start, valid);
+                if (!valid) {
+                    log.error("Result of query {} {} query {}",
+                            queryFactory.toString(pair.getQuery1()),
+                            pair.getRelation().getViolation(),
+                            queryFactory.toString(pair.getQuery2()));
+                    queryReporter.reportFailure(failure(pair,
+                            QueryFailure.UNKNOWN_SIZE, QueryFailure.UNKNOWN_SIZE, Collections.emptyList(), false));
+                }
+                return valid;
+            } finally {
+                closeResult(result2);
+            }
+        } finally {
+            closeResult(result1);
+        }
+    }
+
+    /**
+     * Find at most maxReportedDiff results violating the relation.
+     */
+    private List<R> diff(RelationType relation, Collection<R> result1, Collection<R> result2) {
+        List<R> diff = new ArrayList<>();
+        switch (relation) {
+            case EQUAL:
+                addDiff(diff, result1, result2, false);
+                addDiff(diff, result2, result1, false);
+                break;
+            case NOT:
+                addDiff(diff, result1, result2, true);
+                break;
+            case SUBSET:
+                addDiff(diff, result1, result2, false);
+                break;
+            default:
+                addDiff(diff, result2, result1, false);
+        }
+        return diff;
+    }
+
+    private void addDiff(List<R> diff, Collection<R> results, Collection<R> otherResults, boolean inOtherResults) {
+        if (diff.size() >= maxReportedDiff) {
+            return;
+        }
+        Set<R> otherResultSet = otherResults instanceof Set ? (Set<R>) otherResults : new HashSet<>(otherResults);
+        for (R result : results) {
+            if (otherResultSet.contains(result) == inOtherResults) {
+                diff.add(result);
+                if (diff.size() >= maxReportedDiff) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private QueryFailure<T, R> failure(QueryPair<T> pair, int result1Size, int result2Size,
+                                       List<R> diff, boolean oracleMismatch) {
+        return QueryFailure.<T, R>builder()
+                .relation(pair.getRelation())
+                .testIndex(pair.getTestIndex())
+                .seed(pair.getSeed())
+                .queryProxy1(pair.getQueryProxy1())
+                .queryProxy2(pair.getQueryProxy2())
+                .query1(pair.getQuery1())
+                .query2(pair.getQuery2())
+                .result1Size(result1Size)
+                .result2Size(result2Size)
+                .diff(diff)
+                .oracleMismatch(oracleMismatch)
+                .build();
+    }
+
+    private boolean isValid(RelationType relation, Iterator<R> result1, Iterator<R> result2) {
+        switch (relation) {
+            case EQUAL:
+                return streamingResultValidator.isEquals(result1, result2);
+            case NOT:
+                return !streamingResultValidator.isIntersected(result1, result2);
+            case SUBSET:
+                return streamingResultValidator.isSubset(result1, result2);
+            default:
+                return streamingResultValidator.isSubset(result2, result1);
+        }
+    }
+
+    private void closeResult(Iterator<R> result) {
+        if (result instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) result).close();
+            } catch (Exception e) {
+                log.warn("Failed to close result", e);
+            }
+        }
     }
 
-    private QueryProxy<T> buildQuery(int leafCount) {
-        if (leafCount == 1) {
-            QueryProxy<T> nativeQuery = QueryProxy.<T>builder()
-                    .queryType(QueryProxy.QueryType.NATIVE)
-                    .nativeQuery(queryFactory.build())
-                    .build();
-            return (random.nextBoolean()) ? nativeQuery : nativeQuery.reverse();
+    private QueryProxy<T> buildQuery(Random random) {
+        int leafCount = random.nextInt(maxLeafCount - minLeafCount + 1) + minLeafCount;
+        if (selectivityPolicy != null) {
+            return selectivityPolicy.generate(leafCount, random);
         }
-        int leftLeafCount = random.nextInt(leafCount - 1) + 1;
-        return random.nextBoolean() ?
-                buildQuery(leftLeafCount).and(buildQuery(leafCount - leftLeafCount)) :
-                buildQuery(leftLeafCount).or(buildQuery(leafCount - leftLeafCount));
+        return queryGenerator.generate(leafCount, random);
+    }
+
+    /**
+     * A generated pair of queries with its proxies.
+     */
+    @Value
+    private static class QueryPair<T> {
+        RelationType relation;
+        int testIndex;
+        long seed;
+        QueryProxy<T> queryProxy1;
+        QueryProxy<T> queryProxy2;
+        T query1;
+        T query2;
     }
 }
@@ -0,0 +1,45 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+/**
+ * Metamorphic relations between the results of a pair of queries checked by {@link QueryTestingService}.
+ */
+public enum RelationType {
+    /**
+     * The result of the first query should equal to the result of a logically equivalent query.
+     */
+    EQUAL("not equal to", "equal to"),
+    /**
+     * The result of the first query should not share any element with the result of its reverse query.
+     */
+    NOT("shares a nonempty subset with", "not intersect with"),
+    /**
+     * The result of the first query should be a subset of the result of the first query OR another query.
+     */
+    SUBSET("is not a subset of", "is a subset of"),
+    /**
+     * The result of the first query should be a superset of the result of the first query AND another query.
+     */
+    SUPERSET("is not a superset of", "is a super set of");
+
+    private final String violation;
+    private final String expectation;
+
+    RelationType(String violation, String expectation) {
+        this.violation = violation;
+        this.expectation = expectation;
+    }
+
+    /**
+     * @return human readable description of a violation of this relation.
+     */
+    public String getViolation() {
+        return violation;
+    }
+
+    /**
+     * @return human readable description of the expectation of this relation.
+     */
+    public String getExpectation() {
+        return expectation;
+    }
+}
@@ -0,0 +1,355 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Selectivity Policy steers generated queries towards a target band of selectivity, the fraction of every result
+ * of the system under test that a query matches, so fewer queries match nothing or everything.
+ * The selectivity of each NATIVE query is counted once with {@link QueryFactory#count(Object)} and kept,
+ * the selectivity of AND, OR and NOT queries is estimated as if their children were independent.
+ * While a query is generated, AND or OR and the reverse of each NATIVE query are chosen to bring its estimate
+ * closer to the band, the random choice is kept when both are as close.
+ *
+ * @param <T> class of query used to the system under test.
+ */
+@Slf4j
+public class SelectivityPolicy<T> {
+    public static final double DEFAULT_MIN_SELECTIVITY = 0.01;
+    public static final double DEFAULT_MAX_SELECTIVITY = 0.5;
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+    /**
+     * Selectivities are recorded in the histogram in basis points.
+     */
+    private static final int SELECTIVITY_SCALE = 10_000;
+    /**
+     * Lowest selectivity used to measure the distance to the band, so empty and full queries have a finite distance.
+     */
+    private static final double MIN_DISTANCE_SELECTIVITY = 1e-9;
+
+    private final QueryFactory<T, ?> queryFactory;
+    private final QueryGenerator<T> queryGenerator;
+    @Getter
+    private final double minSelectivity;
+    @Getter
+    private final double maxSelectivity;
+    private final Map<T, Double> leafSelectivities = new ConcurrentHashMap<>();
+    private final AtomicLong generatedCount = new AtomicLong();
+    private final AtomicLong generatedInBandCount = new AtomicLong();
+    private final Map<Band, AtomicLong> resultCounts = new EnumMap<>(Band.class);
+    /**
+     * Selectivity of each result recorded with {@link #recordResult(int)}, in basis points.
+     */
+    @Getter
+    private final Histogram resultSelectivity = new Histogram();
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    /**
+     * Number of results of the system under test, counted with the first NATIVE query, or -1 until then.
+     */
+    private volatile long totalCount = -1;
+
+    public SelectivityPolicy(QueryFactory<T, ?> queryFactory) {
+        this(queryFactory, DEFAULT_MIN_SELECTIVITY, DEFAULT_MAX_SELECTIVITY);
+    }
+
+    /**
+     * @param queryFactory   the query factory to build and count queries with.
+     * @param minSelectivity lowest selectivity of the band, from 0 to maxSelectivity.
+     * @param maxSelectivity highest selectivity of the band, from minSelectivity to 1.
+     */
+    public SelectivityPolicy(@NonNull QueryFactory<T, ?> queryFactory, double minSelectivity, double maxSelectivity) {
+        if (!(minSelectivity >= 0 && minSelectivity <= maxSelectivity && maxSelectivity <= 1)) {
+            throw new IllegalArgumentException(String.format(
+                    "Selectivity band must be within 0 and 1 but was [%s, %s]", minSelectivity, maxSelectivity));
+        }
+        this.queryFactory = queryFactory;
+        this.queryGenerator = new QueryGenerator<>(queryFactory);
+        this.minSelectivity = minSelectivity;
+        this.maxSelectivity = maxSelectivity;
+        for (Band band : Band.values()) {
+            resultCounts.put(band, new AtomicLong());
+        }
+    }
+
+    /**
+     * Set the number of queries generated for each call to {@link #generate(int, Random)},
+     * the first one estimated in the band is returned, otherwise the closest one.
+     *
+     * @param maxAttempts number of generated queries, must be positive.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be positive but was " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Generate a random proxy query steered towards the band.
+     *
+     * @param leafCount number of NATIVE queries of the proxy query, at least 1.
+     * @param random    the random to generate the proxy query with.
+     * @return the proxy query estimated closest to the band.
+     */
+    public QueryProxy<T> generate(int leafCount, @NonNull Random random) {
+        QueryProxy<T> closestQuery = null;
+        double closestDistance = Double.POSITIVE_INFINITY;
+        for (int attempt = 0; attempt < maxAttempts && closestDistance > 0; attempt++) {
+            QueryProxy<T> queryProxy = queryGenerator.generate(leafCount, random, this);
+            double distance = distance(estimate(queryProxy));
+            if (distance < closestDistance) {
+                closestQuery = queryProxy;
+                closestDistance = distance;
+            }
+        }
+        generatedCount.incrementAndGet();
+        if (closestDistance == 0) {
+            generatedInBandCount.incrementAndGet();
+        }
+        return closestQuery;
+    }
+
+    /**
+     * Get the selectivity of a NATIVE query, counted the first time it is seen.
+     * The total number of results is counted once, as the count of the first NATIVE query plus the count of its reverse.
+     *
+     * @param nativeQuery the NATIVE query.
+     * @return fraction of every result matched by the query.
+     */
+    public double getSelectivity(@NonNull T nativeQuery) {
+        Double selectivity = leafSelectivities.get(nativeQuery);
+        if (selectivity != null) {
+            return selectivity;
+        }
+        long count = queryFactory.count(nativeQuery);
+        long total = totalCount;
+        if (total < 0) {
+            QueryProxy<T> leaf = QueryProxy.<T>builder()
+                    .queryType(QueryProxy.QueryType.NATIVE)
+                    .nativeQuery(nativeQuery)
+                    .build();
+            total = count + queryFactory.count(queryFactory.build(leaf.reverse()));
+            totalCount = total;
+            log.debug("Total count of results: {}", total);
+        }
+        selectivity = total == 0 ? 0 : Math.min(1, (double) count / total);
+        Double previous = leafSelectivities.putIfAbsent(nativeQuery, selectivity);
+        return previous != null ? previous : selectivity;
+    }
+
+    /**
+     * Estimate the selectivity of a proxy query from the selectivity of its NATIVE queries.
+     * The tree is walked with an explicit stack, so deep queries do not overflow the call stack.
+     *
+     * @param queryProxy the proxy query.
+     * @return estimated fraction of every result matched by the query.
+     */
+    public double estimate(@NonNull QueryProxy<T> queryProxy) {
+        Map<QueryProxy<T>, Double> estimates = new IdentityHashMap<>();
+        Deque<QueryProxy<T>> stack = new ArrayDeque<>();
+        stack.push(queryProxy);
+        while (!stack.isEmpty()) {
+            QueryProxy<T> node = stack.peek();
+            if (estimates.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            if (node.getQueryType() == QueryProxy.QueryType.NATIVE) {
+                estimates.put(node, getSelectivity(node.getNativeQuery()));
+                stack.pop();
+                continue;
+            }
+            boolean childrenEstimated = true;
+            for (QueryProxy<T> child : node.getChildren()) {
+                if (!estimates.containsKey(child)) {
+                    stack.push(child);
+                    childrenEstimated = false;
+                }
+            }
+            if (childrenEstimated) {
+                estimates.put(node, combine(node, estimates));
+                stack.pop();
+            }
+        }
+        return estimates.get(queryProxy);
+    }
+
+    private static <T> double combine(QueryProxy<T> node, Map<QueryProxy<T>, Double> estimates) {
+        switch (node.getQueryType()) {
+            case NOT:
+                return 1 - estimates.get(node.getChildren().get(0));
+            case AND:
+                double and = 1;
+                for (QueryProxy<T> child : node.getChildren()) {
+                    and *= estimates.get(child);
+                }
+                return and;
+            default:
+                double nor = 1;
+                for (QueryProxy<T> child : node.getChildren()) {
+                    nor *= 1 - estimates.get(child);
+                }
+                return 1 - nor;
+        }
+    }
+
+    /**
+     * Distance of a selectivity to the band, 0 in the band.
+     * Below the band, it is the log ratio of the selectivities, above the band, the log ratio of their complements,
+     * so matching nothing is as far as matching everything.
+     */
+    double distance(double selectivity) {
+        if (selectivity < minSelectivity) {
+            return Math.log(minSelectivity / Math.max(selectivity, MIN_DISTANCE_SELECTIVITY));
+        }
+        if (selectivity > maxSelectivity) {
+            return Math.log((1 - maxSelectivity) / Math.max(1 - selectivity, MIN_DISTANCE_SELECTIVITY));
+        }
+        return 0;
+    }
+
+    /**
+     * @param and   the random choice.
+     * @param left  estimate of the left query.
+     * @param right estimate of the right query.
+     * @return true to combine both queries with AND, false with OR.
+     */
+    boolean chooseAnd(boolean and, double left, double right) {
+        double andDistance = distance(left * right);
+        double orDistance = distance(left + right - left * right);
+        return andDistance == orDistance ? and : andDistance < orDistance;
+    }
+
+    /**
+     * @param reverse     the random choice.
+     * @param selectivity selectivity of the NATIVE query.
+     * @return true to use the reverse of the NATIVE query.
+     */
+    boolean chooseReverse(boolean reverse, double selectivity) {
+        double distance = distance(selectivity);
+        double reverseDistance = distance(1 - selectivity);
+        return distance == reverseDistance ? reverse : reverseDistance < distance;
+    }
+
+    /**
+     * Record the size of a result received from the system under test,
+     * it is ignored until the total number of results is counted.
+     *
+     * @param resultSize number of elements in the result.
+     */
+    public void recordResult(int resultSize) {
+        long total = totalCount;
+        if (total < 0) {
+            return;
+        }
+        double selectivity = total == 0 ? 0 : Math.min(1, (double) resultSize / total);
+        resultSelectivity.record(Math.round(selectivity * SELECTIVITY_SCALE));
+        Band band;
+        if (resultSize == 0) {
+            band = Band.EMPTY;
+        } else if (resultSize >= total) {
+            band = Band.FULL;
+        } else if (selectivity < minSelectivity) {
+            band = Band.BELOW;
+        } else if (selectivity > maxSelectivity) {
+            band = Band.ABOVE;
+        } else {
+            band = Band.IN_BAND;
+        }
+        resultCounts.get(band).incrementAndGet();
+    }
+
+    /**
+     * @param band the band of the results.
+     * @return number of recorded results in the band.
+     */
+    public long getResultCount(@NonNull Band band) {
+        return resultCounts.get(band).get();
+    }
+
+    /**
+     * @return number of calls to {@link #generate(int, Random)}.
+     */
+    public long getGeneratedCount() {
+        return generatedCount.get();
+    }
+
+    /**
+     * @return number of generated queries estimated in the band.
+     */
+    public long getGeneratedInBandCount() {
+        return generatedInBandCount.get();
+    }
+
+    /**
+     * @return number of NATIVE queries counted.
+     */
+    public int getCountedQueryCount() {
+        return leafSelectivities.size();
+    }
+
+    /**
+     * @return number of results of the system under test, or -1 if no NATIVE query is counted yet.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Summary of the generated queries and of the selectivity of their results, with p50/p99/max in percents.
+     *
+     * @return human readable summary.
+     */
+    public String getSummary() {
+        return String.format("Selectivity band [%.2f%%, %.2f%%]: %d of %d generated queries estimated in band, "
+                        + "%d NATIVE queries counted, results %d empty, %d below, %d in band, %d above, %d full, "
+                        + "selectivity p50/p99/max %.2f%%/%.2f%%/%.2f%%",
+                100 * minSelectivity, 100 * maxSelectivity,
+                getGeneratedInBandCount(), getGeneratedCount(), getCountedQueryCount(),
+                getResultCount(Band.EMPTY), getResultCount(Band.BELOW), getResultCount(Band.IN_BAND),
+                getResultCount(Band.ABOVE), getResultCount(Band.FULL),
+                toPercent(resultSelectivity.getValueAtPercentile(50)),
+                toPercent(resultSelectivity.getValueAtPercentile(99)),
+                toPercent(resultSelectivity.getMax()));
+    }
+
+    private static double toPercent(long basisPoints) {
+        return 100.0 * basisPoints / SELECTIVITY_SCALE;
+    }
+
+    /**
+     * Band of a result relative to the selectivity band.
+     */
+    public enum Band {
+        /**
+         * The result is empty.
+         */
+        EMPTY,
+        /**
+         * The result is not empty and below the band.
+         */
+        BELOW,
+        /**
+         * The result is in the band.
+         */
+        IN_BAND,
+        /**
+         * The result is above the band and not every result.
+         */
+        ABOVE,
+        /**
+         * The result is every result.
+         */
+        FULL
+    }
+}
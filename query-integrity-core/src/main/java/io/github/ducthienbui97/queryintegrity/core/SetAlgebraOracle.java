@@ -0,0 +1,177 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Query Oracle that evaluates AND/OR/NOT queries in memory from the results of their NATIVE queries.
+ * The universe query is sent once to number every result, then each NATIVE query is sent once and its result
+ * is kept as a bitmap of result ordinals, so the result of a composite query is a union, intersection or complement
+ * of bitmaps. Every result of a NATIVE query must be in the result of the universe query, so the query factory
+ * must return whole results, e.g: without a limit, and results must be equal only if they are the same result.
+ *
+ * @param <T> class of query used to the system under test.
+ * @param <R> class of result used for the system under test.
+ */
+@Slf4j
+public class SetAlgebraOracle<T, R> implements QueryOracle<T, R> {
+    private final QueryFactory<T, R> queryFactory;
+    private final T universeQuery;
+    private final Map<QueryProxy<T>, BitSet> leafResults = new ConcurrentHashMap<>();
+    private volatile Universe<R> universe;
+
+    /**
+     * @param queryFactory  the query factory to get results of NATIVE queries from.
+     * @param universeQuery the query matching every result of the system under test.
+     */
+    public SetAlgebraOracle(@NonNull QueryFactory<T, R> queryFactory, @NonNull T universeQuery) {
+        this.queryFactory = queryFactory;
+        this.universeQuery = universeQuery;
+    }
+
+    @Override
+    public Collection<R> getResult(@NonNull QueryProxy<T> queryProxy) {
+        Universe<R> currentUniverse = getUniverse();
+        BitSet ordinals = evaluate(queryProxy, currentUniverse);
+        List<R> result = new ArrayList<>(ordinals.cardinality());
+        ordinals.stream().forEach(ordinal -> result.add(currentUniverse.results.get(ordinal)));
+        return result;
+    }
+
+    /**
+     * @return number of results in the universe, the universe query is sent if it has not been.
+     */
+    public int getUniverseSize() {
+        return getUniverse().results.size();
+    }
+
+    /**
+     * @return number of NATIVE queries sent to the system under test.
+     */
+    public int getLeafQueryCount() {
+        return leafResults.size();
+    }
+
+    /**
+     * Evaluate the query in post-order with an explicit stack, so deeply nested queries do not overflow the call stack.
+     */
+    private BitSet evaluate(QueryProxy<T> queryProxy, Universe<R> currentUniverse) {
+        Deque<Step<T>> steps = new ArrayDeque<>();
+        Deque<BitSet> values = new ArrayDeque<>();
+        steps.push(new Step<>(queryProxy));
+        while (!steps.isEmpty()) {
+            Step<T> step = steps.pop();
+            QueryProxy<T> current = step.queryProxy;
+            if (current.getQueryType() == QueryProxy.QueryType.NATIVE) {
+                values.push((BitSet) leafResults.computeIfAbsent(current,
+                        leaf -> toOrdinals(leaf.getNativeQuery(), currentUniverse)).clone());
+            } else if (!step.childrenEvaluated) {
+                step.childrenEvaluated = true;
+                steps.push(step);
+                for (QueryProxy<T> child : current.getChildren()) {
+                    steps.push(new Step<>(child));
+                }
+            } else {
+                values.push(combine(current, values, currentUniverse));
+            }
+        }
+        return values.pop();
+    }
+
+    /**
+     * Combine the ordinals of the children of a NOT/AND/OR query from the top of the values.
+     */
+    private BitSet combine(QueryProxy<T> queryProxy, Deque<BitSet> values, Universe<R> currentUniverse) {
+        int childCount = queryProxy.getChildren().size();
+        switch (queryProxy.getQueryType()) {
+            case NOT:
+                BitSet complement = values.pop();
+                complement.flip(0, currentUniverse.results.size());
+                return complement;
+            case AND:
+                if (childCount == 0) {
+                    return new BitSet();
+                }
+                BitSet intersection = values.pop();
+                for (int i = 1; i < childCount; i++) {
+                    intersection.and(values.pop());
+                }
+                return intersection;
+            default:
+                BitSet union = new BitSet();
+                for (int i = 0; i < childCount; i++) {
+                    union.or(values.pop());
+                }
+                return union;
+        }
+    }
+
+    private BitSet toOrdinals(T query, Universe<R> currentUniverse) {
+        log.debug("Getting result of leaf query {}", queryFactory.toString(query));
+        BitSet ordinals = new BitSet(currentUniverse.results.size());
+        for (R result : queryFactory.getResult(query)) {
+            Integer ordinal = currentUniverse.ordinals.get(result);
+            if (ordinal == null) {
+                throw new IllegalStateException("Result " + queryFactory.toString(result)
+                        + " of query " + queryFactory.toString(query) + " is not in the universe");
+            }
+            ordinals.set(ordinal);
+        }
+        return ordinals;
+    }
+
+    private Universe<R> getUniverse() {
+        Universe<R> currentUniverse = universe;
+        if (currentUniverse == null) {
+            synchronized (this) {
+                currentUniverse = universe;
+                if (currentUniverse == null) {
+                    currentUniverse = new Universe<>(queryFactory.getResult(universeQuery));
+                    log.debug("Universe has {} results", currentUniverse.results.size());
+                    universe = currentUniverse;
+                }
+            }
+        }
+        return currentUniverse;
+    }
+
+    /**
+     * A query to evaluate, once its children are evaluated if it has any.
+     */
+    private static class Step<T> {
+        private final QueryProxy<T> queryProxy;
+        private boolean childrenEvaluated;
+
+        private Step(QueryProxy<T> queryProxy) {
+            this.queryProxy = queryProxy;
+        }
+    }
+
+    /**
+     * Every result of the system under test, numbered by ordinals.
+     */
+    private static class Universe<R> {
+        private final List<R> results;
+        private final Map<R, Integer> ordinals;
+
+        private Universe(Collection<R> results) {
+            this.results = new ArrayList<>(results.size());
+            this.ordinals = new HashMap<>();
+            for (R result : results) {
+                if (ordinals.putIfAbsent(result, this.results.size()) == null) {
+                    this.results.add(result);
+                }
+            }
+        }
+    }
+}
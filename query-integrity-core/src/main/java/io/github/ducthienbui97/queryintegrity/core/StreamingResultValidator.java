@@ -0,0 +1,102 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import lombok.NonNull;
+
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * Class used to validate the result of different queries without holding the results in memory.
+ * Both results must be sorted in ascending order of {@link #getComparator()} without duplicates,
+ * so every relation can be checked with a single merge pass over the 2 results.
+ *
+ * @param <R> class of result used for the system under test.
+ */
+public interface StreamingResultValidator<R> {
+    /**
+     * Create a streaming validator for results sorted by a comparator.
+     *
+     * @param comparator the order of the results.
+     * @param <R>        class of result used for the system under test.
+     * @return the streaming validator.
+     */
+    public static <R> StreamingResultValidator<R> of(@NonNull Comparator<? super R> comparator) {
+        return () -> comparator;
+    }
+
+    /**
+     * @return the order of the results, 2 results are the same if they are compared as 0.
+     */
+    public Comparator<? super R> getComparator();
+
+    /**
+     * Check if result of 2 queries are equal
+     *
+     * @param result1 the first sorted result
+     * @param result2 the second sorted result
+     * @return true if 2 results are equal
+     */
+    default public boolean isEquals(@NonNull Iterator<R> result1, @NonNull Iterator<R> result2) {
+        while (result1.hasNext() && result2.hasNext()) {
+            if (getComparator().compare(result1.next(), result2.next()) != 0) {
+                return false;
+            }
+        }
+        return result1.hasNext() == result2.hasNext();
+    }
+
+    /**
+     * Check if result of 2 queries are intersected,
+     * e.g: there is an nonempty result that is subset of the result of both queries.
+     * Stop at the first shared element.
+     *
+     * @param result1 the first sorted result
+     * @param result2 the second sorted result
+     * @return true if 2 results share an non empty subset.
+     */
+    default public boolean isIntersected(@NonNull Iterator<R> result1, @NonNull Iterator<R> result2) {
+        if (!result1.hasNext() || !result2.hasNext()) {
+            return false;
+        }
+        R element1 = result1.next();
+        R element2 = result2.next();
+        while (true) {
+            int compare = getComparator().compare(element1, element2);
+            if (compare == 0) {
+                return true;
+            }
+            if (compare < 0) {
+                if (!result1.hasNext()) {
+                    return false;
+                }
+                element1 = result1.next();
+            } else {
+                if (!result2.hasNext()) {
+                    return false;
+                }
+                element2 = result2.next();
+            }
+        }
+    }
+
+    /**
+     * Check if result of 1 result is the subset of other
+     *
+     * @param result1 the sorted result could be subset
+     * @param result2 the sorted result could be superset
+     * @return true if result1 is the subset of result2
+     */
+    default public boolean isSubset(@NonNull Iterator<R> result1, @NonNull Iterator<R> result2) {
+        while (result1.hasNext()) {
+            R element1 = result1.next();
+            int compare = 1;
+            while (compare > 0 && result2.hasNext()) {
+                compare = getComparator().compare(element1, result2.next());
+            }
+            if (compare != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,169 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class CachingQueryFactoryTest {
+    @Mock
+    private QueryFactory<String, String> queryFactory;
+
+    private CachingQueryFactory<String, String> cachingQueryFactory;
+
+    @BeforeEach
+    public void setup() {
+        when(queryFactory.getResult(anyString())).thenAnswer(invocation ->
+                Collections.nCopies(((String) invocation.getArgument(0)).length(), invocation.getArgument(0)));
+        when(queryFactory.getResultAsync(any(), any())).thenCallRealMethod();
+        when(queryFactory.getResults(any())).thenCallRealMethod();
+        when(queryFactory.build(any(Random.class))).thenCallRealMethod();
+        cachingQueryFactory = new CachingQueryFactory<>(queryFactory, 10);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 5, 10, 100})
+    public void testRepeatedQueryIsSentOnce(int repeat) {
+        Collection<String> result = cachingQueryFactory.getResult("test");
+        for (int i = 1; i < repeat; i++) {
+            assertThat(cachingQueryFactory.getResult("test"), sameInstance(result));
+        }
+        verify(queryFactory, times(1)).getResult("test");
+        assertThat(cachingQueryFactory.getMissCount(), is(1L));
+        assertThat(cachingQueryFactory.getHitCount(), is(repeat - 1L));
+        assertThat(cachingQueryFactory.getWeight(), is(4L));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedResultIsEvicted() {
+        cachingQueryFactory.getResult("aaaa");
+        cachingQueryFactory.getResult("bbbb");
+        cachingQueryFactory.getResult("aaaa");
+        cachingQueryFactory.getResult("cccc");
+        assertThat(cachingQueryFactory.size(), is(2));
+        assertThat(cachingQueryFactory.getEvictionCount(), is(1L));
+        assertThat(cachingQueryFactory.getWeight(), is(8L));
+        cachingQueryFactory.getResult("aaaa");
+        cachingQueryFactory.getResult("bbbb");
+        verify(queryFactory, times(1)).getResult("aaaa");
+        verify(queryFactory, times(2)).getResult("bbbb");
+    }
+
+    @Test
+    public void testResultLargerThanCacheIsNotCached() {
+        cachingQueryFactory.getResult("aaaaaaaaaaa");
+        cachingQueryFactory.getResult("aaaaaaaaaaa");
+        verify(queryFactory, times(2)).getResult("aaaaaaaaaaa");
+        assertThat(cachingQueryFactory.size(), is(0));
+        assertThat(cachingQueryFactory.getWeight(), is(0L));
+    }
+
+    @Test
+    public void testCustomWeigher() {
+        cachingQueryFactory = new CachingQueryFactory<>(queryFactory, 2, result -> 1);
+        cachingQueryFactory.getResult("aaaaaaaaaaa");
+        cachingQueryFactory.getResult("bbbbbbbbbbb");
+        cachingQueryFactory.getResult("ccccccccccc");
+        assertThat(cachingQueryFactory.size(), is(2));
+        assertThat(cachingQueryFactory.getWeight(), is(2L));
+    }
+
+    @Test
+    public void testAsyncResultIsCached() {
+        Collection<String> result = cachingQueryFactory.getResultAsync("test", ForkJoinPool.commonPool()).join();
+        CompletableFuture<Collection<String>> cachedResult = cachingQueryFactory.getResultAsync("test", ForkJoinPool.commonPool());
+        assertThat(cachedResult.isDone(), is(true));
+        assertThat(cachedResult.join(), sameInstance(result));
+        assertThat(cachingQueryFactory.getResult("test"), sameInstance(result));
+        verify(queryFactory, times(1)).getResult("test");
+    }
+
+    @Test
+    public void testBatchResultsAreCached() {
+        cachingQueryFactory.getResult("aa");
+        Map<String, Collection<String>> results = cachingQueryFactory.getResults(Arrays.asList("aa", "bb", "cc"));
+        assertThat(results.keySet(), is(new HashSet<>(Arrays.asList("aa", "bb", "cc"))));
+        assertThat(results.get("bb"), is(Arrays.asList("bb", "bb")));
+        verify(queryFactory).getResults(Arrays.asList("bb", "cc"));
+        assertThat(cachingQueryFactory.getResults(Arrays.asList("bb", "cc")), is(cachingQueryFactory.getResults(Arrays.asList("cc", "bb"))));
+        verify(queryFactory, times(1)).getResults(any());
+        verify(queryFactory, times(1)).getResult("bb");
+        assertThat(cachingQueryFactory.getHitCount(), is(5L));
+        assertThat(cachingQueryFactory.getMissCount(), is(3L));
+    }
+
+    @Test
+    public void testCountIsNotCached() {
+        when(queryFactory.count(anyString())).thenCallRealMethod();
+        assertThat(cachingQueryFactory.count("test"), is(4L));
+        assertThat(cachingQueryFactory.count("test"), is(4L));
+        verify(queryFactory, times(2)).count("test");
+        assertThat(cachingQueryFactory.size(), is(0));
+    }
+
+    @Test
+    public void testClearRemovesEveryResult() {
+        cachingQueryFactory.getResult("test");
+        cachingQueryFactory.clear();
+        assertThat(cachingQueryFactory.size(), is(0));
+        assertThat(cachingQueryFactory.getWeight(), is(0L));
+        cachingQueryFactory.getResult("test");
+        verify(queryFactory, times(2)).getResult("test");
+    }
+
+    @Test
+    public void testOtherMethodsAreDelegated() {
+        QueryProxy<String> queryProxy = QueryProxy.<String>builder()
+                .queryType(QueryProxy.QueryType.NATIVE)
+                .nativeQuery("test")
+                .build();
+        when(queryFactory.build()).thenReturn("build");
+        when(queryFactory.build(queryProxy)).thenReturn("proxy");
+        when(queryFactory.toString(any())).thenReturn("string");
+        when(queryFactory.getResultIterator(any())).thenReturn(Arrays.asList("a", "b").iterator());
+        assertThat(cachingQueryFactory.build(), is("build"));
+        assertThat(cachingQueryFactory.build(new Random()), is("build"));
+        assertThat(cachingQueryFactory.build(queryProxy), is("proxy"));
+        assertThat(cachingQueryFactory.toString("test"), is("string"));
+        assertThat(cachingQueryFactory.getResultIterator("test").next(), is("a"));
+    }
+
+    @Test
+    public void testCacheAsFactoryOfTestingService() {
+        when(queryFactory.build()).thenReturn("test");
+        when(queryFactory.build(any(QueryProxy.class))).thenReturn("test");
+        QueryTestingService<String, String> queryTestingService = new QueryTestingService<>(cachingQueryFactory);
+        assertThat(queryTestingService.runEqualTest(), is(0));
+        verify(queryFactory, times(1)).getResult("test");
+        assertThat(cachingQueryFactory.getHitCount(), is(2L * QueryTestingService.DEFAULT_TEST_COUNT - 1));
+    }
+
+    @Test
+    public void testMaxWeightMustNotBeNegative() {
+        assertThrows(IllegalArgumentException.class, () -> new CachingQueryFactory<>(queryFactory, -1));
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class HistogramQueryMetricsTest {
+    private HistogramQueryMetrics histogramQueryMetrics;
+
+    @BeforeEach
+    public void setup() {
+        histogramQueryMetrics = new HistogramQueryMetrics();
+    }
+
+    @ParameterizedTest
+    @EnumSource(RelationType.class)
+    public void testMetricsAreRecordedByRelation(RelationType relation) {
+        histogramQueryMetrics.recordBuild(relation, 1000);
+        histogramQueryMetrics.recordResult(relation, 2000, 10);
+        histogramQueryMetrics.recordValidation(relation, 3000, false);
+        histogramQueryMetrics.recordValidation(relation, 3000, true);
+        histogramQueryMetrics.recordRun(relation, 2, 1000000);
+        HistogramQueryMetrics.RelationMetrics metrics = histogramQueryMetrics.getRelationMetrics(relation);
+        assertThat(metrics.getBuildLatency().getMax(), is(1000L));
+        assertThat(metrics.getResultLatency().getMax(), is(2000L));
+        assertThat(metrics.getResultSize().getMax(), is(10L));
+        assertThat(metrics.getValidationLatency().getCount(), is(2L));
+        assertThat(metrics.getInvalidCount(), is(1L));
+        assertThat(metrics.getPairCount(), is(2L));
+        assertThat(metrics.getPairsPerSecond(), is(2000.0));
+        assertThat(histogramQueryMetrics.getSummary(), allOf(
+                startsWith(relation + ": 2 pairs, 1 invalid, 2000.0 pairs/s"),
+                containsString("build 1/1/1/1"),
+                containsString("result 2/2/2/2"),
+                containsString("result size p50/p99/p999/max 10/10/10/10")));
+        for (RelationType otherRelation : RelationType.values()) {
+            if (otherRelation != relation) {
+                assertThat(histogramQueryMetrics.getRelationMetrics(otherRelation).getPairCount(), is(0L));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptySummary() {
+        assertThat(histogramQueryMetrics.getSummary(), is(""));
+        assertThat(histogramQueryMetrics.getRelationMetrics(RelationType.NOT).getPairsPerSecond(), is(0.0));
+    }
+
+    @Test
+    public void testMetricsOfTestingService() {
+        QueryTestingService<String, String> queryTestingService = new QueryTestingService<>(new QueryFactory<String, String>() {
+            @Override
+            public String build() {
+                return "test";
+            }
+
+            @Override
+            public String build(QueryProxy<String> queryProxy) {
+                return "test";
+            }
+
+            @Override
+            public Collection<String> getResult(String query) {
+                return Collections.singletonList(query);
+            }
+        });
+        queryTestingService.setQueryMetrics(histogramQueryMetrics);
+        queryTestingService.runEqualTest(10);
+        queryTestingService.runSubsetTest(10);
+        queryTestingService.runNotTest(10);
+        assertThat(histogramQueryMetrics.getRelationMetrics(RelationType.EQUAL).getPairCount(), is(10L));
+        assertThat(histogramQueryMetrics.getRelationMetrics(RelationType.SUBSET).getPairCount(), is(5L));
+        assertThat(histogramQueryMetrics.getRelationMetrics(RelationType.SUPERSET).getPairCount(), is(5L));
+        assertThat(histogramQueryMetrics.getRelationMetrics(RelationType.NOT).getInvalidCount(), is(10L));
+        assertThat(histogramQueryMetrics.getSummary().split("\n").length, is(4));
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HistogramTest {
+    private Histogram histogram;
+
+    @BeforeEach
+    public void setup() {
+        histogram = new Histogram();
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1, 15, 16, 17, 100, 1000, 123456789, Long.MAX_VALUE})
+    public void testSingleValueIsEveryPercentile(long value) {
+        histogram.record(value);
+        assertThat(histogram.getCount(), is(1L));
+        assertThat(histogram.getMax(), is(value));
+        assertThat(histogram.getValueAtPercentile(0), is(value));
+        assertThat(histogram.getValueAtPercentile(50), is(value));
+        assertThat(histogram.getValueAtPercentile(100), is(value));
+    }
+
+    @ParameterizedTest
+    @ValueSource(doubles = {1, 10, 50, 90, 99, 99.9})
+    public void testPercentileIsWithinPrecision(double percentile) {
+        IntStream.rangeClosed(1, 100000).forEach(histogram::record);
+        double expected = percentile * 1000;
+        assertThat((double) histogram.getValueAtPercentile(percentile),
+                is(both(greaterThanOrEqualTo(expected)).and(lessThanOrEqualTo(expected * 1.0625))));
+    }
+
+    @Test
+    public void testMeanAndMax() {
+        IntStream.rangeClosed(1, 99).forEach(histogram::record);
+        assertThat(histogram.getMean(), is(50.0));
+        assertThat(histogram.getMax(), is(99L));
+        assertThat(histogram.getValueAtPercentile(100), is(99L));
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getMean(), is(0.0));
+        assertThat(histogram.getValueAtPercentile(99), is(0L));
+    }
+
+    @Test
+    public void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> histogram.record(-1));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(-1));
+        assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(100.1));
+    }
+}
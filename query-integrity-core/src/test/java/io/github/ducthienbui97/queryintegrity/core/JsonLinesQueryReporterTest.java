@@ -0,0 +1,170 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JsonLinesQueryReporterTest {
+    private final QueryFactory<String, String> queryFactory = new QueryFactory<String, String>() {
+        @Override
+        public String build() {
+            return "test";
+        }
+
+        @Override
+        public String build(QueryProxy<String> queryProxy) {
+            return "test";
+        }
+
+        @Override
+        public Collection<String> getResult(String query) {
+            return Collections.emptyList();
+        }
+    };
+    private StringWriter stringWriter;
+    private JsonLinesQueryReporter<String, String> jsonLinesQueryReporter;
+
+    private static QueryFailure<String, String> failure(String query1, String query2, List<String> diff) {
+        return QueryFailure.<String, String>builder()
+                .relation(RelationType.SUBSET)
+                .testIndex(3)
+                .seed(-7)
+                .query1(query1)
+                .query2(query2)
+                .result1Size(20)
+                .result2Size(QueryFailure.UNKNOWN_SIZE)
+                .diff(diff)
+                .build();
+    }
+
+    @BeforeEach
+    public void setup() {
+        stringWriter = new StringWriter();
+        jsonLinesQueryReporter = new JsonLinesQueryReporter<>(stringWriter, queryFactory, key -> key.length());
+    }
+
+    @Test
+    public void testFailureIsWrittenAsOneLine() {
+        jsonLinesQueryReporter.reportFailure(failure("a", "b", Arrays.asList("x", "yy")));
+        assertThat(stringWriter.toString(), is("{\"type\":\"failure\",\"kind\":\"relation\",\"relation\":\"SUBSET\","
+                + "\"testIndex\":3,\"seed\":-7,\"query1\":\"a\",\"query2\":\"b\",\"result1Size\":20,\"result2Size\":-1,"
+                + "\"oracleMismatch\":false,\"diff\":[\"1\",\"2\"]}\n"));
+    }
+
+    @Test
+    public void testStringsAreEscaped() {
+        jsonLinesQueryReporter.reportFailure(failure("{\"a\": \"b\\c\"}", "\n\r\t\u0001", Collections.emptyList()));
+        assertThat(stringWriter.toString(), is("{\"type\":\"failure\",\"kind\":\"relation\",\"relation\":\"SUBSET\","
+                + "\"testIndex\":3,\"seed\":-7,"
+                + "\"query1\":\"{\\\"a\\\": \\\"b\\\\c\\\"}\",\"query2\":\"\\n\\r\\t\\u0001\","
+                + "\"result1Size\":20,\"result2Size\":-1,\"oracleMismatch\":false,\"diff\":[]}\n"));
+    }
+
+    @Test
+    public void testRunIsWrittenAsOneLine() {
+        jsonLinesQueryReporter.reportRun(RelationType.NOT, 100, 2);
+        assertThat(stringWriter.toString(),
+                is("{\"type\":\"run\",\"kind\":\"relation\",\"relation\":\"NOT\","
+                        + "\"pairCount\":100,\"invalidCount\":2}\n"));
+    }
+
+    @Test
+    public void testOtherKindIsWritten() {
+        jsonLinesQueryReporter.reportFailure(QueryFailure.<String, String>builder()
+                .kind("hint")
+                .relation(RelationType.EQUAL)
+                .testIndex(0)
+                .seed(1)
+                .query1("a")
+                .query2("a")
+                .plan1("IXSCAN")
+                .plan2("COLLSCAN")
+                .result1Size(1)
+                .result2Size(2)
+                .diff(Collections.singletonList("b"))
+                .build());
+        jsonLinesQueryReporter.reportRun("hint", RelationType.EQUAL, 10, 1);
+        assertThat(stringWriter.toString(), is("{\"type\":\"failure\",\"kind\":\"hint\",\"relation\":\"EQUAL\","
+                + "\"testIndex\":0,\"seed\":1,\"query1\":\"a\",\"query2\":\"a\",\"plan1\":\"IXSCAN\","
+                + "\"plan2\":\"COLLSCAN\",\"result1Size\":1,\"result2Size\":2,\"oracleMismatch\":false,"
+                + "\"diff\":[\"1\"]}\n"
+                + "{\"type\":\"run\",\"kind\":\"hint\",\"relation\":\"EQUAL\",\"pairCount\":10,\"invalidCount\":1}\n"));
+    }
+
+    @Test
+    public void testRunOfOtherKindIsReportedAsRun() {
+        List<RelationType> relations = new ArrayList<>();
+        QueryReporter<String, String> queryReporter = new QueryReporter<String, String>() {
+            @Override
+            public void reportRun(RelationType relation, int pairCount, int invalidCount) {
+                relations.add(relation);
+            }
+        };
+        queryReporter.reportRun("hint", RelationType.EQUAL, 10, 0);
+        assertThat(relations, is(Collections.singletonList(RelationType.EQUAL)));
+    }
+
+    @Test
+    public void testReportToFile(@TempDir Path tempDir) throws IOException {
+        Path file = tempDir.resolve("report.jsonl");
+        try (JsonLinesQueryReporter<String, String> fileReporter =
+                     new JsonLinesQueryReporter<>(file, queryFactory, key -> key)) {
+            fileReporter.reportRun(RelationType.EQUAL, 10, 0);
+            assertThat(Files.readAllLines(file, StandardCharsets.UTF_8).size(), is(1));
+            fileReporter.reportFailure(failure("a", "b", Collections.singletonList("c")));
+        }
+        assertThat(Files.readAllLines(file, StandardCharsets.UTF_8).size(), is(2));
+    }
+
+    @Test
+    public void testReportToTestingService() {
+        QueryTestingService<String, String> queryTestingService = new QueryTestingService<>(queryFactory,
+                new ResultValidator<String>() {
+                    @Override
+                    public boolean isEquals(Collection<String> result1, Collection<String> result2) {
+                        return false;
+                    }
+                });
+        queryTestingService.setQueryReporter(jsonLinesQueryReporter);
+        queryTestingService.runEqualTest(5);
+        assertThat(stringWriter.toString().split("\n").length, is(6));
+    }
+
+    @Test
+    public void testWriteFailure() {
+        Writer failingWriter = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("failed");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        JsonLinesQueryReporter<String, String> failingReporter =
+                new JsonLinesQueryReporter<>(failingWriter, queryFactory, key -> key);
+        assertThrows(UncheckedIOException.class, () -> failingReporter.reportRun(RelationType.NOT, 1, 0));
+    }
+}
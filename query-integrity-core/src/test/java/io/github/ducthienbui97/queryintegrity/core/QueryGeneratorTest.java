@@ -0,0 +1,128 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class QueryGeneratorTest {
+    private final QueryFactory<Integer, Integer> queryFactory = new QueryFactory<Integer, Integer>() {
+        @Override
+        public Integer build() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Integer build(Random random) {
+            return random.nextInt();
+        }
+
+        @Override
+        public Integer build(QueryProxy<Integer> queryProxy) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Collection<Integer> getResult(Integer query) {
+            return Collections.emptyList();
+        }
+    };
+    private final QueryGenerator<Integer> queryGenerator = new QueryGenerator<>(queryFactory);
+
+    public static Stream<Arguments> leafCountAndSeedProvider() {
+        return IntStream.of(1, 2, 3, 5, 25, 125, 1000)
+                .boxed()
+                .flatMap(leafCount -> IntStream.range(0, 10).mapToObj(seed -> Arguments.of(leafCount, seed)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("leafCountAndSeedProvider")
+    public void generateShouldDrawRandomInRecursiveOrder(int leafCount, long seed) {
+        Random random = new Random(seed);
+        Random recursiveRandom = new Random(seed);
+        assertThat(queryGenerator.generate(leafCount, random),
+                sameInstance(generateRecursively(leafCount, recursiveRandom)));
+        assertThat(random.nextLong(), is(recursiveRandom.nextLong()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("leafCountAndSeedProvider")
+    public void generateWithoutSteeringShouldDrawSameQuery(int leafCount, long seed) {
+        // Every estimate is in the band, so the policy keeps every random choice.
+        SelectivityPolicy<Integer> selectivityPolicy = new SelectivityPolicy<>(new QueryFactory<Integer, Integer>() {
+            @Override
+            public Integer build() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Integer build(QueryProxy<Integer> queryProxy) {
+                return 0;
+            }
+
+            @Override
+            public Collection<Integer> getResult(Integer query) {
+                return Collections.singletonList(query);
+            }
+        }, 0, 1);
+        Random random = new Random(seed);
+        Random steeredRandom = new Random(seed);
+        assertThat(queryGenerator.generate(leafCount, steeredRandom, selectivityPolicy),
+                sameInstance(queryGenerator.generate(leafCount, random)));
+        assertThat(random.nextLong(), is(steeredRandom.nextLong()));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 7, 100, 100000})
+    public void generateShouldHaveLeafCount(int leafCount) {
+        QueryProxy<Integer> queryProxy = queryGenerator.generate(leafCount, new Random());
+        assertThat(queryProxy.getLeafCount(), is(leafCount));
+    }
+
+    @Test
+    public void generateShouldNotOverflowOnDeepQuery() {
+        // Always splitting off a single leaf builds a query as deep as its leaf count.
+        Random random = new Random() {
+            @Override
+            public int nextInt(int bound) {
+                return 0;
+            }
+        };
+        QueryProxy<Integer> queryProxy = queryGenerator.generate(100000, random);
+        assertThat(queryProxy.getDepth(), greaterThanOrEqualTo(100000));
+        assertThat(queryProxy.reverse().reverse(), sameInstance(queryProxy));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, -1})
+    public void leafCountMustBePositive(int leafCount) {
+        assertThrows(IllegalArgumentException.class, () -> queryGenerator.generate(leafCount, new Random()));
+    }
+
+    private QueryProxy<Integer> generateRecursively(int leafCount, Random random) {
+        if (leafCount == 1) {
+            QueryProxy<Integer> nativeQuery = QueryProxy.<Integer>builder()
+                    .queryType(QueryProxy.QueryType.NATIVE)
+                    .nativeQuery(queryFactory.build(random))
+                    .build();
+            return random.nextBoolean() ? nativeQuery : nativeQuery.reverse();
+        }
+        int leftLeafCount = random.nextInt(leafCount - 1) + 1;
+        return random.nextBoolean() ?
+                generateRecursively(leftLeafCount, random).and(generateRecursively(leafCount - leftLeafCount, random)) :
+                generateRecursively(leftLeafCount, random).or(generateRecursively(leafCount - leftLeafCount, random));
+    }
+}
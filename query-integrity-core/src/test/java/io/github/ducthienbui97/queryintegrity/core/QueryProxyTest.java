@@ -5,13 +5,25 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class QueryProxyTest {
+    private static final int VARIABLE_COUNT = 6;
 
     public static Stream<Arguments> pairQueryProvider() {
         return queryProvider().flatMap(query1 -> queryProvider().map(query2 -> Arguments.of(query1, query2)));
@@ -38,24 +50,17 @@ public class QueryProxyTest {
     }
 
     private static QueryProxy<String> andQuery() {
-        QueryProxy<String> andQuery = QueryProxy.<String>builder()
+        return QueryProxy.<String>builder()
                 .queryType(QueryProxy.QueryType.AND)
-                .children(new ArrayList<>())
+                .children(Arrays.asList(notQuery(), nativeQuery()))
                 .build();
-        andQuery.getChildren().add(notQuery());
-        andQuery.getChildren().add(nativeQuery());
-        return andQuery;
     }
 
     private static QueryProxy<String> orQuery() {
-        QueryProxy<String> orQuery = QueryProxy.<String>builder()
+        return QueryProxy.<String>builder()
                 .queryType(QueryProxy.QueryType.OR)
-                .children(new ArrayList<>())
+                .children(Arrays.asList(notQuery(), andQuery(), nativeQuery()))
                 .build();
-        orQuery.getChildren().add(notQuery());
-        orQuery.getChildren().add(andQuery());
-        orQuery.getChildren().add(nativeQuery());
-        return orQuery;
     }
 
     @Test
@@ -101,4 +106,213 @@ public class QueryProxyTest {
         assertThat(orQuery.getChildren().size(), is(2));
         assertThat(orQuery.getChildren(), hasItems(query2, query1));
     }
+
+    @ParameterizedTest
+    @MethodSource("queryProvider")
+    public void equalQueriesShouldBeSameInstance(QueryProxy<String> queryProxy) {
+        QueryProxy<String> rebuiltQuery = QueryProxy.<String>builder()
+                .queryType(queryProxy.getQueryType())
+                .children(queryProxy.getChildren())
+                .nativeQuery(queryProxy.getNativeQuery())
+                .build();
+        assertThat(rebuiltQuery, sameInstance(queryProxy));
+        assertThat(rebuiltQuery.hashCode(), is(queryProxy.hashCode()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("queryProvider")
+    public void reverseQueryShouldBeCached(QueryProxy<String> queryProxy) {
+        assertThat(queryProxy.reverse(), sameInstance(queryProxy.reverse()));
+        assertThat(queryProxy.reverse().reverse(), sameInstance(queryProxy));
+    }
+
+    @Test
+    public void childrenShouldNotBeChangedAfterBuild() {
+        List<QueryProxy<String>> children = new ArrayList<>();
+        children.add(nativeQuery());
+        QueryProxy<String> andQuery = QueryProxy.<String>builder()
+                .queryType(QueryProxy.QueryType.AND)
+                .children(children)
+                .build();
+        children.add(notQuery());
+        assertThat(andQuery.getChildren().size(), is(1));
+        assertThrows(UnsupportedOperationException.class, () -> andQuery.getChildren().add(notQuery()));
+    }
+
+    @Test
+    public void depthAndLeafCountShouldBeComputedOnBuild() {
+        assertThat(nativeQuery().getDepth(), is(1));
+        assertThat(nativeQuery().getLeafCount(), is(1));
+        assertThat(notQuery().getDepth(), is(2));
+        assertThat(notQuery().getLeafCount(), is(1));
+        assertThat(andQuery().getDepth(), is(3));
+        assertThat(andQuery().getLeafCount(), is(2));
+        assertThat(orQuery().getDepth(), is(4));
+        assertThat(orQuery().getLeafCount(), is(4));
+    }
+
+    @Test
+    public void differentQueriesShouldNotBeEqual() {
+        QueryProxy<String> otherQuery = QueryProxy.<String>builder()
+                .queryType(QueryProxy.QueryType.NATIVE)
+                .nativeQuery("other")
+                .build();
+        assertThat(otherQuery, not(equalTo(nativeQuery())));
+        assertThat(andQuery(), not(equalTo(orQuery())));
+        assertThat(nativeQuery().equals("test"), is(false));
+    }
+
+    @ParameterizedTest
+    @MethodSource("queryProvider")
+    public void reverseShouldApplyDeMorganToEveryChild(QueryProxy<String> queryProxy) {
+        QueryProxy<String> reversedQuery = queryProxy.reverse();
+        if (queryProxy.getQueryType() == QueryProxy.QueryType.AND || queryProxy.getQueryType() == QueryProxy.QueryType.OR) {
+            assertThat(reversedQuery.getQueryType(), is(queryProxy.getQueryType() == QueryProxy.QueryType.AND ?
+                    QueryProxy.QueryType.OR : QueryProxy.QueryType.AND));
+            for (int i = 0; i < queryProxy.getChildren().size(); i++) {
+                assertThat(reversedQuery.getChildren().get(i), sameInstance(queryProxy.getChildren().get(i).reverse()));
+            }
+        }
+        assertThat(reversedQuery.getLeafCount(), is(queryProxy.getLeafCount()));
+    }
+
+    @Test
+    public void reverseOfDeepQueryShouldNotOverflow() {
+        QueryProxy<String> deepQuery = nativeQuery();
+        for (int i = 0; i < 100000; i++) {
+            QueryProxy<String> leaf = QueryProxy.<String>builder()
+                    .nativeQuery("test" + i)
+                    .queryType(QueryProxy.QueryType.NATIVE)
+                    .build();
+            deepQuery = i % 2 == 0 ? deepQuery.and(leaf) : leaf.or(deepQuery);
+        }
+        QueryProxy<String> reversedQuery = deepQuery.reverse();
+        assertThat(reversedQuery.getDepth(), is(deepQuery.getDepth() + 1));
+        assertThat(reversedQuery.getLeafCount(), is(deepQuery.getLeafCount()));
+        assertThat(reversedQuery.reverse(), sameInstance(deepQuery));
+    }
+
+    public static Stream<Arguments> generatedQueryProvider() {
+        QueryGenerator<Integer> queryGenerator = new QueryGenerator<>(new QueryFactory<Integer, Integer>() {
+            @Override
+            public Integer build() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Integer build(Random random) {
+                return random.nextInt(VARIABLE_COUNT);
+            }
+
+            @Override
+            public Integer build(QueryProxy<Integer> queryProxy) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Collection<Integer> getResult(Integer query) {
+                return Collections.emptyList();
+            }
+        });
+        Random random = new Random(0);
+        return IntStream.of(1, 2, 5, 25, 125).boxed().flatMap(leafCount -> IntStream.range(0, 5).mapToObj(i -> {
+            QueryProxy<Integer> queryProxy = queryGenerator.generate(leafCount, random);
+            return Arguments.of(random.nextBoolean() ? queryProxy : QueryProxy.<Integer>builder()
+                    .queryType(QueryProxy.QueryType.NOT)
+                    .children(Collections.singletonList(queryProxy))
+                    .build());
+        }));
+    }
+
+    @ParameterizedTest
+    @MethodSource("generatedQueryProvider")
+    public void normalizedQueryShouldHaveSameResult(QueryProxy<Integer> queryProxy) {
+        QueryProxy<Integer> normalizedQuery = queryProxy.normalize();
+        for (int assignment = 0; assignment < 1 << VARIABLE_COUNT; assignment++) {
+            assertThat(evaluate(normalizedQuery, assignment), is(evaluate(queryProxy, assignment)));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("generatedQueryProvider")
+    public void normalizedQueryShouldBeFlatWithNegatedLeaves(QueryProxy<Integer> queryProxy) {
+        QueryProxy<Integer> normalizedQuery = queryProxy.normalize();
+        assertNormalized(normalizedQuery);
+        assertThat(normalizedQuery.getLeafCount(), is(queryProxy.getLeafCount()));
+        assertThat(normalizedQuery.getDepth(), lessThanOrEqualTo(queryProxy.getDepth()));
+        assertThat(normalizedQuery.normalize(), sameInstance(normalizedQuery));
+    }
+
+    @Test
+    public void normalizeShouldFlattenChainsAndCollapseDoubleNegation() {
+        QueryProxy<String> a = leaf("a");
+        QueryProxy<String> b = leaf("b");
+        QueryProxy<String> c = leaf("c");
+        QueryProxy<String> doubleNegation = QueryProxy.<String>builder()
+                .queryType(QueryProxy.QueryType.NOT)
+                .children(Collections.singletonList(a.reverse()))
+                .build();
+        assertThat(doubleNegation.normalize(), sameInstance(a));
+        QueryProxy<String> notOr = QueryProxy.<String>builder()
+                .queryType(QueryProxy.QueryType.NOT)
+                .children(Collections.singletonList(b.or(c)))
+                .build();
+        QueryProxy<String> normalizedQuery = doubleNegation.and(notOr).and(a).normalize();
+        assertThat(normalizedQuery.getQueryType(), is(QueryProxy.QueryType.AND));
+        assertThat(normalizedQuery.getChildren(), is(Arrays.asList(a, b.reverse(), c.reverse(), a)));
+    }
+
+    @Test
+    public void normalizeOfDeepQueryShouldNotOverflow() {
+        QueryProxy<String> deepQuery = nativeQuery();
+        for (int i = 0; i < 100000; i++) {
+            deepQuery = i % 2 == 0 ? deepQuery.and(leaf("test" + i)) : leaf("test" + i).and(deepQuery.reverse());
+        }
+        QueryProxy<String> normalizedQuery = deepQuery.normalize();
+        assertNormalized(normalizedQuery);
+        assertThat(normalizedQuery.getLeafCount(), is(deepQuery.getLeafCount()));
+    }
+
+    private static QueryProxy<String> leaf(String nativeQuery) {
+        return QueryProxy.<String>builder()
+                .nativeQuery(nativeQuery)
+                .queryType(QueryProxy.QueryType.NATIVE)
+                .build();
+    }
+
+    private static boolean evaluate(QueryProxy<Integer> queryProxy, int assignment) {
+        switch (queryProxy.getQueryType()) {
+            case AND:
+                return queryProxy.getChildren().stream().allMatch(child -> evaluate(child, assignment));
+            case OR:
+                return queryProxy.getChildren().stream().anyMatch(child -> evaluate(child, assignment));
+            case NOT:
+                return !evaluate(queryProxy.getChildren().get(0), assignment);
+            default:
+                return (assignment >> queryProxy.getNativeQuery() & 1) == 1;
+        }
+    }
+
+    private static <T> void assertNormalized(QueryProxy<T> normalizedQuery) {
+        Deque<QueryProxy<T>> stack = new ArrayDeque<>();
+        stack.push(normalizedQuery);
+        while (!stack.isEmpty()) {
+            QueryProxy<T> node = stack.pop();
+            if (node.getQueryType() == QueryProxy.QueryType.NOT) {
+                assertThat(node.getChildren().get(0).getQueryType(), is(QueryProxy.QueryType.NATIVE));
+            } else if (node.getQueryType() != QueryProxy.QueryType.NATIVE) {
+                assertThat(node.getChildren().size(), greaterThan(1));
+                for (QueryProxy<T> child : node.getChildren()) {
+                    assertThat(child.getQueryType(), not(node.getQueryType()));
+                    stack.push(child);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void queryTypeMustNotBeNull() {
+        assertThrows(NullPointerException.class, () -> QueryProxy.<String>builder().queryType(null));
+        assertThrows(NullPointerException.class, () -> QueryProxy.<String>builder().build());
+    }
 }
@@ -1,9 +1,13 @@
 package io.github.ducthienbui97.queryintegrity.core;
 
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
@@ -13,10 +17,26 @@ import org.mockito.stubbing.OngoingStubbing;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,14 +48,37 @@ public class QueryTestingServiceTest {
     @Mock
     private QueryFactory<String, String> queryFactory;
 
+    @Mock
+    private StreamingResultValidator<String> streamingResultValidator;
+
+    @Mock
+    private QueryOracle<String, String> queryOracle;
+
+    @Mock
+    private QueryMetrics queryMetrics;
+
+    @Mock
+    private QueryPairValidator<String> queryPairValidator;
+
+    @Mock
+    private QueryReporter<String, String> queryReporter;
+
+    @Captor
+    private ArgumentCaptor<QueryFailure<String, String>> failureCaptor;
+
     private QueryTestingService<String, String> queryTestingService;
 
     @BeforeEach
     public void setup() {
         queryTestingService = new QueryTestingService<>(queryFactory, resultValidator);
-        when(queryFactory.build(any())).thenReturn("test");
+        when(queryFactory.build(any(QueryProxy.class))).thenReturn("test");
         when(queryFactory.build()).thenReturn("test");
+        when(queryFactory.build(any(Random.class))).thenCallRealMethod();
         when(queryFactory.toString(any())).thenCallRealMethod();
+        when(queryFactory.getResultAsync(any(), any())).thenCallRealMethod();
+        when(queryFactory.getResultIterator(any())).thenCallRealMethod();
+        when(queryFactory.getResults(any())).thenCallRealMethod();
+        when(queryFactory.getResult(any())).thenReturn(Collections.emptyList());
         when(resultValidator.isEquals(any(), any())).thenReturn(true);
         when(resultValidator.isIntersected(any(), any())).thenReturn(true);
         when(resultValidator.isSubset(any(), any())).thenReturn(true);
@@ -220,4 +263,484 @@ public class QueryTestingServiceTest {
         assertThat(queryTestingService.runSubsetTest(), is(inValidCount));
         verify(queryFactory, times(QueryTestingService.DEFAULT_TEST_COUNT * 2)).getResult(any());
     }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 4, 16, 2 * QueryTestingService.DEFAULT_TEST_COUNT})
+    public void testParallelInvalidReportNotTest(int parallelism) {
+        int invalidCount = 10;
+        OngoingStubbing<Boolean> stubbing = when(resultValidator.isIntersected(any(), any()));
+        for (int i = 0; i < invalidCount; i++) {
+            stubbing = stubbing.thenReturn(true);
+        }
+        stubbing.thenReturn(false);
+        queryTestingService.setParallelism(parallelism);
+        assertThat(queryTestingService.runNotTest(), is(invalidCount));
+        verify(resultValidator, times(QueryTestingService.DEFAULT_TEST_COUNT)).isIntersected(any(), any());
+        verify(queryFactory, times(QueryTestingService.DEFAULT_TEST_COUNT * 2)).getResult(any());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4, 16})
+    public void testParallelInvalidReportEqualAndSubsetTestOnExecutor(int parallelism) {
+        int invalidCount = 5;
+        OngoingStubbing<Boolean> equalStubbing = when(resultValidator.isEquals(any(), any()));
+        for (int i = 0; i < invalidCount; i++) {
+            equalStubbing = equalStubbing.thenReturn(false);
+        }
+        equalStubbing.thenReturn(true);
+        OngoingStubbing<Boolean> subsetStubbing = when(resultValidator.isSubset(any(), any()));
+        for (int i = 0; i < invalidCount; i++) {
+            subsetStubbing = subsetStubbing.thenReturn(false);
+        }
+        subsetStubbing.thenReturn(true);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            queryTestingService.setExecutorService(executorService);
+            queryTestingService.setParallelism(parallelism);
+            assertThat(queryTestingService.runEqualTest(), is(invalidCount));
+            assertThat(queryTestingService.runSubsetTest(), is(invalidCount));
+            assertThat(executorService.isShutdown(), is(false));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, -1})
+    public void testParallelismMustBePositive(int parallelism) {
+        assertThrows(IllegalArgumentException.class, () -> queryTestingService.setParallelism(parallelism));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testParallelRunRethrowsFailure(int parallelism) {
+        when(queryFactory.getResult(any())).thenThrow(new IllegalStateException("failed"));
+        queryTestingService.setParallelism(parallelism);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            queryTestingService.setExecutorService(executorService);
+            assertThrows(IllegalStateException.class, () -> queryTestingService.runNotTest());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 10})
+    public void testParallelRunSendsBothQueriesOfPairAtTheSameTime(int testCount) {
+        // Only 1 pair is in flight, so each barrier trip needs both queries of the same pair.
+        CyclicBarrier bothQueries = new CyclicBarrier(2);
+        when(queryFactory.getResult(any())).thenAnswer(invocation -> {
+            bothQueries.await(10, TimeUnit.SECONDS);
+            return Collections.emptyList();
+        });
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            queryTestingService = new QueryTestingService<>(queryFactory);
+            queryTestingService.setExecutorService(executorService);
+            assertThat(queryTestingService.runNotTest(testCount), is(0));
+            verify(queryFactory, times(testCount * 2)).getResultAsync(any(), any());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5, 10, QueryTestingService.DEFAULT_TEST_COUNT})
+    public void testStreamingValidatorUsedForEveryRelation(int invalidCount) {
+        OngoingStubbing<Boolean> stubbing = when(streamingResultValidator.isSubset(any(), any()));
+        for (int i = 0; i < invalidCount; i++) {
+            stubbing = stubbing.thenReturn(false);
+        }
+        stubbing.thenReturn(true);
+        when(streamingResultValidator.isEquals(any(), any())).thenReturn(true);
+        when(streamingResultValidator.isIntersected(any(), any())).thenReturn(false);
+        queryTestingService.setStreamingResultValidator(streamingResultValidator);
+        assertThat(queryTestingService.runSubsetTest(), is(invalidCount));
+        assertThat(queryTestingService.runEqualTest(), is(0));
+        assertThat(queryTestingService.runNotTest(), is(0));
+        verify(queryFactory, times(QueryTestingService.DEFAULT_TEST_COUNT * 6)).getResultIterator(any());
+        verify(resultValidator, never()).isSubset(any(), any());
+        verify(resultValidator, never()).isEquals(any(), any());
+        verify(resultValidator, never()).isIntersected(any(), any());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testStreamingValidatorClosesResults(int parallelism) {
+        CloseableIterator closed = mock(CloseableIterator.class);
+        CloseableIterator failToClose = mock(CloseableIterator.class);
+        doReturn(closed, failToClose).when(queryFactory).getResultIterator(any());
+        doThrow(new IllegalStateException("failed")).when(failToClose).close();
+        when(streamingResultValidator.isIntersected(any(), any())).thenReturn(true);
+        queryTestingService.setStreamingResultValidator(streamingResultValidator);
+        queryTestingService.setParallelism(parallelism);
+        assertThat(queryTestingService.runNotTest(10), is(10));
+        verify(closed, times(1)).close();
+        verify(failToClose, times(19)).close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testQueryOracleSendsOneQueryPerPair(int parallelism) {
+        when(queryOracle.getResult(any())).thenReturn(Collections.emptyList());
+        queryTestingService.setQueryOracle(queryOracle);
+        queryTestingService.setStreamingResultValidator(streamingResultValidator);
+        queryTestingService.setParallelism(parallelism);
+        assertThat(queryTestingService.runEqualTest(), is(0));
+        verify(queryFactory, times(QueryTestingService.DEFAULT_TEST_COUNT)).getResult(any());
+        verify(queryOracle, times(QueryTestingService.DEFAULT_TEST_COUNT)).getResult(any());
+        verify(queryFactory, never()).getResultIterator(any());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 5, 10, QueryTestingService.DEFAULT_TEST_COUNT})
+    public void testQueryOracleReportsUnexpectedResult(int invalidCount) {
+        when(queryOracle.getResult(any())).thenReturn(Collections.emptyList());
+        OngoingStubbing<Collection<String>> stubbing = when(queryFactory.getResult(any()));
+        for (int i = 0; i < invalidCount; i++) {
+            stubbing = stubbing.thenReturn(Collections.singletonList("unexpected"));
+        }
+        stubbing.thenReturn(Collections.emptyList());
+        when(resultValidator.isIntersected(any(), any())).thenReturn(false);
+        queryTestingService.setQueryOracle(queryOracle);
+        assertThat(queryTestingService.runNotTest(), is(invalidCount));
+        verify(resultValidator, never()).isEquals(any(), any());
+        // Only the first query is checked, the relation is not validated on results of the oracle.
+        verify(resultValidator, never()).isIntersected(any(), any());
+        verify(queryOracle, times(QueryTestingService.DEFAULT_TEST_COUNT)).getResult(any());
+    }
+
+    @Test
+    public void testQueryOracleComparesResultsInAnyOrder() {
+        queryTestingService = new QueryTestingService<>(queryFactory, new ResultValidator<String>() {
+        });
+        when(queryOracle.getResult(any())).thenReturn(Arrays.asList("a", "b", "a"));
+        when(queryFactory.getResult(any())).thenReturn(Arrays.asList("b", "a", "a"));
+        queryTestingService.setQueryOracle(queryOracle);
+        queryTestingService.setQueryReporter(queryReporter);
+        assertThat(queryTestingService.runEqualTest(10), is(0));
+
+        // Same documents, but one fewer duplicate.
+        when(queryFactory.getResult(any())).thenReturn(Arrays.asList("b", "a"));
+        assertThat(queryTestingService.runEqualTest(10), is(10));
+        verify(queryReporter, times(10)).reportFailure(failureCaptor.capture());
+        assertThat(failureCaptor.getValue().isOracleMismatch(), is(true));
+        assertThat(failureCaptor.getValue().getResult1Size(), is(2));
+        assertThat(failureCaptor.getValue().getResult2Size(), is(3));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testQueryMetricsRecordEveryStage(int parallelism) {
+        queryTestingService.setQueryMetrics(queryMetrics);
+        queryTestingService.setParallelism(parallelism);
+        queryTestingService.runSubsetTest();
+        verify(queryMetrics, times(QueryTestingService.DEFAULT_TEST_COUNT / 2)).recordBuild(eq(RelationType.SUBSET), anyLong());
+        verify(queryMetrics, times(QueryTestingService.DEFAULT_TEST_COUNT)).recordResult(eq(RelationType.SUPERSET), anyLong(), eq(0));
+        verify(queryMetrics, times(QueryTestingService.DEFAULT_TEST_COUNT / 2)).recordValidation(eq(RelationType.SUBSET), anyLong(), eq(true));
+        verify(queryMetrics, times(1)).recordRun(eq(RelationType.SUPERSET), eq(QueryTestingService.DEFAULT_TEST_COUNT / 2), anyLong());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testQueryMetricsRecordStreamingAndOracleValidation(int parallelism) {
+        when(streamingResultValidator.isEquals(any(), any())).thenReturn(false);
+        when(queryOracle.getResult(any())).thenReturn(Collections.emptyList());
+        when(resultValidator.isEquals(any(), any())).thenReturn(false);
+        queryTestingService.setQueryMetrics(queryMetrics);
+        queryTestingService.setParallelism(parallelism);
+        queryTestingService.setStreamingResultValidator(streamingResultValidator);
+        queryTestingService.runEqualTest(10);
+        queryTestingService.setQueryOracle(queryOracle);
+        queryTestingService.runEqualTest(10);
+        verify(queryMetrics, times(10)).recordValidation(eq(RelationType.EQUAL), anyLong(), eq(false));
+        verify(queryMetrics, times(10)).recordValidation(eq(RelationType.EQUAL), anyLong(), eq(true));
+        verify(queryMetrics, times(10)).recordResult(eq(RelationType.EQUAL), anyLong(), eq(0));
+    }
+
+    @Test
+    public void testQueryMetricsMustNotBeNull() {
+        assertThrows(NullPointerException.class, () -> queryTestingService.setQueryMetrics(null));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 3, QueryTestingService.DEFAULT_MAX_REPORTED_DIFF, 30})
+    public void testFailureIsReportedWithBoundedDiff(int maxReportedDiff) {
+        when(queryFactory.getResult(any())).thenReturn(
+                IntStream.range(0, 20).mapToObj(String::valueOf).collect(Collectors.toList()),
+                Collections.emptyList());
+        when(resultValidator.isEquals(any(), any())).thenReturn(false);
+        queryTestingService.setQueryReporter(queryReporter);
+        queryTestingService.setMaxReportedDiff(maxReportedDiff);
+        assertThat(queryTestingService.runEqualTest(1), is(1));
+        verify(queryReporter).reportFailure(failureCaptor.capture());
+        verify(queryReporter).reportRun(RelationType.EQUAL, 1, 1);
+        QueryFailure<String, String> failure = failureCaptor.getValue();
+        assertThat(failure.getRelation(), is(RelationType.EQUAL));
+        assertThat(failure.getTestIndex(), is(0));
+        assertThat(failure.getQuery1(), is("test"));
+        assertThat(failure.getResult1Size(), is(20));
+        assertThat(failure.getResult2Size(), is(0));
+        assertThat(failure.getDiff().size(), is(Math.min(maxReportedDiff, 20)));
+        assertThat(failure.isOracleMismatch(), is(false));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testDiffOfEveryRelation(int parallelism) {
+        when(queryFactory.getResult(any())).thenReturn(Arrays.asList("a", "b"));
+        when(resultValidator.isEquals(any(), any())).thenReturn(false);
+        when(resultValidator.isSubset(any(), any())).thenReturn(false);
+        queryTestingService.setQueryReporter(queryReporter);
+        queryTestingService.setParallelism(parallelism);
+        assertThat(queryTestingService.runNotTest(2), is(2));
+        assertThat(queryTestingService.runEqualTest(2), is(2));
+        assertThat(queryTestingService.runSubsetTest(2), is(2));
+        verify(queryReporter, times(6)).reportFailure(failureCaptor.capture());
+        for (QueryFailure<String, String> failure : failureCaptor.getAllValues()) {
+            assertThat(failure.getDiff().size(), is(failure.getRelation() == RelationType.NOT ? 2 : 0));
+        }
+    }
+
+    @Test
+    public void testStreamingAndOracleFailuresAreReported() {
+        when(streamingResultValidator.isEquals(any(), any())).thenReturn(false);
+        when(queryOracle.getResult(any())).thenReturn(Collections.singletonList("expected"));
+        when(resultValidator.isEquals(any(), any())).thenReturn(false);
+        queryTestingService.setQueryReporter(queryReporter);
+        queryTestingService.setStreamingResultValidator(streamingResultValidator);
+        queryTestingService.runEqualTest(1);
+        queryTestingService.setQueryOracle(queryOracle);
+        queryTestingService.runEqualTest(1);
+        verify(queryReporter, times(2)).reportFailure(failureCaptor.capture());
+        QueryFailure<String, String> streamingFailure = failureCaptor.getAllValues().get(0);
+        assertThat(streamingFailure.getResult1Size(), is(QueryFailure.UNKNOWN_SIZE));
+        assertThat(streamingFailure.getDiff().isEmpty(), is(true));
+        QueryFailure<String, String> oracleFailure = failureCaptor.getAllValues().get(1);
+        assertThat(oracleFailure.isOracleMismatch(), is(true));
+        assertThat(oracleFailure.getDiff(), is(Collections.singletonList("expected")));
+    }
+
+    @Test
+    public void testInvalidReporterSettings() {
+        assertThrows(NullPointerException.class, () -> queryTestingService.setQueryReporter(null));
+        assertThrows(IllegalArgumentException.class, () -> queryTestingService.setMaxReportedDiff(-1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 4, 8})
+    public void testSameSeedBuildsSamePairsWithAnyParallelism(int parallelism) {
+        when(queryFactory.build(any(Random.class))).thenAnswer(invocation ->
+                String.valueOf(((Random) invocation.getArgument(0)).nextInt(1000)));
+        when(queryFactory.build(any(QueryProxy.class))).thenAnswer(invocation ->
+                invocation.getArgument(0).toString());
+        when(resultValidator.isEquals(any(), any())).thenReturn(false);
+        queryTestingService.setQueryReporter(queryReporter);
+        queryTestingService.setSeed(42);
+        queryTestingService.runEqualTest(20);
+        queryTestingService.setSeed(42);
+        queryTestingService.setParallelism(parallelism);
+        queryTestingService.runEqualTest(20);
+        verify(queryReporter, times(40)).reportFailure(failureCaptor.capture());
+        Map<Integer, QueryFailure<String, String>> sequentialFailures = new HashMap<>();
+        Map<Integer, QueryFailure<String, String>> parallelFailures = new HashMap<>();
+        List<QueryFailure<String, String>> failures = failureCaptor.getAllValues();
+        failures.subList(0, 20).forEach(failure -> sequentialFailures.put(failure.getTestIndex(), failure));
+        failures.subList(20, 40).forEach(failure -> parallelFailures.put(failure.getTestIndex(), failure));
+        assertThat(parallelFailures.keySet(), is(sequentialFailures.keySet()));
+        sequentialFailures.forEach((testIndex, failure) -> {
+            assertThat(parallelFailures.get(testIndex).getSeed(), is(failure.getSeed()));
+            assertThat(parallelFailures.get(testIndex).getQuery1(), is(failure.getQuery1()));
+            assertThat(parallelFailures.get(testIndex).getQuery2(), is(failure.getQuery2()));
+        });
+        assertThat(sequentialFailures.values().stream().map(QueryFailure::getQuery1).distinct().count(), is(greaterThan(1L)));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RelationType.class)
+    public void testReplayBuildsSamePair(RelationType relation) {
+        when(queryFactory.build(any(Random.class))).thenAnswer(invocation ->
+                String.valueOf(((Random) invocation.getArgument(0)).nextInt(1000)));
+        when(queryFactory.build(any(QueryProxy.class))).thenAnswer(invocation ->
+                invocation.getArgument(0).toString());
+        when(resultValidator.isEquals(any(), any())).thenReturn(false);
+        when(resultValidator.isSubset(any(), any())).thenReturn(false);
+        queryTestingService.setQueryReporter(queryReporter);
+        queryTestingService.runEqualTest(5);
+        queryTestingService.runNotTest(5);
+        queryTestingService.runSubsetTest(10);
+        verify(queryReporter, times(20)).reportFailure(failureCaptor.capture());
+        QueryFailure<String, String> failure = failureCaptor.getAllValues().stream()
+                .filter(reportedFailure -> reportedFailure.getRelation() == relation)
+                .skip(3)
+                .findFirst()
+                .get();
+        assertThat(queryTestingService.replay(relation, failure.getSeed()), is(false));
+        verify(queryReporter, times(21)).reportFailure(failureCaptor.capture());
+        QueryFailure<String, String> replayedFailure = failureCaptor.getValue();
+        assertThat(replayedFailure.getTestIndex(), is(QueryTestingService.REPLAY_TEST_INDEX));
+        assertThat(replayedFailure.getSeed(), is(failure.getSeed()));
+        assertThat(replayedFailure.getQueryProxy1(), is(failure.getQueryProxy1()));
+        assertThat(replayedFailure.getQuery2(), is(failure.getQuery2()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RelationType.class)
+    public void testNormalizedQueriesAreBuilt(RelationType relation) {
+        when(queryFactory.build(any(Random.class))).thenAnswer(invocation ->
+                String.valueOf(((Random) invocation.getArgument(0)).nextInt(1000)));
+        when(resultValidator.isEquals(any(), any())).thenReturn(false);
+        when(resultValidator.isIntersected(any(), any())).thenReturn(true);
+        when(resultValidator.isSubset(any(), any())).thenReturn(false);
+        queryTestingService.setQueryReporter(queryReporter);
+        queryTestingService.setNormalizeQuery(true);
+        queryTestingService.setMinLeafCount(5);
+        queryTestingService.setMaxLeafCount(20);
+        queryTestingService.replay(relation, 42);
+        ArgumentCaptor<QueryProxy<String>> queryProxyCaptor = ArgumentCaptor.forClass(QueryProxy.class);
+        verify(queryFactory, times(2)).build(queryProxyCaptor.capture());
+        verify(queryReporter).reportFailure(failureCaptor.capture());
+        QueryFailure<String, String> failure = failureCaptor.getValue();
+        QueryProxy<String> builtQueryProxy1 = queryProxyCaptor.getAllValues().get(0);
+        QueryProxy<String> builtQueryProxy2 = queryProxyCaptor.getAllValues().get(1);
+        assertThat(builtQueryProxy1, is(failure.getQueryProxy1().normalize()));
+        if (relation == RelationType.EQUAL) {
+            assertThat(failure.getQueryProxy2().getQueryType(), is(QueryProxy.QueryType.NOT));
+            assertThat(builtQueryProxy2.getQueryType(), is(QueryProxy.QueryType.NOT));
+            assertThat(builtQueryProxy2.getChildren().get(0), is(failure.getQueryProxy2().getChildren().get(0).normalize()));
+            assertThat(builtQueryProxy2, not(builtQueryProxy1));
+        } else {
+            assertThat(builtQueryProxy2, is(failure.getQueryProxy2().normalize()));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 10, 30})
+    public void testBatchSendsDistinctQueriesOnce(int batchSize) {
+        when(queryFactory.build(any(QueryProxy.class))).thenAnswer(invocation ->
+                invocation.getArgument(0).toString().length() % 2 == 0 ? "even" : "odd");
+        when(resultValidator.isEquals(any(), any())).thenReturn(false);
+        queryTestingService.setBatchSize(batchSize);
+        assertThat(queryTestingService.runEqualTest(25), is(25));
+        int batchCount = (25 + batchSize - 1) / batchSize;
+        verify(queryFactory, times(batchCount)).getResults(any());
+        verify(queryFactory, atMost(2 * batchCount)).getResult(any());
+        verify(queryFactory, never()).getResultAsync(any(), any());
+        verify(resultValidator, times(25)).isEquals(any(), any());
+    }
+
+    @Test
+    public void testBatchWithQueryOracleSendsFirstQueries() {
+        when(queryFactory.build(any(QueryProxy.class))).thenAnswer(invocation ->
+                ((QueryProxy<?>) invocation.getArgument(0)).getQueryType() == QueryProxy.QueryType.NOT ? "test2" : "test1");
+        when(queryOracle.getResult(any())).thenReturn(Collections.emptyList());
+        queryTestingService.setMinLeafCount(2);
+        queryTestingService.setQueryOracle(queryOracle);
+        queryTestingService.setQueryMetrics(queryMetrics);
+        queryTestingService.setBatchSize(10);
+        assertThat(queryTestingService.runEqualTest(10), is(0));
+        verify(queryFactory).getResults(Collections.singleton("test1"));
+        verify(queryOracle, times(10)).getResult(any());
+        verify(queryMetrics, times(1)).recordResult(eq(RelationType.EQUAL), anyLong(), eq(0));
+        verify(queryMetrics, times(10)).recordValidation(eq(RelationType.EQUAL), anyLong(), eq(true));
+    }
+
+    @Test
+    public void testBatchIsNotUsedByDefault() {
+        assertThat(queryTestingService.runEqualTest(10), is(0));
+        verify(queryFactory, never()).getResults(any());
+        verify(queryFactory, times(20)).getResult(any());
+    }
+
+    @Test
+    public void testBatchIsNotUsedWithStreamingValidator() {
+        when(streamingResultValidator.isEquals(any(), any())).thenReturn(true);
+        queryTestingService.setStreamingResultValidator(streamingResultValidator);
+        queryTestingService.setBatchSize(10);
+        assertThat(queryTestingService.runEqualTest(10), is(0));
+        verify(queryFactory, never()).getResults(any());
+        verify(queryFactory, times(20)).getResultIterator(any());
+    }
+
+    @Test
+    public void testBatchFailsOnMissingResult() {
+        doReturn(Collections.emptyMap()).when(queryFactory).getResults(any());
+        queryTestingService.setBatchSize(2);
+        assertThrows(IllegalStateException.class, () -> queryTestingService.runEqualTest(2));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {-1, -10})
+    public void testBatchSizeMustNotBeNegative(int batchSize) {
+        assertThrows(IllegalArgumentException.class, () -> queryTestingService.setBatchSize(batchSize));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testValidPairsOfSupportedRelationAreNotFetched(int parallelism) {
+        when(queryPairValidator.supports(any())).thenAnswer(invocation -> invocation.getArgument(0) != RelationType.EQUAL);
+        when(queryPairValidator.isValid(any(), any(), any())).thenReturn(true);
+        queryTestingService.setQueryPairValidator(queryPairValidator);
+        queryTestingService.setQueryMetrics(queryMetrics);
+        queryTestingService.setParallelism(parallelism);
+        assertThat(queryTestingService.runNotTest(10), is(0));
+        assertThat(queryTestingService.runSubsetTest(10), is(0));
+        verify(queryFactory, never()).getResult(any());
+        verify(queryPairValidator, times(20)).isValid(any(), eq("test"), eq("test"));
+        verify(queryMetrics, times(10)).recordValidation(eq(RelationType.NOT), anyLong(), eq(true));
+        assertThat(queryTestingService.runEqualTest(10), is(0));
+        verify(queryFactory, times(20)).getResult(any());
+        verify(queryPairValidator, never()).isValid(eq(RelationType.EQUAL), any(), any());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testInvalidPairsAreFetchedAndReported(int parallelism) {
+        when(queryPairValidator.supports(any())).thenReturn(true);
+        when(queryPairValidator.isValid(any(), any(), any())).thenReturn(false);
+        when(queryFactory.getResult(any())).thenReturn(Arrays.asList("a", "b"));
+        queryTestingService.setQueryPairValidator(queryPairValidator);
+        queryTestingService.setQueryReporter(queryReporter);
+        queryTestingService.setParallelism(parallelism);
+        assertThat(queryTestingService.runNotTest(5), is(5));
+        verify(queryFactory, times(10)).getResult(any());
+        verify(queryReporter, times(5)).reportFailure(failureCaptor.capture());
+        for (QueryFailure<String, String> failure : failureCaptor.getAllValues()) {
+            assertThat(failure.getDiff(), is(Arrays.asList("a", "b")));
+        }
+    }
+
+    @Test
+    public void testPairValidatorInBatchAndStreamingMode() {
+        when(queryPairValidator.supports(any())).thenReturn(true);
+        when(queryPairValidator.isValid(any(), any(), any())).thenReturn(true, false);
+        when(streamingResultValidator.isEquals(any(), any())).thenReturn(true);
+        queryTestingService.setQueryPairValidator(queryPairValidator);
+        queryTestingService.setBatchSize(5);
+        assertThat(queryTestingService.runEqualTest(5), is(0));
+        verify(queryFactory).getResults(Collections.singleton("test"));
+        when(queryPairValidator.isValid(any(), any(), any())).thenReturn(true);
+        assertThat(queryTestingService.runEqualTest(5), is(0));
+        verify(queryFactory, times(1)).getResults(any());
+        when(queryPairValidator.isValid(any(), any(), any())).thenReturn(false);
+        queryTestingService.setStreamingResultValidator(streamingResultValidator);
+        assertThat(queryTestingService.runEqualTest(5), is(0));
+        verify(streamingResultValidator, times(5)).isEquals(any(), any());
+    }
+
+    @Test
+    public void testPairValidatorIsNotUsedWithQueryOracle() {
+        when(queryPairValidator.supports(any())).thenReturn(true);
+        when(queryOracle.getResult(any())).thenReturn(Collections.emptyList());
+        queryTestingService.setQueryPairValidator(queryPairValidator);
+        queryTestingService.setQueryOracle(queryOracle);
+        assertThat(queryTestingService.runEqualTest(5), is(0));
+        verify(queryPairValidator, never()).isValid(any(), any(), any());
+    }
+
+    private interface CloseableIterator extends Iterator<String>, AutoCloseable {
+        @Override
+        void close();
+    }
 }
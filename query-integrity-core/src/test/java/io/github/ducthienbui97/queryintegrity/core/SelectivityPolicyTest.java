@@ -0,0 +1,268 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SelectivityPolicyTest {
+    private static final int UNIVERSE_SIZE = 1000;
+    private static final IntPredicate EVEN = value -> value % 2 == 0;
+    private static final IntPredicate LOW = value -> value < 10;
+    private static final IntPredicate HIGH = value -> value >= 100;
+    private static final List<IntPredicate> LEAVES = Arrays.asList(
+            EVEN,
+            LOW,
+            HIGH,
+            value -> value % 3 == 0,
+            value -> value % 10 == 0,
+            value -> value == 42,
+            value -> false);
+
+    private final AtomicInteger queryCount = new AtomicInteger();
+    private PredicateQueryFactory queryFactory;
+    private SelectivityPolicy<IntPredicate> selectivityPolicy;
+
+    private static boolean evaluate(QueryProxy<IntPredicate> queryProxy, int value) {
+        switch (queryProxy.getQueryType()) {
+            case NATIVE:
+                return queryProxy.getNativeQuery().test(value);
+            case NOT:
+                return !evaluate(queryProxy.getChildren().get(0), value);
+            case AND:
+                return queryProxy.getChildren().stream().allMatch(child -> evaluate(child, value));
+            default:
+                return queryProxy.getChildren().stream().anyMatch(child -> evaluate(child, value));
+        }
+    }
+
+    private static QueryProxy<IntPredicate> leaf(IntPredicate predicate) {
+        return QueryProxy.<IntPredicate>builder()
+                .queryType(QueryProxy.QueryType.NATIVE)
+                .nativeQuery(predicate)
+                .build();
+    }
+
+    private static double selectivity(QueryProxy<IntPredicate> queryProxy) {
+        return (double) IntStream.range(0, UNIVERSE_SIZE).filter(value -> evaluate(queryProxy, value)).count()
+                / UNIVERSE_SIZE;
+    }
+
+    @BeforeEach
+    public void setup() {
+        queryFactory = new PredicateQueryFactory();
+        selectivityPolicy = new SelectivityPolicy<>(queryFactory);
+    }
+
+    @Test
+    public void testSelectivityOfNativeQueryIsCountedOnce() {
+        assertThat(selectivityPolicy.getTotalCount(), is(-1L));
+        assertThat(selectivityPolicy.getSelectivity(EVEN), is(0.5));
+        // The total is counted with the reverse of the first NATIVE query.
+        assertThat(queryCount.get(), is(2));
+        assertThat(selectivityPolicy.getTotalCount(), is((long) UNIVERSE_SIZE));
+        assertThat(selectivityPolicy.getSelectivity(LOW), is(0.01));
+        assertThat(selectivityPolicy.getSelectivity(EVEN), is(0.5));
+        assertThat(selectivityPolicy.getSelectivity(LOW), is(0.01));
+        assertThat(queryCount.get(), is(3));
+        assertThat(selectivityPolicy.getCountedQueryCount(), is(2));
+    }
+
+    @Test
+    public void testEstimateAssumesIndependentQueries() {
+        QueryProxy<IntPredicate> even = leaf(EVEN);
+        QueryProxy<IntPredicate> high = leaf(HIGH);
+        assertThat(selectivityPolicy.estimate(even.and(high)), closeTo(0.45, 1e-9));
+        assertThat(selectivityPolicy.estimate(even.or(high)), closeTo(0.95, 1e-9));
+        assertThat(selectivityPolicy.estimate(even.and(high).reverse()), closeTo(0.55, 1e-9));
+        assertThat(selectivityPolicy.estimate(high.reverse().or(leaf(LOW))), closeTo(0.109, 1e-9));
+        assertThat(selectivityPolicy.estimate(even.and(even)), closeTo(0.25, 1e-9));
+    }
+
+    @Test
+    public void testEstimateDoesNotOverflowOnDeepQuery() {
+        QueryProxy<IntPredicate> queryProxy = leaf(EVEN);
+        for (int i = 0; i < 100000; i++) {
+            queryProxy = queryProxy.or(leaf(LOW));
+        }
+        assertThat(selectivityPolicy.estimate(queryProxy), closeTo(1, 1e-9));
+    }
+
+    @Test
+    public void testSteeredQueriesAreMoreOftenInBand() {
+        QueryGenerator<IntPredicate> queryGenerator = new QueryGenerator<>(queryFactory);
+        Random random = new Random(42);
+        Random steeredRandom = new Random(42);
+        int inBand = 0;
+        int steeredInBand = 0;
+        int emptyOrFull = 0;
+        int steeredEmptyOrFull = 0;
+        for (int i = 0; i < 500; i++) {
+            int leafCount = random.nextInt(5) + 1;
+            double selectivity = selectivity(queryGenerator.generate(leafCount, random));
+            if (isInBand(selectivity)) {
+                inBand++;
+            }
+            if (selectivity == 0 || selectivity == 1) {
+                emptyOrFull++;
+            }
+            double steeredSelectivity = selectivity(selectivityPolicy.generate(leafCount, steeredRandom));
+            if (isInBand(steeredSelectivity)) {
+                steeredInBand++;
+            }
+            if (steeredSelectivity == 0 || steeredSelectivity == 1) {
+                steeredEmptyOrFull++;
+            }
+        }
+        assertThat(steeredInBand, greaterThan(2 * inBand));
+        assertThat(steeredInBand, greaterThan(450));
+        assertThat(steeredEmptyOrFull, lessThan(emptyOrFull / 10));
+        assertThat(selectivityPolicy.getGeneratedCount(), is(500L));
+        assertThat(selectivityPolicy.getGeneratedInBandCount(), greaterThan(400L));
+    }
+
+    @Test
+    public void testGenerateReturnsClosestAttempt() {
+        selectivityPolicy = new SelectivityPolicy<>(queryFactory, 0.9, 0.95);
+        selectivityPolicy.setMaxAttempts(1);
+        QueryProxy<IntPredicate> queryProxy = selectivityPolicy.generate(1, new Random());
+        assertThat(selectivityPolicy.estimate(queryProxy), closeTo(selectivity(queryProxy), 1e-9));
+        assertThat(selectivityPolicy.getGeneratedInBandCount(), is(isInBand(selectivity(queryProxy)) ? 1L : 0L));
+        // Only HIGH and the reverse of value % 10 == 0 are in the band.
+        selectivityPolicy.setMaxAttempts(1000);
+        queryProxy = selectivityPolicy.generate(1, new Random());
+        assertThat(selectivity(queryProxy), is(0.9));
+    }
+
+    @Test
+    public void testChoicesInBandAreKept() {
+        assertThat(selectivityPolicy.chooseAnd(true, 0.2, 0.2), is(true));
+        assertThat(selectivityPolicy.chooseAnd(false, 0.2, 0.2), is(false));
+        assertThat(selectivityPolicy.chooseAnd(true, 0.005, 0.5), is(false));
+        assertThat(selectivityPolicy.chooseAnd(false, 0.9, 0.9), is(true));
+        assertThat(selectivityPolicy.chooseReverse(true, 0.3), is(false));
+        assertThat(selectivityPolicy.chooseReverse(false, 0.99), is(true));
+        assertThat(selectivityPolicy.chooseReverse(true, 0.5), is(true));
+        // Matching nothing is as far from the band as matching everything.
+        assertThat(selectivityPolicy.distance(0), closeTo(selectivityPolicy.distance(1) + Math.log(0.01 / 0.5), 1e-9));
+    }
+
+    @Test
+    public void testResultsAreRecordedInBands() {
+        selectivityPolicy.recordResult(10);
+        assertThat(selectivityPolicy.getResultSelectivity().getCount(), is(0L));
+        selectivityPolicy.getSelectivity(EVEN);
+        for (int resultSize : new int[]{0, 5, 10, 100, 500, 501, 999, 1000}) {
+            selectivityPolicy.recordResult(resultSize);
+        }
+        assertThat(selectivityPolicy.getResultCount(SelectivityPolicy.Band.EMPTY), is(1L));
+        assertThat(selectivityPolicy.getResultCount(SelectivityPolicy.Band.BELOW), is(1L));
+        assertThat(selectivityPolicy.getResultCount(SelectivityPolicy.Band.IN_BAND), is(3L));
+        assertThat(selectivityPolicy.getResultCount(SelectivityPolicy.Band.ABOVE), is(2L));
+        assertThat(selectivityPolicy.getResultCount(SelectivityPolicy.Band.FULL), is(1L));
+        assertThat(selectivityPolicy.getResultSelectivity().getMax(), is(10_000L));
+        assertThat(selectivityPolicy.getSummary(), containsString("results 1 empty, 1 below, 3 in band, 2 above, 1 full"));
+        assertThat(selectivityPolicy.getSummary(), endsWith("/100.00%"));
+    }
+
+    @Test
+    public void testEmptySystemHasNoSelectivity() {
+        queryFactory = new PredicateQueryFactory(0);
+        selectivityPolicy = new SelectivityPolicy<>(queryFactory);
+        assertThat(selectivityPolicy.getSelectivity(EVEN), is(0.0));
+        selectivityPolicy.recordResult(0);
+        assertThat(selectivityPolicy.getResultCount(SelectivityPolicy.Band.EMPTY), is(1L));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testPolicyOfTestingService(int parallelism) {
+        QueryTestingService<IntPredicate, Integer> queryTestingService = new QueryTestingService<>(queryFactory);
+        queryTestingService.setSelectivityPolicy(selectivityPolicy);
+        queryTestingService.setParallelism(parallelism);
+        queryTestingService.setSeed(42);
+        assertThat(queryTestingService.runNotTest(), is(0));
+        assertThat(queryTestingService.runSubsetTest(), is(0));
+        queryTestingService.setBatchSize(10);
+        assertThat(queryTestingService.runEqualTest(), is(0));
+        int pairCount = 3 * QueryTestingService.DEFAULT_TEST_COUNT;
+        // Subset and superset pairs generate a second query.
+        assertThat(selectivityPolicy.getGeneratedCount(), is((long) pairCount + QueryTestingService.DEFAULT_TEST_COUNT));
+        long resultCount = Arrays.stream(SelectivityPolicy.Band.values())
+                .mapToLong(selectivityPolicy::getResultCount)
+                .sum();
+        assertThat(selectivityPolicy.getResultSelectivity().getCount(), is(resultCount));
+        assertThat(resultCount, greaterThan((long) pairCount));
+        assertThat(selectivityPolicy.getResultCount(SelectivityPolicy.Band.IN_BAND), greaterThan(resultCount / 2));
+    }
+
+    @Test
+    public void argumentsMustBeValid() {
+        assertThrows(NullPointerException.class, () -> new SelectivityPolicy<>(null));
+        assertThrows(NullPointerException.class, () -> selectivityPolicy.generate(1, null));
+        assertThrows(NullPointerException.class, () -> selectivityPolicy.getSelectivity(null));
+        assertThrows(NullPointerException.class, () -> selectivityPolicy.estimate(null));
+        assertThrows(NullPointerException.class, () -> selectivityPolicy.getResultCount(null));
+        assertThrows(IllegalArgumentException.class, () -> new SelectivityPolicy<>(queryFactory, -0.1, 0.5));
+        assertThrows(IllegalArgumentException.class, () -> new SelectivityPolicy<>(queryFactory, 0.6, 0.5));
+        assertThrows(IllegalArgumentException.class, () -> new SelectivityPolicy<>(queryFactory, 0.1, 1.5));
+        assertThrows(IllegalArgumentException.class, () -> new SelectivityPolicy<>(queryFactory, Double.NaN, 0.5));
+        assertThrows(IllegalArgumentException.class, () -> selectivityPolicy.setMaxAttempts(0));
+        assertThrows(IllegalArgumentException.class, () -> selectivityPolicy.generate(0, new Random()));
+    }
+
+    private boolean isInBand(double selectivity) {
+        return selectivity >= selectivityPolicy.getMinSelectivity() && selectivity <= selectivityPolicy.getMaxSelectivity();
+    }
+
+    private class PredicateQueryFactory implements QueryFactory<IntPredicate, Integer> {
+        private final int universeSize;
+
+        PredicateQueryFactory() {
+            this(UNIVERSE_SIZE);
+        }
+
+        PredicateQueryFactory(int universeSize) {
+            this.universeSize = universeSize;
+        }
+
+        @Override
+        public IntPredicate build() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IntPredicate build(Random random) {
+            return LEAVES.get(random.nextInt(LEAVES.size()));
+        }
+
+        @Override
+        public IntPredicate build(QueryProxy<IntPredicate> queryProxy) {
+            return value -> evaluate(queryProxy, value);
+        }
+
+        @Override
+        public Collection<Integer> getResult(IntPredicate query) {
+            queryCount.incrementAndGet();
+            return IntStream.range(0, universeSize).filter(query).boxed().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SetAlgebraOracleTest {
+    private static final int UNIVERSE_SIZE = 100;
+    private static final IntPredicate UNIVERSE = value -> value < UNIVERSE_SIZE;
+    private static final List<IntPredicate> LEAVES = Arrays.asList(
+            value -> value % 2 == 0,
+            value -> value % 3 == 0,
+            value -> value < 30,
+            value -> value > 70,
+            value -> value == 42,
+            value -> false);
+
+    private final Random random = new Random();
+    private final AtomicInteger queryCount = new AtomicInteger();
+    private PredicateQueryFactory queryFactory;
+    private SetAlgebraOracle<IntPredicate, Integer> setAlgebraOracle;
+
+    private static boolean evaluate(QueryProxy<IntPredicate> queryProxy, int value) {
+        switch (queryProxy.getQueryType()) {
+            case NATIVE:
+                return queryProxy.getNativeQuery().test(value);
+            case NOT:
+                return !evaluate(queryProxy.getChildren().get(0), value);
+            case AND:
+                return queryProxy.getChildren().stream().allMatch(child -> evaluate(child, value));
+            default:
+                return queryProxy.getChildren().stream().anyMatch(child -> evaluate(child, value));
+        }
+    }
+
+    @BeforeEach
+    public void setup() {
+        queryFactory = new PredicateQueryFactory();
+        setAlgebraOracle = new SetAlgebraOracle<>(queryFactory, UNIVERSE);
+    }
+
+    @RepeatedTest(100)
+    public void testResultOfRandomQueryIsCorrect() {
+        QueryProxy<IntPredicate> queryProxy = buildQuery(random.nextInt(8) + 1);
+        List<Integer> expectedResult = IntStream.range(0, UNIVERSE_SIZE)
+                .filter(value -> evaluate(queryProxy, value))
+                .boxed()
+                .collect(Collectors.toList());
+        Collection<Integer> result = setAlgebraOracle.getResult(queryProxy);
+        assertThat(result, containsInAnyOrder(expectedResult.toArray()));
+        assertThat(result.size(), is(expectedResult.size()));
+    }
+
+    @Test
+    public void testEveryQueryIsSentOnce() {
+        for (int i = 0; i < 100; i++) {
+            setAlgebraOracle.getResult(buildQuery(random.nextInt(8) + 1));
+        }
+        assertThat(queryCount.get(), is(setAlgebraOracle.getLeafQueryCount() + 1));
+        assertThat(setAlgebraOracle.getUniverseSize(), is(UNIVERSE_SIZE));
+    }
+
+    @Test
+    public void testNotOfEmptyResultIsUniverse() {
+        QueryProxy<IntPredicate> emptyQuery = leaf(LEAVES.get(LEAVES.size() - 1));
+        assertThat(setAlgebraOracle.getResult(emptyQuery), is(empty()));
+        assertThat(setAlgebraOracle.getResult(emptyQuery.reverse()).size(), is(UNIVERSE_SIZE));
+    }
+
+    @Test
+    public void testResultOutsideUniverseIsRejected() {
+        setAlgebraOracle = new SetAlgebraOracle<>(queryFactory, value -> value < 10);
+        assertThrows(IllegalStateException.class, () -> setAlgebraOracle.getResult(leaf(LEAVES.get(0))));
+    }
+
+    @Test
+    public void testDeepQueryIsEvaluated() {
+        // Under 30 and a multiple of 3, or 42.
+        QueryProxy<IntPredicate> queryProxy = leaf(LEAVES.get(2));
+        for (int i = 0; i < 100_000; i++) {
+            queryProxy = queryProxy.and(leaf(LEAVES.get(1))).or(leaf(LEAVES.get(4)));
+        }
+        assertThat(setAlgebraOracle.getResult(queryProxy), containsInAnyOrder(0, 3, 6, 9, 12, 15, 18, 21, 24, 27, 42));
+        assertThat(setAlgebraOracle.getResult(queryProxy.reverse()).size(), is(UNIVERSE_SIZE - 11));
+        assertThat(setAlgebraOracle.getLeafQueryCount(), is(3));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testOracleAsOracleOfTestingService(int parallelism) {
+        QueryTestingService<IntPredicate, Integer> queryTestingService = new QueryTestingService<>(queryFactory);
+        queryTestingService.setQueryOracle(setAlgebraOracle);
+        queryTestingService.setParallelism(parallelism);
+        assertThat(queryTestingService.runEqualTest(), is(0));
+        assertThat(queryTestingService.runNotTest(), is(0));
+        assertThat(queryTestingService.runSubsetTest(), is(0));
+        assertThat(queryCount.get(), is(3 * QueryTestingService.DEFAULT_TEST_COUNT + setAlgebraOracle.getLeafQueryCount() + 1));
+    }
+
+    @Test
+    public void testNotAcceptNull() {
+        assertThrows(NullPointerException.class, () -> new SetAlgebraOracle<>(null, UNIVERSE));
+        assertThrows(NullPointerException.class, () -> new SetAlgebraOracle<>(queryFactory, null));
+        assertThrows(NullPointerException.class, () -> setAlgebraOracle.getResult(null));
+    }
+
+    private QueryProxy<IntPredicate> leaf(IntPredicate predicate) {
+        return QueryProxy.<IntPredicate>builder()
+                .queryType(QueryProxy.QueryType.NATIVE)
+                .nativeQuery(predicate)
+                .build();
+    }
+
+    private QueryProxy<IntPredicate> buildQuery(int leafCount) {
+        if (leafCount == 1) {
+            QueryProxy<IntPredicate> nativeQuery = leaf(queryFactory.build());
+            return random.nextBoolean() ? nativeQuery : nativeQuery.reverse();
+        }
+        int leftLeafCount = random.nextInt(leafCount - 1) + 1;
+        return random.nextBoolean() ?
+                buildQuery(leftLeafCount).and(buildQuery(leafCount - leftLeafCount)) :
+                buildQuery(leftLeafCount).or(buildQuery(leafCount - leftLeafCount));
+    }
+
+    private class PredicateQueryFactory implements QueryFactory<IntPredicate, Integer> {
+        @Override
+        public IntPredicate build() {
+            return LEAVES.get(random.nextInt(LEAVES.size()));
+        }
+
+        @Override
+        public IntPredicate build(QueryProxy<IntPredicate> queryProxy) {
+            return value -> evaluate(queryProxy, value);
+        }
+
+        @Override
+        public Collection<Integer> getResult(IntPredicate query) {
+            queryCount.incrementAndGet();
+            return IntStream.range(0, UNIVERSE_SIZE).filter(query).boxed().collect(Collectors.toList());
+        }
+    }
+}
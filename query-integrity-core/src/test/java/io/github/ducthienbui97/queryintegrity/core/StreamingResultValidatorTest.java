@@ -0,0 +1,153 @@
+package io.github.ducthienbui97.queryintegrity.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StreamingResultValidatorTest {
+    private StreamingResultValidator<Integer> streamingResultValidator;
+
+    private static Stream<Arguments> subsetArguments() {
+        return supersetArguments().map(arguments -> Arguments.of(arguments.get()[1], arguments.get()[0]));
+    }
+
+    private static Stream<Arguments> nonIntersectArguments() {
+        return listStream().flatMap(list1 ->
+                listStream().filter(list2 -> list2.size() < list1.size())
+                        .map(list2 -> {
+                            List<Integer> shifted = new ArrayList<>();
+                            list2.forEach(element -> shifted.add(element + list1.size()));
+                            return Arguments.of(list1, shifted);
+                        }));
+    }
+
+    private static Stream<Arguments> supersetArguments() {
+        return listStream().flatMap(list ->
+                listStream().filter(list2 -> list2.size() < list.size())
+                        .map(list2 -> Arguments.of(list, list2)));
+    }
+
+    private static Stream<Arguments> equalsArgument() {
+        return listStream().map(list -> Arguments.of(list, new ArrayList<>(list)));
+    }
+
+    private static Stream<Arguments> interleavedArguments() {
+        return Stream.of(
+                Arguments.of(Arrays.asList(1, 3, 5, 7), Arrays.asList(2, 4, 6, 8)),
+                Arguments.of(Arrays.asList(2, 4, 6, 8), Arrays.asList(1, 3, 5, 7)),
+                Arguments.of(Arrays.asList(1, 2, 3), Arrays.asList(4, 5)),
+                Arguments.of(Arrays.asList(4, 5), Arrays.asList(1, 2, 3)));
+    }
+
+    private static Stream<Arguments> hasNullArguments() {
+        return Stream.of(
+                Arguments.of(null, Collections.emptyList()),
+                Arguments.of(Collections.emptyList(), null),
+                Arguments.of(null, null));
+    }
+
+    private static Stream<List<Integer>> listStream() {
+        List<Integer> input = new ArrayList<>();
+        Stream.Builder<List<Integer>> inputBuilder = Stream.builder();
+        while (input.size() < 10) {
+            inputBuilder.accept(new ArrayList<>(input));
+            input.add(input.size());
+        }
+        return inputBuilder.build();
+    }
+
+    private static Iterator<Integer> iterator(List<Integer> list) {
+        return list == null ? null : list.iterator();
+    }
+
+    @BeforeEach
+    public void setup() {
+        streamingResultValidator = StreamingResultValidator.of(Comparator.naturalOrder());
+    }
+
+    @ParameterizedTest
+    @MethodSource("equalsArgument")
+    public void testIsEqualsCorrectlyCompareEquals(List<Integer> result1, List<Integer> result2) {
+        assertThat(streamingResultValidator.isEquals(iterator(result1), iterator(result2)), is(true));
+    }
+
+    @ParameterizedTest
+    @MethodSource({"subsetArguments", "supersetArguments", "nonIntersectArguments", "interleavedArguments"})
+    public void testIsEqualsCorrectlyCompareNotEqual(List<Integer> result1, List<Integer> result2) {
+        assertThat(streamingResultValidator.isEquals(iterator(result1), iterator(result2)), is(false));
+    }
+
+    @ParameterizedTest
+    @MethodSource({"equalsArgument", "subsetArguments"})
+    public void testIsSubsetCorrectlyCompareSubset(List<Integer> result1, List<Integer> result2) {
+        assertThat(streamingResultValidator.isSubset(iterator(result1), iterator(result2)), is(true));
+    }
+
+    @ParameterizedTest
+    @MethodSource({"supersetArguments", "nonIntersectArguments", "interleavedArguments"})
+    public void testIsSubsetCorrectlyCompareNonSubset(List<Integer> result1, List<Integer> result2) {
+        assertThat(streamingResultValidator.isSubset(iterator(result1), iterator(result2)), is(false));
+    }
+
+    @ParameterizedTest
+    @MethodSource({"equalsArgument", "subsetArguments", "supersetArguments"})
+    public void testIsIntersectedCorrectlyCompareIntersectedSets(List<Integer> result1, List<Integer> result2) {
+        assertThat(streamingResultValidator.isIntersected(iterator(result1), iterator(result2)),
+                is(!result1.isEmpty() && !result2.isEmpty()));
+    }
+
+    @ParameterizedTest
+    @MethodSource({"nonIntersectArguments", "interleavedArguments"})
+    public void testIsIntersectedCorrectlyCompareNonIntersect(List<Integer> result1, List<Integer> result2) {
+        assertThat(streamingResultValidator.isIntersected(iterator(result1), iterator(result2)), is(false));
+    }
+
+    @Test
+    public void testIsIntersectedStopsAtFirstSharedElement() {
+        Iterator<Integer> result1 = Arrays.asList(1, 2, 3, 4).iterator();
+        Iterator<Integer> result2 = Arrays.asList(0, 2, 3, 4).iterator();
+        assertThat(streamingResultValidator.isIntersected(result1, result2), is(true));
+        assertThat(result1.next(), is(3));
+        assertThat(result2.next(), is(3));
+    }
+
+    @ParameterizedTest
+    @MethodSource({"hasNullArguments"})
+    public void testIsIntersectedNotAcceptNull(List<Integer> result1, List<Integer> result2) {
+        assertThrows(NullPointerException.class,
+                () -> streamingResultValidator.isIntersected(iterator(result1), iterator(result2)));
+    }
+
+    @ParameterizedTest
+    @MethodSource({"hasNullArguments"})
+    public void testIsSubsetNotAcceptNull(List<Integer> result1, List<Integer> result2) {
+        assertThrows(NullPointerException.class,
+                () -> streamingResultValidator.isSubset(iterator(result1), iterator(result2)));
+    }
+
+    @ParameterizedTest
+    @MethodSource({"hasNullArguments"})
+    public void testIsEqualsNotAcceptNull(List<Integer> result1, List<Integer> result2) {
+        assertThrows(NullPointerException.class,
+                () -> streamingResultValidator.isEquals(iterator(result1), iterator(result2)));
+    }
+
+    @Test
+    public void testComparatorNotAcceptNull() {
+        assertThrows(NullPointerException.class, () -> StreamingResultValidator.of(null));
+    }
+}